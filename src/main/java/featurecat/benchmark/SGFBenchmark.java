@@ -0,0 +1,125 @@
+package featurecat.benchmark;
+
+import featurecat.lizzie.rules.SGFTokenizer;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Times reading multi-megabyte SGF files: one long game with many commented variations, and a
+ * collection of short games. Each file is read the way the parser used to, a char at a time and
+ * then matched whole against the old patterns, and then with {@link SGFTokenizer}.
+ */
+public class SGFBenchmark {
+  private static final int RUNS = 5;
+  private static final Pattern SGF_PATTERN = Pattern.compile("(?s).*?(\\(\\s*;{0,1}.*\\))(?s).*?");
+  private static final Pattern SZ_PATTERN = Pattern.compile("(?s).*?SZ\\[([\\d:]+)\\](?s).*");
+
+  public static void main(String[] args) throws IOException {
+    Random random = new Random(1);
+    File game = File.createTempFile("benchmark-game", ".sgf");
+    File collection = File.createTempFile("benchmark-collection", ".sgf");
+    game.deleteOnExit();
+    collection.deleteOnExit();
+    try (Writer writer = Files.newBufferedWriter(game.toPath(), StandardCharsets.UTF_8)) {
+      writer.write("(;GM[1]FF[4]SZ[19]PB[Black]PW[White]KM[7.5]");
+      writeTree(writer, random, 3, 2000);
+      writer.write(")");
+    }
+    try (Writer writer = Files.newBufferedWriter(collection.toPath(), StandardCharsets.UTF_8)) {
+      for (int i = 0; i < 4000; i++) {
+        writer.write("(;GM[1]FF[4]SZ[19]PB[Black " + i + "]PW[White " + i + "]");
+        writeTree(writer, random, 0, 250);
+        writer.write(")\n");
+      }
+    }
+    run("one game with variations", game);
+    run("a collection of games", collection);
+  }
+
+  private static void run(String name, File file) throws IOException {
+    System.out.printf("\n%s, %.1f MB\n", name, file.length() / 1e6);
+    for (int i = 0; i < RUNS; i++) {
+      readWhole(file);
+      tokenize(file);
+    }
+
+    Stopwatch stopwatch = new Stopwatch();
+    for (int i = 0; i < RUNS; i++) readWhole(file);
+    System.out.print("char at a time and whole-text patterns:");
+    stopwatch.printTimePerAction(RUNS);
+
+    stopwatch.reset();
+    long properties = 0;
+    for (int i = 0; i < RUNS; i++) properties = tokenize(file);
+    System.out.print("tokenizer, " + properties + " property values:");
+    stopwatch.printTimePerAction(RUNS);
+  }
+
+  private static boolean readWhole(File file) throws IOException {
+    StringBuilder builder = new StringBuilder();
+    try (InputStreamReader reader =
+        new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+      while (reader.ready()) {
+        builder.append((char) reader.read());
+      }
+    }
+    String value = builder.toString();
+    return SGF_PATTERN.matcher(value).matches()
+        && SZ_PATTERN.matcher(value).matches()
+        && value.matches("(?s).*\\)\\s*\\)");
+  }
+
+  private static long tokenize(File file) throws IOException {
+    long[] count = new long[1];
+    SGFTokenizer.endsWithNestedTree(file, StandardCharsets.UTF_8);
+    try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+      SGFTokenizer.tokenize(
+          reader,
+          new SGFTokenizer.Handler() {
+            public void startTree() {}
+
+            public void endTree() {}
+
+            public void startNode() {}
+
+            public void property(String key, String value) {
+              count[0]++;
+            }
+          });
+    }
+    return count[0];
+  }
+
+  /**
+   * Writes a line of moves with comments. At some moves the rest of the line goes on as the first
+   * variation, and a shorter line, that branches up to depth - 1 more times, is the second.
+   */
+  private static void writeTree(Writer writer, Random random, int depth, int moves)
+      throws IOException {
+    for (int i = 0; i < moves; i++) {
+      writer.write(i % 2 == 0 ? ";B[" : ";W[");
+      writer.write((char) ('a' + random.nextInt(19)));
+      writer.write((char) ('a' + random.nextInt(19)));
+      writer.write("]");
+      if (random.nextInt(4) == 0) {
+        writer.write("C[move " + i + ", a comment with \\] and (parens) in it]");
+      }
+      if (depth > 0 && i + 1 < moves && random.nextInt(8) == 0) {
+        writer.write("(");
+        writeTree(writer, random, depth, moves - i - 1);
+        writer.write(")(");
+        writeTree(writer, random, depth - 1, 40);
+        writer.write(")");
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package featurecat.benchmark;
+
+import featurecat.lizzie.rules.GroupTable;
+import featurecat.lizzie.rules.Scorer;
+import featurecat.lizzie.rules.Stone;
+import java.util.Random;
+
+/** Times score mode on random filled boards: a full score, and re-scores after toggling groups */
+public class ScoringBenchmark {
+  private static final int POSITIONS = 200;
+  private static final int TOGGLES = 20;
+
+  public static void main(String[] args) {
+    for (int size : new int[] {19, 37}) {
+      run(size);
+    }
+  }
+
+  private static void run(int size) {
+    Random random = new Random(size);
+    Stone[][] positions = new Stone[POSITIONS][];
+    for (int i = 0; i < POSITIONS; i++) {
+      positions[i] = randomPosition(size, random);
+    }
+
+    // warm up
+    for (Stone[] stones : positions) new Scorer(stones, size, size);
+
+    System.out.println("\n" + size + "x" + size);
+    Stopwatch stopwatch = new Stopwatch();
+    Scorer[] scorers = new Scorer[POSITIONS];
+    for (int i = 0; i < POSITIONS; i++) {
+      scorers[i] = new Scorer(positions[i], size, size);
+    }
+    stopwatch.printTimePerAction(POSITIONS);
+
+    stopwatch.reset();
+    for (Scorer scorer : scorers) {
+      for (int t = 0; t < TOGGLES; t++) {
+        scorer.toggle(random.nextInt(size * size));
+        scorer.territoryScore(0, 0, 7.5);
+      }
+    }
+    stopwatch.printTimePerAction(POSITIONS * TOGGLES);
+  }
+
+  private static Stone[] randomPosition(int size, Random random) {
+    GroupTable groups = new GroupTable(size, size);
+    Stone color = Stone.BLACK;
+    for (int move = 0; move < size * size * 2 / 3; move++) {
+      int index = random.nextInt(size * size);
+      if (groups.colorAt(index) != Stone.EMPTY || groups.isSuicide(index, color)) continue;
+      groups.play(index, color);
+      color = color.opposite();
+    }
+    Stone[] stones = new Stone[size * size];
+    for (int i = 0; i < stones.length; i++) {
+      stones[i] = groups.colorAt(i);
+    }
+    return stones;
+  }
+}
@@ -114,6 +114,22 @@ public class Config {
   private final String defaultGtpConsoleStyle =
       "body {background:#000000; color:#d0d0d0; font-family:Consolas, Menlo, Monaco, 'Ubuntu Mono', monospace; margin:4px;} .command {color:#ffffff;font-weight:bold;} .winrate {color:#ffffff;font-weight:bold;} .coord {color:#ffffff;font-weight:bold;}";
   public boolean notRefreshVariation = false;
+  // Keep history nodes as deltas, with a full position every few plies
+  public boolean compactHistory = false;
+  public int historyKeyframeInterval = 32;
+  public int historyCacheSize = 64;
+  // Repetition rule for new moves: "simple" ko, "positional" or "situational" superko
+  public String superkoRule = "simple";
+  // Milliseconds of idle navigation before the engine follows the board, 0 to follow every step
+  public int navigationSyncDelay = 200;
+  // Mark working ladders and ladder breakers until the engine sends its analysis
+  public boolean showLadders = true;
+  // Read sgf files of at least this many megabytes lazily, each variation when it is first needed,
+  // 0 to read every file at once
+  public int lazySgfMegabytes = 0;
+  public int lazySgfExpanded = 1024;
+  // Read the variations of sgf files of at least this many megabytes on all cores, 0 for one
+  public int parallelSgfMegabytes = 1;
 
   private JSONObject loadAndMergeConfig(
       JSONObject defaultCfg, String fileName, boolean needValidation) throws IOException {
@@ -230,6 +246,15 @@ public class Config {
     limitBestMoveNum = uiConfig.optInt("limit-best-move-num", 0);
     limitBranchLength = uiConfig.optInt("limit-branch-length", 0);
     minPlayoutRatioForStats = uiConfig.optDouble("min-playout-ratio-for-stats", 0.1);
+    compactHistory = uiConfig.optBoolean("compact-history", false);
+    historyKeyframeInterval = uiConfig.optInt("history-keyframe-interval", 32);
+    historyCacheSize = uiConfig.optInt("history-cache-size", 64);
+    superkoRule = uiConfig.optString("superko-rule", "simple");
+    navigationSyncDelay = uiConfig.optInt("navigation-sync-delay", 200);
+    showLadders = uiConfig.optBoolean("show-ladders", true);
+    lazySgfMegabytes = uiConfig.optInt("lazy-sgf-megabytes", 0);
+    lazySgfExpanded = uiConfig.optInt("lazy-sgf-expanded", 1024);
+    parallelSgfMegabytes = uiConfig.optInt("parallel-sgf-megabytes", 1);
 
     winrateStrokeWidth = theme.winrateStrokeWidth();
     minimumBlunderBarWidth = theme.minimumBlunderBarWidth();
@@ -556,6 +581,15 @@ public class Config {
     ui.put("show-katago-estimate-onmainboard", true);
     ui.put("katago-estimate-mode", "small");
     ui.put("katago-estimate-blend", true);
+    ui.put("compact-history", false);
+    ui.put("history-keyframe-interval", 32);
+    ui.put("history-cache-size", 64);
+    ui.put("superko-rule", "simple");
+    ui.put("navigation-sync-delay", 200);
+    ui.put("show-ladders", true);
+    ui.put("lazy-sgf-megabytes", 0);
+    ui.put("lazy-sgf-expanded", 1024);
+    ui.put("parallel-sgf-megabytes", 1);
     config.put("ui", ui);
     return config;
   }
@@ -1,49 +1,156 @@
 package featurecat.lizzie.analysis;
 
-import featurecat.lizzie.rules.Board;
+import featurecat.lizzie.rules.BitBoard;
 import featurecat.lizzie.rules.BoardData;
+import featurecat.lizzie.rules.BoardGeometry;
+import featurecat.lizzie.rules.GameSnapshot;
+import featurecat.lizzie.rules.GroupTable;
 import featurecat.lizzie.rules.Stone;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Optional;
 
+/**
+ * A variation played out on top of the board as ghost stones. Moves capture like real moves, so
+ * stones taken by the variation disappear from it. Use {@link VariationReplay#branch} to share the
+ * replays of the variations that are shown.
+ */
 public class Branch {
   public BoardData data;
 
-  public Branch(Board board, List<String> variation, int length) {
-    int[] moveNumberList = new int[Board.boardWidth * Board.boardHeight];
-    int moveNumber = 0;
-    double winrate = 0.0;
-    int playouts = 0;
-    double scoreMean = 0.0;
+  // the chains after the moves that were played
+  private final GroupTable groups;
+  private final int length;
+  // the variation this branch was asked to show as move codes, cut to its length
+  private int[] requested;
+  // the number of its moves that were played
+  private int played;
+  // whether the variation went on with a move that could not be played
+  private boolean stopped;
 
-    this.data =
+  /**
+   * @param position the game as published, the variation is played on copies of its stones and
+   *     chains
+   * @param variation the variation as move codes, starting with the next move
+   * @param length the number of moves to show, 0 or less for all
+   */
+  public Branch(GameSnapshot position, int[] variation, int length) {
+    this(
         new BoardData(
-            board.getStones().clone(),
-            board.getLastMove(),
-            board.getData().lastMoveColor,
-            board.getData().blackToPlay,
-            board.getData().zobrist.clone(),
-            moveNumber,
-            moveNumberList,
-            board.getData().blackCaptures,
-            board.getData().whiteCaptures,
-            winrate,
-            playouts,
-            scoreMean);
-
-    length = length > 0 ? length : 361;
-    for (int i = 0; i < variation.size() && i < length; i++) {
-      Optional<int[]> coordOpt = Board.asCoordinates(variation.get(i));
-      if (!coordOpt.isPresent() || !Board.isValid(coordOpt.get()[0], coordOpt.get()[1])) {
+            position.getStones().clone(),
+            position.getLastMove(),
+            position.getLastMoveColor(),
+            position.isBlackToPlay(),
+            position.getZobrist().clone(),
+            0,
+            new int[position.getGeometry().getPoints()],
+            position.getBlackCaptures(),
+            position.getWhiteCaptures(),
+            0.0,
+            0,
+            0.0),
+        position.getKoPoint(),
+        position.getGroups().copy(),
+        0,
+        length > 0 ? length : position.getGeometry().getPoints());
+    play(variation, position.getLegalMoves());
+  }
+
+  private Branch(BoardData data, int koPoint, GroupTable groups, int played, int length) {
+    this.data = data;
+    this.data.setKoPoint(koPoint);
+    this.groups = groups;
+    this.played = played;
+    this.length = length;
+  }
+
+  /**
+   * Plays the moves of a variation that follow the ones already played, up to the first one that is
+   * not legal
+   *
+   * @param variation the whole variation, as move codes
+   * @param legal the points where the first move may be played, checked against every earlier
+   *     position of the game, or null when the first move was played already
+   */
+  private void play(int[] variation, long[] legal) {
+    requested = Arrays.copyOf(variation, Math.min(variation.length, length));
+    BoardGeometry geometry = data.getGeometry();
+    for (int i = played; i < requested.length; i++) {
+      int index = requested[i];
+      Stone color = data.blackToPlay ? Stone.BLACK : Stone.WHITE;
+      if (index < 0
+          || groups.colorAt(index) != Stone.EMPTY
+          || index == data.getKoPoint()
+          || groups.isSuicide(index, color)
+          || (i == 0 && legal != null && !BitBoard.test(legal, index))) {
+        stopped = true;
         break;
       }
-      int[] coord = coordOpt.get();
-      data.lastMove = coordOpt;
-      data.stones[Board.getIndex(coord[0], coord[1])] =
-          data.blackToPlay ? Stone.BLACK_GHOST : Stone.WHITE_GHOST;
-      data.moveNumberList[Board.getIndex(coord[0], coord[1])] = i + 1;
+      int[] captures = groups.play(index, color);
+      for (int captured : captures) {
+        data.setStone(captured, Stone.EMPTY);
+        data.setMoveNumber(captured, 0);
+      }
+      boolean ko =
+          captures.length == 1 && groups.chainSize(index) == 1 && groups.libertyCount(index) == 1;
+      data.setKoPoint(ko ? captures[0] : -1);
+      data.lastMove = Optional.of(geometry.getCoord(index));
+      data.setStone(index, data.blackToPlay ? Stone.BLACK_GHOST : Stone.WHITE_GHOST);
+      data.setMoveNumber(index, i + 1);
       data.lastMoveColor = data.blackToPlay ? Stone.WHITE : Stone.BLACK;
       data.blackToPlay = !data.blackToPlay;
+      played = i + 1;
+    }
+  }
+
+  /**
+   * @param variation a variation from the same position
+   * @return whether this branch shows exactly that variation, up to its length
+   */
+  boolean shows(int[] variation) {
+    int shown = Math.min(variation.length, length);
+    return requested.length == shown && startsWith(variation, shown);
+  }
+
+  /**
+   * @param variation a variation from the same position
+   * @return whether this branch can be continued into that variation
+   */
+  boolean isExtendedBy(int[] variation) {
+    return !stopped && played < Math.min(variation.length, length) && startsWith(variation, played);
+  }
+
+  private boolean startsWith(int[] variation, int count) {
+    for (int i = 0; i < count; i++) {
+      if (requested[i] != variation[i]) return false;
     }
+    return true;
+  }
+
+  /**
+   * @param variation a longer variation starting with the moves of this branch
+   * @return a new branch showing that variation
+   */
+  Branch extend(int[] variation) {
+    Branch branch =
+        new Branch(
+            new BoardData(
+                data.getStones().clone(),
+                data.lastMove,
+                data.lastMoveColor,
+                data.blackToPlay,
+                data.zobrist.clone(),
+                0,
+                data.getMoveNumberList().clone(),
+                data.blackCaptures,
+                data.whiteCaptures,
+                0.0,
+                0,
+                0.0),
+            data.getKoPoint(),
+            groups.copy(),
+            played,
+            length);
+    branch.play(variation, null);
+    return branch;
   }
 }
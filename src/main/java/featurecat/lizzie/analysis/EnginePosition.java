@@ -0,0 +1,213 @@
+package featurecat.lizzie.analysis;
+
+import featurecat.lizzie.rules.BitBoard;
+import featurecat.lizzie.rules.BoardData;
+import featurecat.lizzie.rules.BoardGeometry;
+import featurecat.lizzie.rules.BoardHistoryNode;
+import featurecat.lizzie.rules.Stone;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * The position an engine holds, as the moves it was sent since its board was last cleared. Every
+ * command sent to the engine goes through {@link #observe}, so the moves stay exact as long as the
+ * engine accepts them; commands whose effect is not known make the position unknown until the next
+ * clear.
+ *
+ * <p>A history node is seen by the engine as the stones of the root played as moves, black ones
+ * first, followed by the move of every node down to it. When stones were added or removed below the
+ * root, the last node where that happened stands in for the root. {@link #plan} picks the cheapest
+ * way from the held moves to those of a node.
+ *
+ * <p>Commands are followed on the threads that send them and generated moves on the engine reader,
+ * so every method is synchronized.
+ */
+class EnginePosition {
+  /** How the engine is brought to a position */
+  enum Plan {
+    // the engine is already there
+    NONE,
+    // undo to the common start and play on, which keeps the search tree of the engine
+    UNDO_AND_PLAY,
+    // clear the board and play every move
+    CLEAR_AND_PLAY,
+    // load the position from a temporary sgf file
+    LOAD_SGF
+  }
+
+  // what starting over costs on top of its commands, as the search tree of the engine is lost
+  private static final int REBUILD_COST = 8;
+  // what loading an sgf file costs, in commands
+  private static final int LOAD_SGF_COST = 24;
+
+  // the moves held by the engine, like "B Q16"
+  private final List<String> moves = new ArrayList<>();
+  private boolean known = true;
+  // the number of held moves that cannot be undone, as they were loaded as setup stones
+  private int floor = 0;
+  // the color of a move being generated by the engine
+  private String generating;
+
+  /**
+   * Follows a command sent to the engine
+   *
+   * @param command a GTP command
+   */
+  synchronized void observe(String command) {
+    String[] params = command.trim().split("\\s+");
+    switch (params[0]) {
+      case "play":
+        if (params.length >= 3) moves.add(move(params[1], params[2]));
+        break;
+      case "undo":
+        if (moves.size() > floor) {
+          moves.remove(moves.size() - 1);
+        } else {
+          known = false;
+        }
+        break;
+      case "clear_board":
+      case "boardsize":
+        moves.clear();
+        known = true;
+        floor = 0;
+        break;
+      case "genmove":
+      case "lz-genmove_analyze":
+      case "kata-genmove_analyze":
+        generating = params.length >= 2 ? params[1] : null;
+        if (generating == null) known = false;
+        break;
+      case "fixed_handicap":
+      case "place_free_handicap":
+      case "set_free_handicap":
+      case "loadsgf":
+        known = false;
+        break;
+      default:
+    }
+  }
+
+  /**
+   * Follows the move the engine generated
+   *
+   * @param move the generated move, or "resign"
+   */
+  synchronized void generated(String move) {
+    if (generating != null && !move.equalsIgnoreCase("resign")) {
+      moves.add(move(generating, move));
+    }
+    generating = null;
+  }
+
+  /**
+   * Follows a position loaded from an sgf file
+   *
+   * @param target the moves of the position
+   * @param setup the number of them that are root stones
+   */
+  synchronized void loaded(List<String> target, int setup) {
+    moves.clear();
+    moves.addAll(target);
+    known = true;
+    floor = setup;
+  }
+
+  /**
+   * @param target the moves of a position
+   * @param setup the number of them that are root stones
+   * @return the cheapest way to bring the engine to the position
+   */
+  synchronized Plan plan(List<String> target, int setup) {
+    int kept = kept(target, setup);
+    if (kept == moves.size() && kept == target.size()) return Plan.NONE;
+    int undoAndPlay =
+        kept >= 0 && kept >= floor ? moves.size() - kept + target.size() - kept : Integer.MAX_VALUE;
+    int clearAndPlay = 1 + target.size() + REBUILD_COST;
+    int loadSgf = LOAD_SGF_COST + REBUILD_COST;
+    if (undoAndPlay <= clearAndPlay && undoAndPlay <= loadSgf) return Plan.UNDO_AND_PLAY;
+    return clearAndPlay <= loadSgf ? Plan.CLEAR_AND_PLAY : Plan.LOAD_SGF;
+  }
+
+  /**
+   * @param target the moves of a position
+   * @param setup the number of them that are root stones
+   * @return the number of held moves that the position starts with, -1 if the held moves are not
+   *     known
+   */
+  synchronized int kept(List<String> target, int setup) {
+    if (!known) return -1;
+    int kept = 0;
+    // root stones are the same in any order, as they never capture each other
+    if (setup > 0
+        && moves.size() >= setup
+        && new HashSet<>(moves.subList(0, setup)).equals(new HashSet<>(target.subList(0, setup)))) {
+      kept = setup;
+    }
+    while (kept < moves.size()
+        && kept < target.size()
+        && moves.get(kept).equals(target.get(kept))) {
+      kept++;
+    }
+    return kept;
+  }
+
+  /** @return the number of moves held by the engine */
+  synchronized int size() {
+    return moves.size();
+  }
+
+  /**
+   * @param node a history node
+   * @return the moves the engine sees for that node, like "B Q16"
+   */
+  static List<String> movesTo(BoardHistoryNode node) {
+    BoardHistoryNode base = node.setupBase();
+    List<BoardHistoryNode> path = new ArrayList<>();
+    for (BoardHistoryNode n = node; n != base; n = n.previous().get()) path.add(n);
+    path.add(base);
+
+    BoardGeometry geometry = node.getData().getGeometry();
+    List<String> target = new ArrayList<>();
+    BitBoard position = path.get(path.size() - 1).getData().getBitBoard();
+    for (Stone color : new Stone[] {Stone.BLACK, Stone.WHITE}) {
+      long[] stones = position.stones(color);
+      for (int i = BitBoard.nextSetBit(stones, 0); i >= 0; i = BitBoard.nextSetBit(stones, i + 1)) {
+        int[] c = geometry.getCoord(i);
+        target.add(move(color, geometry.convertCoordinatesToName(c[0], c[1])));
+      }
+    }
+    for (int p = path.size() - 2; p >= 0; p--) {
+      BoardData data = path.get(p).getData();
+      Stone color =
+          data.lastMoveColor.isBlack() || data.lastMoveColor.isWhite()
+              ? data.lastMoveColor
+              : data.blackToPlay ? Stone.WHITE : Stone.BLACK;
+      target.add(
+          move(
+              color,
+              data.lastMove
+                  .map(c -> geometry.convertCoordinatesToName(c[0], c[1]))
+                  .orElse("pass")));
+    }
+    return target;
+  }
+
+  /**
+   * @param node a history node
+   * @return the number of root stones the engine sees for that node
+   */
+  static int setupSize(BoardHistoryNode node) {
+    BitBoard position = node.setupBase().getData().getBitBoard();
+    return position.count(Stone.BLACK) + position.count(Stone.WHITE);
+  }
+
+  private static String move(Stone color, String vertex) {
+    return move(color.isBlack() ? "B" : "W", vertex);
+  }
+
+  private static String move(String color, String vertex) {
+    return Character.toUpperCase(color.charAt(0)) + " " + vertex.toUpperCase();
+  }
+}
@@ -2,19 +2,31 @@ package featurecat.lizzie.analysis;
 
 import featurecat.lizzie.Lizzie;
 import featurecat.lizzie.gui.MainFrame;
+import featurecat.lizzie.rules.BitBoard;
 import featurecat.lizzie.rules.Board;
 import featurecat.lizzie.rules.BoardData;
+import featurecat.lizzie.rules.BoardGeometry;
+import featurecat.lizzie.rules.BoardHistoryList;
+import featurecat.lizzie.rules.BoardHistoryNode;
+import featurecat.lizzie.rules.LegalMoves;
+import featurecat.lizzie.rules.SGFParser;
 import featurecat.lizzie.rules.Stone;
 import featurecat.lizzie.util.Utils;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.ResourceBundle;
 import java.util.StringTokenizer;
+import java.util.TreeMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -22,6 +34,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -39,7 +52,17 @@ public class Leelaz {
   private int cmdNumber;
   private int currentCmdNum;
   private ArrayDeque<String> cmdQueue;
+  // the moves the engine holds, followed through the commands sent to it
+  private EnginePosition position = new EnginePosition();
   private boolean isModifyingBoard = false;
+  // whether the board was browsed away from the position the engine holds
+  private boolean isSyncPending = false;
+  // the history node the engine is on, which its analysis is stored in
+  private volatile BoardHistoryNode positionNode;
+  // the size of the board the engine was last given
+  private volatile BoardGeometry geometry = BoardGeometry.of(19, 19);
+  // the temporary sgf files of the loadsgf commands sent, by command number, deleted once answered
+  private final TreeMap<Integer, Path> loadingSgf = new TreeMap<>();
 
   private Process process;
 
@@ -208,7 +231,8 @@ public class Leelaz {
     // Response handled in parseLine
     isCheckingVersion = true;
     sendCommand("version");
-    boardSize(Lizzie.board.boardWidth, Lizzie.board.boardHeight);
+    BoardGeometry size = Lizzie.board.getGeometry();
+    boardSize(size.getWidth(), size.getHeight());
     komi(Lizzie.board.getHistory().getGameInfo().getKomi());
 
     // start a thread to continuously read Leelaz output
@@ -281,23 +305,23 @@ public class Leelaz {
     outputStream = new BufferedOutputStream(process.getOutputStream());
   }
 
-  public List<MoveData> parseInfo(String line) {
-    List<MoveData> bestMoves = new ArrayList<>();
-    String[] variations = line.split(" info ");
-    for (String var : variations) {
-      if (!var.trim().isEmpty()) {
-        if (Lizzie.config.limitBestMoveNum > 0
-            && bestMoves.size() >= Lizzie.config.limitBestMoveNum) {
-          break;
-        }
-        bestMoves.add(MoveData.fromInfo(var));
-      }
-    }
-    Lizzie.board.getData().tryToSetBestMoves(bestMoves);
+  /**
+   * @param line an info line
+   * @param geometry the size of the board the engine analyzes
+   * @return the moves of the line
+   */
+  public List<MoveData> parseInfo(String line, BoardGeometry geometry) {
+    List<MoveData> bestMoves = MoveData.fromInfoLine(line, geometry);
+    storeBestMoves(bestMoves);
     return bestMoves;
   }
 
-  public List<MoveData> parseInfoKatago(String line) {
+  /**
+   * @param line an info line of KataGo
+   * @param geometry the size of the board the engine analyzes
+   * @return the moves of the line
+   */
+  public List<MoveData> parseInfoKatago(String line, BoardGeometry geometry) {
     List<MoveData> bestMoves = new ArrayList<>();
     String[] variations = line.split(" info ");
     for (String var : variations) {
@@ -306,13 +330,20 @@ public class Leelaz {
             && bestMoves.size() >= Lizzie.config.limitBestMoveNum) {
           break;
         }
-        bestMoves.add(MoveData.fromInfoKatago(var));
+        bestMoves.add(MoveData.fromInfoKatago(var, geometry));
       }
     }
-    Lizzie.board.getData().tryToSetBestMoves(bestMoves);
+    storeBestMoves(bestMoves);
     return bestMoves;
   }
 
+  /** Hands the analysis to the event thread with the node it is for, the tree is not read here */
+  private void storeBestMoves(List<MoveData> bestMoves) {
+    BoardHistoryNode node = positionNode;
+    Board target = Lizzie.board;
+    if (node != null) SwingUtilities.invokeLater(() -> target.storeBestMoves(node, bestMoves));
+  }
+
   /**
    * Parse a line of Leelaz output
    *
@@ -355,7 +386,7 @@ public class Leelaz {
         if (isAnalysisUpToDate()) {
           // This should not be stale data when the command number match
           if (isKataGo) {
-            this.bestMoves = parseInfoKatago(line.substring(5));
+            this.bestMoves = parseInfoKatago(line.substring(5), geometry);
             if (Lizzie.config.showKataGoEstimate) {
               if (line.contains("ownership")) {
                 estimateArray = new ArrayList<Double>();
@@ -368,8 +399,9 @@ public class Leelaz {
               }
             }
           } else {
-            this.bestMoves = parseInfo(line.substring(5));
+            this.bestMoves = parseInfo(line.substring(5), geometry);
           }
+          Lizzie.board.publishAnalysis(positionNode, bestMoves);
           notifyBestMoveListeners();
           Lizzie.frame.refresh(1);
           // don't follow the maxAnalyzeTime rule if we are in analysis mode
@@ -391,15 +423,20 @@ public class Leelaz {
           if (!Lizzie.frame.isPlayingAgainstLeelaz
               && (Lizzie.config.limitBestMoveNum == 0
                   || bestMoves.size() < Lizzie.config.limitBestMoveNum)) {
+            // copy on write, the list may be held by the node and the snapshot
+            bestMoves = new ArrayList<>(bestMoves);
             bestMoves.add(MoveData.fromSummary(line));
+            Lizzie.board.publishAnalysis(positionNode, bestMoves);
             notifyBestMoveListeners();
             Lizzie.frame.refresh(1);
           }
         }
       } else if (line.startsWith("play")) {
         // In lz-genmove_analyze
+        String move = line.substring(5).trim();
+        position.generated(move);
         if (Lizzie.frame.isPlayingAgainstLeelaz) {
-          Lizzie.board.place(line.substring(5).trim());
+          SwingUtilities.invokeLater(() -> Lizzie.board.place(move));
         }
         isThinking = false;
 
@@ -411,36 +448,41 @@ public class Leelaz {
         String[] params = line.trim().split(" ");
         currentCmdNum = Integer.parseInt(params[0].substring(1).trim());
 
+        deleteLoadedSgf();
         trySendCommandFromQueue();
 
         if (line.startsWith("?") || params.length == 1) return;
 
         if (isSettingHandicap) {
           bestMoves = new ArrayList<>();
-          for (int i = 1; i < params.length; i++) {
-            Lizzie.board
-                .asCoordinates(params[i])
-                .ifPresent(coords -> Lizzie.board.getHistory().setStone(coords, Stone.BLACK));
-          }
+          SwingUtilities.invokeLater(
+              () -> {
+                for (int i = 1; i < params.length; i++) {
+                  Lizzie.board
+                      .asCoordinates(params[i])
+                      .ifPresent(coords -> Lizzie.board.getHistory().setStone(coords, Stone.BLACK));
+                }
+                Lizzie.board.publish();
+                Lizzie.frame.refresh();
+              });
           isSettingHandicap = false;
         } else if (isThinking && !isPondering) {
+          position.generated(params[1]);
           if (Lizzie.frame.isPlayingAgainstLeelaz || isInputCommand) {
-            Lizzie.board.place(params[1]);
-            if (Lizzie.frame.isAutoEstimating) {
-              if (Lizzie.board.getHistory().isBlacksTurn())
-                Lizzie.frame.zen.sendCommand("play " + "w " + params[1]);
-              else Lizzie.frame.zen.sendCommand("play " + "b " + params[1]);
-              Lizzie.frame.zen.countStones();
-            }
+            // place on the event thread, the engine reader must not wait for the board
+            SwingUtilities.invokeLater(
+                () -> {
+                  Lizzie.board.place(params[1]);
+                  if (isInputCommand) {
+                    isInputCommand = false;
+                  }
+                });
             // TODO Do not ponder when playing against Leela Zero
             //            togglePonder();
             if (!isInputCommand) {
               isPondering = false;
             }
             isThinking = false;
-            if (isInputCommand) {
-              isInputCommand = false;
-            }
           }
         } else if (isCheckingName) {
           if (params[1].startsWith("KataGo")) {
@@ -476,9 +518,9 @@ public class Leelaz {
     // ignore passes, and only accept lines that start with a coordinate letter
     if (line.length() > 0 && Character.isLetter(line.charAt(0)) && !line.startsWith("pass")) {
       if (!(Lizzie.frame.isPlayingAgainstLeelaz
-          && Lizzie.frame.playerIsBlack != Lizzie.board.getData().blackToPlay)) {
+          && Lizzie.frame.playerIsBlack != Lizzie.board.snapshot().isBlackToPlay())) {
         try {
-          bestMovesTemp.add(MoveData.fromInfo(line));
+          bestMovesTemp.add(MoveData.fromInfo(line, geometry));
         } catch (ArrayIndexOutOfBoundsException e) {
           // this is very rare but is possible. ignore
         }
@@ -531,13 +573,8 @@ public class Leelaz {
         cmdQueue.removeLast();
       }
       cmdQueue.addLast(command);
+      position.observe(command);
       trySendCommandFromQueue();
-      if (Lizzie.frame.isAutoEstimating) {
-        if (command.startsWith("play") || command.startsWith("undo")) {
-          Lizzie.frame.zen.sendCommand(command);
-          Lizzie.frame.zen.countStones();
-        }
-      }
     }
   }
 
@@ -568,6 +605,9 @@ public class Leelaz {
    */
   private void sendCommandToLeelaz(String command) {
     if (command.startsWith("fixed_handicap")) isSettingHandicap = true;
+    if (command.startsWith("loadsgf ")) {
+      loadingSgf.put(cmdNumber, Paths.get(command.substring("loadsgf ".length())));
+    }
     if (printCommunication) {
       System.out.printf("> %d %s\n", cmdNumber, command);
     }
@@ -577,6 +617,17 @@ public class Leelaz {
     sendToWriterThread(command + "\n");
   }
 
+  /** Deletes the temporary sgf files of the loadsgf commands that were answered */
+  private void deleteLoadedSgf() {
+    synchronized (cmdQueue) {
+      Map<Integer, Path> answered = loadingSgf.headMap(currentCmdNum, true);
+      for (Path file : answered.values()) {
+        file.toFile().delete();
+      }
+      answered.clear();
+    }
+  }
+
   /** Check whether leelaz is responding to the last command */
   private boolean isResponseUpToDate() {
     // Use >= instead of == for avoiding hang-up, though it cannot happen
@@ -584,7 +635,7 @@ public class Leelaz {
   }
 
   private boolean isAnalysisUpToDate() {
-    return !isModifyingBoard && isResponseUpToDate();
+    return !isModifyingBoard && !isSyncPending && isResponseUpToDate();
   }
 
   public void beginModifyingBoard() {
@@ -676,6 +727,7 @@ public class Leelaz {
 
   public void boardSize(int width, int height) {
     synchronized (this) {
+      geometry = BoardGeometry.of(width, height);
       sendCommand("boardsize " + width + (width != height ? " " + height : ""));
     }
   }
@@ -704,11 +756,134 @@ public class Leelaz {
     }
   }
 
+  /**
+   * Brings the engine to the position of a history node in one batch of commands. It undoes back to
+   * the moves the engine has in common with the node and plays on from there, which keeps its
+   * search tree, unless clearing the board or loading a temporary sgf file costs clearly less.
+   *
+   * @param node the history node
+   */
+  public void syncTo(BoardHistoryNode node) {
+    synchronized (this) {
+      isSyncPending = false;
+      positionNode = node;
+      List<String> target = EnginePosition.movesTo(node);
+      int setup = EnginePosition.setupSize(node);
+      EnginePosition.Plan plan = position.plan(target, setup);
+      if (plan == EnginePosition.Plan.NONE) return;
+
+      beginModifyingBoard();
+      Optional<Path> sgf = Optional.empty();
+      if (plan == EnginePosition.Plan.LOAD_SGF) {
+        sgf = writeSgf(node);
+        if (!sgf.isPresent()) plan = EnginePosition.Plan.CLEAR_AND_PLAY;
+      }
+      switch (plan) {
+        case UNDO_AND_PLAY:
+          int kept = position.kept(target, setup);
+          for (int i = position.size(); i > kept; i--) {
+            sendCommand("undo");
+          }
+          for (String move : target.subList(kept, target.size())) {
+            sendCommand("play " + move);
+          }
+          break;
+        case CLEAR_AND_PLAY:
+          sendCommand("clear_board");
+          for (String move : target) {
+            sendCommand("play " + move);
+          }
+          break;
+        default:
+          sendCommand("loadsgf " + sgf.get());
+          position.loaded(target, setup);
+      }
+      bestMoves = new ArrayList<>();
+      endModifyingBoard();
+
+      if (isPondering && !Lizzie.frame.isPlayingAgainstLeelaz) ponder();
+    }
+  }
+
+  /**
+   * Marks the engine as left behind by the board until the next {@link #syncTo}, so its analysis is
+   * ignored and the analysis stored in the nodes is shown instead
+   */
+  public void deferSync() {
+    synchronized (this) {
+      isSyncPending = true;
+      bestMoves = new ArrayList<>();
+    }
+  }
+
+  public boolean isSyncPending() {
+    return isSyncPending;
+  }
+
+  /** @return the node the engine holds the position of, null before the first sync */
+  public BoardHistoryNode getPositionNode() {
+    return positionNode;
+  }
+
+  /**
+   * Follows the board to the node it is on, while the moves made on the board are sent to the
+   * engine one by one
+   *
+   * @param node the current node of the board
+   */
+  public void followed(BoardHistoryNode node) {
+    if (isAttached && !isSyncPending) positionNode = node;
+  }
+
+  /**
+   * Writes the line of play down to a node to a temporary file, deleted once the engine answered
+   * the loadsgf command that reads it
+   *
+   * @param node the history node
+   * @return the file, if it could be written to a path that is a single GTP argument
+   */
+  private Optional<Path> writeSgf(BoardHistoryNode node) {
+    try {
+      Path file = Files.createTempFile("lizzie", ".sgf");
+      file.toFile().deleteOnExit();
+      Files.write(
+          file,
+          SGFParser.pathToString(node, Lizzie.board.getHistory().getGameInfo().getKomi())
+              .getBytes(StandardCharsets.UTF_8));
+      return file.toString().matches("\\S+") ? Optional.of(file) : Optional.empty();
+    } catch (IOException e) {
+      e.printStackTrace();
+      return Optional.empty();
+    }
+  }
+
   public void analyzeAvoid(String type, String color, String coordList, int untilMove) {
+    if ("allow".equals(type) && untilMove <= 1) coordList = legalCoords(color, coordList);
     analyzeAvoid(
         String.format("%s %s %s %d", type, color, coordList, untilMove <= 0 ? 1 : untilMove));
   }
 
+  /**
+   * Drops the points where the color cannot play now from a list for the next move only, so the
+   * engine is not allowed nothing but illegal moves
+   *
+   * @param color b or w
+   * @param coordList GTP vertexes separated by commas
+   * @return the legal vertexes of the list, or the list itself if none is legal
+   */
+  private String legalCoords(String color, String coordList) {
+    BoardHistoryList history = Lizzie.board.getHistory();
+    BoardGeometry geometry = history.getGeometry();
+    long[] points = LegalMoves.of(history, color.startsWith("b") ? Stone.BLACK : Stone.WHITE);
+    long[] allowed = new long[points.length];
+    for (String name : coordList.split(",")) {
+      int move = geometry.moveOf(name);
+      if (move >= 0 && BitBoard.test(points, move)) BitBoard.set(allowed, move);
+    }
+    String legal = LegalMoves.names(allowed, geometry);
+    return legal.isEmpty() ? coordList : legal;
+  }
+
   public void analyzeAvoid(String parameters) {
     bestMoves = new ArrayList<>();
     if (!isPondering) {
@@ -754,6 +929,9 @@ public class Leelaz {
       ponder();
     } else {
       sendCommand("name"); // ends pondering
+      // after the analysis already handed to the event thread
+      Board target = Lizzie.board;
+      if (target != null) SwingUtilities.invokeLater(target::shareAnalysis);
     }
     Lizzie.frame.updateBasicInfo();
   }
@@ -761,6 +939,12 @@ public class Leelaz {
   /** End the process */
   public void shutdown() {
     if (process != null) process.destroy();
+    synchronized (cmdQueue) {
+      for (Path file : loadingSgf.values()) {
+        file.toFile().delete();
+      }
+      loadingSgf.clear();
+    }
   }
 
   public List<MoveData> getBestMoves() {
@@ -1,6 +1,8 @@
 package featurecat.lizzie.analysis;
 
 import featurecat.lizzie.Lizzie;
+import featurecat.lizzie.rules.BoardGeometry;
+import featurecat.lizzie.rules.Symmetry;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -10,9 +12,13 @@ import java.util.regex.Pattern;
 /** Holds the data from Leelaz's pondering mode */
 public class MoveData {
   public String coordinate;
+  // the coordinate as a move code of the board geometry, for drawing and replaying
+  public int move = BoardGeometry.NONE;
   public int playouts;
   public double winrate;
   public List<String> variation;
+  // the variation as move codes
+  public int[] pv = new int[0];
   public double scoreMean;
   public double scoreStdev;
   public double policy;
@@ -37,6 +43,17 @@ public class MoveData {
    * @param line line of ponder output
    */
   public static MoveData fromInfoKatago(String line) throws ArrayIndexOutOfBoundsException {
+    return fromInfoKatago(line, BoardGeometry.current());
+  }
+
+  /**
+   * Parses a KataGo info line on a board of a given size
+   *
+   * @param line line of ponder output
+   * @param geometry the size of the board the engine analyzes
+   */
+  public static MoveData fromInfoKatago(String line, BoardGeometry geometry)
+      throws ArrayIndexOutOfBoundsException {
     MoveData result = new MoveData();
     String[] data = line.trim().split(" ");
     boolean islcb = Lizzie.config.showLcbWinrate;
@@ -45,19 +62,19 @@ public class MoveData {
       String key = data[i];
       if (key.equals("pv")) {
         // Read variation to the end of line
-        result.variation = new ArrayList<>(Arrays.asList(data));
-        result.variation =
-            result.variation.subList(
-                i + 1,
-                (Lizzie.config.limitBranchLength > 0
-                        && data.length - i - 1 > Lizzie.config.limitBranchLength)
-                    ? i + 1 + Lizzie.config.limitBranchLength
-                    : data.length);
+        int end =
+            (Lizzie.config.limitBranchLength > 0
+                    && data.length - i - 1 > Lizzie.config.limitBranchLength)
+                ? i + 1 + Lizzie.config.limitBranchLength
+                : data.length;
+        result.variation = Arrays.asList(data).subList(i + 1, end);
+        result.pv = geometry.movesOf(data, i + 1, end);
         break;
       } else {
         String value = data[++i];
         if (key.equals("move")) {
           result.coordinate = value;
+          result.move = geometry.moveOf(value);
         }
         if (key.equals("visits")) {
           result.playouts = Integer.parseInt(value);
@@ -86,6 +103,18 @@ public class MoveData {
   }
 
   public static MoveData fromInfo(String line) throws ArrayIndexOutOfBoundsException {
+    return fromInfo(line, BoardGeometry.current());
+  }
+
+  /**
+   * Reads the analysis of one move from a line of lz-analyze output
+   *
+   * @param line the part of the line for the move
+   * @param geometry the board the moves of the line are on
+   * @return the analysis of the move
+   */
+  public static MoveData fromInfo(String line, BoardGeometry geometry)
+      throws ArrayIndexOutOfBoundsException {
     MoveData result = new MoveData();
     String[] data = line.trim().split(" ");
     boolean islcb = Lizzie.config.showLcbWinrate;
@@ -94,19 +123,19 @@ public class MoveData {
       String key = data[i];
       if (key.equals("pv")) {
         // Read variation to the end of line
-        result.variation = new ArrayList<>(Arrays.asList(data));
-        result.variation =
-            result.variation.subList(
-                i + 1,
-                (Lizzie.config.limitBranchLength > 0
-                        && data.length - i - 1 > Lizzie.config.limitBranchLength)
-                    ? i + 1 + Lizzie.config.limitBranchLength
-                    : data.length);
+        int end =
+            (Lizzie.config.limitBranchLength > 0
+                    && data.length - i - 1 > Lizzie.config.limitBranchLength)
+                ? i + 1 + Lizzie.config.limitBranchLength
+                : data.length;
+        result.variation = Arrays.asList(data).subList(i + 1, end);
+        result.pv = geometry.movesOf(data, i + 1, end);
         break;
       } else {
         String value = data[++i];
         if (key.equals("move")) {
           result.coordinate = value;
+          result.move = geometry.moveOf(value);
         }
         if (key.equals("visits")) {
           result.playouts = Integer.parseInt(value);
@@ -160,7 +189,7 @@ public class MoveData {
         result.winrate = Double.parseDouble(matchold.group(3));
         result.variation =
             Arrays.asList(matchold.group(4).split(" ", Lizzie.config.limitBranchLength));
-        return result;
+        return result.encode();
       }
     } else {
       MoveData result = new MoveData();
@@ -168,8 +197,49 @@ public class MoveData {
       result.playouts = Integer.parseInt(match.group(2));
       result.winrate = Double.parseDouble(match.group(Lizzie.config.showLcbWinrate ? 4 : 3));
       result.variation = Arrays.asList(match.group(5).split(" ", Lizzie.config.limitBranchLength));
-      return result;
+      return result.encode();
+    }
+  }
+
+  /** Sets the move codes from the coordinate and the variation */
+  private MoveData encode() {
+    BoardGeometry geometry = BoardGeometry.current();
+    move = geometry.moveOf(coordinate);
+    pv = new int[variation.size()];
+    for (int i = 0; i < pv.length; i++) {
+      pv[i] = geometry.moveOf(variation.get(i));
     }
+    return this;
+  }
+
+  /**
+   * Copies this move as seen through a symmetry of the board, to reuse the analysis of a position
+   * for its rotations and mirrors
+   *
+   * @param symmetry the symmetry, which must fit the board
+   * @param geometry the size of the board
+   * @return the transformed copy
+   */
+  public MoveData transform(Symmetry symmetry, BoardGeometry geometry) {
+    MoveData result = new MoveData();
+    result.move = symmetry.apply(geometry, move);
+    result.coordinate = result.move >= 0 ? geometry.nameOf(result.move) : coordinate;
+    result.pv = new int[pv.length];
+    String[] names = new String[pv.length];
+    for (int i = 0; i < pv.length; i++) {
+      result.pv[i] = symmetry.apply(geometry, pv[i]);
+      names[i] =
+          result.pv[i] >= 0 || variation == null || i >= variation.size()
+              ? geometry.nameOf(result.pv[i])
+              : variation.get(i);
+    }
+    result.variation = Arrays.asList(names);
+    result.playouts = playouts;
+    result.winrate = winrate;
+    result.scoreMean = scoreMean;
+    result.scoreStdev = scoreStdev;
+    result.policy = policy;
+    return result;
   }
 
   private static Pattern summaryPatternLcb =
@@ -179,6 +249,28 @@ public class MoveData {
       Pattern.compile("^ *(\\w\\d*) -> *(\\d+) \\(V: ([^%)]+)%\\) \\([^\\)]+\\) PV: (.+).*$");
   // support 0.16 0.15
 
+  /**
+   * Reads the analysis of every move from a line of lz-analyze output, as many as the configured
+   * limit
+   *
+   * @param line a line of lz-analyze output
+   * @param geometry the board the moves of the line are on
+   * @return the analysis of the moves
+   */
+  public static List<MoveData> fromInfoLine(String line, BoardGeometry geometry) {
+    List<MoveData> bestMoves = new ArrayList<>();
+    for (String var : line.split(" info ")) {
+      if (!var.trim().isEmpty()) {
+        if (Lizzie.config.limitBestMoveNum > 0
+            && bestMoves.size() >= Lizzie.config.limitBestMoveNum) {
+          break;
+        }
+        bestMoves.add(fromInfo(var, geometry));
+      }
+    }
+    return bestMoves;
+  }
+
   public static int getPlayouts(List<MoveData> moves) {
     int playouts = 0;
     for (MoveData move : moves) {
@@ -0,0 +1,74 @@
+package featurecat.lizzie.analysis;
+
+import featurecat.lizzie.rules.GameSnapshot;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Replays of the variations shown on the main board and the sub board. A replay is kept for each
+ * position, first move and length, so repainting the same variation costs nothing, and a variation
+ * that the engine made longer is played on from the moves that are already replayed.
+ */
+public class VariationReplay {
+  private static final int CAPACITY = 32;
+
+  // replays by position, first move and length, least recently used first
+  private static final LinkedHashMap<Key, Branch> replays = new LinkedHashMap<>(16, 0.75f, true);
+
+  private VariationReplay() {}
+
+  /**
+   * Returns the branch of a variation from a published position
+   *
+   * @param position the game as published
+   * @param variation the variation as move codes, starting with the next move
+   * @param length the number of moves to show, 0 or less for all
+   * @return the branch, possibly shared with an earlier call
+   */
+  public static synchronized Branch branch(GameSnapshot position, int[] variation, int length) {
+    if (variation.length == 0) return new Branch(position, variation, length);
+    Key key =
+        new Key(
+            position.getFingerprint(),
+            variation[0],
+            length > 0 ? length : position.getGeometry().getPoints());
+    Branch branch = replays.get(key);
+    if (branch == null || !branch.shows(variation)) {
+      branch =
+          branch != null && branch.isExtendedBy(variation)
+              ? branch.extend(variation)
+              : new Branch(position, variation, length);
+      replays.put(key, branch);
+      Iterator<Key> it = replays.keySet().iterator();
+      while (replays.size() > CAPACITY && it.hasNext()) {
+        it.next();
+        it.remove();
+      }
+    }
+    return branch;
+  }
+
+  private static class Key {
+    private final long position;
+    private final int firstMove;
+    private final int length;
+
+    Key(long position, int firstMove, int length) {
+      this.position = position;
+      this.firstMove = firstMove;
+      this.length = length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) return false;
+      Key other = (Key) o;
+      return position == other.position && length == other.length && firstMove == other.firstMove;
+    }
+
+    @Override
+    public int hashCode() {
+      return (Long.hashCode(position) * 31 + firstMove) * 31 + length;
+    }
+  }
+}
@@ -33,7 +33,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.ResourceBundle;
-import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import javax.imageio.ImageIO;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
@@ -400,16 +400,21 @@ public class BoardPane extends LizziePane {
     }
   }
 
-  private final Consumer<String> placeVariation =
-      v -> Board.asCoordinates(v).ifPresent(c -> Lizzie.board.place(c[0], c[1]));
+  private final IntConsumer placeVariation =
+      v -> {
+        if (v >= 0) {
+          int[] c = Board.getCoord(v);
+          Lizzie.board.place(c[0], c[1]);
+        }
+      };
 
   public boolean playCurrentVariation() {
-    boardRenderer.variationOpt.ifPresent(vs -> vs.forEach(placeVariation));
+    boardRenderer.variationOpt.ifPresent(vs -> Arrays.stream(vs).forEach(placeVariation));
     return boardRenderer.variationOpt.isPresent();
   }
 
   public void playBestMove() {
-    boardRenderer.bestMoveCoordinateName().ifPresent(placeVariation);
+    boardRenderer.bestMove().ifPresent(placeVariation);
   }
 
   public boolean isMouseOver(int x, int y) {
@@ -13,14 +13,17 @@ import static java.lang.Math.round;
 
 import featurecat.lizzie.Lizzie;
 import featurecat.lizzie.analysis.Branch;
-import featurecat.lizzie.analysis.Leelaz;
 import featurecat.lizzie.analysis.MoveData;
+import featurecat.lizzie.analysis.VariationReplay;
+import featurecat.lizzie.rules.BitBoard;
 import featurecat.lizzie.rules.Board;
 import featurecat.lizzie.rules.BoardData;
+import featurecat.lizzie.rules.BoardGeometry;
 import featurecat.lizzie.rules.BoardHistoryNode;
+import featurecat.lizzie.rules.GameSnapshot;
+import featurecat.lizzie.rules.LadderReader;
 import featurecat.lizzie.rules.SGFParser;
 import featurecat.lizzie.rules.Stone;
-import featurecat.lizzie.rules.Zobrist;
 import featurecat.lizzie.util.Utils;
 import java.awt.BasicStroke;
 import java.awt.Color;
@@ -43,6 +46,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -75,7 +79,12 @@ public class BoardRenderer {
   private BufferedImage cachedBoardImage = emptyImage;
   private BufferedImage cachedWallpaperImage = emptyImage;
   private BufferedImage cachedStonesShadowImage = emptyImage;
-  private Zobrist cachedZhash = new Zobrist(); // defaults to an empty board
+  private long cachedFingerprint; // of the position in the cached stones image
+  // the game as published when this frame started, read without locking the board
+  private GameSnapshot snapshot;
+  // reads ladders of the shown position until the engine has analysis for it
+  private LadderReader ladderReader;
+  private long ladderFingerprint;
 
   private BufferedImage cachedBlackStoneImage = emptyImage;
   private BufferedImage cachedWhiteStoneImage = emptyImage;
@@ -87,7 +96,7 @@ public class BoardRenderer {
 
   private boolean lastInScoreMode = false;
 
-  public Optional<List<String>> variationOpt;
+  public Optional<int[]> variationOpt;
 
   // special values of displayedBranchLength
   public static final int SHOW_RAW_BOARD = -1;
@@ -103,8 +112,8 @@ public class BoardRenderer {
   private boolean isMouseOverSub = false;
   private boolean clickedSub = false;
   private int bestmoveIndexSub = 0;
-  private List<String> variation;
-  private String mouseOverCoords = "";
+  private int[] variation;
+  private int mouseOverMove = BoardGeometry.NONE;
 
   // Computed in drawLeelazSuggestionsBackground and stored for
   // display in drawLeelazSuggestionsForeground
@@ -135,6 +144,7 @@ public class BoardRenderer {
     //    setupSizeParameters();
 
     //        Stopwatch timer = new Stopwatch();
+    if (Lizzie.board != null) snapshot = Lizzie.board.snapshot();
     drawGoban(g);
     if (!isMainBoard) drawSubBoardStatus(g);
     if (Lizzie.config.showNameInBoard && isMainBoard) drawName(g);
@@ -176,6 +186,7 @@ public class BoardRenderer {
           && !Lizzie.frame.isPlayingAgainstLeelaz
           && Lizzie.config.showBestMovesNow()) drawLeelazSuggestionsForeground(g, textDatas);
 
+      if (Lizzie.config.showLadders && snapshot.getBestMoves(true).isEmpty()) drawLadders(g);
       drawStoneMarkup(g);
     }
 
@@ -187,10 +198,10 @@ public class BoardRenderer {
   /**
    * Return the best move of Leelaz's suggestions
    *
-   * @return the optional coordinate name of the best move
+   * @return the optional move code of the best move
    */
-  public Optional<String> bestMoveCoordinateName() {
-    return bestMoves.isEmpty() ? Optional.empty() : Optional.of(bestMoves.get(0).coordinate);
+  public OptionalInt bestMove() {
+    return bestMoves.isEmpty() ? OptionalInt.empty() : OptionalInt.of(bestMoves.get(0).move);
   }
 
   /** Calculate good values for boardLength, scaledMargin, availableLength, and squareLength */
@@ -402,7 +413,7 @@ public class BoardRenderer {
       changedName = true;
     }
     emptyName = false;
-    if (Lizzie.board.getHistory().isBlacksTurn()) {
+    if (snapshot.isBlackToPlay()) {
       g0.setColor(Color.WHITE);
       g0.fillOval(
           x + boardWidth / 2 - stoneRadius * 1 / 5,
@@ -505,7 +516,7 @@ public class BoardRenderer {
         || cachedStonesImage.getHeight() != boardHeight
         || cachedDisplayedBranchLength != displayedBranchLength
         || cachedBackgroundImageHasCoordinatesEnabled != showCoordinates()
-        || !cachedZhash.equals(Lizzie.board.getData().zobrist)
+        || cachedFingerprint != snapshot.getFingerprint()
         || Lizzie.board.inScoreMode()
         || lastInScoreMode) {
 
@@ -521,16 +532,21 @@ public class BoardRenderer {
       g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
       gShadow.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
 
-      for (int i = 0; i < Board.boardWidth; i++) {
-        for (int j = 0; j < Board.boardHeight; j++) {
-          int stoneX = scaledMarginWidth + squareWidth * i;
-          int stoneY = scaledMarginHeight + squareHeight * j;
-          drawStone(
-              g, gShadow, stoneX, stoneY, Lizzie.board.getStones()[Board.getIndex(i, j)], i, j);
+      // only visit the points that hold a stone
+      BitBoard position = snapshot.getBitBoard();
+      for (Stone color : new Stone[] {Stone.BLACK, Stone.WHITE}) {
+        long[] stones = position.stones(color);
+        for (int i = BitBoard.nextSetBit(stones, 0);
+            i >= 0;
+            i = BitBoard.nextSetBit(stones, i + 1)) {
+          int[] c = Board.getCoord(i);
+          int stoneX = scaledMarginWidth + squareWidth * c[0];
+          int stoneY = scaledMarginHeight + squareHeight * c[1];
+          drawStone(g, gShadow, stoneX, stoneY, color, c[0], c[1]);
         }
       }
 
-      cachedZhash = Lizzie.board.getData().zobrist.clone();
+      cachedFingerprint = snapshot.getFingerprint();
       cachedDisplayedBranchLength = displayedBranchLength;
       cachedBackgroundImageHasCoordinatesEnabled = showCoordinates();
       g.dispose();
@@ -589,13 +605,8 @@ public class BoardRenderer {
     if (Lizzie.leelaz == null) return;
 
     // calculate best moves and branch
-    bestMoves = Lizzie.leelaz.getBestMoves();
-    if (Lizzie.config.showBestMovesByHold
-        && Leelaz.engineIndex == Lizzie.board.getData().engineIndex
-        && Lizzie.board.getHistory().getGameInfo().getKomi() == Lizzie.board.getData().komi
-        && MoveData.getPlayouts(bestMoves) < Lizzie.board.getData().getPlayouts()) {
-      bestMoves = Lizzie.board.getData().bestMoves;
-    }
+    bestMoves =
+        snapshot.getBestMoves(Lizzie.config.showBestMovesByHold || Lizzie.leelaz.isSyncPending());
 
     variationOpt = Optional.empty();
 
@@ -616,19 +627,19 @@ public class BoardRenderer {
     }
     if (isMainBoard) {
       if (!Lizzie.config.notRefreshVariation
-          || (!isShowingBranch || !mouseOverCoords.equals(suggestedMove.get().coordinate)))
-        variation = suggestedMove.get().variation;
+          || (!isShowingBranch || mouseOverMove != suggestedMove.get().move))
+        variation = suggestedMove.get().pv;
     } else {
       if (!isMouseOverSub || clickedSub) {
         if (clickedSub) {
           clickedSub = false;
           setDisplayedBranchLength(SHOW_NORMAL_BOARD);
         }
-        variation = suggestedMove.get().variation;
+        variation = suggestedMove.get().pv;
       }
     }
-    Branch branch = new Branch(Lizzie.board, variation, displayedBranchLength);
-    if (isMainBoard) mouseOverCoords = suggestedMove.get().coordinate;
+    Branch branch = VariationReplay.branch(snapshot, variation, displayedBranchLength);
+    if (isMainBoard) mouseOverMove = suggestedMove.get().move;
     branchOpt = Optional.of(branch);
     variationOpt = Optional.of(variation);
     showingBranch = true;
@@ -639,10 +650,10 @@ public class BoardRenderer {
       for (int j = 0; j < Board.boardHeight; j++) {
         // Display latest stone for ghost dead stone
         int index = Board.getIndex(i, j);
-        Stone stone = branch.data.stones[index];
+        Stone stone = branch.data.getStones()[index];
         boolean isGhost = (stone == Stone.BLACK_GHOST || stone == Stone.WHITE_GHOST);
-        if (Lizzie.board.getData().stones[index] != Stone.EMPTY && !isGhost) continue;
-        if (branch.data.moveNumberList[index] > maxBranchMoves()) continue;
+        if (snapshot.getStones()[index] != Stone.EMPTY && !isGhost) continue;
+        if (branch.data.getMoveNumberList()[index] > maxBranchMoves()) continue;
 
         int stoneX = scaledMarginWidth + squareWidth * i;
         int stoneY = scaledMarginHeight + squareHeight * j;
@@ -656,14 +667,14 @@ public class BoardRenderer {
   }
 
   public Optional<MoveData> mouseOveredMove() {
-    return bestMoves
-        .stream()
-        .filter(
-            move ->
-                Board.asCoordinates(move.coordinate)
-                    .map(c -> Lizzie.frame.isMouseOver(c[0], c[1]))
-                    .orElse(false))
-        .findFirst();
+    BoardGeometry geometry = BoardGeometry.current();
+    for (MoveData move : bestMoves) {
+      if (move.move >= 0
+          && Lizzie.frame.isMouseOver(geometry.getX(move.move), geometry.getY(move.move))) {
+        return Optional.of(move);
+      }
+    }
+    return Optional.empty();
   }
 
   private Optional<MoveData> getBestMove() {
@@ -693,8 +704,8 @@ public class BoardRenderer {
   private void drawMoveNumbers(Graphics2D g) {
     g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
     if (Lizzie.board == null) return;
-    Board board = Lizzie.board;
-    Optional<int[]> lastMoveOpt = branchOpt.map(b -> b.data.lastMove).orElse(board.getLastMove());
+    Optional<int[]> lastMoveOpt =
+        branchOpt.map(b -> b.data.lastMove).orElse(snapshot.getLastMove());
     if (Lizzie.config.allowMoveNumber == 0 && !branchOpt.isPresent()) {
       if (lastMoveOpt.isPresent()) {
         int[] lastMove = lastMoveOpt.get();
@@ -705,7 +716,7 @@ public class BoardRenderer {
         int stoneY = y + scaledMarginHeight + squareHeight * lastMove[1];
 
         // Set color to the opposite color of whatever is on the board
-        boolean isWhite = board.getStones()[Board.getIndex(lastMove[0], lastMove[1])].isWhite();
+        boolean isWhite = snapshot.getStones()[Board.getIndex(lastMove[0], lastMove[1])].isWhite();
         g.setColor(isWhite ? Color.BLACK : Color.WHITE);
 
         if (Lizzie.config.stoneIndicatorType == 2) {
@@ -715,16 +726,16 @@ public class BoardRenderer {
         } else {
           drawCircle(g, stoneX, stoneY, lastMoveMarkerRadius);
         }
-      } else if (board.getData().moveNumber != 0 && !board.inScoreMode()) {
+      } else if (snapshot.getMoveNumber() != 0 && !Lizzie.board.inScoreMode()) {
         g.setColor(
-            board.getData().blackToPlay ? new Color(255, 255, 255, 150) : new Color(0, 0, 0, 150));
+            snapshot.isBlackToPlay() ? new Color(255, 255, 255, 150) : new Color(0, 0, 0, 150));
         g.fillOval(
             x + boardWidth / 2 - 4 * stoneRadius,
             y + boardHeight / 2 - 4 * stoneRadius,
             stoneRadius * 8,
             stoneRadius * 8);
         g.setColor(
-            board.getData().blackToPlay ? new Color(0, 0, 0, 255) : new Color(255, 255, 255, 255));
+            snapshot.isBlackToPlay() ? new Color(0, 0, 0, 255) : new Color(255, 255, 255, 255));
         drawString(
             g,
             x + boardWidth / 2,
@@ -739,7 +750,7 @@ public class BoardRenderer {
     }
 
     int[] moveNumberList =
-        branchOpt.map(b -> b.data.moveNumberList).orElse(board.getMoveNumberList());
+        branchOpt.map(b -> b.data.getMoveNumberList()).orElse(snapshot.getMoveNumberList());
 
     // Allow to display only last move number
     int lastMoveNumber =
@@ -759,7 +770,8 @@ public class BoardRenderer {
           continue;
         }
 
-        Stone stoneHere = branchOpt.map(b -> b.data.stones[here]).orElse(board.getStones()[here]);
+        Stone stoneHere =
+            branchOpt.map(b -> b.data.getStones()[here]).orElse(snapshot.getStones()[here]);
 
         // don't write the move number if either: the move number is 0, or there will already be
         // playout information written
@@ -814,12 +826,13 @@ public class BoardRenderer {
         if (move.winrate < minWinrate) minWinrate = move.winrate;
       }
 
+      BoardGeometry geometry = BoardGeometry.current();
       for (int i = bestMoves.size() - 1; i >= 0; i--) {
         MoveData move = bestMoves.get(i);
         boolean isBestMove = bestMoves.get(0) == move;
         boolean hasMaxWinrate = move.winrate == maxWinrate;
         boolean flipWinrate =
-            uiConfig.getBoolean("win-rate-always-black") && !Lizzie.board.getData().blackToPlay;
+            uiConfig.getBoolean("win-rate-always-black") && !snapshot.isBlackToPlay();
 
         if (move.playouts == 0) {
           continue; // This actually can happen
@@ -832,11 +845,10 @@ public class BoardRenderer {
                 Math.max(0.01, move.winrate - minWinrate)
                     / Math.max(0.01, maxWinrate - minWinrate));
 
-        Optional<int[]> coordsOpt = Board.asCoordinates(move.coordinate);
-        if (!coordsOpt.isPresent()) {
+        if (move.move < 0) {
           continue;
         }
-        int[] coords = coordsOpt.get();
+        int[] coords = geometry.getCoord(move.move);
 
         int suggestionX = x + scaledMarginWidth + squareWidth * coords[0];
         int suggestionY = y + scaledMarginHeight + squareHeight * coords[1];
@@ -953,7 +965,7 @@ public class BoardRenderer {
           roundedWinrate = 100.0 - roundedWinrate;
         }
         g.setColor(Color.BLACK);
-        if (branchOpt.isPresent() && Lizzie.board.getData().blackToPlay) g.setColor(Color.WHITE);
+        if (branchOpt.isPresent() && snapshot.isBlackToPlay()) g.setColor(Color.WHITE);
 
         String text;
         if (Lizzie.config.handicapInsteadOfWinrate) {
@@ -1073,7 +1085,7 @@ public class BoardRenderer {
 
   private void drawNextMoves(Graphics2D g) {
     if (Lizzie.board == null) return;
-    g.setColor(Lizzie.board.getData().blackToPlay ? Color.BLACK : Color.WHITE);
+    g.setColor(snapshot.isBlackToPlay() ? Color.BLACK : Color.WHITE);
 
     List<BoardHistoryNode> nexts = Lizzie.board.getHistory().getNexts();
 
@@ -1411,6 +1423,39 @@ public class BoardRenderer {
     g.fill(new Rectangle(x, y, width, height));
   }
 
+  /**
+   * Marks the chains a ladder or a net captures with a circle, and the stones that break a ladder
+   * with a square
+   */
+  private void drawLadders(Graphics2D g) {
+    BoardGeometry geometry = snapshot.getNode().getData().getGeometry();
+    if (ladderReader == null || ladderReader.getGeometry() != geometry) {
+      ladderReader = new LadderReader(geometry);
+      ladderFingerprint = ~snapshot.getFingerprint();
+    }
+    if (ladderFingerprint != snapshot.getFingerprint()) {
+      ladderReader.load(snapshot.getStones());
+      ladderReader.scan();
+      ladderFingerprint = snapshot.getFingerprint();
+    }
+    Stone[] stones = snapshot.getStones();
+    long[] working = ladderReader.getWorkingLadders();
+    long[] breakers = ladderReader.getLadderBreakers();
+    g.setStroke(new BasicStroke(2));
+    for (int i = 0; i < stones.length; i++) {
+      boolean captured = BitBoard.test(working, i);
+      if (!captured && !BitBoard.test(breakers, i)) continue;
+      int moveX = x + scaledMarginWidth + squareWidth * geometry.getX(i);
+      int moveY = y + scaledMarginHeight + squareHeight * geometry.getY(i);
+      g.setColor(stones[i].isBlack() ? Color.WHITE : Color.BLACK);
+      if (captured) {
+        drawCircle(g, moveX, moveY, stoneRadius / 2);
+      } else {
+        drawSquare(g, moveX, moveY, stoneRadius / 3);
+      }
+    }
+  }
+
   /**
    * Draw stone Markups
    *
@@ -1430,12 +1475,12 @@ public class BoardRenderer {
                   int[] move = SGFParser.convertSgfPosToCoord(moves[0]);
                   if (move != null) {
                     Optional<int[]> lastMove =
-                        branchOpt.map(b -> b.data.lastMove).orElse(Lizzie.board.getLastMove());
+                        branchOpt.map(b -> b.data.lastMove).orElse(snapshot.getLastMove());
                     if (lastMove.map(m -> !Arrays.equals(move, m)).orElse(true)) {
                       int moveX = x + scaledMarginWidth + squareWidth * move[0];
                       int moveY = y + scaledMarginHeight + squareHeight * move[1];
                       g.setColor(
-                          Lizzie.board.getStones()[Board.getIndex(move[0], move[1])].isBlack()
+                          snapshot.getStones()[Board.getIndex(move[0], move[1])].isBlack()
                               ? Color.WHITE
                               : Color.BLACK);
                       g.setStroke(new BasicStroke(2));
@@ -1717,14 +1762,14 @@ public class BoardRenderer {
   }
 
   public int getReplayBranch() {
-    return mouseOveredMove().isPresent() ? mouseOveredMove().get().variation.size() : 0;
+    return mouseOveredMove().map(m -> m.pv.length).orElse(0);
   }
 
   public void addSuggestionAsBranch() {
     mouseOveredMove()
         .ifPresent(
             m -> {
-              if (m.variation.size() > 0) {
+              if (m.pv.length > 0) {
                 if (Lizzie.board.getHistory().getCurrentHistoryNode().numberOfChildren() == 0) {
                   Stone color =
                       Lizzie.board.getHistory().getLastMoveColor() == Stone.WHITE
@@ -1733,20 +1778,21 @@ public class BoardRenderer {
                   Lizzie.board.getHistory().pass(color, false, true);
                   Lizzie.board.getHistory().previous();
                 }
-                for (int i = 0; i < m.variation.size(); i++) {
+                BoardGeometry geometry = Lizzie.board.getGeometry();
+                for (int i = 0; i < m.pv.length; i++) {
                   Stone color =
                       Lizzie.board.getHistory().getLastMoveColor() == Stone.WHITE
                           ? Stone.BLACK
                           : Stone.WHITE;
-                  Optional<int[]> coordOpt = Board.asCoordinates(m.variation.get(i));
-                  if (!coordOpt.isPresent()
-                      || !Board.isValid(coordOpt.get()[0], coordOpt.get()[1])) {
+                  if (m.pv[i] < 0) {
                     break;
                   }
-                  int[] coord = coordOpt.get();
-                  Lizzie.board.getHistory().place(coord[0], coord[1], color, i == 0);
+                  Lizzie.board
+                      .getHistory()
+                      .place(geometry.getX(m.pv[i]), geometry.getY(m.pv[i]), color, i == 0);
                 }
                 Lizzie.board.getHistory().toBranchTop();
+                Lizzie.board.publish();
                 Lizzie.frame.refresh(2);
               }
             });
@@ -1761,7 +1807,7 @@ public class BoardRenderer {
         // force nonnegative
         displayedBranchLength = max(0, displayedBranchLength + n);
         if (variation != null) {
-          displayedBranchLength = min(displayedBranchLength, variation.size() + 1);
+          displayedBranchLength = min(displayedBranchLength, variation.length + 1);
         } else displayedBranchLength = 0;
         return true;
     }
@@ -1798,6 +1844,8 @@ public class BoardRenderer {
     if (boardWidth <= 0 || boardHeight <= 0) {
       return;
     }
+    // called from the engine reader, so read the published position
+    GameSnapshot position = Lizzie.board.snapshot();
     boolean drawLarge = false, drawSmall = false, drawSize = false;
     int drawSmart = 0;
     if (Lizzie.config.showKataGoEstimate || isZen) {
@@ -1847,7 +1895,7 @@ public class BoardRenderer {
         estimate = Math.signum(estimate);
       } else {
         // KataGo's estimates are for player to move, not for black.
-        if (!Lizzie.board.getHistory().isBlacksTurn()) estimate = -estimate;
+        if (!position.isBlackToPlay()) estimate = -estimate;
       }
       int[] c = Lizzie.board.getCoord(i);
       int x = c[1];
@@ -1880,7 +1928,7 @@ public class BoardRenderer {
 
       // Small rectangles (will go on top of stones; perhaps only "dead" stones).
 
-      Stone stoneHere = Lizzie.board.getStones()[Board.getIndex(x, y)];
+      Stone stoneHere = position.getStones()[Board.getIndex(x, y)];
       boolean deadStone =
           (estimate >= 0 && stoneHere.isWhite()) || (estimate <= 0 && stoneHere.isBlack());
       boolean anyStone = stoneHere.isWhite() || stoneHere.isBlack();
@@ -1925,20 +1973,18 @@ public class BoardRenderer {
     float greenHue = Color.RGBtoHSB(0, 255, 0, null)[0];
     float cyanHue = Color.RGBtoHSB(0, 255, 255, null)[0];
 
-    if (Lizzie.frame.isShowingPolicy && !Lizzie.leelaz.getBestMoves().isEmpty()) {
+    List<MoveData> policyMoves = snapshot.getBestMoves(false);
+    BoardGeometry geometry = BoardGeometry.current();
+    if (Lizzie.frame.isShowingPolicy && !policyMoves.isEmpty()) {
       Double maxPolicy = 0.0;
-      for (int n = 0; n < Lizzie.leelaz.getBestMoves().size(); n++) {
-        if (Lizzie.leelaz.getBestMoves().get(n).policy > maxPolicy)
-          maxPolicy = Lizzie.leelaz.getBestMoves().get(n).policy;
+      for (int n = 0; n < policyMoves.size(); n++) {
+        if (policyMoves.get(n).policy > maxPolicy) maxPolicy = policyMoves.get(n).policy;
       }
-      for (int i = 0; i < Lizzie.leelaz.getBestMoves().size(); i++) {
-        MoveData bestmove = Lizzie.leelaz.getBestMoves().get(i);
-        int y1 = 0;
-        int x1 = 0;
-        Optional<int[]> coord = Board.asCoordinates(bestmove.coordinate);
-        if (coord.isPresent()) {
-          x1 = coord.get()[0];
-          y1 = coord.get()[1];
+      for (int i = 0; i < policyMoves.size(); i++) {
+        MoveData bestmove = policyMoves.get(i);
+        if (bestmove.move >= 0) {
+          int x1 = geometry.getX(bestmove.move);
+          int y1 = geometry.getY(bestmove.move);
           int suggestionX = x + scaledMarginWidth + squareWidth * x1;
           int suggestionY = y + scaledMarginHeight + squareHeight * y1;
           double percent = bestmove.policy / maxPolicy;
@@ -1972,8 +2018,7 @@ public class BoardRenderer {
             g.setColor(color);
             fillCircle(g, suggestionX, suggestionY, stoneRadius);
 
-            String text =
-                String.format("%.1f", ((double) Lizzie.leelaz.getBestMoves().get(i).policy));
+            String text = String.format("%.1f", ((double) policyMoves.get(i).policy));
             g.setColor(Color.WHITE);
             drawString(
                 g,
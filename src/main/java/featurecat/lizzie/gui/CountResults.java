@@ -71,11 +71,9 @@ public class CountResults extends JFrame {
     button2.addActionListener(
         new ActionListener() {
           public void actionPerformed(ActionEvent e) {
-            Lizzie.frame.zen.noRead = false;
             if (!Lizzie.frame.isAutoEstimating) {
               Lizzie.frame.isAutoEstimating = true;
-              Lizzie.frame.zen.syncBoradStat();
-              Lizzie.frame.zen.countStones();
+              Lizzie.frame.countStones();
               button2.setText(resourceBundle.getString("CountDialog.autoEstimateButton.clicktwo"));
             } else {
               Lizzie.frame.removeEstimateRect();
@@ -87,7 +85,6 @@ public class CountResults extends JFrame {
     button.addActionListener(
         new ActionListener() {
           public void actionPerformed(ActionEvent e) {
-            Lizzie.frame.zen.noRead = false;
             if (!Lizzie.frame.isEstimating) {
               Lizzie.frame.estimateByZen();
               Lizzie.frame.isEstimating = true;
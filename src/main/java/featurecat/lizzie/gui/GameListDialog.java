@@ -0,0 +1,153 @@
+package featurecat.lizzie.gui;
+
+import featurecat.lizzie.rules.SGFCollection;
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.Optional;
+import java.util.ResourceBundle;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
+
+/** Lists the games of an sgf collection, filtered by players, date or result, to open one */
+public class GameListDialog extends JDialog {
+  private static final long serialVersionUID = 1L;
+  public final ResourceBundle resourceBundle = MainFrame.resourceBundle;
+  private final SGFCollection collection;
+  private List<SGFCollection.Game> shown;
+  private final GameTableModel model;
+  private final JTable table;
+  private Optional<SGFCollection.Game> selected = Optional.empty();
+
+  public GameListDialog(SGFCollection collection) {
+    this.collection = collection;
+    this.shown = collection.getGames();
+    model = new GameTableModel();
+    table = new JTable(model);
+    setTitle(resourceBundle.getString("LizzieGameList.title"));
+    setModalityType(ModalityType.APPLICATION_MODAL);
+    setBounds(100, 100, 760, 480);
+    getContentPane().setLayout(new BorderLayout());
+
+    JPanel filterPane = new JPanel(new BorderLayout(6, 0));
+    filterPane.add(
+        new JLabel(resourceBundle.getString("LizzieGameList.filter")), BorderLayout.WEST);
+    JTextField txtFilter = new JTextField();
+    txtFilter
+        .getDocument()
+        .addDocumentListener(
+            new DocumentListener() {
+              public void insertUpdate(DocumentEvent e) {
+                filter(txtFilter.getText());
+              }
+
+              public void removeUpdate(DocumentEvent e) {
+                filter(txtFilter.getText());
+              }
+
+              public void changedUpdate(DocumentEvent e) {
+                filter(txtFilter.getText());
+              }
+            });
+    filterPane.add(txtFilter, BorderLayout.CENTER);
+    getContentPane().add(filterPane, BorderLayout.NORTH);
+
+    table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+    table.getColumnModel().getColumn(0).setMaxWidth(60);
+    table.addMouseListener(
+        new MouseAdapter() {
+          public void mouseClicked(MouseEvent e) {
+            if (e.getClickCount() == 2) open();
+          }
+        });
+    getContentPane().add(new JScrollPane(table), BorderLayout.CENTER);
+
+    JPanel buttonPane = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+    JButton okButton = new JButton(resourceBundle.getString("LizzieGameList.button.ok"));
+    okButton.addActionListener(e -> open());
+    buttonPane.add(okButton);
+    getRootPane().setDefaultButton(okButton);
+    JButton cancelButton = new JButton(resourceBundle.getString("LizzieGameList.button.cancel"));
+    cancelButton.addActionListener(e -> setVisible(false));
+    buttonPane.add(cancelButton);
+    getContentPane().add(buttonPane, BorderLayout.SOUTH);
+
+    if (!shown.isEmpty()) table.setRowSelectionInterval(0, 0);
+    setLocationRelativeTo(getOwner());
+  }
+
+  /** @return the game chosen to open, empty if the dialog was cancelled */
+  public Optional<SGFCollection.Game> getSelected() {
+    return selected;
+  }
+
+  private void filter(String query) {
+    shown = collection.filter(query);
+    model.fireTableDataChanged();
+    if (!shown.isEmpty()) table.setRowSelectionInterval(0, 0);
+  }
+
+  private void open() {
+    int row = table.getSelectedRow();
+    if (row < 0 || row >= shown.size()) return;
+    selected = Optional.of(shown.get(row));
+    setVisible(false);
+  }
+
+  private class GameTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    private final String[] columns = {
+      "#",
+      resourceBundle.getString("LizzieGameList.black"),
+      resourceBundle.getString("LizzieGameList.white"),
+      resourceBundle.getString("LizzieGameList.date"),
+      resourceBundle.getString("LizzieGameList.result"),
+      resourceBundle.getString("LizzieGameList.size"),
+      resourceBundle.getString("LizzieGameList.komi")
+    };
+
+    public int getRowCount() {
+      return shown.size();
+    }
+
+    public int getColumnCount() {
+      return columns.length;
+    }
+
+    public String getColumnName(int column) {
+      return columns[column];
+    }
+
+    public Object getValueAt(int row, int column) {
+      SGFCollection.Game game = shown.get(row);
+      switch (column) {
+        case 0:
+          return game.getNumber() + 1;
+        case 1:
+          return game.getPlayerBlack();
+        case 2:
+          return game.getPlayerWhite();
+        case 3:
+          return game.getDate();
+        case 4:
+          return game.getResult();
+        case 5:
+          return game.getSize();
+        default:
+          return game.getKomi();
+      }
+    }
+  }
+}
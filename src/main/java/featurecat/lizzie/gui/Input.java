@@ -66,7 +66,7 @@ public class Input implements MouseListener, KeyListener, MouseWheelListener, Mo
       return;
     }
 
-    for (int i = 0; i < movesToAdvance; i++) Lizzie.board.previousMove();
+    Lizzie.board.browse(-movesToAdvance);
   }
 
   private void undoToChildOfPreviousWithVariation() {
@@ -106,7 +106,7 @@ public class Input implements MouseListener, KeyListener, MouseWheelListener, Mo
       return;
     }
 
-    for (int i = 0; i < movesToAdvance; i++) Lizzie.board.nextMove();
+    Lizzie.board.browse(movesToAdvance);
   }
 
   private void startTemporaryBoard() {
@@ -331,12 +331,12 @@ public class Input implements MouseListener, KeyListener, MouseWheelListener, Mo
         if (controlIsPressed(e)) {
           Lizzie.board.clear();
         } else {
-          while (Lizzie.board.previousMove()) ;
+          Lizzie.board.browse(-Lizzie.board.getHistory().getCurrentHistoryNode().getLevel());
         }
         break;
 
       case VK_END:
-        while (Lizzie.board.nextMove()) ;
+        Lizzie.board.browse(Lizzie.board.getHistory().getCurrentHistoryNode().getDepth());
         break;
 
       case VK_X:
@@ -9,7 +9,6 @@ import com.jhlabs.image.GaussianFilter;
 import featurecat.lizzie.Lizzie;
 import featurecat.lizzie.analysis.Leelaz;
 import featurecat.lizzie.analysis.MoveData;
-import featurecat.lizzie.analysis.YaZenGtp;
 import featurecat.lizzie.rules.Board;
 import featurecat.lizzie.rules.BoardData;
 import featurecat.lizzie.rules.SGFParser;
@@ -41,7 +40,7 @@ import java.util.Timer;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.text.html.HTMLDocument;
@@ -1203,16 +1202,21 @@ public class LizzieFrame extends MainFrame {
     return false;
   }
 
-  private final Consumer<String> placeVariation =
-      v -> Board.asCoordinates(v).ifPresent(c -> Lizzie.board.place(c[0], c[1]));
+  private final IntConsumer placeVariation =
+      v -> {
+        if (v >= 0) {
+          int[] c = Board.getCoord(v);
+          Lizzie.board.place(c[0], c[1]);
+        }
+      };
 
   public boolean playCurrentVariation() {
-    boardRenderer.variationOpt.ifPresent(vs -> vs.forEach(placeVariation));
+    boardRenderer.variationOpt.ifPresent(vs -> Arrays.stream(vs).forEach(placeVariation));
     return boardRenderer.variationOpt.isPresent();
   }
 
   public void playBestMove() {
-    boardRenderer.bestMoveCoordinateName().ifPresent(placeVariation);
+    boardRenderer.bestMove().ifPresent(placeVariation);
   }
 
   public void onMouseMoved(int x, int y) {
@@ -1451,23 +1455,7 @@ public class LizzieFrame extends MainFrame {
 
   public void estimateByZen() {
     if (Lizzie.board.boardHeight != Lizzie.board.boardWidth) return;
-    if (isFirstCount) {
-      try {
-        zen = new YaZenGtp();
-      } catch (IOException e1) {
-        e1.printStackTrace();
-      }
-      isFirstCount = false;
-    } else if (!zen.process.isAlive()) {
-      try {
-        zen = new YaZenGtp();
-      } catch (IOException e1) {
-        e1.printStackTrace();
-      }
-    }
-    zen.noRead = false;
-    zen.syncBoradStat();
-    zen.countStones();
+    countStones();
     isEstimating = true;
   }
 
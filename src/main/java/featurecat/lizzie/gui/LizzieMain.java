@@ -8,7 +8,6 @@ import com.jhlabs.image.GaussianFilter;
 import featurecat.lizzie.Lizzie;
 import featurecat.lizzie.analysis.Leelaz;
 import featurecat.lizzie.analysis.MoveData;
-import featurecat.lizzie.analysis.YaZenGtp;
 import featurecat.lizzie.util.Utils;
 import featurecat.lizzie.util.WindowPosition;
 import java.awt.Color;
@@ -656,23 +655,7 @@ public class LizzieMain extends MainFrame {
   @Override
   public void estimateByZen() {
     if (Lizzie.board.boardHeight != Lizzie.board.boardWidth) return;
-    if (isFirstCount) {
-      try {
-        zen = new YaZenGtp();
-      } catch (IOException e1) {
-        e1.printStackTrace();
-      }
-      isFirstCount = false;
-    } else if (!zen.process.isAlive()) {
-      try {
-        zen = new YaZenGtp();
-      } catch (IOException e1) {
-        e1.printStackTrace();
-      }
-    }
-    zen.noRead = false;
-    zen.syncBoradStat();
-    zen.countStones();
+    countStones();
     isEstimating = true;
   }
 
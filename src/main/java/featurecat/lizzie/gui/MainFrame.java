@@ -3,9 +3,11 @@ package featurecat.lizzie.gui;
 import featurecat.lizzie.Lizzie;
 import featurecat.lizzie.analysis.GameInfo;
 import featurecat.lizzie.analysis.Leelaz;
-import featurecat.lizzie.analysis.YaZenGtp;
 import featurecat.lizzie.rules.GIBParser;
+import featurecat.lizzie.rules.GameSnapshot;
+import featurecat.lizzie.rules.SGFCollection;
 import featurecat.lizzie.rules.SGFParser;
+import featurecat.lizzie.rules.TerritoryEstimator;
 import java.awt.BorderLayout;
 import java.awt.FileDialog;
 import java.awt.Font;
@@ -20,9 +22,14 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import org.json.JSONObject;
 
@@ -39,10 +46,12 @@ public abstract class MainFrame extends JFrame {
   public boolean showControls = false;
   public static Font uiFont;
   public static Font winrateFont;
-  public YaZenGtp zen;
+  // counts the shown position for the count dialog and the estimate on the board
+  private TerritoryEstimator estimator;
+  // whether an estimate was asked for that has not run yet
+  private final AtomicBoolean estimatePending = new AtomicBoolean();
   public static CountResults countResults;
   public boolean isEstimating = false;
-  public boolean isFirstCount = true;
   public boolean isAutoEstimating = false;
   public boolean isShowingRightMenu = false;
   public ToolBar toolBar;
@@ -337,25 +346,85 @@ public abstract class MainFrame extends JFrame {
   }
 
   public void loadFile(File file) {
-    JSONObject filesystem = Lizzie.config.persisted.getJSONObject("filesystem");
     if (!(file.getPath().endsWith(".sgf") || file.getPath().endsWith(".gib"))) {
       file = new File(file.getPath() + ".sgf");
     }
-    try {
-      System.out.println(file.getPath());
-      if (file.getPath().endsWith(".sgf")) {
-        SGFParser.load(file.getPath());
-      } else {
+    System.out.println(file.getPath());
+    if (!file.getPath().endsWith(".sgf")) {
+      try {
         GIBParser.load(file.getPath());
+        rememberFolder(file);
+      } catch (IOException err) {
+        showOpenFailure();
       }
-      filesystem.put("last-folder", file.getParent());
-    } catch (IOException err) {
-      JOptionPane.showConfirmDialog(
-          null,
-          resourceBundle.getString("LizzieFrame.prompt.failedToOpenFile"),
-          "Error",
-          JOptionPane.ERROR);
+      return;
     }
+
+    // sgf files are read on a worker, the event thread only shows the game list and the game
+    File sgf = file;
+    new SwingWorker<SGFCollection, Void>() {
+      @Override
+      protected SGFCollection doInBackground() throws IOException {
+        return SGFParser.openCollection(sgf.getPath());
+      }
+
+      @Override
+      protected void done() {
+        SGFCollection collection;
+        try {
+          collection = get();
+        } catch (InterruptedException | ExecutionException err) {
+          showOpenFailure();
+          return;
+        }
+        if (collection.size() > 1) {
+          // a collection: only the chosen game is read
+          GameListDialog gameList = new GameListDialog(collection);
+          gameList.setVisible(true);
+          Optional<SGFCollection.Game> game = gameList.getSelected();
+          if (game.isPresent()) readGame(sgf, () -> SGFParser.read(collection, game.get()));
+        } else {
+          readGame(sgf, () -> SGFParser.read(sgf.getPath()));
+        }
+      }
+    }.execute();
+  }
+
+  /**
+   * Reads a game on a worker and puts it on the board on the event thread
+   *
+   * @param file the file the game is read from
+   * @param read reads the game
+   */
+  private void readGame(File file, Callable<Optional<SGFParser.LoadedGame>> read) {
+    new SwingWorker<Optional<SGFParser.LoadedGame>, Void>() {
+      @Override
+      protected Optional<SGFParser.LoadedGame> doInBackground() throws Exception {
+        return read.call();
+      }
+
+      @Override
+      protected void done() {
+        try {
+          SGFParser.show(get());
+          rememberFolder(file);
+        } catch (InterruptedException | ExecutionException err) {
+          showOpenFailure();
+        }
+      }
+    }.execute();
+  }
+
+  private static void rememberFolder(File file) {
+    Lizzie.config.persisted.getJSONObject("filesystem").put("last-folder", file.getParent());
+  }
+
+  private void showOpenFailure() {
+    JOptionPane.showConfirmDialog(
+        null,
+        resourceBundle.getString("LizzieFrame.prompt.failedToOpenFile"),
+        "Error",
+        JOptionPane.ERROR);
   }
 
   protected String loadingText() {
@@ -364,6 +433,47 @@ public abstract class MainFrame extends JFrame {
         : resourceBundle.getString("LizzieFrame.display.loading");
   }
 
+  /**
+   * Estimates the territory once the event thread is done with the changes it is making, so a batch
+   * of moves is estimated once, at its end, while estimating automatically
+   */
+  public void countStonesLater() {
+    if (estimatePending.compareAndSet(false, true)) {
+      SwingUtilities.invokeLater(
+          () -> {
+            estimatePending.set(false);
+            if (isAutoEstimating) countStones();
+          });
+    }
+  }
+
+  /** Estimates the territory of the shown position, and shows it on the board and in the count */
+  public void countStones() {
+    GameSnapshot position = Lizzie.board.snapshot();
+    TerritoryEstimator counted;
+    synchronized (this) {
+      if (estimator == null || estimator.getGeometry() != position.getGeometry()) {
+        estimator = new TerritoryEstimator(position.getGeometry());
+      }
+      counted = estimator;
+    }
+    ArrayList<Double> estimates;
+    synchronized (counted) {
+      counted.update(position.getStones());
+      estimates = counted.getEstimates();
+      countResults.Counts(
+          position.getBlackCaptures(),
+          position.getWhiteCaptures(),
+          counted.getDeadBlack(),
+          counted.getDeadWhite(),
+          counted.getBlackPoints(),
+          counted.getWhitePoints());
+    }
+    drawEstimateRectZen(estimates);
+    countResults.setVisible(true);
+    repaint();
+  }
+
   public void toggleEstimateByZen() {
     if (isEstimating) {
       noEstimateByZen(true);
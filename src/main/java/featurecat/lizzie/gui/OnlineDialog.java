@@ -384,11 +384,7 @@ public class OnlineDialog extends JDialog {
           blackPlayer = live.optString("BlackPlayer", blackPlayer);
           whitePlayer = live.optString("WhitePlayer", whitePlayer);
         }
-        int diffMove = Lizzie.board.getHistory().sync(liveNode);
-        if (diffMove >= 0) {
-          Lizzie.board.goToMoveNumberBeyondBranch(diffMove > 0 ? diffMove - 1 : 0);
-          while (Lizzie.board.nextMove()) ;
-        }
+        Lizzie.board.transaction(t -> t.sync(liveNode));
         if (Utils.isBlank(blackPlayer)) {
           Pattern spb =
               Pattern.compile("(?s).*?(\\\"BlackPlayer\\\":\\\")([^\"]+)(\\\",\\\")(?s).*");
@@ -1022,11 +1018,7 @@ public class OnlineDialog extends JDialog {
     }
     if (history != null) {
       while (history.previous().isPresent()) ;
-      int diffMove = Lizzie.board.getHistory().sync(history);
-      if (diffMove >= 0) {
-        Lizzie.board.goToMoveNumberBeyondBranch(diffMove > 0 ? diffMove - 1 : 0);
-        while (Lizzie.board.nextMove()) {}
-      }
+      Lizzie.board.transaction(t -> t.sync(history));
       while (history.next(true).isPresent()) ;
     }
   }
@@ -2062,11 +2054,7 @@ public class OnlineDialog extends JDialog {
       Lizzie.board.getHistory().getGameInfo().setKomi(komi);
       Lizzie.board.getHistory().getGameInfo().setHandicap(handicap);
       Lizzie.leelaz.komi(komi);
-      int diffMove = Lizzie.board.getHistory().sync(history);
-      if (diffMove >= 0) {
-        Lizzie.board.goToMoveNumberBeyondBranch(diffMove > 0 ? diffMove - 1 : 0);
-        while (Lizzie.board.nextMove()) ;
-      }
+      Lizzie.board.transaction(t -> t.sync(history));
       if ("3".equals(info.optString("status"))) {
         sio.close();
         String result = info.optString("resultDesc");
@@ -2149,11 +2137,7 @@ public class OnlineDialog extends JDialog {
 
   void sync() {
     while (history.previous().isPresent()) ;
-    int diffMove = Lizzie.board.getHistory().sync(history);
-    if (diffMove >= 0) {
-      Lizzie.board.goToMoveNumberBeyondBranch(diffMove > 0 ? diffMove - 1 : 0);
-      while (Lizzie.board.nextMove()) ;
-    }
+    Lizzie.board.transaction(t -> t.sync(history));
   }
 
   private void procComments(JSONObject cb) {
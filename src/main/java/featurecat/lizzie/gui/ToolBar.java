@@ -125,7 +125,10 @@ public class ToolBar extends JToolBar {
     setMain.addActionListener(
         new ActionListener() {
           public void actionPerformed(ActionEvent e) {
-            while (Lizzie.board.setAsMainBranch()) ;
+            Lizzie.board.transaction(
+                t -> {
+                  while (t.setAsMainBranch()) ;
+                });
           }
         });
     add(setMain);
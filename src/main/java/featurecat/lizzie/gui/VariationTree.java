@@ -20,6 +20,8 @@ public class VariationTree {
   private int DOT_DIAM_S = 9; // For small node
   private int CENTER_DIAM = 5;
   private int RING_DIAM = 15;
+  // outline of nodes whose position, or a rotation or mirror of it, is reached by other moves
+  private static final Color TRANSPOSITION_COLOR = new Color(64, 160, 255);
   private int diam = DOT_DIAM;
 
   private ArrayList<Integer> laneUsageList;
@@ -33,6 +35,17 @@ public class VariationTree {
     clickPoint = new Point(0, 0);
   }
 
+  /** Circles a node whose position, or a rotation or mirror of it, is reached by other moves */
+  private void drawTransposition(Graphics2D g, BoardHistoryNode node, int x, int y, int diff) {
+    if (!node.isTransposed()) return;
+    g.setColor(TRANSPOSITION_COLOR);
+    g.drawOval(
+        x + (DOT_DIAM + diff - RING_DIAM) / 2,
+        y + (DOT_DIAM + diff - RING_DIAM) / 2,
+        RING_DIAM - 1,
+        RING_DIAM - 1);
+  }
+
   public Optional<BoardHistoryNode> drawTree(
       Graphics2D g,
       int posx,
@@ -130,6 +143,7 @@ public class VariationTree {
                 RING_DIAM,
                 RING_DIAM);
           }
+          drawTransposition(g, cur, curposx, posy, diff);
           g.setColor(Utils.getBlunderNodeColor(cur));
           g.fillOval(curposx + diff, posy + diff, diam, diam);
           if (startNode == curMove) {
@@ -177,6 +191,7 @@ public class VariationTree {
               RING_DIAM,
               RING_DIAM);
         }
+        drawTransposition(g, cur, curposx, posy, diff);
         g.setColor(Utils.getBlunderNodeColor(cur));
         g.fillOval(curposx + diff, posy + diff, diam, diam);
         if (cur == curMove) {
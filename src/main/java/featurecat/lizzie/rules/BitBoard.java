@@ -0,0 +1,334 @@
+package featurecat.lizzie.rules;
+
+import java.util.Arrays;
+
+/**
+ * Bitboard of a position, one bit set per color. Points use the same indexes as {@link
+ * Board#getIndex}, so a column of the board is a run of {@code height} consecutive bits and the
+ * neighbors of a whole set of points are found with a few word shifts. Liberties, chains and
+ * captures are computed on all points of a set at once.
+ */
+public class BitBoard {
+  private final int width;
+  private final int height;
+  private final int words;
+
+  private final long[] black;
+  private final long[] white;
+
+  // all points of the board, points whose y is not the first row, points whose y is not the last
+  private final long[] onBoard;
+  private final long[] notFirstRow;
+  private final long[] notLastRow;
+
+  public BitBoard(int width, int height) {
+    this.width = width;
+    this.height = height;
+    words = (width * height + 63) >>> 6;
+    black = new long[words];
+    white = new long[words];
+    onBoard = new long[words];
+    notFirstRow = new long[words];
+    notLastRow = new long[words];
+    for (int i = 0; i < width * height; i++) {
+      set(onBoard, i);
+      if (i % height != 0) set(notFirstRow, i);
+      if (i % height != height - 1) set(notLastRow, i);
+    }
+  }
+
+  private BitBoard(BitBoard other) {
+    width = other.width;
+    height = other.height;
+    words = other.words;
+    black = other.black.clone();
+    white = other.white.clone();
+    // the masks never change, so they are shared
+    onBoard = other.onBoard;
+    notFirstRow = other.notFirstRow;
+    notLastRow = other.notLastRow;
+  }
+
+  /**
+   * Builds the bitboard of a stones array, ghost stones count as stones
+   *
+   * @param stones the stones
+   * @param width board width
+   * @param height board height
+   * @return the bitboard
+   */
+  public static BitBoard of(Stone[] stones, int width, int height) {
+    BitBoard board = new BitBoard(width, height);
+    for (int i = 0; i < stones.length; i++) {
+      Stone stone = stones[i].unGhosted();
+      if (stone == Stone.BLACK) set(board.black, i);
+      else if (stone == Stone.WHITE) set(board.white, i);
+    }
+    return board;
+  }
+
+  /** @return a copy of this bitboard */
+  public BitBoard copy() {
+    return new BitBoard(this);
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /** @return BLACK, WHITE or EMPTY */
+  public Stone get(int index) {
+    if (test(black, index)) return Stone.BLACK;
+    if (test(white, index)) return Stone.WHITE;
+    return Stone.EMPTY;
+  }
+
+  /**
+   * Sets a point, ghost stones are stored as their color and anything else as empty
+   *
+   * @param index the point
+   * @param stone the stone to put there
+   */
+  public void set(int index, Stone stone) {
+    clear(black, index);
+    clear(white, index);
+    stone = stone.unGhosted();
+    if (stone == Stone.BLACK) set(black, index);
+    else if (stone == Stone.WHITE) set(white, index);
+  }
+
+  /** @return the points of a color, or the empty points, a copy */
+  public long[] stones(Stone color) {
+    if (color.isBlack()) return black.clone();
+    if (color.isWhite()) return white.clone();
+    return empty();
+  }
+
+  /** @return the empty points */
+  public long[] empty() {
+    long[] result = new long[words];
+    for (int w = 0; w < words; w++) {
+      result[w] = onBoard[w] & ~(black[w] | white[w]);
+    }
+    return result;
+  }
+
+  /** @return the number of stones of a color, or of empty points */
+  public int count(Stone color) {
+    if (color.isBlack()) return count(black);
+    if (color.isWhite()) return count(white);
+    return count(empty());
+  }
+
+  /** Writes the position into a stones array of the same size */
+  public void toStones(Stone[] stones) {
+    for (int i = 0; i < stones.length; i++) {
+      stones[i] = get(i);
+    }
+  }
+
+  /**
+   * The set grown by one point in all four directions, clipped to the board
+   *
+   * @param set the points
+   * @return the set with its neighbors
+   */
+  public long[] dilate(long[] set) {
+    long[] result = set.clone();
+    long[] masked = new long[words];
+    // y - 1 and y + 1 are one bit away, but must not wrap into the next column
+    for (int w = 0; w < words; w++) masked[w] = set[w] & notFirstRow[w];
+    orShifted(result, masked, -1);
+    for (int w = 0; w < words; w++) masked[w] = set[w] & notLastRow[w];
+    orShifted(result, masked, 1);
+    // x - 1 and x + 1 are a column away
+    orShifted(result, set, -height);
+    orShifted(result, set, height);
+    for (int w = 0; w < words; w++) result[w] &= onBoard[w];
+    return result;
+  }
+
+  /**
+   * Fills from the seed points through the points of a mask
+   *
+   * @param seed the start points, they should be in the mask
+   * @param mask the points the fill may spread through
+   * @return all points of the mask connected to the seed
+   */
+  public long[] floodFill(long[] seed, long[] mask) {
+    long[] current = seed.clone();
+    while (true) {
+      long[] next = dilate(current);
+      boolean grown = false;
+      for (int w = 0; w < words; w++) {
+        next[w] &= mask[w];
+        grown |= next[w] != current[w];
+      }
+      if (!grown) return current;
+      current = next;
+    }
+  }
+
+  /** @return the chain at index, empty if there is no stone */
+  public long[] chain(int index) {
+    long[] seed = new long[words];
+    Stone color = get(index);
+    if (color == Stone.EMPTY) return seed;
+    set(seed, index);
+    return floodFill(seed, color.isBlack() ? black : white);
+  }
+
+  /** @return the empty points next to a set of stones */
+  public long[] liberties(long[] chain) {
+    long[] result = dilate(chain);
+    for (int w = 0; w < words; w++) {
+      result[w] &= onBoard[w] & ~(black[w] | white[w]);
+    }
+    return result;
+  }
+
+  /**
+   * Finds the stones a move would capture, without playing it
+   *
+   * @param index the empty point to play
+   * @param color the color to play
+   * @return the captured points as a set
+   */
+  public long[] captures(int index, Stone color) {
+    long[] enemy = color.isBlack() ? white : black;
+    long[] captured = new long[words];
+    long[] point = new long[words];
+    set(point, index);
+    long[] around = dilate(point);
+    for (int n = nextSetBit(around, 0); n >= 0; n = nextSetBit(around, n + 1)) {
+      if (!test(enemy, n) || test(captured, n)) continue;
+      long[] chain = chain(n);
+      long[] libs = liberties(chain);
+      clear(libs, index);
+      if (count(libs) == 0) {
+        for (int w = 0; w < words; w++) captured[w] |= chain[w];
+      }
+    }
+    return captured;
+  }
+
+  /**
+   * Checks a move without playing it
+   *
+   * @param index the empty point to play
+   * @param color the color to play
+   * @return whether the move would leave its chain without liberties and capture nothing
+   */
+  public boolean isSuicide(int index, Stone color) {
+    if (count(captures(index, color)) > 0) return false;
+    long[] own = color.isBlack() ? black : white;
+    long[] seed = new long[words];
+    set(seed, index);
+    long[] mask = own.clone();
+    set(mask, index);
+    long[] libs = liberties(floodFill(seed, mask));
+    clear(libs, index);
+    return count(libs) == 0;
+  }
+
+  /**
+   * Plays a move and removes the captured stones
+   *
+   * @param index the empty point to play
+   * @param color the color to play
+   * @return the captured points as a set
+   */
+  public long[] play(int index, Stone color) {
+    long[] captured = captures(index, color);
+    set(index, color);
+    long[] enemy = color.isBlack() ? white : black;
+    for (int w = 0; w < words; w++) enemy[w] &= ~captured[w];
+    return captured;
+  }
+
+  /** @return the number of points in a set */
+  public static int count(long[] set) {
+    int count = 0;
+    for (long word : set) count += Long.bitCount(word);
+    return count;
+  }
+
+  /**
+   * Iterates over a set: {@code for (int i = nextSetBit(s, 0); i >= 0; i = nextSetBit(s, i + 1))}
+   *
+   * @param set the points
+   * @param from the first index to look at
+   * @return the first point of the set at or after from, -1 if there is none
+   */
+  public static int nextSetBit(long[] set, int from) {
+    int w = from >>> 6;
+    if (w >= set.length) return -1;
+    long word = set[w] & (-1L << from);
+    while (true) {
+      if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+      if (++w == set.length) return -1;
+      word = set[w];
+    }
+  }
+
+  /** @return whether two sets have a point in common */
+  public static boolean intersects(long[] a, long[] b) {
+    for (int w = 0; w < a.length; w++) {
+      if ((a[w] & b[w]) != 0) return true;
+    }
+    return false;
+  }
+
+  public static boolean test(long[] set, int index) {
+    return (set[index >>> 6] & (1L << index)) != 0;
+  }
+
+  public static void set(long[] set, int index) {
+    set[index >>> 6] |= 1L << index;
+  }
+
+  public static void clear(long[] set, int index) {
+    set[index >>> 6] &= ~(1L << index);
+  }
+
+  /** ORs the source moved by shift bits (towards higher indexes when positive) into target */
+  private static void orShifted(long[] target, long[] source, int shift) {
+    int n = source.length;
+    int wordShift = Math.abs(shift) >>> 6;
+    int bitShift = Math.abs(shift) & 63;
+    for (int w = 0; w < n; w++) {
+      long value;
+      if (shift > 0) {
+        int from = w - wordShift;
+        if (from < 0) continue;
+        value = source[from] << bitShift;
+        if (bitShift != 0 && from > 0) value |= source[from - 1] >>> (64 - bitShift);
+      } else {
+        int from = w + wordShift;
+        if (from >= n) continue;
+        value = source[from] >>> bitShift;
+        if (bitShift != 0 && from + 1 < n) value |= source[from + 1] << (64 - bitShift);
+      }
+      target[w] |= value;
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof BitBoard)) return false;
+    BitBoard other = (BitBoard) o;
+    return width == other.width
+        && height == other.height
+        && Arrays.equals(black, other.black)
+        && Arrays.equals(white, other.white);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(black) + Arrays.hashCode(white);
+  }
+}
@@ -1,6 +1,5 @@
 package featurecat.lizzie.rules;
 
-import static java.lang.Math.min;
 import static java.util.Collections.singletonList;
 
 import featurecat.lizzie.Lizzie;
@@ -8,20 +7,18 @@ import featurecat.lizzie.analysis.Leelaz;
 import featurecat.lizzie.analysis.LeelazListener;
 import featurecat.lizzie.analysis.MoveData;
 import java.io.IOException;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Queue;
-import java.util.function.BiConsumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import org.json.JSONException;
 
 public class Board implements LeelazListener {
@@ -43,10 +40,10 @@ public class Board implements LeelazListener {
               && Lizzie.config.config.getJSONObject("ui") != null)
           ? Lizzie.config.config.getJSONObject("ui").optInt("board-height", boardSize0)
           : boardSize0;
-  private static final String alphabet = "ABCDEFGHJKLMNOPQRSTUVWXYZ";
 
   private BoardHistoryList history;
-  private Stone[] capturedStones;
+  // the scored position while in score mode, null otherwise
+  private Scorer scorer;
   private boolean scoreMode;
   private boolean analysisMode;
   private int playoutsAnalysis;
@@ -60,6 +57,12 @@ public class Board implements LeelazListener {
 
   // Save the node for restore move when in the branch
   private Optional<BoardHistoryNode> saveNode;
+  // brings the engine to the board once browsing is idle
+  private Timer engineSyncTimer;
+  // the game as last published, for the threads that read it without the lock
+  private final AtomicReference<GameSnapshot> snapshot = new AtomicReference<>();
+  // the node the engine analysis was last stored in, not yet shared with its transpositions
+  private BoardHistoryNode analyzedNode;
 
   public Board() {
     initialize();
@@ -67,30 +70,91 @@ public class Board implements LeelazListener {
 
   /** Initialize the board completely */
   private void initialize() {
-    capturedStones = new Stone[] {};
+    scorer = null;
     scoreMode = false;
     analysisMode = false;
     playoutsAnalysis = 100;
     saveNode = Optional.empty();
     Lizzie.frame.setForceRefresh(false);
     history = new BoardHistoryList(BoardData.empty(boardWidth, boardHeight));
+    publish();
   }
 
   /**
-   * Calculates the array index of a stone stored at (x, y)
+   * Publishes a snapshot of the current node, call it after every change to the board. The
+   * territory is estimated again once the changes made in a row are done.
+   */
+  public void publish() {
+    snapshot.set(GameSnapshot.of(history, history.getGameInfo().getKomi(), snapshot.get()));
+    if (Lizzie.leelaz != null) Lizzie.leelaz.followed(history.getCurrentHistoryNode());
+    if (Lizzie.frame != null && Lizzie.frame.isAutoEstimating) Lizzie.frame.countStonesLater();
+  }
+
+  /**
+   * Publishes the latest analysis of the engine for the current node, dropped if the engine was
+   * analyzing another node
+   *
+   * @param node the node the engine analyzed
+   * @param bestMoves the analysis
+   */
+  public void publishAnalysis(BoardHistoryNode node, List<MoveData> bestMoves) {
+    snapshot.updateAndGet(s -> s.getNode() == node ? s.withAnalysis(bestMoves) : s);
+  }
+
+  /**
+   * Stores the analysis of the engine in the node it analyzed. The nodes that reach the same
+   * position by another order of moves get it once the engine moves to another node or stops.
+   *
+   * @param node the node the engine is on, which the board may have left already
+   * @param bestMoves the analysis
+   */
+  public void storeBestMoves(BoardHistoryNode node, List<MoveData> bestMoves) {
+    synchronized (this) {
+      if (node != analyzedNode) shareAnalysis();
+      node.getData().tryToSetBestMoves(bestMoves);
+      analyzedNode = node;
+    }
+  }
+
+  /** Shares the analysis stored last with the nodes that reach the same position */
+  public void shareAnalysis() {
+    synchronized (this) {
+      if (analyzedNode == null) return;
+      BoardData data = analyzedNode.getData();
+      for (BoardHistoryNode other : analyzedNode.getTranspositions()) {
+        other.getData().shareAnalysis(data);
+      }
+      analyzedNode = null;
+    }
+  }
+
+  /**
+   * Gets the game as last published, without locking
+   *
+   * @return the snapshot of the current node
+   */
+  public GameSnapshot snapshot() {
+    return snapshot.get();
+  }
+
+  /** @return the geometry of the game on this board */
+  public BoardGeometry getGeometry() {
+    return history.getData().getGeometry();
+  }
+
+  /**
+   * Calculates the array index of a stone stored at (x, y) on the board shown in the window
    *
    * @param x the x coordinate
    * @param y the y coordinate
    * @return the array index
    */
   public static int getIndex(int x, int y) {
-    return x * Board.boardHeight + y;
+    return BoardGeometry.current().getIndex(x, y);
   }
 
   public static int[] getCoord(int index) {
-    int y = index % Board.boardHeight;
-    int x = (index - y) / Board.boardHeight;
-    return new int[] {x, y};
+    return BoardGeometry.current().getCoord(index);
   }
 
   /**
@@ -101,50 +165,11 @@ public class Board implements LeelazListener {
    * @return an optional array of coordinates, empty for pass and resign
    */
   public static Optional<int[]> asCoordinates(String namedCoordinate) {
-    namedCoordinate = namedCoordinate.trim();
-    if (namedCoordinate.equalsIgnoreCase("pass") || namedCoordinate.equalsIgnoreCase("resign")) {
-      return Optional.empty();
-    }
-    // coordinates take the form C16 A19 Q5 K10 etc. I is not used.
-    String reg = "([A-HJ-Z]+)(\\d+)";
-    Pattern p = Pattern.compile(reg);
-    Matcher m = p.matcher(namedCoordinate);
-    if (m.find() && m.groupCount() == 2) {
-      int x = asDigit(m.group(1));
-      int y = boardHeight - Integer.parseInt(m.group(2));
-      return Optional.of(new int[] {x, y});
-    } else {
-      reg = "\\(([\\d]+),([\\d]+)\\)";
-      p = Pattern.compile(reg);
-      m = p.matcher(namedCoordinate);
-      if (m.find() && m.groupCount() == 2) {
-        int x = Integer.parseInt(m.group(1));
-        int y = Integer.parseInt(m.group(2)); // boardHeight - Integer.parseInt(m.group(2)) - 1;
-        return Optional.of(new int[] {x, y});
-      } else {
-        return Optional.empty();
-      }
-    }
+    return BoardGeometry.current().asCoordinates(namedCoordinate);
   }
 
   public static int asDigit(String name) {
-    // coordinates take the form C16 A19 Q5 K10 etc. I is not used.
-    int base = alphabet.length();
-    char names[] = name.toCharArray();
-    int length = names.length;
-    if (length > 0) {
-      int x = 0;
-      for (int i = length - 1; i >= 0; i--) {
-        int index = alphabet.indexOf(names[i]);
-        if (index == -1) {
-          return index;
-        }
-        x += index * Math.pow(base, length - i - 1);
-      }
-      return x;
-    } else {
-      return -1;
-    }
+    return BoardGeometry.asDigit(name);
   }
 
   public static String asName(int c) {
@@ -156,23 +181,7 @@ public class Board implements LeelazListener {
   }
 
   public static String asName(int c, boolean isName) {
-    if (boardWidth > 25 && isName) {
-      return String.valueOf(c + 1);
-    }
-    StringBuilder name = new StringBuilder();
-    int base = alphabet.length();
-    int n = c;
-    ArrayDeque<Integer> ad = new ArrayDeque<Integer>();
-    if (n > 0) {
-      while (n > 0) {
-        ad.addFirst(n < 25 && c >= 25 ? n % base - 1 : n % base);
-        n /= base;
-      }
-    } else {
-      ad.addFirst(n);
-    }
-    ad.forEach(i -> name.append(alphabet.charAt(i)));
-    return name.toString();
+    return BoardGeometry.current().asName(c, isName);
   }
 
   /**
@@ -183,12 +192,7 @@ public class Board implements LeelazListener {
    * @return a string representing the coordinate
    */
   public static String convertCoordinatesToName(int x, int y) {
-    // coordinates take the form C16 A19 Q5 K10 etc. I is not used.
-    if (boardWidth > 25 || boardHeight > 25) {
-      return String.format("(%d,%d)", x, y); // boardHeight - y - 1);
-    } else {
-      return asName(x, false) + (boardHeight - y);
-    }
+    return BoardGeometry.current().convertCoordinatesToName(x, y);
   }
 
   /**
@@ -199,11 +203,11 @@ public class Board implements LeelazListener {
    * @return whether or not this coordinate is part of the board
    */
   public static boolean isValid(int x, int y) {
-    return x >= 0 && x < boardWidth && y >= 0 && y < boardHeight;
+    return BoardGeometry.current().isValid(x, y);
   }
 
   public static boolean isValid(int[] c) {
-    return c != null && c.length == 2 && isValid(c[0], c[1]);
+    return BoardGeometry.current().isValid(c);
   }
 
   /**
@@ -217,7 +221,6 @@ public class Board implements LeelazListener {
     if (width != boardWidth || height != boardHeight) {
       boardWidth = width;
       boardHeight = height;
-      Zobrist.init();
       clear();
       Lizzie.leelaz.boardSize(boardWidth, boardHeight);
       Lizzie.frame.setForceRefresh(true);
@@ -244,18 +247,19 @@ public class Board implements LeelazListener {
     synchronized (this) {
       BoardData data = history.getData();
       if (data.lastMove.isPresent()) {
-        int[] moveNumberList = history.getMoveNumberList();
-        moveNumberList[Board.getIndex(data.lastMove.get()[0], data.lastMove.get()[1])] = moveNumber;
+        data.setMoveNumber(
+            Board.getIndex(data.lastMove.get()[0], data.lastMove.get()[1]), moveNumber);
         Optional<BoardHistoryNode> node = history.getCurrentHistoryNode().previous();
         while (node.isPresent() && node.get().numberOfChildren() <= 1) {
           BoardData nodeData = node.get().getData();
           if (nodeData.lastMove.isPresent() && nodeData.moveNumber >= moveNumber) {
             moveNumber = (moveNumber > 1) ? moveNumber - 1 : 0;
-            moveNumberList[Board.getIndex(nodeData.lastMove.get()[0], nodeData.lastMove.get()[1])] =
-                moveNumber;
+            data.setMoveNumber(
+                Board.getIndex(nodeData.lastMove.get()[0], nodeData.lastMove.get()[1]), moveNumber);
           }
           node = node.get().previous();
         }
+        publish();
       }
     }
   }
@@ -266,14 +270,14 @@ public class Board implements LeelazListener {
       int index = Lizzie.board.getIndex(coord[0], coord[1]);
       if (Lizzie.board.getHistory().getStones()[index] != Stone.EMPTY) {
         BoardHistoryNode cur = Lizzie.board.getHistory().getCurrentHistoryNode();
-        moveNumber = cur.getData().moveNumberList[index];
+        moveNumber = cur.getData().getMoveNumberList()[index];
         if (!cur.isMainTrunk()) {
           if (moveNumber > 0) {
             moveNumber = cur.getData().moveNumber - cur.getData().moveMNNumber + moveNumber;
           } else {
             BoardHistoryNode p = cur.firstParentWithVariations().orElse(cur);
             while (p != cur && moveNumber == 0) {
-              moveNumber = p.getData().moveNumberList[index];
+              moveNumber = p.getData().getMoveNumberList()[index];
               if (moveNumber > 0) {
                 BoardHistoryNode topOfTop = p.firstParentWithVariations().orElse(p);
                 if (topOfTop != p) {
@@ -302,13 +306,9 @@ public class Board implements LeelazListener {
     synchronized (this) {
       if (!isValid(x, y) || history.getStones()[getIndex(x, y)] != Stone.EMPTY) return;
 
-      Stone[] stones = history.getData().stones;
-      Zobrist zobrist = history.getData().zobrist;
-
-      // set the stone at (x, y) to color
-      stones[getIndex(x, y)] = color;
-      zobrist.toggleStone(x, y, color);
+      history.addStone(x, y, color);
 
+      publish();
       Lizzie.frame.refresh();
     }
   }
@@ -324,16 +324,9 @@ public class Board implements LeelazListener {
     synchronized (this) {
       if (!isValid(x, y) || history.getStones()[getIndex(x, y)] == Stone.EMPTY) return;
 
-      BoardData data = history.getData();
-      Stone[] stones = data.stones;
-      Zobrist zobrist = data.zobrist;
-
-      // set the stone at (x, y) to empty
-      Stone oriColor = stones[getIndex(x, y)];
-      stones[getIndex(x, y)] = Stone.EMPTY;
-      zobrist.toggleStone(x, y, oriColor);
-      data.moveNumberList[Board.getIndex(x, y)] = 0;
+      history.removeStone(x, y, color);
 
+      publish();
       Lizzie.frame.refresh();
     }
   }
@@ -394,12 +387,16 @@ public class Board implements LeelazListener {
    */
   public void pass(Stone color, boolean newBranch, boolean dummy, boolean changeMove) {
     synchronized (this) {
+      flushEngineSync();
 
       // check to see if this move is being replayed in history
-      if (history.getNext().map(n -> !n.lastMove.isPresent()).orElse(false) && !newBranch) {
+      if (history.getNext().map(n -> !n.lastMove.isPresent()).orElse(false)
+          && !newBranch
+          && !changeMove) {
         // this is the next move in history. Just increment history so that we don't erase the
         // redo's
         history.next();
+        publish();
         Lizzie.leelaz.playMove(color, "pass");
         if (Lizzie.frame.isPlayingAgainstLeelaz)
           Lizzie.leelaz.genmove((history.isBlacksTurn() ? "B" : "W"));
@@ -412,7 +409,7 @@ public class Board implements LeelazListener {
       int moveNumber = history.getMoveNumber() + 1;
       int[] moveNumberList =
           newBranch && history.getNext(true).isPresent()
-              ? new int[Board.boardWidth * Board.boardHeight]
+              ? new int[getGeometry().getPoints()]
               : history.getMoveNumberList().clone();
 
       // build the new game state
@@ -431,6 +428,7 @@ public class Board implements LeelazListener {
               0,
               0.0);
       newState.dummy = dummy;
+      newState.setBitBoard(history.getData().getBitBoard().copy());
 
       // update leelaz with pass
       if (!Lizzie.leelaz.isInputCommand) Lizzie.leelaz.playMove(color, "pass");
@@ -440,6 +438,7 @@ public class Board implements LeelazListener {
       // update history with pass
       history.addOrGoto(newState, newBranch, changeMove);
 
+      publish();
       Lizzie.frame.refresh();
     }
   }
@@ -475,16 +474,22 @@ public class Board implements LeelazListener {
   public void place(int x, int y, Stone color, boolean newBranch, boolean changeMove) {
     Lizzie.frame.clearBeforeMove();
     synchronized (this) {
+      flushEngineSync();
       if (scoreMode) {
         // Mark clicked stone as dead
-        Stone[] stones = history.getStones();
-        toggleLiveStatus(capturedStones, x, y);
+        if (isValid(x, y) && scorer.toggle(getIndex(x, y))) Lizzie.frame.refresh();
         return;
       }
 
       if (!isValid(x, y) || (history.getStones()[getIndex(x, y)] != Stone.EMPTY && !newBranch))
         return;
 
+      // check the move on the chains around it and on the hash it gives, before copying anything
+      int index = getIndex(x, y);
+      GroupTable groups = history.groupsBeforeMove(index);
+      int[] captured = LegalMoves.check(history, groups, index, color);
+      if (captured == null) return;
+
       updateWinrate();
       double nextWinrate = -100;
       if (history.getData().winrate >= 0) nextWinrate = 100 - history.getData().winrate;
@@ -501,6 +506,7 @@ public class Board implements LeelazListener {
         // redo's
         Lizzie.leelaz.beginModifyingBoard();
         history.next();
+        publish();
         // should be opposite from the bottom case
         if (Lizzie.frame.isPlayingAgainstLeelaz
             && Lizzie.frame.playerIsBlack != getData().blackToPlay) {
@@ -522,35 +528,27 @@ public class Board implements LeelazListener {
           history.getMoveMNNumber() > -1 && !newBranch ? history.getMoveMNNumber() + 1 : -1;
       int[] moveNumberList =
           newBranch && history.getNext(true).isPresent()
-              ? new int[Board.boardWidth * Board.boardHeight]
+              ? new int[getGeometry().getPoints()]
               : history.getMoveNumberList().clone();
 
-      moveNumberList[Board.getIndex(x, y)] = moveMNNumber > -1 ? moveMNNumber : moveNumber;
+      moveNumberList[index] = moveMNNumber > -1 ? moveMNNumber : moveNumber;
 
       // set the stone at (x, y) to color
-      stones[getIndex(x, y)] = color;
-      zobrist.toggleStone(x, y, color);
+      zobrist.toggleStone(index, stones[index]);
+      stones[index] = color;
+      zobrist.toggleStone(index, color);
 
       // remove enemy stones
-      int capturedStones = 0;
-      capturedStones += removeDeadChain(x + 1, y, color.opposite(), stones, zobrist);
-      capturedStones += removeDeadChain(x, y + 1, color.opposite(), stones, zobrist);
-      capturedStones += removeDeadChain(x - 1, y, color.opposite(), stones, zobrist);
-      capturedStones += removeDeadChain(x, y - 1, color.opposite(), stones, zobrist);
-
-      // check to see if the player made a suicidal coordinate
-      int isSuicidal = removeDeadChain(x, y, color, stones, zobrist);
-
-      for (int i = 0; i < boardWidth * boardHeight; i++) {
-        if (stones[i].equals(Stone.EMPTY)) {
-          moveNumberList[i] = 0;
-        }
+      for (int p : captured) {
+        stones[p] = Stone.EMPTY;
+        zobrist.toggleStone(p, color.opposite());
+        moveNumberList[p] = 0;
       }
 
       int bc = history.getData().blackCaptures;
       int wc = history.getData().whiteCaptures;
-      if (color.isBlack()) bc += capturedStones;
-      else wc += capturedStones;
+      if (color.isBlack()) bc += captured.length;
+      else wc += captured.length;
       BoardData newState =
           new BoardData(
               stones,
@@ -568,8 +566,7 @@ public class Board implements LeelazListener {
       newState.moveMNNumber = moveMNNumber;
       newState.dummy = false;
 
-      // don't make this coordinate if it is suicidal or violates superko
-      if (isSuicidal > 0 || history.violatesKoRule(newState)) return;
+      history.playBoards(groups, index, color, newState);
 
       // update leelaz with board position
       Lizzie.leelaz.beginModifyingBoard();
@@ -585,6 +582,7 @@ public class Board implements LeelazListener {
       history.addOrGoto(newState, newBranch, changeMove);
       Lizzie.leelaz.endModifyingBoard();
 
+      publish();
       Lizzie.frame.refresh();
     }
   }
@@ -629,93 +627,14 @@ public class Board implements LeelazListener {
                 blackToPlay,
                 zobrist,
                 0,
-                new int[boardWidth * boardHeight],
+                new int[getGeometry().getPoints()],
                 0,
                 0,
                 0.0,
                 0,
                 0.0));
     history.setGameInfo(oldHistory.getGameInfo());
-  }
-
-  /**
-   * Removes a chain if it has no liberties
-   *
-   * @param x x coordinate -- needn't be valid
-   * @param y y coordinate -- needn't be valid
-   * @param color the color of the chain to remove
-   * @param stones the stones array to modify
-   * @param zobrist the zobrist object to modify
-   * @return number of removed stones
-   */
-  public static int removeDeadChain(int x, int y, Stone color, Stone[] stones, Zobrist zobrist) {
-    if (!isValid(x, y) || stones[getIndex(x, y)] != color) return 0;
-
-    boolean hasLiberties = hasLibertiesHelper(x, y, color, stones);
-
-    // either remove stones or reset what hasLibertiesHelper does to the board
-    return cleanupHasLibertiesHelper(x, y, color.recursed(), stones, zobrist, !hasLiberties);
-  }
-
-  /**
-   * Recursively determines if a chain has liberties. Alters the state of stones, so it must be
-   * counteracted
-   *
-   * @param x x coordinate -- needn't be valid
-   * @param y y coordinate -- needn't be valid
-   * @param color the color of the chain to be investigated
-   * @param stones the stones array to modify
-   * @return whether or not this chain has liberties
-   */
-  private static boolean hasLibertiesHelper(int x, int y, Stone color, Stone[] stones) {
-    if (!isValid(x, y)) return false;
-
-    if (stones[getIndex(x, y)] == Stone.EMPTY) return true; // a liberty was found
-    else if (stones[getIndex(x, y)] != color)
-      return false; // we are either neighboring an enemy stone, or one we've already recursed on
-
-    // set this index to be the recursed color to keep track of where we've already searched
-    stones[getIndex(x, y)] = color.recursed();
-
-    // set removeDeadChain to true if any recursive calls return true. Recurse in all 4 directions
-    boolean hasLiberties =
-        hasLibertiesHelper(x + 1, y, color, stones)
-            || hasLibertiesHelper(x, y + 1, color, stones)
-            || hasLibertiesHelper(x - 1, y, color, stones)
-            || hasLibertiesHelper(x, y - 1, color, stones);
-
-    return hasLiberties;
-  }
-
-  /**
-   * cleans up what hasLibertyHelper does to the board state
-   *
-   * @param x x coordinate -- needn't be valid
-   * @param y y coordinate -- needn't be valid
-   * @param color color to clean up. Must be a recursed stone type
-   * @param stones the stones array to modify
-   * @param zobrist the zobrist object to modify
-   * @param removeStones if true, we will remove all these stones. otherwise, we will set them to
-   *     their unrecursed version
-   * @return number of removed stones
-   */
-  private static int cleanupHasLibertiesHelper(
-      int x, int y, Stone color, Stone[] stones, Zobrist zobrist, boolean removeStones) {
-    int removed = 0;
-    if (!isValid(x, y) || stones[getIndex(x, y)] != color) return 0;
-
-    stones[getIndex(x, y)] = removeStones ? Stone.EMPTY : color.unrecursed();
-    if (removeStones) {
-      zobrist.toggleStone(x, y, color.unrecursed());
-      removed = 1;
-    }
-
-    // use the flood fill algorithm to replace all adjacent recursed stones
-    removed += cleanupHasLibertiesHelper(x + 1, y, color, stones, zobrist, removeStones);
-    removed += cleanupHasLibertiesHelper(x, y + 1, color, stones, zobrist, removeStones);
-    removed += cleanupHasLibertiesHelper(x - 1, y, color, stones, zobrist, removeStones);
-    removed += cleanupHasLibertiesHelper(x, y - 1, color, stones, zobrist, removeStones);
-    return removed;
+    publish();
   }
 
   /**
@@ -758,6 +677,7 @@ public class Board implements LeelazListener {
   public boolean nextMove() {
     Lizzie.frame.clearBeforeMove();
     synchronized (this) {
+      flushEngineSync();
       updateWinrate();
       Lizzie.leelaz.beginModifyingBoard();
       if (history.next().isPresent()) {
@@ -770,6 +690,7 @@ public class Board implements LeelazListener {
         } else {
           Lizzie.leelaz.playMove(history.getLastMoveColor(), "pass");
         }
+        publish();
         Lizzie.frame.refresh();
         Lizzie.leelaz.endModifyingBoard();
         return true;
@@ -821,26 +742,9 @@ public class Board implements LeelazListener {
     saveNode.ifPresent(n -> restoreMoveNumber(n));
   }
 
-  /** Restore move number by node */
+  /** Restore move number by node, and bring the engine to it */
   public void restoreMoveNumber(BoardHistoryNode node) {
-    Stone[] stones = history.getStones();
-    for (int i = 0; i < stones.length; i++) {
-      Stone stone = stones[i];
-      if (stone.isBlack() || stone.isWhite()) {
-        int y = i % Board.boardWidth;
-        int x = (i - y) / Board.boardHeight;
-        Lizzie.leelaz.playMove(stone, convertCoordinatesToName(x, y));
-      }
-    }
-    int moveNumber = node.getData().moveNumber;
-    if (moveNumber > 0) {
-      if (node.isMainTrunk()) {
-        goToMoveNumber(moveNumber);
-      } else {
-        // If in Branch, restore by the back routing
-        goToMoveNumberByBackChildren(moveNumber);
-      }
-    }
+    moveToAnyPosition(node);
   }
 
   /** Go to move number by back routing from children when in branch */
@@ -877,24 +781,102 @@ public class Board implements LeelazListener {
   public boolean goToMoveNumberHelper(int moveNumber, boolean withinBranch) {
     int delta = moveNumber - history.getMoveNumber();
     boolean moved = false;
-    for (int i = 0; i < Math.abs(delta); i++) {
-      if (withinBranch && delta < 0) {
-        BoardHistoryNode currentNode = history.getCurrentHistoryNode();
-        if (!currentNode.isFirstChild()) {
+    boolean attached = detachEngine();
+    try {
+      for (int i = 0; i < Math.abs(delta); i++) {
+        if (withinBranch && delta < 0) {
+          BoardHistoryNode currentNode = history.getCurrentHistoryNode();
+          if (!currentNode.isFirstChild()) {
+            break;
+          }
+        }
+        if (!(delta > 0 ? nextMove() : previousMove())) {
           break;
         }
+        moved = true;
       }
-      if (!(delta > 0 ? nextMove() : previousMove())) {
-        break;
+    } finally {
+      reattachEngine(attached);
+    }
+    return moved;
+  }
+
+  /**
+   * Moves forward or back along the current line while browsing. The board moves at once; the
+   * engine follows in one batch after browsing has been idle for the configured delay, and the
+   * analysis stored in the nodes is shown until then.
+   *
+   * @param moves the number of moves, negative to go back
+   * @return whether the board moved
+   */
+  public boolean browse(int moves) {
+    boolean moved = false;
+    boolean attached = detachEngine();
+    try {
+      for (int i = 0; i < Math.abs(moves); i++) {
+        if (!(moves > 0 ? nextMove() : previousMove())) {
+          break;
+        }
+        moved = true;
+      }
+    } finally {
+      Lizzie.leelaz.isAttached = attached;
+    }
+    if (attached) {
+      if (moved && Lizzie.config.navigationSyncDelay > 0) {
+        if (engineSyncTimer == null) {
+          engineSyncTimer = new Timer(0, e -> flushEngineSync());
+          engineSyncTimer.setRepeats(false);
+        }
+        engineSyncTimer.setInitialDelay(Lizzie.config.navigationSyncDelay);
+        engineSyncTimer.restart();
+      } else if (engineSyncTimer == null || !engineSyncTimer.isRunning()) {
+        Lizzie.leelaz.syncTo(history.getCurrentHistoryNode());
       }
-      moved = true;
     }
     return moved;
   }
 
+  /** Brings the engine to the board now if browsing left it behind, before it is sent a move */
+  private void flushEngineSync() {
+    synchronized (this) {
+      if (Lizzie.leelaz.isSyncPending() && Lizzie.leelaz.isAttached) {
+        if (engineSyncTimer != null) engineSyncTimer.stop();
+        Lizzie.leelaz.syncTo(history.getCurrentHistoryNode());
+      }
+    }
+  }
+
+  /**
+   * Stops the moves made on the board from being sent to the engine one by one. The engine is
+   * marked as left behind before the board moves, so the analysis it sends meanwhile is not taken
+   * for the analysis of the nodes the board goes through.
+   *
+   * @return whether the engine was attached
+   */
+  private boolean detachEngine() {
+    boolean attached = Lizzie.leelaz.isAttached;
+    if (attached) Lizzie.leelaz.deferSync();
+    Lizzie.leelaz.isAttached = false;
+    return attached;
+  }
+
+  /**
+   * Attaches the engine again, and brings it to the current position in one batch
+   *
+   * @param attached whether the engine was attached before
+   */
+  private void reattachEngine(boolean attached) {
+    Lizzie.leelaz.isAttached = attached;
+    if (attached) {
+      Lizzie.leelaz.syncTo(history.getCurrentHistoryNode());
+    }
+  }
+
   /** Goes to the next variation, thread safe */
   public boolean nextVariation(int idx) {
     synchronized (this) {
+      flushEngineSync();
       // Don't update winrate here as this is usually called when jumping between variations
       if (history.nextVariation(idx).isPresent()) {
         // Update leelaz board position, before updating to next node
@@ -906,6 +888,7 @@ public class Board implements LeelazListener {
         } else {
           Lizzie.leelaz.playMove(history.getLastMoveColor(), "pass");
         }
+        publish();
         Lizzie.frame.refresh();
         return true;
       }
@@ -999,51 +982,31 @@ public class Board implements LeelazListener {
    * @return void
    */
   public void moveToAnyPosition(BoardHistoryNode targetNode) {
+    BoardHistoryNode sourceNode = history.getCurrentHistoryNode();
+    BoardHistoryNode ancestor = sourceNode.lowestCommonAncestor(targetNode);
+    if (ancestor == null) return;
+
+    // The variation indexes from the deepest common ancestor down to the target
     List<Integer> targetParents = new ArrayList<Integer>();
-    List<Integer> sourceParents = new ArrayList<Integer>();
-
-    BiConsumer<BoardHistoryNode, List<Integer>> populateParent =
-        (node, parentList) -> {
-          Optional<BoardHistoryNode> prevNode = node.previous();
-          while (prevNode.isPresent()) {
-            BoardHistoryNode p = prevNode.get();
-            for (int m = 0; m < p.numberOfChildren(); m++) {
-              if (p.getVariation(m).get() == node) {
-                parentList.add(m);
-              }
-            }
-            node = p;
-            prevNode = p.previous();
-          }
-        };
-
-    // Compute the path from the current node to the root
-    populateParent.accept(history.getCurrentHistoryNode(), sourceParents);
-
-    // Compute the path from the target node to the root
-    populateParent.accept(targetNode, targetParents);
-
-    // Compute the distance from source to the deepest common answer
-    int targetDepth = targetParents.size();
-    int sourceDepth = sourceParents.size();
-    int maxDepth = min(targetParents.size(), sourceParents.size());
-    int depth;
-    for (depth = 0; depth < maxDepth; depth++) {
-      int sourceParent = sourceParents.get(sourceDepth - depth - 1);
-      int targetParent = targetParents.get(targetDepth - depth - 1);
-      if (sourceParent != targetParent) {
-        break;
-      }
+    for (BoardHistoryNode node = targetNode; node != ancestor; ) {
+      BoardHistoryNode p = node.previous().get();
+      targetParents.add(p.getVariations().indexOf(node));
+      node = p;
     }
 
-    // Move all the way up to the deepest common ansestor
-    for (int m = 0; m < sourceDepth - depth; m++) {
-      previousMove();
-    }
+    boolean attached = detachEngine();
+    try {
+      // Move all the way up to the deepest common ansestor
+      for (int m = sourceNode.getLevel() - ancestor.getLevel(); m > 0; m--) {
+        previousMove();
+      }
 
-    // Then all the way down to the target
-    for (int m = targetDepth - depth; m > 0; m--) {
-      nextVariation(targetParents.get(m - 1));
+      // Then all the way down to the target
+      for (int m = targetParents.size(); m > 0; m--) {
+        nextVariation(targetParents.get(m - 1));
+      }
+    } finally {
+      reattachEngine(attached);
     }
   }
 
@@ -1117,11 +1080,13 @@ public class Board implements LeelazListener {
   public boolean previousMove() {
     Lizzie.frame.clearBeforeMove();
     synchronized (this) {
+      flushEngineSync();
       if (inScoreMode()) setScoreMode(false);
       updateWinrate();
       Lizzie.leelaz.beginModifyingBoard();
       if (history.previous().isPresent()) {
         Lizzie.leelaz.undo();
+        publish();
         Lizzie.frame.refresh();
         Lizzie.leelaz.endModifyingBoard();
         return true;
@@ -1141,232 +1106,49 @@ public class Board implements LeelazListener {
 
   public void setScoreMode(boolean on) {
     if (on) {
-      // load a copy of the data at the current node of history
-      capturedStones = history.getStones().clone();
+      // score a copy of the data at the current node of history
+      BoardGeometry geometry = getGeometry();
+      scorer = new Scorer(history.getStones(), geometry.getWidth(), geometry.getHeight());
     } else {
-      capturedStones = new Stone[] {};
+      scorer = null;
     }
     scoreMode = on;
   }
 
   /*
-   * Starting at position stonex, stoney, remove all stones with same color within an area bordered by stones
-   * of opposite color (AKA captured stones)
-   */
-  private void toggleLiveStatus(Stone[] stones, int stonex, int stoney) {
-    Stone[] shdwstones = stones.clone();
-    Stone toggle = stones[getIndex(stonex, stoney)];
-    Stone toggleToo;
-    switch (toggle) {
-      case BLACK:
-        toggleToo = Stone.BLACK_CAPTURED;
-        break;
-      case BLACK_CAPTURED:
-        toggleToo = Stone.BLACK;
-        break;
-      case WHITE:
-        toggleToo = Stone.WHITE_CAPTURED;
-        break;
-      case WHITE_CAPTURED:
-        toggleToo = Stone.WHITE;
-        break;
-      default:
-        return;
-    }
-    boolean lastup, lastdown;
-    // This is using a flood fill algorithm that uses a Q instead of being recursive
-    Queue<int[]> visitQ = new ArrayDeque<>();
-    visitQ.add(new int[] {stonex, stoney});
-    while (!visitQ.isEmpty()) {
-      int[] curpos = visitQ.remove();
-      int x = curpos[0];
-      int y = curpos[1];
-
-      // Move all the way left
-      while (x > 0
-          && (stones[getIndex(x - 1, y)] == Stone.EMPTY || stones[getIndex(x - 1, y)] == toggle)) {
-        x--;
-      }
-
-      lastup = lastdown = false;
-      // Find all stones within empty area line by line (new lines added to Q)
-      while (x < boardWidth) {
-        if (shdwstones[getIndex(x, y)] == Stone.EMPTY) {
-          shdwstones[getIndex(x, y)] = Stone.DAME; // Too mark that it has been visited
-        } else if (stones[getIndex(x, y)] == toggle) {
-          stones[getIndex(x, y)] = toggleToo;
-        } else {
-          break;
-        }
-        // Check above
-        if (y - 1 >= 0
-            && (shdwstones[getIndex(x, y - 1)] == Stone.EMPTY
-                || stones[getIndex(x, y - 1)] == toggle)) {
-          if (!lastup) visitQ.add(new int[] {x, y - 1});
-          lastup = true;
-        } else {
-          lastup = false;
-        }
-        // Check below
-        if (y + 1 < boardHeight
-            && (shdwstones[getIndex(x, y + 1)] == Stone.EMPTY
-                || stones[getIndex(x, y + 1)] == toggle)) {
-          if (!lastdown) visitQ.add(new int[] {x, y + 1});
-          lastdown = true;
-        } else {
-          lastdown = false;
-        }
-        x++;
-      }
-    }
-    Lizzie.frame.refresh();
-  }
-
-  /*
-   * Check if a point on the board is empty or contains a captured stone
-   */
-  private boolean emptyOrCaptured(Stone[] stones, int x, int y) {
-    int curidx = getIndex(x, y);
-    if (stones[curidx] == Stone.EMPTY
-        || stones[curidx] == Stone.BLACK_CAPTURED
-        || stones[curidx] == Stone.WHITE_CAPTURED) return true;
-    return false;
-  }
-
-  /*
-   * Starting from startx, starty, mark all empty points within area as either white, black or dame.
-   * If two stones of opposite color (neither marked as captured) is encountered, the area is dame.
-   *
-   * @return A stone with color white, black or dame
-   */
-  private Stone markEmptyArea(Stone[] stones, int startx, int starty) {
-    Stone[] shdwstones = stones.clone();
-    // Found will either be black or white, or dame if both are found in area
-    Stone found = Stone.EMPTY;
-    boolean lastup, lastdown;
-    Queue<int[]> visitQ = new ArrayDeque<>();
-    visitQ.add(new int[] {startx, starty});
-    Deque<Integer> allPoints = new ArrayDeque<>();
-    // Check one line at the time, new lines added to visitQ
-    while (!visitQ.isEmpty()) {
-      int[] curpos = visitQ.remove();
-      int x = curpos[0];
-      int y = curpos[1];
-      if (!emptyOrCaptured(shdwstones, x, y)) {
-        continue;
-      }
-      // Move all the way left
-      while (x > 0 && emptyOrCaptured(shdwstones, x - 1, y)) {
-        x--;
-      }
-      // Are we on the border, or do we have a stone to the left?
-      if (x > 0 && shdwstones[getIndex(x - 1, y)] != found) {
-        if (found == Stone.EMPTY) found = shdwstones[getIndex(x - 1, y)];
-        else found = Stone.DAME;
-      }
-
-      lastup = lastdown = false;
-      while (x < boardWidth && emptyOrCaptured(shdwstones, x, y)) {
-        // Check above
-        if (y - 1 >= 0 && shdwstones[getIndex(x, y - 1)] != Stone.DAME) {
-          if (emptyOrCaptured(shdwstones, x, y - 1)) {
-            if (!lastup) visitQ.add(new int[] {x, y - 1});
-            lastup = true;
-          } else {
-            lastup = false;
-            if (found != shdwstones[getIndex(x, y - 1)]) {
-              if (found == Stone.EMPTY) {
-                found = shdwstones[getIndex(x, y - 1)];
-              } else {
-                found = Stone.DAME;
-              }
-            }
-          }
-        }
-        // Check below
-        if (y + 1 < boardHeight && shdwstones[getIndex(x, y + 1)] != Stone.DAME) {
-          if (emptyOrCaptured(shdwstones, x, y + 1)) {
-            if (!lastdown) {
-              visitQ.add(new int[] {x, y + 1});
-            }
-            lastdown = true;
-          } else {
-            lastdown = false;
-            if (found != shdwstones[getIndex(x, y + 1)]) {
-              if (found == Stone.EMPTY) {
-                found = shdwstones[getIndex(x, y + 1)];
-              } else {
-                found = Stone.DAME;
-              }
-            }
-          }
-        }
-        // Add current stone to empty area and mark as visited
-        if (shdwstones[getIndex(x, y)] == Stone.EMPTY) allPoints.add(getIndex(x, y));
-
-        // Use dame stone to mark as visited
-        shdwstones[getIndex(x, y)] = Stone.DAME;
-        x++;
-      }
-      // At this point x is at the edge of the board or on a stone
-      if (x < boardWidth && shdwstones[getIndex(x, y)] != found) {
-        if (found == Stone.EMPTY) found = shdwstones[getIndex(x, y)];
-        else found = Stone.DAME;
-      }
-    }
-    // Finally mark all points as black or white captured if they were surronded by white or black
-    if (found == Stone.WHITE) found = Stone.WHITE_POINT;
-    else if (found == Stone.BLACK) found = Stone.BLACK_POINT;
-    // else found == DAME and will be set as this.
-    while (!allPoints.isEmpty()) {
-      int idx = allPoints.remove();
-      stones[idx] = found;
-    }
-    return found;
-  }
-
-  /*
-   * Mark all empty points on board as black point, white point or dame
+   * Mark all empty points on board as black point, white point or dame. An empty area bordered by
+   * live stones of one color only is that color's, dead stones inside it count as empty.
    */
   public Stone[] scoreStones() {
-
-    Stone[] scoreStones = capturedStones.clone();
-
-    for (int i = 0; i < boardWidth; i++) {
-      for (int j = 0; j < boardHeight; j++) {
-        if (scoreStones[getIndex(i, j)] == Stone.EMPTY) {
-          markEmptyArea(scoreStones, i, j);
-        }
-      }
-    }
-    return scoreStones;
+    return scorer == null ? new Stone[] {} : scorer.getScoreStones();
   }
 
   /*
    * Count score for whole board, including komi and captured stones
    */
   public double[] getScore(Stone[] scoreStones) {
-    double score[] =
-        new double[] {
-          getData().blackCaptures, getData().whiteCaptures + getHistory().getGameInfo().getKomi()
-        };
-    for (int i = 0; i < boardWidth; i++) {
-      for (int j = 0; j < boardHeight; j++) {
-        switch (scoreStones[getIndex(i, j)]) {
-          case BLACK_POINT:
-            score[0]++;
-            break;
-          case BLACK_CAPTURED:
-            score[1] += 2;
-            break;
-
-          case WHITE_POINT:
-            score[1]++;
-            break;
-          case WHITE_CAPTURED:
-            score[0] += 2;
-            break;
-        }
+    int blackCaptures = getData().blackCaptures;
+    int whiteCaptures = getData().whiteCaptures;
+    double komi = getHistory().getGameInfo().getKomi();
+    if (scorer != null && scoreStones == scorer.getScoreStones()) {
+      return scorer.territoryScore(blackCaptures, whiteCaptures, komi);
+    }
+    double score[] = new double[] {blackCaptures, whiteCaptures + komi};
+    for (Stone stone : scoreStones) {
+      switch (stone) {
+        case BLACK_POINT:
+          score[0]++;
+          break;
+        case WHITE_POINT:
+          score[1]++;
+          break;
+        case WHITE_CAPTURED:
+          // a dead stone is a point and a prisoner
+          score[0] += 2;
+          break;
+        case BLACK_CAPTURED:
+          score[1] += 2;
+          break;
       }
     }
     return score;
@@ -1402,7 +1184,21 @@ public class Board implements LeelazListener {
   }
 
   public void bestMoveNotification(List<MoveData> bestMoves) {
-    if (analysisMode) {
+    BoardHistoryNode node = Lizzie.leelaz.getPositionNode();
+    if (!analysisMode || node != snapshot().getNode()) return;
+    // decided on the event thread, the engine reader must not read the live board
+    SwingUtilities.invokeLater(() -> stepAnalysis(node, bestMoves));
+  }
+
+  /**
+   * Goes to the next move in analysis mode once the engine searched the node deep enough, or stops
+   * at the end of the game
+   *
+   * @param node the node the engine analyzed
+   * @param bestMoves the analysis
+   */
+  private void stepAnalysis(BoardHistoryNode node, List<MoveData> bestMoves) {
+    if (analysisMode && history.getCurrentHistoryNode() == node) {
       boolean isSuccessivePass =
           (history.getPrevious().isPresent()
               && !history.getPrevious().get().lastMove.isPresent()
@@ -1489,74 +1285,71 @@ public class Board implements LeelazListener {
   }
 
   public boolean changeMove(int moveNumber, int[] coords, boolean swapColorOnly) {
-    if (moveNumber <= 0) {
+    if (moveNumber <= 0 || moveNumber > history.getEnd().moveNumberOfNode()) {
       return false;
     }
+    transaction(
+        t -> {
+          if (swapColorOnly) {
+            t.swapColor(moveNumber);
+          } else {
+            t.replaceMove(moveNumber, coords);
+          }
+        });
+    return true;
+  }
 
-    int endMoveNumber = history.getEnd().moveNumberOfNode();
-    if (moveNumber > endMoveNumber) {
-      return false;
-    }
-
-    int currentMoveNumber = history.getMoveNumber();
-
-    goToMoveNumber(moveNumber - 1);
-
-    Optional<BoardHistoryNode> changeNode = history.getCurrentHistoryNode().next();
-    Optional<BoardHistoryNode> relink = changeNode.flatMap(n -> n.next());
-
-    // Change Move
-    if (swapColorOnly) {
-      if (changeNode.isPresent()) {
-        Optional<int[]> c = changeNode.get().getData().lastMove;
-        if (c.isPresent() && isValid(c.get())) {
-          changeNode
-              .map(n -> n.getData())
-              .map(d -> d.lastMoveColor)
-              .ifPresent(s -> place(c.get()[0], c.get()[1], s.opposite(), false, true));
-        } else {
-          pass(history.isBlacksTurn() ? Stone.BLACK : Stone.WHITE, false, false, true);
-        }
-      }
-    } else {
-      if (coords != null && Board.isValid(coords[0], coords[1])) {
-        place(
-            coords[0], coords[1], history.isBlacksTurn() ? Stone.BLACK : Stone.WHITE, false, true);
-      } else {
-        pass(history.isBlacksTurn() ? Stone.BLACK : Stone.WHITE, false, false, true);
+  /**
+   * Edits the game tree in one go. The edits are made on the history only; then the engine is
+   * brought to the current node in one batch, and the board is published and repainted once. Thread
+   * safe
+   *
+   * @param edits the edits
+   */
+  public void transaction(Consumer<BoardTransaction> edits) {
+    Lizzie.frame.clearBeforeMove();
+    synchronized (this) {
+      flushEngineSync();
+      boolean attached = detachEngine();
+      try {
+        edits.accept(new BoardTransaction(history));
+      } finally {
+        reattachEngine(attached);
+        publish();
+        Lizzie.frame.refresh();
       }
     }
+  }
 
-    Optional<BoardHistoryNode> node = relink;
-    while (node.isPresent()) {
-      Optional<int[]> lastMove = node.get().getData().lastMove;
-      if (lastMove.isPresent()) {
-        int[] m = lastMove.get();
-        if (Board.isValid(m[0], m[1])) {
-          place(
-              m[0],
-              m[1],
-              swapColorOnly
-                  ? node.get().getData().lastMoveColor
-                  : history.isBlacksTurn() ? Stone.BLACK : Stone.WHITE,
-              false,
-              true);
-        } else {
-          pass(
-              swapColorOnly
-                  ? node.get().getData().lastMoveColor
-                  : history.isBlacksTurn() ? Stone.BLACK : Stone.WHITE,
-              false,
-              false,
-              true);
-        }
-        node = node.get().next();
+  /**
+   * Puts a game built apart from the board, like one read from an sgf file, in place of the current
+   * one in one step. The engine is given the size, the komi and the current node of the game in one
+   * batch, and the board is published and repainted once. Thread safe
+   *
+   * @param newHistory the game, shown at its current node
+   */
+  public void setHistory(BoardHistoryList newHistory) {
+    Lizzie.frame.clearBeforeMove();
+    synchronized (this) {
+      if (engineSyncTimer != null) engineSyncTimer.stop();
+      BoardGeometry geometry = newHistory.getGeometry();
+      if (geometry.getWidth() != boardWidth || geometry.getHeight() != boardHeight) {
+        boardWidth = geometry.getWidth();
+        boardHeight = geometry.getHeight();
+        Lizzie.leelaz.boardSize(boardWidth, boardHeight);
+        Lizzie.frame.setForceRefresh(true);
       }
+      // before the swap, as the engine clears the analysis of the current node for a new komi
+      Lizzie.leelaz.komi(newHistory.getGameInfo().getKomi());
+      shareAnalysis();
+      history = newHistory;
+      saveNode = Optional.empty();
+      if (Lizzie.leelaz.isAttached) {
+        Lizzie.leelaz.syncTo(history.getCurrentHistoryNode());
+      }
+      publish();
     }
-
-    goToMoveNumber(currentMoveNumber);
-
-    return true;
+    Lizzie.frame.refresh();
   }
 
   public ArrayList<MoveList> getMoveList() {
@@ -1612,7 +1405,7 @@ public class Board implements LeelazListener {
   public boolean setAllowCoords(int x, int y) {
     Optional<int[]> boardCoordinates = Lizzie.frame.convertScreenToCoordinates(x, y);
     if (boardCoordinates.isPresent()) {
-      if (isCoordsEmpty(boardCoordinates.get()[0], boardCoordinates.get()[1])) {
+      if (isLegalForSideToMove(boardCoordinates.get()[0], boardCoordinates.get()[1])) {
         allowCoords =
             convertCoordinatesToName(boardCoordinates.get()[0], boardCoordinates.get()[1]);
         return true;
@@ -1624,7 +1417,7 @@ public class Board implements LeelazListener {
   public boolean addAllowCoords(int x, int y) {
     Optional<int[]> boardCoordinates = Lizzie.frame.convertScreenToCoordinates(x, y);
     if (boardCoordinates.isPresent()) {
-      if (isCoordsEmpty(boardCoordinates.get()[0], boardCoordinates.get()[1])) {
+      if (isLegalForSideToMove(boardCoordinates.get()[0], boardCoordinates.get()[1])) {
         allowCoords =
             allowCoords
                 + ","
@@ -1642,20 +1435,15 @@ public class Board implements LeelazListener {
     return true;
   }
 
+  /** @return whether the side to move may play at (x, y) now */
+  public boolean isLegalForSideToMove(int x, int y) {
+    return LegalMoves.isLegal(
+        history, getIndex(x, y), history.isBlacksTurn() ? Stone.BLACK : Stone.WHITE);
+  }
+
   public boolean setAsMainBranch() {
-    if (history.getCurrentHistoryNode().isMainTrunk()) return false;
-    BoardHistoryNode topNode = history.getCurrentHistoryNode().topOfFatherBranch();
-    BoardHistoryNode mainNode = history.getCurrentHistoryNode().nodeBeforeTopOfFatherBranch();
-    BoardHistoryNode oldFirstVar = mainNode.variations.get(0);
-    for (int i = 0; i < mainNode.variations.size(); i++) {
-      if (mainNode.variations.get(i) == topNode) {
-        mainNode.variations.remove(i);
-        mainNode.variations.add(i, oldFirstVar);
-        mainNode.variations.remove(0);
-        mainNode.variations.add(0, topNode);
-        return true;
-      }
+    synchronized (this) {
+      return new BoardTransaction(history).setAsMainBranch();
     }
-    return false;
   }
 }
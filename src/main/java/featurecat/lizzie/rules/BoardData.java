@@ -14,11 +14,14 @@ public class BoardData {
   public int moveNumber;
   public int moveMNNumber;
   public Optional<int[]> lastMove;
+  // Read through getMoveNumberList, it is dropped while the node is evicted in compact history
   public int[] moveNumberList;
   public boolean blackToPlay;
   public boolean dummy;
 
   public Stone lastMoveColor;
+  // Array view of the bitboard below for the renderer, edit both through setStone. Read through
+  // getStones, it is dropped while the node is evicted in compact history
   public Stone[] stones;
   public Zobrist zobrist;
   public boolean verify;
@@ -34,6 +37,20 @@ public class BoardData {
 
   public String comment = "";
 
+  // The history node holding this data, if any
+  BoardHistoryNode node;
+
+  // The position as one bit set per color
+  private BitBoard bitBoard;
+  // Chains of this position, built on first use and then updated move by move
+  private GroupTable groups;
+  // The point the side to move may not play because of a simple ko, -1 if none
+  private int koPoint = -1;
+  // The symmetry that gives the canonical fingerprint, and the fingerprint it was found for
+  private Symmetry canonicalSymmetry;
+  private long canonicalFingerprint;
+  private long canonicalOf;
+
   // Node properties
   private final Map<String, String> properties = new HashMap<String, String>();
 
@@ -84,7 +101,7 @@ public class BoardData {
         Optional.empty(),
         Stone.EMPTY,
         true,
-        new Zobrist(),
+        new Zobrist(BoardGeometry.of(width, height)),
         0,
         boardArray,
         0,
@@ -202,6 +219,39 @@ public class BoardData {
     }
   }
 
+  /**
+   * Takes the analysis of another node with the same position up to a symmetry, if it searched
+   * deeper
+   *
+   * @param from the data of the other node
+   * @return whether the analysis was taken
+   */
+  public boolean shareAnalysis(BoardData from) {
+    if (from == this || from.playouts <= playouts) return false;
+    bestMoves = from.bestMovesFor(this);
+    playouts = from.playouts;
+    winrate = from.winrate;
+    scoreMean = from.scoreMean;
+    engineIndex = from.engineIndex;
+    komi = from.komi;
+    return true;
+  }
+
+  /**
+   * Turns the best moves of this position to the orientation of another node with the same
+   * canonical position
+   *
+   * @param other the data of the other node
+   * @return the best moves as played on the other node
+   */
+  public List<MoveData> bestMovesFor(BoardData other) {
+    Symmetry symmetry = getCanonicalSymmetry().then(other.getCanonicalSymmetry().inverse());
+    if (symmetry == Symmetry.IDENTITY || bestMoves == null) return bestMoves;
+    List<MoveData> moves = new ArrayList<>(bestMoves.size());
+    for (MoveData move : bestMoves) moves.add(move.transform(symmetry, getGeometry()));
+    return moves;
+  }
+
   public static double getWinrateFromBestMoves(List<MoveData> bestMoves) {
     // return the weighted average winrate of bestMoves
     return bestMoves
@@ -222,20 +272,6 @@ public class BoardData {
         .sum();
   }
 
-  public String bestMovesToString() {
-    StringBuilder sb = new StringBuilder();
-    for (MoveData move : bestMoves) {
-      // eg: info move R5 visits 38 winrate 5404 pv R5 Q5 R6 S4 Q10 C3 D3 C4 C6 C5 D5
-      sb.append("move ").append(move.coordinate);
-      sb.append(" visits ").append(move.playouts);
-      sb.append(" winrate ").append((int) (move.winrate * 100));
-      if (Lizzie.leelaz.supportScoremean()) sb.append(" scoreMean ").append(move.scoreMean);
-      sb.append(" pv ").append(move.variation.stream().reduce((a, b) -> a + " " + b).get());
-      sb.append(" info "); // this order is just because of how the MoveData info parser works
-    }
-    return sb.toString();
-  }
-
   public void setPlayouts(int playouts) {
     if (playouts > this.playouts) {
       this.playouts = playouts;
@@ -246,15 +282,163 @@ public class BoardData {
     return playouts;
   }
 
+  /** @return the stones of this position, rebuilt first if the node was evicted */
+  public Stone[] getStones() {
+    Stone[] stones = this.stones;
+    if (stones != null) return stones;
+    PositionCache.ensureMaterialized(this);
+    return this.stones;
+  }
+
+  /** @return the move numbers of this position, rebuilt first if the node was evicted */
+  public int[] getMoveNumberList() {
+    int[] moveNumberList = this.moveNumberList;
+    if (moveNumberList != null) return moveNumberList;
+    PositionCache.ensureMaterialized(this);
+    return this.moveNumberList;
+  }
+
+  /**
+   * Edits one move number in place
+   *
+   * @param index the point
+   * @param number the move number to show there, 0 for none
+   */
+  public void setMoveNumber(int index, int number) {
+    int[] numbers = getMoveNumberList();
+    if (node != null) node.keepChildMoveNumber(index, numbers[index]);
+    numbers[index] = number;
+  }
+
+  /** @return the size of the board of this position */
+  public BoardGeometry getGeometry() {
+    return zobrist.getGeometry();
+  }
+
+  /** @return the position as a bitboard */
+  public BitBoard getBitBoard() {
+    Stone[] stones = getStones();
+    if (bitBoard == null) {
+      BoardGeometry geometry = getGeometry();
+      bitBoard = BitBoard.of(stones, geometry.getWidth(), geometry.getHeight());
+    }
+    return bitBoard;
+  }
+
+  public void setBitBoard(BitBoard bitBoard) {
+    this.bitBoard = bitBoard;
+  }
+
+  /**
+   * Edits one point of the position in place, keeping the stones array, the bitboard and the chains
+   * in step. The zobrist hash is left to the caller.
+   *
+   * @param index the point
+   * @param stone the new stone, EMPTY to remove one
+   */
+  public void setStone(int index, Stone stone) {
+    Stone[] stones = getStones();
+    if (node != null) node.keepChildStone(index, stones[index]);
+    stones[index] = stone;
+    if (bitBoard != null) {
+      bitBoard.set(index, stone);
+    }
+    groups = null;
+    koPoint = -1;
+  }
+
+  /** @return the chains of this position */
+  public GroupTable getGroups() {
+    if (groups == null) {
+      BoardGeometry geometry = getGeometry();
+      groups = GroupTable.of(getStones(), geometry.getWidth(), geometry.getHeight());
+    }
+    return groups;
+  }
+
+  /** @return whether the chains of this position are currently built */
+  public boolean hasGroups() {
+    return groups != null;
+  }
+
+  public void setGroups(GroupTable groups) {
+    this.groups = groups;
+  }
+
+  /** Drops the chains of this position, they must be rebuilt after the stones are edited */
+  public void clearGroups() {
+    groups = null;
+  }
+
+  /** @return the index of the point the side to move may not play because of a simple ko, or -1 */
+  public int getKoPoint() {
+    return koPoint;
+  }
+
+  public void setKoPoint(int koPoint) {
+    this.koPoint = koPoint;
+  }
+
+  /**
+   * A fingerprint of this position: the stones, the board size, the side to move and the ko point.
+   * It does not depend on the session, so it can key analysis caches and position indexes that are
+   * saved or shared between processes.
+   *
+   * @return the 64 bit fingerprint
+   */
+  public long getFingerprint() {
+    return zobrist.fingerprint(blackToPlay, koPoint);
+  }
+
+  /**
+   * The smallest fingerprint of this position over the symmetries of the board, so positions that
+   * differ only by a rotation or a mirror share it
+   *
+   * @return the 64 bit canonical fingerprint
+   */
+  public long getCanonicalFingerprint() {
+    canonicalize();
+    return canonicalFingerprint;
+  }
+
+  /** @return the symmetry that turns this position into its canonical orientation */
+  public Symmetry getCanonicalSymmetry() {
+    canonicalize();
+    return canonicalSymmetry;
+  }
+
+  private void canonicalize() {
+    long fingerprint = getFingerprint();
+    if (canonicalSymmetry != null && canonicalOf == fingerprint) return;
+    Stone[] stones = getStones();
+    Symmetry best = Symmetry.IDENTITY;
+    long min = fingerprint;
+    for (Symmetry symmetry : Symmetry.values()) {
+      if (symmetry == Symmetry.IDENTITY || !symmetry.fits(getGeometry())) continue;
+      long hash = zobrist.fingerprint(stones, symmetry, blackToPlay, koPoint);
+      if (Long.compareUnsigned(hash, min) < 0) {
+        min = hash;
+        best = symmetry;
+      }
+    }
+    canonicalFingerprint = min;
+    canonicalOf = fingerprint;
+    canonicalSymmetry = best;
+  }
+
   public void sync(BoardData data) {
+    if (node != null) node.rebaseChildren(data.getStones(), data.getMoveNumberList());
     this.moveMNNumber = data.moveMNNumber;
     this.moveNumber = data.moveNumber;
     this.lastMove = data.lastMove;
-    this.moveNumberList = data.moveNumberList;
+    this.moveNumberList = data.getMoveNumberList();
     this.blackToPlay = data.blackToPlay;
     this.dummy = data.dummy;
     this.lastMoveColor = data.lastMoveColor;
-    this.stones = data.stones;
+    this.stones = data.getStones();
+    this.bitBoard = null;
+    this.groups = null;
+    this.koPoint = data.koPoint;
     this.zobrist = data.zobrist;
     this.verify = data.verify;
     this.blackCaptures = data.blackCaptures;
@@ -0,0 +1,287 @@
+package featurecat.lizzie.rules;
+
+import featurecat.lizzie.Lizzie;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The size of a board and the conversions between its points, array indexes and names. A geometry
+ * is immutable and shared by every game of its size, so games of different sizes can be parsed and
+ * analyzed at the same time; the static helpers of {@link Board} use the geometry of the size shown
+ * in the window.
+ *
+ * <p>Moves are coded as ints: the array index of the point, {@link #PASS} or {@link #NONE}. The
+ * names of every point are built once, so moves are read and written without parsing or allocating.
+ */
+public final class BoardGeometry {
+  /** The move code of a pass */
+  public static final int PASS = -1;
+  /** The move code of a resignation or of a name that is not a point of the board */
+  public static final int NONE = -2;
+
+  private static final String alphabet = "ABCDEFGHJKLMNOPQRSTUVWXYZ";
+  private static final String sgfAlphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+  private static final Pattern NAMED = Pattern.compile("([A-HJ-Z]+)(\\d+)");
+  private static final Pattern NUMBERED = Pattern.compile("\\(([\\d]+),([\\d]+)\\)");
+  // geometries of the board sizes used so far, by size
+  private static final Map<Long, BoardGeometry> geometries = new ConcurrentHashMap<>();
+  // the geometry before any board was shown
+  private static final BoardGeometry DEFAULT = of(19, 19);
+
+  private final int width;
+  private final int height;
+  // the GTP and sgf names of every point, by index
+  private final String[] names;
+  private final String[] sgfNames;
+  // move codes by GTP name, in upper case
+  private final Map<String, Integer> codes;
+
+  private BoardGeometry(int width, int height) {
+    this.width = width;
+    this.height = height;
+    names = new String[width * height];
+    sgfNames = new String[width * height];
+    codes = new HashMap<>(names.length * 2);
+    for (int x = 0; x < width; x++) {
+      for (int y = 0; y < height; y++) {
+        int index = getIndex(x, y);
+        names[index] = convertCoordinatesToName(x, y);
+        codes.put(names[index], index);
+        if (x < sgfAlphabet.length() && y < sgfAlphabet.length()) {
+          sgfNames[index] = "" + sgfAlphabet.charAt(x) + sgfAlphabet.charAt(y);
+        }
+      }
+    }
+    codes.put("PASS", PASS);
+    codes.put("pass", PASS);
+  }
+
+  /**
+   * @param width the number of columns
+   * @param height the number of rows
+   * @return the geometry of that size
+   */
+  public static BoardGeometry of(int width, int height) {
+    return geometries.computeIfAbsent(
+        ((long) width << 32) | height, size -> new BoardGeometry(width, height));
+  }
+
+  /** @return the geometry of the game shown in the window, as its board last published it */
+  public static BoardGeometry current() {
+    Board board = Lizzie.board;
+    GameSnapshot snapshot = board != null ? board.snapshot() : null;
+    return snapshot != null ? snapshot.getGeometry() : DEFAULT;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /** @return the number of points of the board */
+  public int getPoints() {
+    return width * height;
+  }
+
+  /**
+   * Calculates the array index of a stone stored at (x, y)
+   *
+   * @param x the x coordinate
+   * @param y the y coordinate
+   * @return the array index
+   */
+  public int getIndex(int x, int y) {
+    return x * height + y;
+  }
+
+  public int[] getCoord(int index) {
+    return new int[] {getX(index), getY(index)};
+  }
+
+  /** @return the x coordinate of a point */
+  public int getX(int index) {
+    return index / height;
+  }
+
+  /** @return the y coordinate of a point */
+  public int getY(int index) {
+    return index % height;
+  }
+
+  /**
+   * Checks if a coordinate is valid
+   *
+   * @param x x coordinate
+   * @param y y coordinate
+   * @return whether or not this coordinate is part of the board
+   */
+  public boolean isValid(int x, int y) {
+    return x >= 0 && x < width && y >= 0 && y < height;
+  }
+
+  public boolean isValid(int[] c) {
+    return c != null && c.length == 2 && isValid(c[0], c[1]);
+  }
+
+  /**
+   * Converts a named coordinate eg C16, T5, K10, etc to an x and y coordinate
+   *
+   * @param namedCoordinate a capitalized version of the named coordinate, without I, or (x,y) on
+   *     boards larger than 25
+   * @return an optional array of coordinates, empty for pass and resign
+   */
+  public Optional<int[]> asCoordinates(String namedCoordinate) {
+    Integer code = codes.get(namedCoordinate);
+    if (code != null) {
+      return code >= 0 ? Optional.of(getCoord(code)) : Optional.empty();
+    }
+    namedCoordinate = namedCoordinate.trim();
+    if (namedCoordinate.equalsIgnoreCase("pass") || namedCoordinate.equalsIgnoreCase("resign")) {
+      return Optional.empty();
+    }
+    Matcher m = NAMED.matcher(namedCoordinate);
+    if (m.find() && m.groupCount() == 2) {
+      int x = asDigit(m.group(1));
+      int y = height - Integer.parseInt(m.group(2));
+      return Optional.of(new int[] {x, y});
+    }
+    m = NUMBERED.matcher(namedCoordinate);
+    if (m.find() && m.groupCount() == 2) {
+      int x = Integer.parseInt(m.group(1));
+      int y = Integer.parseInt(m.group(2));
+      return Optional.of(new int[] {x, y});
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * @param name a GTP vertex like Q16 or pass, in any case
+   * @return the move code of the vertex, {@link #NONE} if it is not a point of this board
+   */
+  public int moveOf(String name) {
+    Integer code = codes.get(name);
+    if (code == null) code = codes.get(name.trim().toUpperCase());
+    return code != null ? code : NONE;
+  }
+
+  /**
+   * @param move a move code
+   * @return the GTP vertex of the move, like Q16 or pass
+   */
+  public String nameOf(int move) {
+    return move >= 0 ? names[move] : move == PASS ? "pass" : "resign";
+  }
+
+  /**
+   * @param value an sgf point value like pd, empty or the point after the board for a pass
+   * @return the move code of the value, {@link #NONE} if it is not a point of this board
+   */
+  public int sgfMoveOf(String value) {
+    if (value.isEmpty()) return PASS;
+    if (value.length() != 2) return NONE;
+    int x = sgfAlphabet.indexOf(value.charAt(0));
+    int y = sgfAlphabet.indexOf(value.charAt(1));
+    if (x == width && y == height) return PASS;
+    return isValid(x, y) ? getIndex(x, y) : NONE;
+  }
+
+  /**
+   * @param move a move code
+   * @return the sgf point value of the move, empty for a pass
+   */
+  public String sgfNameOf(int move) {
+    return move >= 0 ? sgfNames[move] : "";
+  }
+
+  /**
+   * @param names GTP vertexes
+   * @param from the first vertex to read
+   * @param to the end of the vertexes to read
+   * @return the move codes of the vertexes
+   */
+  public int[] movesOf(String[] names, int from, int to) {
+    int[] moves = new int[Math.max(0, to - from)];
+    for (int i = 0; i < moves.length; i++) {
+      moves[i] = moveOf(names[from + i]);
+    }
+    return moves;
+  }
+
+  /**
+   * Converts a x and y coordinate to a named coordinate eg C16, T5, K10, etc
+   *
+   * @param x x coordinate -- must be valid
+   * @param y y coordinate -- must be valid
+   * @return a string representing the coordinate
+   */
+  public String convertCoordinatesToName(int x, int y) {
+    // coordinates take the form C16 A19 Q5 K10 etc. I is not used.
+    if (width > 25 || height > 25) {
+      return String.format("(%d,%d)", x, y);
+    } else {
+      return asName(x, false) + (height - y);
+    }
+  }
+
+  /**
+   * @param c a column
+   * @param isName whether the column is shown as a number on boards wider than 25
+   * @return the name of the column
+   */
+  public String asName(int c, boolean isName) {
+    if (width > 25 && isName) {
+      return String.valueOf(c + 1);
+    }
+    StringBuilder name = new StringBuilder();
+    int base = alphabet.length();
+    int n = c;
+    ArrayDeque<Integer> ad = new ArrayDeque<Integer>();
+    if (n > 0) {
+      while (n > 0) {
+        ad.addFirst(n < 25 && c >= 25 ? n % base - 1 : n % base);
+        n /= base;
+      }
+    } else {
+      ad.addFirst(n);
+    }
+    ad.forEach(i -> name.append(alphabet.charAt(i)));
+    return name.toString();
+  }
+
+  /**
+   * @param name the name of a column, like C or AB
+   * @return the column, -1 if the name is not valid
+   */
+  public static int asDigit(String name) {
+    // coordinates take the form C16 A19 Q5 K10 etc. I is not used.
+    int base = alphabet.length();
+    char names[] = name.toCharArray();
+    int length = names.length;
+    if (length > 0) {
+      int x = 0;
+      for (int i = length - 1; i >= 0; i--) {
+        int index = alphabet.indexOf(names[i]);
+        if (index == -1) {
+          return index;
+        }
+        x += index * Math.pow(base, length - i - 1);
+      }
+      return x;
+    } else {
+      return -1;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return width + "x" + height;
+  }
+}
@@ -1,5 +1,6 @@
 package featurecat.lizzie.rules;
 
+import featurecat.lizzie.Lizzie;
 import featurecat.lizzie.analysis.GameInfo;
 import java.util.List;
 import java.util.Optional;
@@ -8,6 +9,10 @@ import java.util.Optional;
 public class BoardHistoryList {
   private GameInfo gameInfo;
   private BoardHistoryNode head;
+  // hashes of the positions from the root to head
+  private PathHashIndex pathIndex;
+  // whether the nodes head goes to are marked as visited, see BoardHistoryNode#isVisited
+  private final boolean marksVisits;
 
   /**
    * Initialize a new board history list, whose first node is data
@@ -16,7 +21,24 @@ public class BoardHistoryList {
    */
   public BoardHistoryList(BoardData data) {
     head = new BoardHistoryNode(data);
+    pathIndex = new PathHashIndex(head);
     gameInfo = new GameInfo();
+    marksVisits = true;
+    visit();
+  }
+
+  /**
+   * Initialize a history list that builds on a node of an existing tree, without marking the nodes
+   * it goes through as visited. Used to read the variations of a lazy sgf file
+   *
+   * @param head the node to build on
+   * @param gameInfo the game info of the tree
+   */
+  BoardHistoryList(BoardHistoryNode head, GameInfo gameInfo) {
+    this.head = head;
+    pathIndex = new PathHashIndex(head);
+    this.gameInfo = gameInfo;
+    marksVisits = false;
   }
 
   public GameInfo getGameInfo() {
@@ -30,6 +52,7 @@ public class BoardHistoryList {
   public BoardHistoryList shallowCopy() {
     BoardHistoryList copy = new BoardHistoryList(null);
     copy.head = head;
+    copy.pathIndex = pathIndex.copy();
     copy.gameInfo = gameInfo;
     return copy;
   }
@@ -46,6 +69,8 @@ public class BoardHistoryList {
    */
   public void add(BoardData data) {
     head = head.add(new BoardHistoryNode(data));
+    pathIndex.push(head.getData());
+    visit();
   }
 
   public void addOrGoto(BoardData data) {
@@ -54,10 +79,14 @@ public class BoardHistoryList {
 
   public void addOrGoto(BoardData data, boolean newBranch) {
     head = head.addOrGoto(data, newBranch);
+    pathIndex.push(head.getData());
+    visit();
   }
 
   public void addOrGoto(BoardData data, boolean newBranch, boolean changeMove) {
     head = head.addOrGoto(data, newBranch, changeMove);
+    pathIndex.push(head.getData());
+    visit();
   }
 
   /**
@@ -68,6 +97,8 @@ public class BoardHistoryList {
   public Optional<BoardData> previous() {
     if (!head.previous().isPresent()) return Optional.empty();
     else head = head.previous().get();
+    pathIndex.pop();
+    visit();
 
     return Optional.of(head.getData());
   }
@@ -99,7 +130,7 @@ public class BoardHistoryList {
 
   public Optional<BoardData> next(boolean includeDummay) {
     Optional<BoardHistoryNode> n = head.next(includeDummay);
-    n.ifPresent(x -> head = x);
+    n.ifPresent(this::moveTo);
     return n.map(x -> x.getData());
   }
 
@@ -110,10 +141,20 @@ public class BoardHistoryList {
    */
   public Optional<BoardData> nextVariation(int idx) {
     Optional<BoardHistoryNode> n = head.getVariation(idx);
-    n.ifPresent(x -> head = x);
+    n.ifPresent(this::moveTo);
     return n.map(x -> x.getData());
   }
 
+  private void moveTo(BoardHistoryNode child) {
+    head = child;
+    pathIndex.push(head.getData());
+    visit();
+  }
+
+  private void visit() {
+    if (marksVisits) head.visited = true;
+  }
+
   /**
    * Does not change the pointer position
    *
@@ -146,15 +187,22 @@ public class BoardHistoryList {
     return head.getData();
   }
 
+  /** @return the size of the board of this game */
+  public BoardGeometry getGeometry() {
+    return head.getData().getGeometry();
+  }
+
   public void setStone(int[] coordinates, Stone stone) {
-    if (!Board.isValid(coordinates[0], coordinates[1])) return;
-    int index = Board.getIndex(coordinates[0], coordinates[1]);
-    head.getData().stones[index] = stone;
+    if (!getGeometry().isValid(coordinates[0], coordinates[1])) return;
+    int index = getGeometry().getIndex(coordinates[0], coordinates[1]);
+    head.getData().setStone(index, stone);
     head.getData().zobrist.toggleStone(coordinates[0], coordinates[1], stone);
+    pathIndex.replaceTop(head.getData());
+    head.stonesChanged();
   }
 
   public Stone[] getStones() {
-    return head.getData().stones;
+    return head.getData().getStones();
   }
 
   public Optional<int[]> getLastMove() {
@@ -186,7 +234,7 @@ public class BoardHistoryList {
   }
 
   public int[] getMoveNumberList() {
-    return head.getData().moveNumberList;
+    return head.getData().getMoveNumberList();
   }
 
   public BoardHistoryNode getCurrentHistoryNode() {
@@ -195,23 +243,20 @@ public class BoardHistoryList {
 
   /**
    * @param data the board position to check against superko
-   * @return whether or not the given position violates the superko rule at the head's state
+   * @return whether or not the given position, with the same player to move, has occurred on the
+   *     path from the root to the head
    */
   public boolean violatesSuperko(BoardData data) {
-    BoardHistoryNode head = this.head;
-
-    // check to see if this position has occurred before
-    while (head.previous().isPresent()) {
-      // if two zobrist hashes are equal, and it's the same player to coordinate, they are the same
-      // position
-      if (data.zobrist.equals(head.getData().zobrist)
-          && data.blackToPlay == head.getData().blackToPlay) return true;
-
-      head = head.previous().get();
-    }
+    return pathIndex.containsSituation(data);
+  }
 
-    // no position matched this position, so it's valid
-    return false;
+  /**
+   * @param data the board position to check against positional superko
+   * @return whether or not the stones of the given position have occurred on the path from the root
+   *     to the head
+   */
+  public boolean violatesPositionalSuperko(BoardData data) {
+    return pathIndex.containsPosition(data);
   }
 
   public boolean violatesKoRule(BoardData data) {
@@ -222,17 +267,41 @@ public class BoardHistoryList {
         .orElse(false);
   }
 
+  /**
+   * Checks a position after a move against the configured repetition rule: a simple ko check by
+   * default, or positional or situational superko
+   *
+   * @param data the position after the move
+   * @return whether the move must be refused
+   */
+  public boolean violatesRepetitionRule(BoardData data) {
+    return violatesRepetitionRule(data.zobrist.getHash(), data.blackToPlay);
+  }
+
+  /**
+   * Checks a position after a move against the configured repetition rule, from its hash only
+   *
+   * @param hash the zobrist hash of the stones after the move
+   * @param blackToPlay the side to move after the move
+   * @return whether the move must be refused
+   */
+  public boolean violatesRepetitionRule(long hash, boolean blackToPlay) {
+    String rule = Lizzie.config == null ? "simple" : Lizzie.config.superkoRule;
+    if ("positional".equals(rule)) return pathIndex.containsPosition(hash);
+    if ("situational".equals(rule)) {
+      return pathIndex.containsSituation(hash, blackToPlay, head.getData().zobrist);
+    }
+    // check if the position is identical to the position before the last move
+    return head.previous().map(p -> p.getData().zobrist.getHash() == hash).orElse(false);
+  }
+
   /**
    * Returns the root node
    *
    * @return root node
    */
   public BoardHistoryNode root() {
-    BoardHistoryNode top = head;
-    while (top.previous().isPresent()) {
-      top = top.previous().get();
-    }
-    return top;
+    return head.getRoot();
   }
 
   /**
@@ -254,11 +323,7 @@ public class BoardHistoryList {
   }
 
   public BoardHistoryNode getEnd() {
-    BoardHistoryNode e = head;
-    while (e.next().isPresent()) {
-      e = e.next().get();
-    }
-    return e;
+    return head.getEnd();
   }
 
   public void pass(Stone color) {
@@ -277,7 +342,9 @@ public class BoardHistoryList {
     synchronized (this) {
 
       // check to see if this move is being replayed in history
-      if (this.getNext().map(n -> !n.lastMove.isPresent()).orElse(false) && !newBranch) {
+      if (this.getNext().map(n -> !n.lastMove.isPresent()).orElse(false)
+          && !newBranch
+          && !changeMove) {
         // this is the next move in history. Just increment history so that we don't erase the
         // redo's
         this.next();
@@ -289,7 +356,7 @@ public class BoardHistoryList {
       int moveNumber = this.getMoveNumber() + 1;
       int[] moveNumberList =
           newBranch && this.getNext(true).isPresent()
-              ? new int[Board.boardWidth * Board.boardHeight]
+              ? new int[getGeometry().getPoints()]
               : this.getMoveNumberList().clone();
 
       // build the new game state
@@ -308,6 +375,7 @@ public class BoardHistoryList {
               0,
               0);
       newState.dummy = dummy;
+      newState.setBitBoard(this.getData().getBitBoard().copy());
 
       // update history with pass
       this.addOrGoto(newState, newBranch, changeMove);
@@ -324,8 +392,8 @@ public class BoardHistoryList {
 
   public void place(int x, int y, Stone color, boolean newBranch, boolean changeMove) {
     synchronized (this) {
-      if (!Board.isValid(x, y)
-          || (this.getStones()[Board.getIndex(x, y)] != Stone.EMPTY && !newBranch)) return;
+      if (!getGeometry().isValid(x, y)
+          || (this.getStones()[getGeometry().getIndex(x, y)] != Stone.EMPTY && !newBranch)) return;
 
       double nextWinrate = -100;
       if (this.getData().winrate >= 0) nextWinrate = 100 - this.getData().winrate;
@@ -344,6 +412,12 @@ public class BoardHistoryList {
         return;
       }
 
+      // check the move on the chains around it and on the hash it gives, before copying anything
+      int index = getGeometry().getIndex(x, y);
+      GroupTable groups = groupsBeforeMove(index);
+      int[] captured = LegalMoves.check(this, groups, index, color);
+      if (captured == null) return;
+
       // load a copy of the data at the current node of history
       Stone[] stones = this.getStones().clone();
       Zobrist zobrist = this.getZobrist();
@@ -353,35 +427,27 @@ public class BoardHistoryList {
           this.getMoveMNNumber() > -1 && !newBranch ? this.getMoveMNNumber() + 1 : -1;
       int[] moveNumberList =
           newBranch && this.getNext(true).isPresent()
-              ? new int[Board.boardWidth * Board.boardHeight]
+              ? new int[getGeometry().getPoints()]
               : this.getMoveNumberList().clone();
 
-      moveNumberList[Board.getIndex(x, y)] = moveMNNumber > -1 ? moveMNNumber : moveNumber;
+      moveNumberList[index] = moveMNNumber > -1 ? moveMNNumber : moveNumber;
 
       // set the stone at (x, y) to color
-      stones[Board.getIndex(x, y)] = color;
-      zobrist.toggleStone(x, y, color);
+      zobrist.toggleStone(index, stones[index]);
+      stones[index] = color;
+      zobrist.toggleStone(index, color);
 
       // remove enemy stones
-      int capturedStones = 0;
-      capturedStones += Board.removeDeadChain(x + 1, y, color.opposite(), stones, zobrist);
-      capturedStones += Board.removeDeadChain(x, y + 1, color.opposite(), stones, zobrist);
-      capturedStones += Board.removeDeadChain(x - 1, y, color.opposite(), stones, zobrist);
-      capturedStones += Board.removeDeadChain(x, y - 1, color.opposite(), stones, zobrist);
-
-      // check to see if the player made a suicidal coordinate
-      int isSuicidal = Board.removeDeadChain(x, y, color, stones, zobrist);
-
-      for (int i = 0; i < Board.boardWidth * Board.boardHeight; i++) {
-        if (stones[i].equals(Stone.EMPTY)) {
-          moveNumberList[i] = 0;
-        }
+      for (int p : captured) {
+        stones[p] = Stone.EMPTY;
+        zobrist.toggleStone(p, color.opposite());
+        moveNumberList[p] = 0;
       }
 
       int bc = this.getData().blackCaptures;
       int wc = this.getData().whiteCaptures;
-      if (color.isBlack()) bc += capturedStones;
-      else wc += capturedStones;
+      if (color.isBlack()) bc += captured.length;
+      else wc += captured.length;
       BoardData newState =
           new BoardData(
               stones,
@@ -398,14 +464,62 @@ public class BoardHistoryList {
               nextScoreMean);
       newState.moveMNNumber = moveMNNumber;
 
-      // don't make this coordinate if it is suicidal or violates superko
-      if (isSuicidal > 0 || this.violatesKoRule(newState)) return;
+      playBoards(groups, index, color, newState);
 
       // update history with this coordinate
       this.addOrGoto(newState, newBranch, changeMove);
     }
   }
 
+  /**
+   * Chains of the head position to check a move at index against. The point is only occupied when a
+   * new branch overwrites a stone, then it is emptied in a fresh table.
+   *
+   * @param index the point to play
+   * @return the chain table, possibly the head's own one
+   */
+  GroupTable groupsBeforeMove(int index) {
+    BoardData data = head.getData();
+    if (data.getStones()[index] == Stone.EMPTY) return data.getGroups();
+    Stone[] stones = data.getStones().clone();
+    stones[index] = Stone.EMPTY;
+    BoardGeometry geometry = data.getGeometry();
+    return GroupTable.of(stones, geometry.getWidth(), geometry.getHeight());
+  }
+
+  /**
+   * Plays a legal move on the chains from {@link #groupsBeforeMove} and on a copy of the head's
+   * bitboard, and keeps both with the new position along with its ko point. The head's own chain
+   * table is handed over when no variation follows the head, otherwise it is copied.
+   *
+   * @param groups the chains before the move
+   * @param index the point to play
+   * @param color the color to play
+   * @param newState the position after the move
+   */
+  void playBoards(GroupTable groups, int index, Stone color, BoardData newState) {
+    BoardData data = head.getData();
+    BitBoard bitBoard = data.getBitBoard().copy();
+    bitBoard.set(index, color);
+    if (data.hasGroups() && groups == data.getGroups()) {
+      if (head.numberOfChildren() > 0) {
+        groups = groups.copy();
+      } else {
+        data.clearGroups();
+      }
+    }
+    int[] captured = groups.play(index, color);
+    for (int p : captured) {
+      bitBoard.set(p, Stone.EMPTY);
+    }
+    newState.setBitBoard(bitBoard);
+    newState.setGroups(groups);
+    // a lone stone that took a lone stone and has only that point left as liberty makes a ko
+    if (captured.length == 1 && groups.chainSize(index) == 1 && groups.libertyCount(index) == 1) {
+      newState.setKoPoint(captured[0]);
+    }
+  }
+
   public void addNodeProperty(String key, String value) {
     synchronized (this) {
       this.getData().addProperty(key, value);
@@ -419,15 +533,16 @@ public class BoardHistoryList {
     synchronized (this) {
       BoardData data = this.getData();
       if (data.lastMove.isPresent()) {
-        int[] moveNumberList = this.getMoveNumberList();
-        moveNumberList[Board.getIndex(data.lastMove.get()[0], data.lastMove.get()[1])] = moveNumber;
+        data.setMoveNumber(
+            getGeometry().getIndex(data.lastMove.get()[0], data.lastMove.get()[1]), moveNumber);
         Optional<BoardHistoryNode> node = this.getCurrentHistoryNode().previous();
         while (node.isPresent() && node.get().numberOfChildren() <= 1) {
           BoardData nodeData = node.get().getData();
           if (nodeData.lastMove.isPresent() && nodeData.moveNumber >= moveNumber) {
             moveNumber = (moveNumber > 1) ? moveNumber - 1 : 0;
-            moveNumberList[Board.getIndex(nodeData.lastMove.get()[0], nodeData.lastMove.get()[1])] =
-                moveNumber;
+            data.setMoveNumber(
+                getGeometry().getIndex(nodeData.lastMove.get()[0], nodeData.lastMove.get()[1]),
+                moveNumber);
           }
           node = node.get().previous();
         }
@@ -437,30 +552,35 @@ public class BoardHistoryList {
 
   public void addStone(int x, int y, Stone color) {
     synchronized (this) {
-      if (!Board.isValid(x, y) || this.getStones()[Board.getIndex(x, y)] != Stone.EMPTY) return;
+      if (!getGeometry().isValid(x, y)
+          || this.getStones()[getGeometry().getIndex(x, y)] != Stone.EMPTY) return;
 
-      Stone[] stones = this.getData().stones;
       Zobrist zobrist = this.getData().zobrist;
 
       // set the stone at (x, y) to color
-      stones[Board.getIndex(x, y)] = color;
+      this.getData().setStone(getGeometry().getIndex(x, y), color);
       zobrist.toggleStone(x, y, color);
+      pathIndex.replaceTop(this.getData());
+      head.stonesChanged();
     }
   }
 
   public void removeStone(int x, int y, Stone color) {
     synchronized (this) {
-      if (!Board.isValid(x, y) || this.getStones()[Board.getIndex(x, y)] == Stone.EMPTY) return;
+      if (!getGeometry().isValid(x, y)
+          || this.getStones()[getGeometry().getIndex(x, y)] == Stone.EMPTY) return;
 
       BoardData data = this.getData();
-      Stone[] stones = data.stones;
+      Stone[] stones = data.getStones();
       Zobrist zobrist = data.zobrist;
 
       // set the stone at (x, y) to empty
-      Stone oriColor = stones[Board.getIndex(x, y)];
-      stones[Board.getIndex(x, y)] = Stone.EMPTY;
+      Stone oriColor = stones[getGeometry().getIndex(x, y)];
+      data.setStone(getGeometry().getIndex(x, y), Stone.EMPTY);
       zobrist.toggleStone(x, y, oriColor);
-      data.moveNumberList[Board.getIndex(x, y)] = 0;
+      data.setMoveNumber(getGeometry().getIndex(x, y), 0);
+      pathIndex.replaceTop(data);
+      head.stonesChanged();
     }
   }
 
@@ -479,12 +599,13 @@ public class BoardHistoryList {
                 blackToPlay,
                 zobrist,
                 0,
-                new int[Board.boardWidth * Board.boardHeight],
+                new int[getGeometry().getPoints()],
                 0,
                 0,
                 0.0,
                 0,
                 0.0));
+    pathIndex.rebuild(head);
     this.setGameInfo(oldHistory.getGameInfo());
   }
 
@@ -543,6 +664,8 @@ public class BoardHistoryList {
       newNode = newNode.next(true).map(n -> n).orElse(null);
     }
 
+    // synced nodes on the path may have changed their positions
+    if (diffMoveNo >= 0) pathIndex.rebuild(head);
     return diffMoveNo;
   }
 }
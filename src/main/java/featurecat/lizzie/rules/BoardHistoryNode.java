@@ -1,7 +1,9 @@
 package featurecat.lizzie.rules;
 
 import featurecat.lizzie.Lizzie;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,16 +17,55 @@ public class BoardHistoryNode {
   // Save the children for restore to branch
   private int fromBackChildren;
 
+  // Distance from the root
+  private int level;
+
+  // The tree this node belongs to, and values cached against its versions: the ancestors 1, 2, 4...
+  // levels up, whether the node is on the main trunk and only on first variations from the root,
+  // the last node of the main line from here and its distance, and the number of nodes below
+  private TreeIndex tree;
+  private BoardHistoryNode[] jumps;
+  private int jumpsVersion = -1;
+  private boolean mainTrunk;
+  private boolean firstVariations;
+  private int trunkVersion = -1;
+  private BoardHistoryNode end;
+  private int depth;
+  private int endVersion = -1;
+  private int subtreeSize;
+  private int sizeVersion = -1;
+  // the canonical fingerprint the tree index holds this node under
+  long positionKey;
+
+  // Compact history: while this node is evicted, the points whose stone or move number differ from
+  // the parent, as index * 16 + stone ordinal and as index, number pairs
+  private int[] stoneDelta;
+  private int[] numberDelta;
+
+  // Lazy sgf: the file the variations of this node are still in, null once they are read, and the
+  // first of their trees there
+  private LazySGF lazy;
+  private int lazyTrees;
+  // whether a history list of the board went to this node, so its subtree is not folded back
+  boolean visited;
+
   /** Initializes a new list node */
   public BoardHistoryNode(BoardData data) {
     previous = Optional.empty();
     variations = new ArrayList<BoardHistoryNode>();
     this.data = data;
+    if (data != null) {
+      data.node = this;
+    }
+    tree = new TreeIndex(this);
   }
 
   /** Remove all subsequent nodes. */
   public void clear() {
+    lazy = null;
+    for (BoardHistoryNode child : variations) tree.subtreeRemoved(child);
     variations.clear();
+    tree.orderChanged();
   }
 
   /**
@@ -34,9 +75,16 @@ public class BoardHistoryNode {
    * @return the node that was just set
    */
   public BoardHistoryNode add(BoardHistoryNode node) {
+    lazy = null;
+    for (BoardHistoryNode child : variations) tree.subtreeRemoved(child);
     variations.clear();
     variations.add(node);
     node.previous = Optional.of(this);
+    node.level = level + 1;
+    node.tree = tree;
+    tree.orderChanged();
+    tree.subtreeAdded(node);
+    if (PositionCache.isEnabled()) tree.cache.touch(node);
 
     return node;
   }
@@ -80,6 +128,7 @@ public class BoardHistoryNode {
     //                }
     //            }
     //        }
+    expand();
     Optional<BoardHistoryNode> next = next(true);
     boolean nextDummy = next.isPresent() && next.get().isEndDummay();
     if (!newBranch && nextDummy) {
@@ -106,29 +155,41 @@ public class BoardHistoryNode {
     }
     if (Lizzie.config.newMoveNumberInBranch && !variations.isEmpty() && !changeMove) {
       if (!newBranch) {
-        data.moveNumberList = new int[Board.boardWidth * Board.boardHeight];
+        data.moveNumberList = new int[data.getGeometry().getPoints()];
         data.moveMNNumber = -1;
       }
       if (data.moveMNNumber == -1) {
         data.moveMNNumber = data.dummy ? 0 : 1;
       }
       data.lastMove.ifPresent(
-          m -> data.moveNumberList[Board.getIndex(m[0], m[1])] = data.moveMNNumber);
+          m -> data.moveNumberList[data.getGeometry().getIndex(m[0], m[1])] = data.moveMNNumber);
     }
     BoardHistoryNode node = new BoardHistoryNode(data);
+    node.level = level + 1;
+    node.tree = tree;
     if (changeMove) {
       next.ifPresent(
           n -> {
+            n.rebaseChildren(data.getStones(), data.getMoveNumberList());
             node.variations = n.variations;
             n.previous = null;
+            tree.cache.forget(n);
             n.variations.stream().forEach(v -> v.previous = Optional.of(node));
             variations.set(0, node);
+            tree.nodeReplaced(n, node);
           });
     } else {
       // Add node
       variations.add(node);
     }
     node.previous = Optional.of(this);
+    if (changeMove) {
+      tree.linksChanged();
+    } else {
+      // after a dummy, this node no longer ends the line as a dummy
+      tree.nodeAdded(node, this.data.dummy);
+    }
+    if (PositionCache.isEnabled()) tree.cache.touch(node);
 
     return node;
   }
@@ -138,8 +199,284 @@ public class BoardHistoryNode {
     return data;
   }
 
-  /** @return variations for display */
+  /** @return the position cache of the tree this node belongs to */
+  PositionCache cache() {
+    return tree.cache;
+  }
+
+  /** @return whether compact history always keeps the full position of this node */
+  public boolean isKeyframe() {
+    return level % PositionCache.keyframeInterval() == 0;
+  }
+
+  /** Rebuilds the arrays of an evicted node. Called with the lock of the tree's cache held */
+  void materialize() {
+    Position position = positionArrays();
+    data.stones = position.stones;
+    data.moveNumberList = position.moveNumberList;
+    stoneDelta = null;
+    numberDelta = null;
+  }
+
+  /**
+   * Drops the arrays of this node, keeping what differs from the parent. Called with the lock of
+   * the tree's cache held
+   */
+  void evict() {
+    if (data.stones == null || isKeyframe() || previous == null || !previous.isPresent()) return;
+    Position parent = previous.get().positionArrays();
+    stoneDelta = stoneDiff(parent.stones, data.stones);
+    numberDelta = numberDiff(parent.moveNumberList, data.moveNumberList);
+    data.stones = null;
+    data.moveNumberList = null;
+    data.setBitBoard(null);
+    data.clearGroups();
+  }
+
+  /**
+   * The stones and move numbers of this node, rebuilt from the nearest ancestor that has them
+   * without keeping the result
+   *
+   * @return the arrays, they must not be edited
+   */
+  private Position positionArrays() {
+    ArrayList<BoardHistoryNode> path = new ArrayList<>();
+    BoardHistoryNode node = this;
+    while (node.data.stones == null) {
+      path.add(node);
+      node = node.previous.get();
+    }
+    Position position = new Position();
+    position.stones = node.data.stones;
+    position.moveNumberList = node.data.moveNumberList;
+    if (path.isEmpty()) return position;
+    position.stones = position.stones.clone();
+    position.moveNumberList = position.moveNumberList.clone();
+    Stone[] values = Stone.values();
+    for (int i = path.size() - 1; i >= 0; i--) {
+      BoardHistoryNode step = path.get(i);
+      for (int entry : step.stoneDelta) {
+        position.stones[entry >>> 4] = values[entry & 15];
+      }
+      for (int k = 0; k < step.numberDelta.length; k += 2) {
+        position.moveNumberList[step.numberDelta[k]] = step.numberDelta[k + 1];
+      }
+    }
+    return position;
+  }
+
+  private static class Position {
+    Stone[] stones;
+    int[] moveNumberList;
+  }
+
+  private static int[] stoneDiff(Stone[] from, Stone[] to) {
+    int count = 0;
+    for (int i = 0; i < to.length; i++) {
+      if (from[i] != to[i]) count++;
+    }
+    int[] diff = new int[count];
+    count = 0;
+    for (int i = 0; i < to.length; i++) {
+      if (from[i] != to[i]) diff[count++] = i << 4 | to[i].ordinal();
+    }
+    return diff;
+  }
+
+  private static int[] numberDiff(int[] from, int[] to) {
+    int count = 0;
+    for (int i = 0; i < to.length; i++) {
+      if (from[i] != to[i]) count++;
+    }
+    int[] diff = new int[count * 2];
+    count = 0;
+    for (int i = 0; i < to.length; i++) {
+      if (from[i] != to[i]) {
+        diff[count++] = i;
+        diff[count++] = to[i];
+      }
+    }
+    return diff;
+  }
+
+  /**
+   * Called before a stone of this node is edited in place: evicted children that took the old stone
+   * from this node keep it in their delta
+   */
+  void keepChildStone(int index, Stone old) {
+    synchronized (tree.cache) {
+      for (BoardHistoryNode child : variations) {
+        if (child.stoneDelta == null) continue;
+        boolean kept = false;
+        for (int entry : child.stoneDelta) {
+          kept |= entry >>> 4 == index;
+        }
+        if (!kept) {
+          child.stoneDelta = Arrays.copyOf(child.stoneDelta, child.stoneDelta.length + 1);
+          child.stoneDelta[child.stoneDelta.length - 1] = index << 4 | old.ordinal();
+        }
+      }
+    }
+  }
+
+  /**
+   * Called before a move number of this node is edited in place: evicted children that took the old
+   * number from this node keep it in their delta
+   */
+  void keepChildMoveNumber(int index, int old) {
+    synchronized (tree.cache) {
+      for (BoardHistoryNode child : variations) {
+        if (child.numberDelta == null) continue;
+        boolean kept = false;
+        for (int k = 0; k < child.numberDelta.length; k += 2) {
+          kept |= child.numberDelta[k] == index;
+        }
+        if (!kept) {
+          child.numberDelta = Arrays.copyOf(child.numberDelta, child.numberDelta.length + 2);
+          child.numberDelta[child.numberDelta.length - 2] = index;
+          child.numberDelta[child.numberDelta.length - 1] = old;
+        }
+      }
+    }
+  }
+
+  /**
+   * Called before the arrays of this node are replaced, or its children are moved to another node
+   * with the given arrays: evicted children are re-encoded against the new arrays
+   */
+  void rebaseChildren(Stone[] stones, int[] moveNumberList) {
+    synchronized (tree.cache) {
+      for (BoardHistoryNode child : variations) {
+        if (child.stoneDelta == null) continue;
+        Position position = child.positionArrays();
+        child.stoneDelta = stoneDiff(stones, position.stones);
+        child.numberDelta = numberDiff(moveNumberList, position.moveNumberList);
+      }
+    }
+  }
+
+  /**
+   * Leaves the variations of this node in a lazy sgf file, to be read when they are first asked for
+   *
+   * @param store the file
+   * @param firstTree the first of the trees of the variations in the file
+   */
+  void fold(LazySGF store, int firstTree) {
+    lazyTrees = firstTree;
+    lazy = store;
+  }
+
+  /**
+   * Drops the variations read from a lazy sgf file, to be read again when they are asked for
+   *
+   * @param store the file
+   * @param firstTree the first of the trees of the variations in the file
+   */
+  void refold(LazySGF store, int firstTree) {
+    if (PositionCache.isEnabled()) {
+      ArrayDeque<BoardHistoryNode> stack = new ArrayDeque<>(variations);
+      while (!stack.isEmpty()) {
+        BoardHistoryNode node = stack.pop();
+        tree.cache.forget(node);
+        stack.addAll(node.variations);
+      }
+    }
+    for (BoardHistoryNode child : variations) tree.subtreeRemoved(child);
+    variations.clear();
+    fold(store, firstTree);
+    tree.orderChanged();
+  }
+
+  /** @return the sgf text of the variations still in a lazy sgf file, null if they were read */
+  String foldedVariations() {
+    LazySGF store = lazy;
+    return store == null ? null : store.text(lazyTrees);
+  }
+
+  /** Reads the variations of this node if they are still in a lazy sgf file */
+  private void expand() {
+    LazySGF store = lazy;
+    if (store != null) store.expand(this, lazyTrees);
+  }
+
+  /** @return whether the variations of this node are still in a lazy sgf file */
+  boolean isFolded() {
+    return lazy != null;
+  }
+
+  /** Called by LazySGF with its lock held, before the variations are read */
+  void unfold() {
+    lazy = null;
+  }
+
+  /**
+   * @return whether a history list of the board went to this node or to a node below it that was
+   *     read already
+   */
+  boolean isVisited() {
+    ArrayDeque<BoardHistoryNode> stack = new ArrayDeque<>();
+    stack.push(this);
+    while (!stack.isEmpty()) {
+      BoardHistoryNode node = stack.pop();
+      if (node.visited) return true;
+      stack.addAll(node.variations);
+    }
+    return false;
+  }
+
+  /**
+   * Makes a node to read variations of this node apart from its tree, on another thread: it has a
+   * copy of the position and the parent of this node, but is not one of its variations
+   *
+   * @return the node, whose variations are moved to this node by {@link #graft}
+   */
+  BoardHistoryNode detach() {
+    BoardData copy = data.clone();
+    copy.winrate = data.winrate;
+    copy.scoreMean = data.scoreMean;
+    BoardHistoryNode node = new BoardHistoryNode(copy);
+    node.previous = previous;
+    node.level = level;
+    return node;
+  }
+
+  /**
+   * Moves the variations read on a detached node after the variations of this node. The nodes keep
+   * the tree they were read in until {@link #adoptSubtree} is called
+   *
+   * @param detached the node made by {@link #detach} from this node
+   */
+  void graft(BoardHistoryNode detached) {
+    lazy = null;
+    for (BoardHistoryNode child : detached.variations) {
+      child.previous = Optional.of(this);
+      variations.add(child);
+    }
+    detached.variations.clear();
+  }
+
+  /** Makes the nodes below this node part of its tree, after variations were grafted on it */
+  void adoptSubtree() {
+    ArrayDeque<BoardHistoryNode> stack = new ArrayDeque<>(variations);
+    while (!stack.isEmpty()) {
+      BoardHistoryNode node = stack.pop();
+      node.tree = tree;
+      node.jumps = null;
+      node.jumpsVersion = -1;
+      node.trunkVersion = -1;
+      node.endVersion = -1;
+      node.sizeVersion = -1;
+      // the cache of the tree they were read in goes away with it
+      if (PositionCache.isEnabled() && node.data.stones != null) tree.cache.touch(node);
+      stack.addAll(node.variations);
+    }
+    tree.linksChanged();
+    for (BoardHistoryNode child : variations) tree.subtreeAdded(child);
+  }
+
+  /** @return variations for display, read first if they are still in a lazy sgf file */
   public List<BoardHistoryNode> getVariations() {
+    expand();
     return variations;
   }
 
@@ -152,13 +489,14 @@ public class BoardHistoryNode {
   }
 
   public Optional<BoardHistoryNode> next(boolean includeDummy) {
+    expand();
     return variations.isEmpty() || (!includeDummy && variations.get(0).isEndDummay())
         ? Optional.empty()
         : Optional.of(variations.get(0));
   }
 
   public boolean isEndDummay() {
-    return this.data.dummy && variations.isEmpty();
+    return this.data.dummy && variations.isEmpty() && lazy == null;
   }
 
   public BoardHistoryNode topOfBranch() {
@@ -170,6 +508,7 @@ public class BoardHistoryNode {
   }
 
   public int numberOfChildren() {
+    expand();
     return variations.size();
   }
 
@@ -182,6 +521,7 @@ public class BoardHistoryNode {
   }
 
   public Optional<BoardHistoryNode> getVariation(int idx) {
+    expand();
     if (variations.size() <= idx) {
       return Optional.empty();
     } else {
@@ -206,6 +546,7 @@ public class BoardHistoryNode {
         if ((i - 1) == 0) {
           child.swapMoveNumberList(tmp);
         }
+        tree.orderChanged();
         return;
       }
     }
@@ -220,6 +561,7 @@ public class BoardHistoryNode {
         if (i == 0) {
           tmp.swapMoveNumberList(child);
         }
+        tree.orderChanged();
         return;
       }
     }
@@ -243,11 +585,10 @@ public class BoardHistoryNode {
 
   public void resetMoveNumberList(int start) {
     BoardData data = this.getData();
-    int[] moveNumberList = data.moveNumberList;
     data.moveMNNumber = start;
     if (data.lastMove.isPresent() && !data.dummy) {
       int[] move = data.lastMove.get();
-      moveNumberList[Board.getIndex(move[0], move[1])] = start;
+      data.setMoveNumber(data.getGeometry().getIndex(move[0], move[1]), start);
     }
     Optional<BoardHistoryNode> node = this.previous();
     int moveNumber = start;
@@ -256,7 +597,7 @@ public class BoardHistoryNode {
       if (nodeData.lastMove.isPresent()) {
         int[] move = nodeData.lastMove.get();
         moveNumber = (moveNumber > 1) ? moveNumber - 1 : 0;
-        moveNumberList[Board.getIndex(move[0], move[1])] = moveNumber;
+        data.setMoveNumber(data.getGeometry().getIndex(move[0], move[1]), moveNumber);
       }
       node = node.get().previous();
     }
@@ -264,10 +605,37 @@ public class BoardHistoryNode {
 
   public void deleteChild(int idx) {
     if (idx < numberOfChildren()) {
-      variations.remove(idx);
+      tree.subtreeRemoved(variations.remove(idx));
+      tree.orderChanged();
     }
   }
 
+  /** Must be called after the variations of this node were reordered or edited directly */
+  public void variationsChanged() {
+    tree.orderChanged();
+  }
+
+  /** Must be called after the stones of this node were edited in place */
+  void stonesChanged() {
+    tree.positionChanged(this);
+  }
+
+  /**
+   * Finds the nodes of the game tree that reach the same position as this one by another order of
+   * moves, or a rotation or mirror of it; {@link BoardData#bestMovesFor} turns their analysis to
+   * the orientation of this node
+   *
+   * @return the nodes with the same position up to a symmetry, this one included
+   */
+  public List<BoardHistoryNode> getTranspositions() {
+    return tree.transpositions(this);
+  }
+
+  /** @return whether another node of the game tree has the same position up to a symmetry */
+  public boolean isTransposed() {
+    return tree.isTransposed(this);
+  }
+
   /** @param fromBackChildren the fromBackChildren to set */
   public void setFromBackChildren(int fromBackChildren) {
     this.fromBackChildren = fromBackChildren;
@@ -284,13 +652,14 @@ public class BoardHistoryNode {
    * @return number of moves in a tree
    */
   public int getDepth() {
-    BoardHistoryNode node = this;
-    int c = 0;
-    while (node.next().isPresent()) {
-      c++;
-      node = node.next().get();
-    }
-    return c;
+    updateEnd();
+    return depth;
+  }
+
+  /** @return the last node of the left-most variation from this node */
+  public BoardHistoryNode getEnd() {
+    updateEnd();
+    return end;
   }
 
   /**
@@ -300,16 +669,8 @@ public class BoardHistoryNode {
    * @return the child at the given depth
    */
   public BoardHistoryNode childAtDepth(int depth) {
-    BoardHistoryNode node = this;
-    for (int i = 0; i < depth; i++) {
-      Optional<BoardHistoryNode> next = node.next();
-      if (next.isPresent()) {
-        node = next.get();
-      } else {
-        break;
-      }
-    }
-    return node;
+    if (depth <= 0) return this;
+    return getEnd().ancestorAtLevel(level + Math.min(depth, getDepth()));
   }
 
   /**
@@ -341,16 +702,15 @@ public class BoardHistoryNode {
    * @return top of variation, if on main trunk, return start move
    */
   public BoardHistoryNode findTop() {
-    BoardHistoryNode start = this;
-    BoardHistoryNode top = start;
-    while (start.previous().isPresent()) {
-      BoardHistoryNode pre = start.previous().get();
-      if (pre.next(true).isPresent() && pre.next(true).get() != start) {
-        top = pre;
-      }
-      start = pre;
+    updateTrunkFlags();
+    if (firstVariations) return this;
+    // the highest node that is not a first variation, its parent is the top
+    BoardHistoryNode node = this;
+    for (int k = jumps().length - 1; k >= 0; k--) {
+      BoardHistoryNode[] up = node.jumps();
+      if (k < up.length && !up[k].isOnFirstVariations()) node = up[k];
     }
-    return top;
+    return node.parent();
   }
 
   /**
@@ -465,15 +825,194 @@ public class BoardHistoryNode {
    * @return true if node is part of main trunk, false otherwise
    */
   public boolean isMainTrunk() {
+    updateTrunkFlags();
+    return mainTrunk;
+  }
+
+  private boolean isOnFirstVariations() {
+    updateTrunkFlags();
+    return firstVariations;
+  }
+
+  /** @return the distance from the root */
+  public int getLevel() {
+    return level;
+  }
+
+  /** @return the root of the tree */
+  public BoardHistoryNode getRoot() {
+    return tree.root;
+  }
+
+  /**
+   * The nearest node up to this one whose position is not reached by playing moves from the root,
+   * because stones were added or removed on it. Moves only describe the line from there.
+   *
+   * @return the node, the root unless there are setup stones below it
+   */
+  public BoardHistoryNode setupBase() {
     BoardHistoryNode node = this;
-    while (node.previous().isPresent()) {
-      BoardHistoryNode pre = node.previous().get();
-      if (pre.next().isPresent() && pre.next().get() != node) {
-        return false;
+    while (node.previous != null && node.previous.isPresent()) {
+      BoardHistoryNode parent = node.previous.get();
+      if (!node.isMoveFrom(parent)) return node;
+      node = parent;
+    }
+    return node;
+  }
+
+  /**
+   * @return whether the stones of this node are those of its parent after its move and the captures
+   *     it made
+   */
+  private boolean isMoveFrom(BoardHistoryNode parent) {
+    BoardData before = parent.data;
+    Stone color = data.lastMoveColor;
+    if (!color.isBlack() && !color.isWhite()) {
+      return Arrays.equals(
+              before.getBitBoard().stones(Stone.BLACK), data.getBitBoard().stones(Stone.BLACK))
+          && Arrays.equals(
+              before.getBitBoard().stones(Stone.WHITE), data.getBitBoard().stones(Stone.WHITE));
+    }
+    long[] own = before.getBitBoard().stones(color);
+    if (data.lastMove.isPresent()) {
+      int[] move = data.lastMove.get();
+      int index = data.getGeometry().getIndex(move[0], move[1]);
+      if (before.getStones()[index] != Stone.EMPTY) return false;
+      BitBoard.set(own, index);
+    }
+    if (!Arrays.equals(own, data.getBitBoard().stones(color))) return false;
+    long[] opponentBefore = before.getBitBoard().stones(color.opposite());
+    long[] opponentAfter = data.getBitBoard().stones(color.opposite());
+    int captured = 0;
+    for (int i = 0; i < opponentBefore.length; i++) {
+      if ((opponentAfter[i] & ~opponentBefore[i]) != 0) return false;
+      captured += Long.bitCount(opponentBefore[i] & ~opponentAfter[i]);
+    }
+    return captured
+        == (color.isBlack()
+            ? data.blackCaptures - before.blackCaptures
+            : data.whiteCaptures - before.whiteCaptures);
+  }
+
+  /**
+   * Returns the ancestor of this node at a level, in logarithmic time
+   *
+   * @param level the distance of the ancestor from the root
+   * @return the ancestor, this node at its own level, or null if the level is below it
+   */
+  public BoardHistoryNode ancestorAtLevel(int level) {
+    if (level < 0 || level > this.level) return null;
+    BoardHistoryNode node = this;
+    int distance = this.level - level;
+    for (int k = 0; distance > 0; k++, distance >>= 1) {
+      if ((distance & 1) != 0) node = node.jumps()[k];
+    }
+    return node;
+  }
+
+  /**
+   * Returns the deepest node that is an ancestor of both nodes, in logarithmic time
+   *
+   * @param other a node of the same tree
+   * @return the common ancestor, possibly one of the nodes, or null if the trees differ
+   */
+  public BoardHistoryNode lowestCommonAncestor(BoardHistoryNode other) {
+    if (other == null || other.tree != tree) return null;
+    BoardHistoryNode a = ancestorAtLevel(Math.min(level, other.level));
+    BoardHistoryNode b = other.ancestorAtLevel(Math.min(level, other.level));
+    if (a == b) return a;
+    for (int k = a.jumps().length - 1; k >= 0; k--) {
+      if (a.jumps()[k] != b.jumps()[k]) {
+        a = a.jumps()[k];
+        b = b.jumps()[k];
       }
-      node = pre;
     }
-    return true;
+    return a.parent();
+  }
+
+  /**
+   * @return the number of nodes in the tree below this node, this node included, without the
+   *     variations still in a lazy sgf file
+   */
+  public int getSubtreeSize() {
+    if (sizeVersion == tree.shape) return subtreeSize;
+    // count children before parents
+    ArrayList<BoardHistoryNode> order = new ArrayList<>();
+    order.add(this);
+    for (int i = 0; i < order.size(); i++) {
+      for (BoardHistoryNode child : order.get(i).variations) {
+        if (child.sizeVersion != tree.shape) order.add(child);
+      }
+    }
+    for (int i = order.size() - 1; i >= 0; i--) {
+      BoardHistoryNode node = order.get(i);
+      node.subtreeSize = 1;
+      for (BoardHistoryNode child : node.variations) node.subtreeSize += child.subtreeSize;
+      node.sizeVersion = tree.shape;
+    }
+    return subtreeSize;
+  }
+
+  private BoardHistoryNode parent() {
+    return previous == null ? null : previous.orElse(null);
+  }
+
+  /** @return the ancestors 1, 2, 4... levels up, rebuilt from the nearest current ones if stale */
+  private BoardHistoryNode[] jumps() {
+    if (jumpsVersion != tree.links) {
+      ArrayList<BoardHistoryNode> stale = new ArrayList<>();
+      for (BoardHistoryNode n = this; n != null && n.jumpsVersion != tree.links; n = n.parent()) {
+        stale.add(n);
+      }
+      for (int i = stale.size() - 1; i >= 0; i--) {
+        BoardHistoryNode n = stale.get(i);
+        int count = 32 - Integer.numberOfLeadingZeros(n.level);
+        n.jumps = new BoardHistoryNode[count];
+        if (count > 0) n.jumps[0] = n.parent();
+        for (int k = 1; k < count; k++) {
+          n.jumps[k] = n.jumps[k - 1].jumps[k - 1];
+        }
+        n.jumpsVersion = tree.links;
+      }
+    }
+    return jumps;
+  }
+
+  private void updateTrunkFlags() {
+    if (trunkVersion == tree.order) return;
+    ArrayList<BoardHistoryNode> stale = new ArrayList<>();
+    for (BoardHistoryNode n = this; n != null && n.trunkVersion != tree.order; n = n.parent()) {
+      stale.add(n);
+    }
+    for (int i = stale.size() - 1; i >= 0; i--) {
+      BoardHistoryNode n = stale.get(i);
+      BoardHistoryNode pre = n.parent();
+      if (pre == null) {
+        n.mainTrunk = true;
+        n.firstVariations = true;
+      } else {
+        n.mainTrunk = pre.mainTrunk && !(pre.next().isPresent() && pre.next().get() != n);
+        n.firstVariations = pre.firstVariations && pre.variations.get(0) == n;
+      }
+      n.trunkVersion = tree.order;
+    }
+  }
+
+  private void updateEnd() {
+    if (endVersion == tree.shape) return;
+    ArrayList<BoardHistoryNode> stale = new ArrayList<>();
+    BoardHistoryNode n = this;
+    while (n != null && n.endVersion != tree.shape) {
+      stale.add(n);
+      n = n.next().orElse(null);
+    }
+    for (int i = stale.size() - 1; i >= 0; i--) {
+      BoardHistoryNode node = stale.get(i);
+      BoardHistoryNode next = node.next().orElse(null);
+      node.end = next == null ? node : next.end;
+      node.depth = next == null ? 0 : next.depth + 1;
+      node.endVersion = tree.shape;
+    }
   }
 
   /**
@@ -581,6 +1120,8 @@ public class BoardHistoryNode {
       if (!cur.compare(node)) {
         BoardData sData = cur.getData();
         sData.sync(node.getData());
+        tree.orderChanged();
+        tree.positionChanged(cur);
         if (node.numberOfChildren() > 0) {
           for (int i = 0; i < node.numberOfChildren(); i++) {
             if (node.getVariation(i).isPresent()) {
@@ -0,0 +1,167 @@
+package featurecat.lizzie.rules;
+
+import java.util.Optional;
+
+/**
+ * Structural edits of the game tree, made on the history only. Get one from {@link
+ * Board#transaction}: the engine, the snapshot and the window are brought up to date once when the
+ * edits are done, instead of once for every move they play.
+ *
+ * <p>Moves are checked like moves played on the board, on the chain tables that the history keeps
+ * from move to move, so replaying a long line costs little more than copying it.
+ */
+public class BoardTransaction {
+  private final BoardHistoryList history;
+
+  BoardTransaction(BoardHistoryList history) {
+    this.history = history;
+  }
+
+  /** @return the history being edited */
+  public BoardHistoryList getHistory() {
+    return history;
+  }
+
+  /**
+   * Plays a move after the current node, or goes to it if it is already there
+   *
+   * @param x x coordinate
+   * @param y y coordinate
+   * @param color the color of the move
+   * @return whether the move was legal
+   */
+  public boolean play(int x, int y, Stone color) {
+    BoardHistoryNode before = history.getCurrentHistoryNode();
+    history.place(x, y, color);
+    return history.getCurrentHistoryNode() != before;
+  }
+
+  /**
+   * Passes after the current node, or goes to the pass if it is already there
+   *
+   * @param color the color of the pass
+   */
+  public void pass(Stone color) {
+    history.pass(color);
+  }
+
+  /**
+   * Goes to a move of the current line
+   *
+   * @param moveNumber the move number
+   * @return whether the current node changed
+   */
+  public boolean goToMoveNumber(int moveNumber) {
+    return history.goToMoveNumber(moveNumber, false);
+  }
+
+  /**
+   * Replaces a move of the current line, and replays the moves after it with alternating colors
+   *
+   * @param moveNumber the number of the move to replace
+   * @param coords the new move, null for a pass
+   * @return whether the line has such a move
+   */
+  public boolean replaceMove(int moveNumber, int[] coords) {
+    return changeMove(moveNumber, coords, false);
+  }
+
+  /**
+   * Gives a move of the current line to the other color, keeping the colors of the moves after it
+   *
+   * @param moveNumber the number of the move
+   * @return whether the line has such a move
+   */
+  public boolean swapColor(int moveNumber) {
+    return changeMove(moveNumber, null, true);
+  }
+
+  private boolean changeMove(int moveNumber, int[] coords, boolean swapColorOnly) {
+    if (moveNumber <= 0 || moveNumber > history.getEnd().moveNumberOfNode()) {
+      return false;
+    }
+    int currentMoveNumber = history.getMoveNumber();
+    history.goToMoveNumber(moveNumber - 1, false);
+
+    Optional<BoardHistoryNode> changeNode = history.getCurrentHistoryNode().next();
+    Optional<BoardHistoryNode> relink = changeNode.flatMap(n -> n.next());
+
+    if (swapColorOnly) {
+      changeNode.ifPresent(n -> replay(n.getData().lastMove, n.getData().lastMoveColor.opposite()));
+    } else {
+      replay(Optional.ofNullable(coords), nextColor());
+    }
+
+    // the new node took over the moves after the old one, play them again on top of it
+    for (Optional<BoardHistoryNode> node = relink; node.isPresent(); node = node.get().next()) {
+      BoardData data = node.get().getData();
+      replay(data.lastMove, swapColorOnly ? data.lastMoveColor : nextColor());
+    }
+
+    history.goToMoveNumber(currentMoveNumber, false);
+    return true;
+  }
+
+  /** Plays a move or a pass in place of the next node */
+  private void replay(Optional<int[]> move, Stone color) {
+    if (move.isPresent() && history.getGeometry().isValid(move.get())) {
+      history.place(move.get()[0], move.get()[1], color, false, true);
+    } else {
+      history.pass(color, false, false, true);
+    }
+  }
+
+  private Stone nextColor() {
+    return history.isBlacksTurn() ? Stone.BLACK : Stone.WHITE;
+  }
+
+  /**
+   * Makes the branch of the current node the first variation of the node it starts from
+   *
+   * @return whether the branch moved, false once the current node is on the main trunk
+   */
+  public boolean setAsMainBranch() {
+    BoardHistoryNode current = history.getCurrentHistoryNode();
+    if (current.isMainTrunk()) return false;
+    BoardHistoryNode topNode = current.topOfFatherBranch();
+    BoardHistoryNode mainNode = current.nodeBeforeTopOfFatherBranch();
+    BoardHistoryNode oldFirstVar = mainNode.variations.get(0);
+    for (int i = 0; i < mainNode.variations.size(); i++) {
+      if (mainNode.variations.get(i) == topNode) {
+        mainNode.variations.remove(i);
+        mainNode.variations.add(i, oldFirstVar);
+        mainNode.variations.remove(0);
+        mainNode.variations.add(0, topNode);
+        mainNode.variationsChanged();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Makes the current position the root of the game, as for handicap stones */
+  public void flatten() {
+    history.flatten();
+  }
+
+  /**
+   * Merges the nodes of another game that differ from this one, and follows the line to its end
+   * from the first difference
+   *
+   * @param other the other game, at its first node
+   * @return the number of the first move that differed, -1 if none did
+   */
+  public int sync(BoardHistoryList other) {
+    int diffMove = history.sync(other);
+    if (diffMove >= 0) {
+      int moveNumber = diffMove > 0 ? diffMove - 1 : 0;
+      // go to the main trunk if the current branch is shorter than the move number
+      if (moveNumber > history.currentBranchLength() && moveNumber <= history.mainTrunkLength()) {
+        history.goToMoveNumber(0, false);
+      }
+      history.goToMoveNumber(moveNumber, false);
+      while (history.next().isPresent()) ;
+    }
+    return diffMove;
+  }
+}
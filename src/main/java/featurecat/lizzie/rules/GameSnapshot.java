@@ -0,0 +1,260 @@
+package featurecat.lizzie.rules;
+
+import featurecat.lizzie.analysis.Leelaz;
+import featurecat.lizzie.analysis.MoveData;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * An immutable view of the game for the threads that only read it: the current node, a copy of its
+ * position and the analysis to show for it. The board publishes a new snapshot after each change
+ * and the engine after each analysis update, so renderers never need the board lock and never see a
+ * position or a list of moves half updated.
+ *
+ * <p>Only the stones and move numbers are copied when a snapshot is taken, as the board edits them
+ * in place. The bitboard, the chains, the legal moves and the stored analysis are worked out from
+ * them when first asked for, once for all the snapshots of the same publication.
+ *
+ * <p>The arrays, the chains and the hash returned by the getters are shared by every reader and
+ * must not be edited; copy them to play moves on.
+ */
+public final class GameSnapshot {
+  private final BoardHistoryNode node;
+  private final Stone[] stones;
+  private final int[] moveNumberList;
+  private final Optional<int[]> lastMove;
+  private final Stone lastMoveColor;
+  private final boolean blackToPlay;
+  private final int moveNumber;
+  private final long fingerprint;
+  private final Zobrist zobrist;
+  private final int koPoint;
+  private final int blackCaptures;
+  private final int whiteCaptures;
+  // what is worked out on demand, shared with the snapshots that only add analysis to this one
+  private final Derived derived;
+  // the analysis the engine sent for this position since the snapshot was first taken
+  private final List<MoveData> liveMoves;
+
+  private GameSnapshot(GameSnapshot from, List<MoveData> liveMoves) {
+    this.node = from.node;
+    this.stones = from.stones;
+    this.moveNumberList = from.moveNumberList;
+    this.lastMove = from.lastMove;
+    this.lastMoveColor = from.lastMoveColor;
+    this.blackToPlay = from.blackToPlay;
+    this.moveNumber = from.moveNumber;
+    this.fingerprint = from.fingerprint;
+    this.zobrist = from.zobrist;
+    this.koPoint = from.koPoint;
+    this.blackCaptures = from.blackCaptures;
+    this.whiteCaptures = from.whiteCaptures;
+    this.derived = from.derived;
+    this.liveMoves = liveMoves;
+  }
+
+  private GameSnapshot(BoardHistoryList history, double komi, List<MoveData> liveMoves) {
+    BoardHistoryNode node = history.getCurrentHistoryNode();
+    BoardData data = node.getData();
+    this.node = node;
+    this.stones = data.getStones().clone();
+    this.moveNumberList = data.getMoveNumberList().clone();
+    this.lastMove = data.lastMove;
+    this.lastMoveColor = data.lastMoveColor;
+    this.blackToPlay = data.blackToPlay;
+    this.moveNumber = data.moveNumber;
+    this.fingerprint = data.getFingerprint();
+    this.zobrist = data.zobrist.clone();
+    this.koPoint = data.getKoPoint();
+    this.blackCaptures = data.blackCaptures;
+    this.whiteCaptures = data.whiteCaptures;
+    this.derived = new Derived(history, komi);
+    this.liveMoves = liveMoves;
+  }
+
+  /**
+   * The parts of a snapshot that are worked out when first asked for. Racing readers may both work
+   * one out, which gives the same value.
+   */
+  private static final class Derived {
+    private final BoardHistoryList history;
+    private final double komi;
+    private volatile BitBoard position;
+    private volatile GroupTable groups;
+    // the points where the side to move may play, checked against the whole game
+    private volatile long[] legalMoves;
+    // the analysis stored in the node or a transposition of it, if made with the current engine
+    // and komi
+    private volatile List<MoveData> storedMoves;
+
+    Derived(BoardHistoryList history, double komi) {
+      this.history = history;
+      this.komi = komi;
+    }
+  }
+
+  /**
+   * The points where the side to move may play at the node, checked on the game itself while it is
+   * still at the node, otherwise on a list built on the node that has the same line of play
+   */
+  private static long[] legalMoves(BoardHistoryList history, BoardHistoryNode node) {
+    synchronized (history) {
+      return LegalMoves.of(
+          history.getCurrentHistoryNode() == node
+              ? history
+              : new BoardHistoryList(node, history.getGameInfo()));
+    }
+  }
+
+  /**
+   * The deepest analysis stored for the position of the node by any order of moves, turned to the
+   * orientation of the node if it was stored for a rotation or mirror of it
+   */
+  private static List<MoveData> storedMoves(BoardHistoryNode node, double komi) {
+    BoardData best = null;
+    for (BoardHistoryNode other : node.getTranspositions()) {
+      BoardData data = other.getData();
+      if (data.engineIndex == Leelaz.engineIndex
+          && data.komi == komi
+          && data.bestMoves != null
+          && (best == null || data.getPlayouts() > best.getPlayouts())) {
+        best = data;
+      }
+    }
+    return best != null ? copy(best.bestMovesFor(node.getData())) : Collections.emptyList();
+  }
+
+  /**
+   * Takes a snapshot of the current node of a game
+   *
+   * @param history the game
+   * @param komi the komi of the game
+   * @param previous the snapshot published before, whose engine analysis is kept if it was of the
+   *     same node, or null
+   * @return the snapshot
+   */
+  static GameSnapshot of(BoardHistoryList history, double komi, GameSnapshot previous) {
+    return new GameSnapshot(
+        history,
+        komi,
+        previous != null && previous.node == history.getCurrentHistoryNode()
+            ? previous.liveMoves
+            : Collections.emptyList());
+  }
+
+  /**
+   * @param bestMoves the latest analysis of the engine for this position
+   * @return a snapshot of the same position with that analysis
+   */
+  public GameSnapshot withAnalysis(List<MoveData> bestMoves) {
+    return new GameSnapshot(this, copy(bestMoves));
+  }
+
+  private static List<MoveData> copy(List<MoveData> moves) {
+    return Collections.unmodifiableList(new ArrayList<>(moves));
+  }
+
+  public BoardHistoryNode getNode() {
+    return node;
+  }
+
+  public Stone[] getStones() {
+    return stones;
+  }
+
+  public BitBoard getBitBoard() {
+    BitBoard position = derived.position;
+    if (position == null) {
+      BoardGeometry geometry = getGeometry();
+      position = BitBoard.of(stones, geometry.getWidth(), geometry.getHeight());
+      derived.position = position;
+    }
+    return position;
+  }
+
+  public int[] getMoveNumberList() {
+    return moveNumberList;
+  }
+
+  public Optional<int[]> getLastMove() {
+    return lastMove;
+  }
+
+  public Stone getLastMoveColor() {
+    return lastMoveColor;
+  }
+
+  public boolean isBlackToPlay() {
+    return blackToPlay;
+  }
+
+  public int getMoveNumber() {
+    return moveNumber;
+  }
+
+  public long getFingerprint() {
+    return fingerprint;
+  }
+
+  public BoardGeometry getGeometry() {
+    return zobrist.getGeometry();
+  }
+
+  /** @return the chains of the position */
+  public GroupTable getGroups() {
+    GroupTable groups = derived.groups;
+    if (groups == null) {
+      BoardGeometry geometry = getGeometry();
+      groups = GroupTable.of(stones, geometry.getWidth(), geometry.getHeight());
+      derived.groups = groups;
+    }
+    return groups;
+  }
+
+  public Zobrist getZobrist() {
+    return zobrist;
+  }
+
+  public int getKoPoint() {
+    return koPoint;
+  }
+
+  public int getBlackCaptures() {
+    return blackCaptures;
+  }
+
+  public int getWhiteCaptures() {
+    return whiteCaptures;
+  }
+
+  /** @return the points where the side to move may play, in the layout of {@link BitBoard} */
+  public long[] getLegalMoves() {
+    long[] legalMoves = derived.legalMoves;
+    if (legalMoves == null) {
+      legalMoves = legalMoves(derived.history, node);
+      derived.legalMoves = legalMoves;
+    }
+    return legalMoves;
+  }
+
+  /**
+   * @param preferStored whether the analysis stored in the node is shown while the engine has not
+   *     searched as deep
+   * @return the analysis to show
+   */
+  public List<MoveData> getBestMoves(boolean preferStored) {
+    if (!preferStored) return liveMoves;
+    List<MoveData> storedMoves = derived.storedMoves;
+    if (storedMoves == null) {
+      synchronized (derived.history) {
+        storedMoves = storedMoves(node, derived.komi);
+      }
+      derived.storedMoves = storedMoves;
+    }
+    return preferStored && MoveData.getPlayouts(liveMoves) < MoveData.getPlayouts(storedMoves)
+        ? storedMoves
+        : liveMoves;
+  }
+}
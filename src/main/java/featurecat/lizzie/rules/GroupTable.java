@@ -0,0 +1,330 @@
+package featurecat.lizzie.rules;
+
+/**
+ * Chains (groups) of a position: the chain id of every point, the members of every chain and its
+ * liberties. The table is kept alongside {@link BoardData} and updated incrementally, so a move
+ * only touches the chains next to it and capture and suicide checks never flood fill or mark up the
+ * stones array.
+ */
+public class GroupTable {
+  private final int width;
+  private final int height;
+  private final int words;
+
+  // BLACK, WHITE or EMPTY for every point
+  private final Stone[] colors;
+  // id of the chain at every point (the index of one of its stones), -1 for empty points
+  private final int[] chainIds;
+  // next stone of the same chain, the members of a chain form a circular list
+  private final int[] nextMembers;
+  // number of stones of a chain, indexed by chain id
+  private final int[] sizes;
+  // liberties of a chain as a bit set, indexed by chain id
+  private final long[][] liberties;
+
+  /** Creates the table of an empty board */
+  public GroupTable(int width, int height) {
+    this.width = width;
+    this.height = height;
+    int size = width * height;
+    words = (size + 63) >>> 6;
+    colors = new Stone[size];
+    chainIds = new int[size];
+    nextMembers = new int[size];
+    sizes = new int[size];
+    liberties = new long[size][];
+    for (int i = 0; i < size; i++) {
+      colors[i] = Stone.EMPTY;
+      chainIds[i] = -1;
+    }
+  }
+
+  private GroupTable(GroupTable other) {
+    width = other.width;
+    height = other.height;
+    words = other.words;
+    colors = other.colors.clone();
+    chainIds = other.chainIds.clone();
+    nextMembers = other.nextMembers.clone();
+    sizes = other.sizes.clone();
+    liberties = new long[other.liberties.length][];
+    for (int i = 0; i < liberties.length; i++) {
+      if (other.liberties[i] != null) {
+        liberties[i] = other.liberties[i].clone();
+      }
+    }
+  }
+
+  /**
+   * Builds the table of a position from scratch
+   *
+   * @param stones the stones of the position, ghost stones count as stones
+   * @param width board width
+   * @param height board height
+   * @return the chain table
+   */
+  public static GroupTable of(Stone[] stones, int width, int height) {
+    GroupTable table = new GroupTable(width, height);
+    for (int i = 0; i < stones.length; i++) {
+      table.colors[i] = stones[i].unGhosted();
+    }
+    int[] stack = new int[stones.length];
+    for (int i = 0; i < stones.length; i++) {
+      if (table.colors[i] == Stone.EMPTY || table.chainIds[i] >= 0) continue;
+      // flood fill the chain of i, linking its members in a circular list
+      Stone color = table.colors[i];
+      long[] libs = new long[table.words];
+      int last = i;
+      int size = 0;
+      int top = 0;
+      stack[top++] = i;
+      table.chainIds[i] = i;
+      while (top > 0) {
+        int p = stack[--top];
+        table.nextMembers[last] = p;
+        last = p;
+        size++;
+        for (int dir = 0; dir < 4; dir++) {
+          int n = table.neighbor(p, dir);
+          if (n < 0) continue;
+          if (table.colors[n] == Stone.EMPTY) {
+            libs[n >>> 6] |= 1L << n;
+          } else if (table.colors[n] == color && table.chainIds[n] < 0) {
+            table.chainIds[n] = i;
+            stack[top++] = n;
+          }
+        }
+      }
+      table.nextMembers[last] = i;
+      table.sizes[i] = size;
+      table.liberties[i] = libs;
+    }
+    return table;
+  }
+
+  /** @return a deep copy of this table */
+  public GroupTable copy() {
+    return new GroupTable(this);
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /** @return the color at index, BLACK, WHITE or EMPTY */
+  public Stone colorAt(int index) {
+    return colors[index];
+  }
+
+  /** @return the id of the chain at index, -1 for an empty point */
+  public int chainAt(int index) {
+    return chainIds[index];
+  }
+
+  /** @return the number of stones in the chain at index, 0 for an empty point */
+  public int chainSize(int index) {
+    int id = chainIds[index];
+    return id < 0 ? 0 : sizes[id];
+  }
+
+  /** @return the number of liberties of the chain at index, 0 for an empty point */
+  public int libertyCount(int index) {
+    int id = chainIds[index];
+    if (id < 0) return 0;
+    int count = 0;
+    for (long word : liberties[id]) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  /** @return the liberties of the chain at index */
+  public int[] liberties(int index) {
+    int id = chainIds[index];
+    if (id < 0) return new int[0];
+    int[] result = new int[libertyCount(index)];
+    int n = 0;
+    long[] libs = liberties[id];
+    for (int w = 0; w < libs.length; w++) {
+      long word = libs[w];
+      while (word != 0) {
+        result[n++] = (w << 6) + Long.numberOfTrailingZeros(word);
+        word &= word - 1;
+      }
+    }
+    return result;
+  }
+
+  /** @return the stones of the chain at index */
+  public int[] members(int index) {
+    int id = chainIds[index];
+    if (id < 0) return new int[0];
+    int[] result = new int[sizes[id]];
+    int p = id;
+    for (int n = 0; n < result.length; n++) {
+      result[n] = p;
+      p = nextMembers[p];
+    }
+    return result;
+  }
+
+  /**
+   * Checks a move without playing it
+   *
+   * @param index the empty point to play
+   * @param color the color to play
+   * @return whether the move would leave its own chain without liberties and capture nothing
+   */
+  public boolean isSuicide(int index, Stone color) {
+    for (int dir = 0; dir < 4; dir++) {
+      int n = neighbor(index, dir);
+      if (n < 0) continue;
+      if (colors[n] == Stone.EMPTY) return false;
+      int libs = libertyCount(n);
+      // a friendly chain keeps another liberty, or an enemy chain in atari is captured
+      if (colors[n] == color ? libs > 1 : libs == 1) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Finds the stones a move would capture, without playing it
+   *
+   * @param index the empty point to play
+   * @param color the color to play
+   * @return the captured points
+   */
+  public int[] captures(int index, Stone color) {
+    Stone enemy = color.opposite();
+    int[] ids = new int[4];
+    int found = 0;
+    int total = 0;
+    for (int dir = 0; dir < 4; dir++) {
+      int n = neighbor(index, dir);
+      if (n < 0 || colors[n] != enemy || libertyCount(n) != 1) continue;
+      int id = chainIds[n];
+      boolean seen = false;
+      for (int k = 0; k < found; k++) {
+        seen |= ids[k] == id;
+      }
+      if (!seen) {
+        ids[found++] = id;
+        total += sizes[id];
+      }
+    }
+    int[] result = new int[total];
+    int n = 0;
+    for (int k = 0; k < found; k++) {
+      int p = ids[k];
+      do {
+        result[n++] = p;
+        p = nextMembers[p];
+      } while (p != ids[k]);
+    }
+    return result;
+  }
+
+  /**
+   * Plays a move and removes the chains it captures. Only the chains next to the move are touched.
+   * The move must not be suicide.
+   *
+   * @param index the empty point to play
+   * @param color the color to play
+   * @return the captured points
+   */
+  public int[] play(int index, Stone color) {
+    int[] captured = captures(index, color);
+
+    colors[index] = color;
+    chainIds[index] = index;
+    nextMembers[index] = index;
+    sizes[index] = 1;
+    liberties[index] = new long[words];
+    for (int dir = 0; dir < 4; dir++) {
+      int n = neighbor(index, dir);
+      if (n < 0) continue;
+      if (colors[n] == Stone.EMPTY) {
+        setLiberty(index, n);
+      } else {
+        clearLiberty(chainIds[n], index);
+      }
+    }
+    for (int dir = 0; dir < 4; dir++) {
+      int n = neighbor(index, dir);
+      if (n >= 0 && colors[n] == color && chainIds[n] != chainIds[index]) {
+        merge(chainIds[index], chainIds[n]);
+      }
+    }
+
+    for (int p : captured) {
+      liberties[chainIds[p]] = null;
+      colors[p] = Stone.EMPTY;
+      chainIds[p] = -1;
+    }
+    for (int p : captured) {
+      for (int dir = 0; dir < 4; dir++) {
+        int n = neighbor(p, dir);
+        if (n >= 0 && colors[n] != Stone.EMPTY) {
+          setLiberty(chainIds[n], p);
+        }
+      }
+    }
+    return captured;
+  }
+
+  /**
+   * Adjacent point in one of four directions
+   *
+   * @param index the point
+   * @param dir 0 to 3 for left, right, up and down
+   * @return the neighbor, -1 if it is off the board
+   */
+  public int neighbor(int index, int dir) {
+    switch (dir) {
+      case 0:
+        return index >= height ? index - height : -1;
+      case 1:
+        return index < (width - 1) * height ? index + height : -1;
+      case 2:
+        return index % height != 0 ? index - 1 : -1;
+      default:
+        return (index + 1) % height != 0 ? index + 1 : -1;
+    }
+  }
+
+  private void setLiberty(int id, int point) {
+    liberties[id][point >>> 6] |= 1L << point;
+  }
+
+  private void clearLiberty(int id, int point) {
+    liberties[id][point >>> 6] &= ~(1L << point);
+  }
+
+  /** Merges the smaller of two chains into the larger one */
+  private void merge(int a, int b) {
+    if (sizes[a] < sizes[b]) {
+      int t = a;
+      a = b;
+      b = t;
+    }
+    int p = b;
+    do {
+      chainIds[p] = a;
+      p = nextMembers[p];
+    } while (p != b);
+    int t = nextMembers[a];
+    nextMembers[a] = nextMembers[b];
+    nextMembers[b] = t;
+    sizes[a] += sizes[b];
+    long[] libsA = liberties[a];
+    long[] libsB = liberties[b];
+    for (int w = 0; w < words; w++) {
+      libsA[w] |= libsB[w];
+    }
+    liberties[b] = null;
+  }
+}
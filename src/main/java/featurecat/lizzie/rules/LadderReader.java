@@ -0,0 +1,477 @@
+package featurecat.lizzie.rules;
+
+import java.util.Arrays;
+
+/**
+ * Reads ladders, nets and simple capturing races without the engine, so they can be shown as soon
+ * as a position is on the board. The reader plays on a scratch copy of a position with the capture
+ * and suicide rules of the board; repetitions are not checked, so a ladder that runs through a ko
+ * is read as if the ko could be retaken.
+ *
+ * <p>Chains are walked with one stack and a stamp per point, and moves are undone from a record of
+ * the stones they placed and captured. Every array is sized for the board when the reader is made,
+ * so a search allocates nothing. A reader is not thread safe; give each thread its own.
+ */
+public final class LadderReader {
+  private static final byte EMPTY = 0;
+  private static final byte BLACK = 1;
+  private static final byte WHITE = 2;
+  // a search that plays more moves than this gives up, and the chain is read as not captured
+  private static final int NODE_BUDGET = 1000;
+  // the moves that do not give atari the attacker may play in a line, to catch a chain in a net
+  private static final int NETS = 1;
+  // nets are only tried this close to the first move, they are local shapes
+  private static final int NET_DEPTH = 4;
+  // a chain that escapes only after this many moves of a ladder has met a ladder breaker
+  private static final int LADDER_LENGTH = 4;
+  // the most moves a search tries at one point of a line
+  private static final int CANDIDATES = 12;
+
+  private final BoardGeometry geometry;
+  private final int points;
+  // the four neighbors of each point, -1 off the board
+  private final int[] neighbors;
+  private final byte[] colors;
+
+  // flood fill stack, and the stamp of the last fill that reached each point
+  private final int[] stack;
+  private final int[] marks;
+  private int stamp;
+  // the first liberties found by the last count
+  private final int[] liberties = new int[4];
+  // the stones of a chain, and the liberties of the two chains of a race
+  private final int[] members;
+  private final int[] ownLiberties;
+  private final int[] theirLiberties;
+
+  // the point and the captures of each move played, and where the record of each move starts
+  private final int[] undo;
+  private int undoSize;
+  private final int[] moveStarts;
+  private int moves;
+
+  // the moves tried at each depth of a search
+  private final int[] candidates;
+  private final int maxDepth;
+  private int nodes;
+  // the stone that let the chain escape the last ladder, -1 if none did
+  private int breaker;
+
+  // the chains seen by the last scan, and what it found
+  private final int[] scanned;
+  private int scanStamp;
+  private final long[] working;
+  private final long[] breakers;
+
+  /**
+   * Makes a reader for boards of a size
+   *
+   * @param geometry the size of the board
+   */
+  public LadderReader(BoardGeometry geometry) {
+    this.geometry = geometry;
+    points = geometry.getPoints();
+    neighbors = new int[points * 4];
+    for (int p = 0; p < points; p++) {
+      int x = geometry.getX(p);
+      int y = geometry.getY(p);
+      neighbors[4 * p] = geometry.isValid(x - 1, y) ? geometry.getIndex(x - 1, y) : -1;
+      neighbors[4 * p + 1] = geometry.isValid(x + 1, y) ? geometry.getIndex(x + 1, y) : -1;
+      neighbors[4 * p + 2] = geometry.isValid(x, y - 1) ? geometry.getIndex(x, y - 1) : -1;
+      neighbors[4 * p + 3] = geometry.isValid(x, y + 1) ? geometry.getIndex(x, y + 1) : -1;
+    }
+    colors = new byte[points];
+    stack = new int[points];
+    marks = new int[points];
+    members = new int[points];
+    ownLiberties = new int[points];
+    theirLiberties = new int[points];
+    maxDepth = points;
+    // each move places one stone, and captures stones that were on the board or placed since
+    undo = new int[3 * points + 8];
+    moveStarts = new int[maxDepth + 2];
+    candidates = new int[(maxDepth + 2) * CANDIDATES];
+    scanned = new int[points];
+    working = new long[(points + 63) >>> 6];
+    breakers = new long[(points + 63) >>> 6];
+  }
+
+  /** @return the size of the boards this reader reads */
+  public BoardGeometry getGeometry() {
+    return geometry;
+  }
+
+  /**
+   * Copies a position onto the scratch board, ghost stones count as stones
+   *
+   * @param stones the stones of the position
+   */
+  public void load(Stone[] stones) {
+    for (int p = 0; p < points; p++) {
+      colors[p] = stones[p].isBlack() ? BLACK : stones[p].isWhite() ? WHITE : EMPTY;
+    }
+    undoSize = 0;
+    moves = 0;
+  }
+
+  /**
+   * Reads whether the opponent of a chain, to move, captures it by a ladder or a net
+   *
+   * @param point a stone of the chain
+   * @return whether the chain is captured, false if the search gave up
+   */
+  public boolean isCaptured(int point) {
+    if (colors[point] == EMPTY) return false;
+    nodes = 0;
+    breaker = -1;
+    // plain ladders are read first, they are cheap and the nets search repeats them at every depth
+    if (attack(point, 0, 0)) return true;
+    nodes = 0;
+    return attack(point, 0, NETS);
+  }
+
+  /**
+   * Reads whether a chain, to move, gets out of a ladder or a net
+   *
+   * @param point a stone of the chain
+   * @return whether the chain escapes, true if the search gave up
+   */
+  public boolean canEscape(int point) {
+    if (colors[point] == EMPTY) return false;
+    nodes = 0;
+    breaker = -1;
+    return defend(point, 0, NETS);
+  }
+
+  /** @return the stone the chain joined to escape the last ladder read, -1 if none */
+  public int getBreaker() {
+    return breaker;
+  }
+
+  /**
+   * Plays out a capturing race between two chains without eyes of their own: each side fills the
+   * liberties of the other from the outside in, and fills a shared liberty only if it keeps two
+   *
+   * @param a a stone of one chain
+   * @param b a stone of the other chain, of the other color
+   * @param toMove the color that moves first
+   * @return the color of the chain that captures the other, or empty for seki
+   */
+  public Stone readRace(int a, int b, Stone toMove) {
+    if (colors[a] == EMPTY || colors[b] == EMPTY || colors[a] == colors[b]) return Stone.EMPTY;
+    int start = moves;
+    byte side = toMove.isBlack() ? BLACK : WHITE;
+    byte winner = EMPTY;
+    int passes = 0;
+    for (int ply = 0; ply < maxDepth && passes < 2; ply++) {
+      int mine = colors[a] == side ? a : b;
+      int theirs = mine == a ? b : a;
+      if (countLiberties(theirs, 2) == 1 && play(liberties[0], side)) {
+        winner = side;
+        break;
+      }
+      passes = fill(mine, theirs, side) ? 0 : passes + 1;
+      side = opposite(side);
+    }
+    while (moves > start) undoMove();
+    return winner == BLACK ? Stone.BLACK : winner == WHITE ? Stone.WHITE : Stone.EMPTY;
+  }
+
+  /**
+   * Reads every chain with two liberties as if its opponent were to move. Afterwards {@link
+   * #getWorkingLadders} holds the stones of the chains a ladder or a net captures, and {@link
+   * #getLadderBreakers} the stones that break the ladders that fail.
+   */
+  public void scan() {
+    Arrays.fill(working, 0);
+    Arrays.fill(breakers, 0);
+    if (++scanStamp == Integer.MAX_VALUE) {
+      Arrays.fill(scanned, 0);
+      scanStamp = 1;
+    }
+    for (int p = 0; p < points; p++) {
+      if (colors[p] == EMPTY || scanned[p] == scanStamp) continue;
+      int size = collectChain(p);
+      for (int i = 0; i < size; i++) scanned[members[i]] = scanStamp;
+      if (countLiberties(p, 3) != 2) continue;
+      if (isCaptured(p)) {
+        // the search played on the board, so the chain is collected again
+        size = collectChain(p);
+        for (int i = 0; i < size; i++) BitBoard.set(working, members[i]);
+      } else if (breaker >= 0) {
+        BitBoard.set(breakers, breaker);
+      }
+    }
+  }
+
+  /** @return the stones of the chains that the last scan found captured, do not edit */
+  public long[] getWorkingLadders() {
+    return working;
+  }
+
+  /** @return the stones that break the ladders the last scan read, do not edit */
+  public long[] getLadderBreakers() {
+    return breakers;
+  }
+
+  /**
+   * Attacker to move: whether the chain at target is captured
+   *
+   * @param nets the number of moves that do not give atari the attacker may still play
+   */
+  private boolean attack(int target, int depth, int nets) {
+    int libs = countLiberties(target, 4);
+    if (libs == 1) return true;
+    if (depth >= NET_DEPTH) nets = 0;
+    if (libs > 3 || (libs == 3 && nets == 0) || ++nodes > NODE_BUDGET || depth >= maxDepth) {
+      return false;
+    }
+    int base = depth * CANDIDATES;
+    int count = 0;
+    for (int i = 0; i < libs; i++) candidates[base + count++] = liberties[i];
+    if (nets > 0 && libs == 2) {
+      // a net is a move next to a liberty that leaves the chain no way out
+      for (int i = 0; i < 2; i++) {
+        int lib = candidates[base + i];
+        for (int d = 0; d < 4; d++) {
+          int n = neighbors[4 * lib + d];
+          if (n >= 0 && colors[n] == EMPTY) count = addCandidate(base, count, n);
+        }
+      }
+    }
+    byte attacker = opposite(colors[target]);
+    for (int i = 0; i < count; i++) {
+      if (!play(candidates[base + i], attacker)) continue;
+      boolean atari = countLiberties(target, 2) == 1;
+      boolean captured = !defend(target, depth + 1, atari ? nets : nets - 1);
+      undoMove();
+      if (captured) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Defender to move: whether the chain at target lives
+   *
+   * @param nets the number of moves that do not give atari the attacker may still play
+   */
+  private boolean defend(int target, int depth, int nets) {
+    int libs = countLiberties(target, 4);
+    if (libs > 3 || (libs == 3 && (nets == 0 || depth + 1 >= NET_DEPTH))) return true;
+    if (libs == 0) return false;
+    if (++nodes > NODE_BUDGET || depth >= maxDepth) return true;
+    int base = depth * CANDIDATES;
+    int count = 0;
+    for (int i = 0; i < libs; i++) candidates[base + count++] = liberties[i];
+    count = addCaptures(target, base, count);
+    byte defender = colors[target];
+    for (int i = 0; i < count; i++) {
+      int move = candidates[base + i];
+      int joined = i < libs && depth >= LADDER_LENGTH ? otherChainAt(move, target) : -1;
+      if (!play(move, defender)) continue;
+      boolean lives = !attack(target, depth + 1, nets);
+      boolean escaped = lives && countLiberties(target, 3) >= 3;
+      undoMove();
+      if (lives) {
+        if (escaped && joined >= 0 && breaker < 0) breaker = joined;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Adds the points that capture an attacking chain in atari next to the target */
+  private int addCaptures(int target, int base, int count) {
+    byte attacker = opposite(colors[target]);
+    int size = collectChain(target);
+    for (int i = 0; i < size; i++) {
+      int p = members[i];
+      for (int d = 0; d < 4; d++) {
+        int n = neighbors[4 * p + d];
+        if (n >= 0 && colors[n] == attacker && countLiberties(n, 2) == 1) {
+          count = addCandidate(base, count, liberties[0]);
+        }
+      }
+    }
+    return count;
+  }
+
+  private int addCandidate(int base, int count, int move) {
+    if (count == CANDIDATES) return count;
+    for (int i = 0; i < count; i++) {
+      if (candidates[base + i] == move) return count;
+    }
+    candidates[base + count] = move;
+    return count + 1;
+  }
+
+  /** @return a stone of the target's color next to move that is not in the target's chain, or -1 */
+  private int otherChainAt(int move, int target) {
+    collectChain(target);
+    int mark = marks[target];
+    for (int d = 0; d < 4; d++) {
+      int n = neighbors[4 * move + d];
+      if (n >= 0 && colors[n] == colors[target] && marks[n] != mark) return n;
+    }
+    return -1;
+  }
+
+  /**
+   * Fills a liberty of the other chain in a race: an outside one first, then a shared one if the
+   * own chain keeps two liberties
+   *
+   * @return whether a move was played
+   */
+  private boolean fill(int mine, int theirs, byte side) {
+    int own = collectLiberties(mine, ownLiberties);
+    int their = collectLiberties(theirs, theirLiberties);
+    for (int pass = 0; pass < 2; pass++) {
+      for (int i = 0; i < their; i++) {
+        int lib = theirLiberties[i];
+        boolean shared = false;
+        for (int j = 0; j < own && !shared; j++) shared = ownLiberties[j] == lib;
+        if (shared != (pass == 1) || !play(lib, side)) continue;
+        if (!shared || countLiberties(mine, 2) >= 2) return true;
+        undoMove();
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Plays a move on the scratch board, removing the chains it captures
+   *
+   * @return whether the move was played, false if the point is taken or the move is suicide
+   */
+  private boolean play(int p, byte color) {
+    if (colors[p] != EMPTY) return false;
+    moveStarts[moves++] = undoSize;
+    undo[undoSize++] = p;
+    colors[p] = color;
+    byte enemy = opposite(color);
+    for (int d = 0; d < 4; d++) {
+      int n = neighbors[4 * p + d];
+      if (n >= 0 && colors[n] == enemy && countLiberties(n, 1) == 0) removeChain(n);
+    }
+    if (countLiberties(p, 1) == 0) {
+      undoMove();
+      return false;
+    }
+    return true;
+  }
+
+  /** Takes back the last move played, and puts back the stones it captured */
+  private void undoMove() {
+    int start = moveStarts[--moves];
+    int p = undo[start];
+    byte enemy = opposite(colors[p]);
+    for (int i = start + 1; i < undoSize; i++) colors[undo[i]] = enemy;
+    colors[p] = EMPTY;
+    undoSize = start;
+  }
+
+  private void removeChain(int p) {
+    byte color = colors[p];
+    int top = 0;
+    stack[top++] = p;
+    colors[p] = EMPTY;
+    undo[undoSize++] = p;
+    while (top > 0) {
+      int q = stack[--top];
+      for (int d = 0; d < 4; d++) {
+        int n = neighbors[4 * q + d];
+        if (n >= 0 && colors[n] == color) {
+          colors[n] = EMPTY;
+          undo[undoSize++] = n;
+          stack[top++] = n;
+        }
+      }
+    }
+  }
+
+  /**
+   * Counts the liberties of the chain at p, keeping the first four in {@link #liberties}
+   *
+   * @param max the count to stop at
+   * @return the number of liberties, at most max
+   */
+  private int countLiberties(int p, int max) {
+    byte color = colors[p];
+    int mark = nextStamp();
+    int top = 0;
+    int count = 0;
+    stack[top++] = p;
+    marks[p] = mark;
+    while (top > 0) {
+      int q = stack[--top];
+      for (int d = 0; d < 4; d++) {
+        int n = neighbors[4 * q + d];
+        if (n < 0 || marks[n] == mark) continue;
+        marks[n] = mark;
+        if (colors[n] == EMPTY) {
+          if (count < liberties.length) liberties[count] = n;
+          if (++count >= max) return count;
+        } else if (colors[n] == color) {
+          stack[top++] = n;
+        }
+      }
+    }
+    return count;
+  }
+
+  /** Writes all liberties of the chain at p into out, and returns their number */
+  private int collectLiberties(int p, int[] out) {
+    byte color = colors[p];
+    int mark = nextStamp();
+    int top = 0;
+    int count = 0;
+    stack[top++] = p;
+    marks[p] = mark;
+    while (top > 0) {
+      int q = stack[--top];
+      for (int d = 0; d < 4; d++) {
+        int n = neighbors[4 * q + d];
+        if (n < 0 || marks[n] == mark) continue;
+        marks[n] = mark;
+        if (colors[n] == EMPTY) {
+          out[count++] = n;
+        } else if (colors[n] == color) {
+          stack[top++] = n;
+        }
+      }
+    }
+    return count;
+  }
+
+  /** Writes the stones of the chain at p into {@link #members}, all marked with one stamp */
+  private int collectChain(int p) {
+    byte color = colors[p];
+    int mark = nextStamp();
+    int size = 0;
+    members[size++] = p;
+    marks[p] = mark;
+    for (int i = 0; i < size; i++) {
+      int q = members[i];
+      for (int d = 0; d < 4; d++) {
+        int n = neighbors[4 * q + d];
+        if (n >= 0 && marks[n] != mark && colors[n] == color) {
+          marks[n] = mark;
+          members[size++] = n;
+        }
+      }
+    }
+    return size;
+  }
+
+  private int nextStamp() {
+    if (++stamp == Integer.MAX_VALUE) {
+      Arrays.fill(marks, 0);
+      stamp = 1;
+    }
+    return stamp;
+  }
+
+  private static byte opposite(byte color) {
+    return color == BLACK ? WHITE : color == WHITE ? BLACK : EMPTY;
+  }
+}
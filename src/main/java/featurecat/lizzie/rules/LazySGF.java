@@ -0,0 +1,137 @@
+package featurecat.lizzie.rules;
+
+import featurecat.lizzie.analysis.GameInfo;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An sgf file whose variations are read into the history tree only when they are first needed. The
+ * file is mapped and indexed by the byte offsets of each of its trees, and only the root and the
+ * main line down to the first variations are read at once. The last node read of a tree is folded:
+ * its variations stay in the file until {@link BoardHistoryNode#getVariations()} or another method
+ * that walks them asks for them, then the sequences of the nested trees are read and their own last
+ * nodes are folded in turn.
+ *
+ * <p>When more folded nodes were read than the configured number, the oldest ones are folded back,
+ * unless a history list of the board went below them, so edits and analysis are never dropped. The
+ * variations still in the file are left out of whole tree queries like transpositions, and are
+ * written out as they are in the file.
+ */
+final class LazySGF {
+  private final SGFTrees trees;
+  private final int budget;
+  private GameInfo gameInfo;
+
+  // the folded nodes that were read, oldest first, with the first of their trees
+  private final LinkedHashMap<BoardHistoryNode, Integer> expanded = new LinkedHashMap<>();
+
+  private LazySGF(ByteBuffer bytes, Charset charset, int budget) {
+    this.trees = new SGFTrees(bytes, charset);
+    this.budget = Math.max(1, budget);
+  }
+
+  /**
+   * Reads the first game of a file lazily
+   *
+   * @param file the sgf file
+   * @param charset the encoding of the file
+   * @param budget how many folded nodes are kept read before the oldest are folded back
+   * @return the game, or null if the file holds no tree
+   */
+  static BoardHistoryList load(File file, Charset charset, int budget) throws IOException {
+    ByteBuffer bytes;
+    try (RandomAccessFile input = new RandomAccessFile(file, "r");
+        FileChannel channel = input.getChannel()) {
+      bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    return new LazySGF(bytes, charset, budget).readRoot();
+  }
+
+  /**
+   * Reads the first game of sgf text lazily, for tests
+   *
+   * @param text the sgf text
+   * @param charset the encoding to hold the text in
+   * @param budget how many folded nodes are kept read before the oldest are folded back
+   * @return the game, or null if the text holds no tree
+   */
+  static BoardHistoryList load(String text, Charset charset, int budget) {
+    return new LazySGF(ByteBuffer.wrap(text.getBytes(charset)), charset, budget).readRoot();
+  }
+
+  private BoardHistoryList readRoot() {
+    if (trees.size() == 0) return null;
+    SGFParser.GameReader root = SGFParser.parseRoot("(" + trees.sequence(0) + ")");
+    if (root == null) return null;
+    BoardHistoryList history = root.history();
+    gameInfo = history.getGameInfo();
+    if (trees.firstChild(0) >= 0) {
+      BoardHistoryNode last = history.root();
+      while (last.numberOfChildren() > 0) last = last.getVariations().get(0);
+      last.fold(this, trees.firstChild(0));
+    }
+    return history;
+  }
+
+  /**
+   * @param firstTree the first of the sibling trees of a folded node
+   * @return the text of the trees, as they are in the file
+   */
+  synchronized String text(int firstTree) {
+    return trees.text(firstTree);
+  }
+
+  /**
+   * Reads the variations of a folded node: the sequence of each tree becomes a variation, and its
+   * last node is folded with the trees nested in it. A tree with no move adds its nested trees to
+   * the node instead.
+   *
+   * @param node the folded node
+   * @param firstTree the first of the trees of its variations
+   */
+  synchronized void expand(BoardHistoryNode node, int firstTree) {
+    if (!node.isFolded()) return;
+    node.unfold();
+    ArrayDeque<Integer> pending = new ArrayDeque<>();
+    for (int tree = firstTree; tree >= 0; tree = trees.nextSibling(tree)) pending.addLast(tree);
+    while (!pending.isEmpty()) {
+      int tree = pending.removeFirst();
+      BoardHistoryList history = new BoardHistoryList(node, gameInfo);
+      SGFParser.parseSequence(history, trees.sequence(tree));
+      BoardHistoryNode last = history.getCurrentHistoryNode();
+      if (last != node) {
+        if (trees.firstChild(tree) >= 0) last.fold(this, trees.firstChild(tree));
+      } else {
+        // the nested trees come next, in their order
+        ArrayDeque<Integer> children = new ArrayDeque<>();
+        for (int c = trees.firstChild(tree); c >= 0; c = trees.nextSibling(c)) children.push(c);
+        while (!children.isEmpty()) pending.addFirst(children.pop());
+      }
+    }
+    expanded.put(node, firstTree);
+    foldCold(node);
+  }
+
+  /**
+   * Folds back the oldest nodes read while there are more than the budget, except those that hold
+   * the node being read or that the board went below
+   */
+  private void foldCold(BoardHistoryNode reading) {
+    Iterator<Map.Entry<BoardHistoryNode, Integer>> it = expanded.entrySet().iterator();
+    while (expanded.size() > budget && it.hasNext()) {
+      Map.Entry<BoardHistoryNode, Integer> entry = it.next();
+      BoardHistoryNode node = entry.getKey();
+      if (reading.ancestorAtLevel(node.getLevel()) == node) continue;
+      it.remove();
+      if (!node.isVisited()) node.refold(this, entry.getValue());
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package featurecat.lizzie.rules;
+
+/**
+ * Legal moves of the head position of a history, as sets of points in the layout of {@link
+ * BitBoard}. A move is checked on the chain table of the position for suicide, and on the hash it
+ * would give for the repetition rule, so nothing is copied for moves that are refused.
+ */
+public final class LegalMoves {
+  private LegalMoves() {}
+
+  /**
+   * @param history the game, at the position to check
+   * @return the points where the side to move may play
+   */
+  public static long[] of(BoardHistoryList history) {
+    return of(history, history.isBlacksTurn() ? Stone.BLACK : Stone.WHITE);
+  }
+
+  /**
+   * @param history the game, at the position to check
+   * @param color the color to play
+   * @return the points where that color may play
+   */
+  public static long[] of(BoardHistoryList history, Stone color) {
+    synchronized (history) {
+      BoardData data = history.getData();
+      GroupTable groups = data.getGroups();
+      long[] legal = data.getBitBoard().empty();
+      for (int i = BitBoard.nextSetBit(legal, 0); i >= 0; i = BitBoard.nextSetBit(legal, i + 1)) {
+        if (check(history, groups, i, color) == null) BitBoard.clear(legal, i);
+      }
+      return legal;
+    }
+  }
+
+  /**
+   * @param history the game, at the position to check
+   * @param index the point to play
+   * @param color the color to play
+   * @return whether that color may play there
+   */
+  public static boolean isLegal(BoardHistoryList history, int index, Stone color) {
+    synchronized (history) {
+      BoardData data = history.getData();
+      if (index < 0
+          || index >= data.getGeometry().getPoints()
+          || data.getStones()[index] != Stone.EMPTY) {
+        return false;
+      }
+      return check(history, data.getGroups(), index, color) != null;
+    }
+  }
+
+  /**
+   * Checks a move on the head position of a history
+   *
+   * @param history the game
+   * @param groups the chains before the move, with the point empty
+   * @param index the point to play
+   * @param color the color to play
+   * @return the points the move captures, null if it is suicide or repeats an earlier position
+   */
+  static int[] check(BoardHistoryList history, GroupTable groups, int index, Stone color) {
+    if (groups.isSuicide(index, color)) return null;
+    int[] captured = groups.captures(index, color);
+    BoardData data = history.getData();
+    long hash = data.zobrist.hashAfter(data.getStones()[index], index, color, captured);
+    return history.violatesRepetitionRule(hash, color == Stone.WHITE) ? null : captured;
+  }
+
+  /**
+   * @param points a set of points
+   * @param geometry the size of the board
+   * @return the GTP names of the points, separated by commas
+   */
+  public static String names(long[] points, BoardGeometry geometry) {
+    StringBuilder names = new StringBuilder();
+    for (int i = BitBoard.nextSetBit(points, 0); i >= 0; i = BitBoard.nextSetBit(points, i + 1)) {
+      if (names.length() > 0) names.append(',');
+      names.append(geometry.nameOf(i));
+    }
+    return names.toString();
+  }
+}
@@ -0,0 +1,121 @@
+package featurecat.lizzie.rules;
+
+import featurecat.lizzie.analysis.GameInfo;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads a game with many variations on all cores. The file is split into its trees by {@link
+ * SGFTrees}, the root and the main line down to the first variations are read first, then the
+ * variations of each large tree are read by a task of a fork-join pool onto a node detached from
+ * the node they branch from, which holds a copy of its stones, captures and hash. When the tasks
+ * are done, their variations are grafted back on the nodes they branch from, in the order of the
+ * file.
+ *
+ * <p>Small trees are read by the task that finds them, so tasks are only made for trees worth the
+ * cost of a detached node.
+ */
+final class ParallelSGF {
+  // the trees below a node are read by a task of their own from this many bytes
+  private static final int SPLIT_BYTES = 64 * 1024;
+
+  private final SGFTrees trees;
+  private GameInfo gameInfo;
+  private volatile boolean hasScoreMean;
+
+  /**
+   * @param bytes the sgf file
+   * @param charset the encoding of the file
+   */
+  ParallelSGF(ByteBuffer bytes, Charset charset) {
+    this.trees = new SGFTrees(bytes, charset);
+  }
+
+  /**
+   * Reads the first game of the file
+   *
+   * @return the game, at its root, or null if the file holds no tree
+   */
+  BoardHistoryList parse() {
+    if (trees.size() == 0) return null;
+    SGFParser.GameReader root = SGFParser.parseRoot("(" + trees.sequence(0) + ")");
+    if (root == null) return null;
+    hasScoreMean = root.hasScoreMean();
+    BoardHistoryList history = root.history();
+    gameInfo = history.getGameInfo();
+    if (trees.firstChild(0) >= 0) {
+      BoardHistoryNode last = history.root();
+      while (last.numberOfChildren() > 0) last = last.getVariations().get(0);
+      Branch branch = new Branch(last, trees.firstChild(0));
+      ForkJoinPool.commonPool().invoke(branch);
+      last.graft(branch.detached);
+      last.adoptSubtree();
+    }
+    return history;
+  }
+
+  /** @return whether the analysis read has score means, as KataGo gives */
+  boolean hasScoreMean() {
+    return hasScoreMean;
+  }
+
+  /** Reads some sibling trees as the variations of a detached copy of the node they branch from */
+  private class Branch extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final BoardHistoryNode node;
+    private final int firstTree;
+    private final BoardHistoryNode detached;
+
+    Branch(BoardHistoryNode node, int firstTree) {
+      this.node = node;
+      this.firstTree = firstTree;
+      // made on the thread that owns the node, before anything is read below it
+      this.detached = node.detach();
+    }
+
+    @Override
+    protected void compute() {
+      List<Branch> forked = new ArrayList<>();
+      boolean scoreMean = false;
+      // the nodes to read trees on and the trees, read in order for each node
+      ArrayDeque<BoardHistoryNode> nodes = new ArrayDeque<>();
+      ArrayDeque<Integer> pending = new ArrayDeque<>();
+      for (int tree = firstTree; tree >= 0; tree = trees.nextSibling(tree)) {
+        nodes.addLast(detached);
+        pending.addLast(tree);
+      }
+      while (!pending.isEmpty()) {
+        BoardHistoryNode start = nodes.removeFirst();
+        int tree = pending.removeFirst();
+        BoardHistoryList history = new BoardHistoryList(start, gameInfo);
+        scoreMean |= SGFParser.parseSequence(history, trees.sequence(tree)).hasScoreMean();
+        BoardHistoryNode last = history.getCurrentHistoryNode();
+        if (trees.firstChild(tree) < 0) continue;
+        if (last != start && trees.childrenLength(tree) >= SPLIT_BYTES) {
+          Branch branch = new Branch(last, trees.firstChild(tree));
+          branch.fork();
+          forked.add(branch);
+        } else {
+          // the nested trees come next, in their order
+          ArrayDeque<Integer> children = new ArrayDeque<>();
+          for (int c = trees.firstChild(tree); c >= 0; c = trees.nextSibling(c)) children.push(c);
+          while (!children.isEmpty()) {
+            nodes.addFirst(last);
+            pending.addFirst(children.pop());
+          }
+        }
+      }
+      if (scoreMean) hasScoreMean = true;
+      for (Branch branch : forked) {
+        branch.join();
+        branch.node.graft(branch.detached);
+      }
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package featurecat.lizzie.rules;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Hashes of the positions on the path from the root to the head of a history list, kept as a stack
+ * along with two multisets, so that a new position can be checked against every earlier one in
+ * constant time. The positional key is the zobrist hash of the stones; the situational key also
+ * includes the side to move.
+ */
+class PathHashIndex {
+  // positional and situational keys of each node on the path, root first
+  private long[] path = new long[128];
+  private int size;
+  private final HashMap<Long, Integer> positional = new HashMap<>();
+  private final HashMap<Long, Integer> situational = new HashMap<>();
+
+  /**
+   * Builds the index of the path that ends at a node
+   *
+   * @param head the last node of the path, may be null
+   */
+  PathHashIndex(BoardHistoryNode head) {
+    rebuild(head);
+  }
+
+  private PathHashIndex(PathHashIndex other) {
+    path = Arrays.copyOf(other.path, other.path.length);
+    size = other.size;
+    positional.putAll(other.positional);
+    situational.putAll(other.situational);
+  }
+
+  /** @return an independent copy of this index */
+  PathHashIndex copy() {
+    return new PathHashIndex(this);
+  }
+
+  /**
+   * Replaces the whole index by the path that ends at a node
+   *
+   * @param head the last node of the path, may be null
+   */
+  void rebuild(BoardHistoryNode head) {
+    size = 0;
+    positional.clear();
+    situational.clear();
+    if (head == null || head.getData() == null) return;
+    int depth = 0;
+    for (BoardHistoryNode n = head; n.previous().isPresent(); n = n.previous().get()) depth++;
+    BoardData[] nodes = new BoardData[depth + 1];
+    BoardHistoryNode n = head;
+    for (int i = depth; i >= 0; i--) {
+      nodes[i] = n.getData();
+      n = n.previous().orElse(null);
+    }
+    for (BoardData data : nodes) push(data);
+  }
+
+  /**
+   * Adds the position that the head just moved to
+   *
+   * @param data the new head's data
+   */
+  void push(BoardData data) {
+    if (2 * size == path.length) path = Arrays.copyOf(path, path.length * 2);
+    long key = positionalKey(data);
+    long situationKey = situationalKey(data, key);
+    path[2 * size] = key;
+    path[2 * size + 1] = situationKey;
+    size++;
+    increment(positional, key);
+    increment(situational, situationKey);
+  }
+
+  /** Removes the position that the head just left */
+  void pop() {
+    if (size == 0) return;
+    size--;
+    decrement(positional, path[2 * size]);
+    decrement(situational, path[2 * size + 1]);
+  }
+
+  /**
+   * Hashes the head's position again, after its stones were edited in place
+   *
+   * @param data the head's data
+   */
+  void replaceTop(BoardData data) {
+    pop();
+    push(data);
+  }
+
+  /** @return whether the stones of the position appear anywhere on the path */
+  boolean containsPosition(BoardData data) {
+    return containsPosition(positionalKey(data));
+  }
+
+  /** @return whether the stones and the side to move of the position appear on the path */
+  boolean containsSituation(BoardData data) {
+    return situational.containsKey(situationalKey(data, positionalKey(data)));
+  }
+
+  /**
+   * @param key the zobrist hash of some stones
+   * @return whether those stones appear anywhere on the path
+   */
+  boolean containsPosition(long key) {
+    return positional.containsKey(key);
+  }
+
+  /**
+   * @param key the zobrist hash of some stones
+   * @param blackToPlay the side to move
+   * @param zobrist a hash of the same board size
+   * @return whether those stones appear on the path with the same side to move
+   */
+  boolean containsSituation(long key, boolean blackToPlay, Zobrist zobrist) {
+    return situational.containsKey(blackToPlay ? key ^ zobrist.blackToPlayKey() : key);
+  }
+
+  /** @return the number of positions on the path */
+  int size() {
+    return size;
+  }
+
+  private static long positionalKey(BoardData data) {
+    return data.zobrist.getHash();
+  }
+
+  private static long situationalKey(BoardData data, long positionalKey) {
+    return data.blackToPlay ? positionalKey ^ data.zobrist.blackToPlayKey() : positionalKey;
+  }
+
+  private static void increment(HashMap<Long, Integer> counts, long key) {
+    counts.merge(key, 1, Integer::sum);
+  }
+
+  private static void decrement(HashMap<Long, Integer> counts, long key) {
+    counts.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+  }
+}
@@ -0,0 +1,80 @@
+package featurecat.lizzie.rules;
+
+import featurecat.lizzie.Lizzie;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Compact history mode. A history node normally keeps the full stones and move number arrays of its
+ * position. In compact mode only keyframes (every few plies) keep them for good; any other node
+ * keeps them while it is among the most recently used positions of its tree, and is otherwise
+ * reduced to the points that differ from its parent. Evicted positions are rebuilt from the nearest
+ * ancestor that still has its arrays when they are asked for again.
+ *
+ * <p>Each history tree has its own cache, so the positions of one game never evict those of
+ * another, and a closed game is collected with its cache. The lock of a cache guards the arrays and
+ * deltas of the nodes of its tree while they are evicted or rebuilt; reading a position that is
+ * already materialized takes no lock.
+ */
+public class PositionCache {
+  // recently materialized nodes of the tree, least recently used first
+  private final LinkedHashMap<BoardHistoryNode, Boolean> recent =
+      new LinkedHashMap<>(16, 0.75f, true);
+
+  PositionCache() {}
+
+  /** @return whether compact history is on */
+  public static boolean isEnabled() {
+    return Lizzie.config != null && Lizzie.config.compactHistory;
+  }
+
+  /** @return the distance in plies between two nodes that are never evicted */
+  public static int keyframeInterval() {
+    return Lizzie.config == null ? 32 : Math.max(1, Lizzie.config.historyKeyframeInterval);
+  }
+
+  private static int capacity() {
+    return Lizzie.config == null ? 64 : Math.max(2, Lizzie.config.historyCacheSize);
+  }
+
+  /**
+   * Marks the position of a node as used, evicting the least recently used positions when the cache
+   * is full
+   *
+   * @param node a materialized node of this cache's tree
+   */
+  synchronized void touch(BoardHistoryNode node) {
+    if (node.isKeyframe()) return;
+    recent.put(node, Boolean.TRUE);
+    Iterator<BoardHistoryNode> it = recent.keySet().iterator();
+    while (recent.size() > capacity() && it.hasNext()) {
+      BoardHistoryNode eldest = it.next();
+      if (eldest == node) continue;
+      it.remove();
+      eldest.evict();
+    }
+  }
+
+  /** Forgets a node that is no longer part of the tree, e.g. after its data was replaced */
+  synchronized void forget(BoardHistoryNode node) {
+    recent.remove(node);
+  }
+
+  /**
+   * Rebuilds the stones and move numbers of a node's data when the node is evicted. Does nothing,
+   * and takes no lock, when they are there
+   *
+   * @param data the data, possibly of an evicted node
+   */
+  static void ensureMaterialized(BoardData data) {
+    BoardHistoryNode node = data.node;
+    if (data.stones != null || node == null) return;
+    PositionCache cache = node.cache();
+    synchronized (cache) {
+      if (data.stones == null) {
+        node.materialize();
+        cache.touch(node);
+      }
+    }
+  }
+}
@@ -0,0 +1,362 @@
+package featurecat.lizzie.rules;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The games of an sgf collection, found in one pass over the bytes of the file with the offset of
+ * each game and the properties of its root that tell it apart: players, date, result, size and
+ * komi. A game is read from its offset without reading the others.
+ *
+ * <p>The index of a file with more than one game is kept beside it, in a file named like it with
+ * ".index" added, and is made again when the size or the modification time of the file changed. The
+ * index works on bytes when no byte of another character is an ASCII one in the encoding of the
+ * file, see {@link SGFTokenizer#isAsciiSafe}, and on the decoded text otherwise: in Shift_JIS, Big5
+ * or GBK a "\" or a "]" may be the second byte of a character. A file with one game is not indexed.
+ */
+public final class SGFCollection {
+  // written first in an index file, changed when its layout changes
+  private static final int VERSION = 2;
+  private static final String[] HEADERS = {"PB", "PW", "DT", "RE", "SZ", "KM"};
+
+  private final File file;
+  private final Charset charset;
+  private final List<Game> games;
+
+  /** A game of a collection, with the properties of its root that tell it apart */
+  public static final class Game {
+    private final int number;
+    private final long offset;
+    private final int length;
+    // the values of HEADERS, empty when missing
+    private final String[] headers;
+
+    private Game(int number, long offset, int length, String[] headers) {
+      this.number = number;
+      this.offset = offset;
+      this.length = length;
+      this.headers = headers;
+    }
+
+    /** @return the place of the game in the collection, from 0 */
+    public int getNumber() {
+      return number;
+    }
+
+    public String getPlayerBlack() {
+      return headers[0];
+    }
+
+    public String getPlayerWhite() {
+      return headers[1];
+    }
+
+    public String getDate() {
+      return headers[2];
+    }
+
+    public String getResult() {
+      return headers[3];
+    }
+
+    public String getSize() {
+      return headers[4];
+    }
+
+    public String getKomi() {
+      return headers[5];
+    }
+
+    /**
+     * @param words lower case words
+     * @return whether each word is in the players, the date or the result of the game
+     */
+    private boolean matches(String[] words) {
+      String text =
+          String.join("\n", getPlayerBlack(), getPlayerWhite(), getDate(), getResult())
+              .toLowerCase(Locale.ROOT);
+      for (String word : words) {
+        if (!text.contains(word)) return false;
+      }
+      return true;
+    }
+  }
+
+  private SGFCollection(File file, Charset charset, List<Game> games) {
+    this.file = file;
+    this.charset = charset;
+    this.games = Collections.unmodifiableList(games);
+  }
+
+  /**
+   * Indexes the games of a file, or reads the index kept beside it if it is still current
+   *
+   * @param file an sgf file
+   * @param charset the encoding of the file
+   * @return the games of the file
+   */
+  public static SGFCollection open(File file, Charset charset) throws IOException {
+    File index = indexFile(file);
+    List<Game> games = readIndex(index, file, charset);
+    if (games == null) {
+      // reads up to the start of a second game, so that a file with one game is not indexed
+      games = index(file, charset, 1);
+      if (games.size() > 1) {
+        games = index(file, charset, Integer.MAX_VALUE);
+        writeIndex(index, file, charset, games);
+      }
+    }
+    return new SGFCollection(file, charset, games);
+  }
+
+  /** @return the file the index of an sgf file is kept in */
+  static File indexFile(File file) {
+    return new File(file.getPath() + ".index");
+  }
+
+  /** @return the games in the order of the file */
+  public List<Game> getGames() {
+    return games;
+  }
+
+  /** @return the number of games */
+  public int size() {
+    return games.size();
+  }
+
+  /**
+   * @param query words to find, separated by spaces, in any case
+   * @return the games whose players, date or result hold every word of the query
+   */
+  public List<Game> filter(String query) {
+    String trimmed = query.trim().toLowerCase(Locale.ROOT);
+    if (trimmed.isEmpty()) return games;
+    String[] words = trimmed.split("\\s+");
+    List<Game> found = new ArrayList<>();
+    for (Game game : games) {
+      if (game.matches(words)) found.add(game);
+    }
+    return found;
+  }
+
+  /**
+   * Reads the text of one game from the file
+   *
+   * @param game a game of this collection
+   * @return the sgf of the game, from its "(" to its ")"
+   */
+  public String text(Game game) throws IOException {
+    if (!SGFTokenizer.isAsciiSafe(charset)) {
+      // the offsets are in the text of the file
+      String text = new String(Files.readAllBytes(file.toPath()), charset);
+      return text.substring((int) game.offset, (int) game.offset + game.length);
+    }
+    byte[] bytes = new byte[game.length];
+    try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+      input.seek(game.offset);
+      input.readFully(bytes);
+    }
+    return new String(bytes, charset);
+  }
+
+  /** Finds the games of a file and the properties of their roots in one pass */
+  static List<Game> index(File file, Charset charset, int limit) throws IOException {
+    try (InputStream input = new FileInputStream(file)) {
+      return index(input, charset, limit);
+    }
+  }
+
+  /**
+   * Finds the games of a file. The file is read as bytes when its encoding allows it, see {@link
+   * SGFTokenizer#isAsciiSafe}, and the offsets of the games are byte offsets; otherwise it is
+   * decoded and they are offsets in its text.
+   *
+   * @param input the file
+   * @param charset the encoding of the file
+   * @param limit the number of games to read, the next one is only started
+   * @return the games read, with the one started after the limit
+   */
+  static List<Game> index(InputStream input, Charset charset, int limit) throws IOException {
+    Indexer indexer = new Indexer(SGFTokenizer.isAsciiSafe(charset) ? charset : null);
+    long offset = 0;
+    if (indexer.charset != null) {
+      byte[] block = new byte[1 << 16];
+      for (int read; (read = input.read(block)) >= 0; offset += read) {
+        for (int i = 0; i < read; i++) {
+          if (!indexer.accept(block[i], offset + i, limit)) return indexer.games;
+        }
+      }
+    } else {
+      char[] block = new char[1 << 16];
+      Reader reader = new InputStreamReader(input, charset);
+      for (int read; (read = reader.read(block)) >= 0; offset += read) {
+        for (int i = 0; i < read; i++) {
+          if (!indexer.accept(block[i], offset + i, limit)) return indexer.games;
+        }
+      }
+    }
+    return indexer.games;
+  }
+
+  /** Follows the syntax of a file one byte or one character at a time */
+  private static final class Indexer {
+    // the encoding of the values when the file is read as bytes, null when it is read as text
+    private final Charset charset;
+    private final List<Game> games = new ArrayList<>();
+    private final StringBuilder name = new StringBuilder();
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final StringBuilder chars = new StringBuilder();
+    private String key = "";
+    private String[] headers = null;
+    private int header = -1;
+    private boolean inValue = false, escaped = false;
+    // the nodes of the game read so far, its root is the first one before any nested tree
+    private int nodes = 0;
+    private boolean inRoot = false;
+    private int depth = 0;
+    private long start = 0;
+
+    Indexer(Charset charset) {
+      this.charset = charset;
+    }
+
+    /**
+     * @param c the next byte or character
+     * @param offset its offset
+     * @param limit the number of games to read
+     * @return whether to go on, false once a game after the limit started
+     */
+    boolean accept(int c, long offset, int limit) {
+      if (inValue) {
+        if (escaped) {
+          escaped = false;
+        } else if (c == '\\') {
+          escaped = true;
+          return true;
+        } else if (c == ']') {
+          inValue = false;
+          if (header >= 0 && headers[header].isEmpty()) headers[header] = value().trim();
+          return true;
+        }
+        if (header >= 0) {
+          if (charset != null) {
+            bytes.write(c);
+          } else {
+            chars.append((char) c);
+          }
+        }
+      } else if (c == '[') {
+        if (name.length() > 0) {
+          key = name.toString();
+          name.setLength(0);
+        }
+        inValue = true;
+        header = inRoot ? headerOf(key) : -1;
+        bytes.reset();
+        chars.setLength(0);
+      } else if (c == '(') {
+        if (depth++ == 0) {
+          start = offset;
+          headers = new String[HEADERS.length];
+          Arrays.fill(headers, "");
+          nodes = 0;
+          if (games.size() >= limit) {
+            games.add(new Game(games.size(), start, 0, headers));
+            return false;
+          }
+        }
+        inRoot = false;
+      } else if (c == ')') {
+        if (depth == 0) return true;
+        inRoot = false;
+        if (--depth == 0) {
+          games.add(new Game(games.size(), start, (int) (offset + 1 - start), headers));
+        }
+      } else if (c == ';') {
+        inRoot = depth == 1 && ++nodes == 1;
+        name.setLength(0);
+      } else if (depth > 0 && c > ' ' && c < 0x7f && (c < 'a' || c > 'z')) {
+        name.append((char) c);
+      }
+      return true;
+    }
+
+    private String value() {
+      return charset != null ? new String(bytes.toByteArray(), charset) : chars.toString();
+    }
+  }
+
+  private static int headerOf(String key) {
+    for (int i = 0; i < HEADERS.length; i++) {
+      if (HEADERS[i].equals(key)) return i;
+    }
+    return -1;
+  }
+
+  /**
+   * @param index the index file
+   * @param file the sgf file it is for
+   * @param charset the encoding of the file
+   * @return the games in the index, or null if there is none for the file as it is now
+   */
+  private static List<Game> readIndex(File index, File file, Charset charset) {
+    if (!index.isFile()) return null;
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+      if (input.readInt() != VERSION
+          || input.readLong() != file.length()
+          || input.readLong() != file.lastModified()
+          || !input.readUTF().equals(charset.name())) return null;
+      int count = input.readInt();
+      List<Game> games = new ArrayList<>(count);
+      for (int n = 0; n < count; n++) {
+        long offset = input.readLong();
+        int length = input.readInt();
+        String[] headers = new String[HEADERS.length];
+        for (int i = 0; i < headers.length; i++) headers[i] = input.readUTF();
+        games.add(new Game(n, offset, length, headers));
+      }
+      return games;
+    } catch (IOException e) {
+      // made again from the file
+      return null;
+    }
+  }
+
+  private static void writeIndex(File index, File file, Charset charset, List<Game> games) {
+    try (DataOutputStream output =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(index)))) {
+      output.writeInt(VERSION);
+      output.writeLong(file.length());
+      output.writeLong(file.lastModified());
+      output.writeUTF(charset.name());
+      output.writeInt(games.size());
+      for (Game game : games) {
+        output.writeLong(game.offset);
+        output.writeInt(game.length);
+        for (String header : game.headers) output.writeUTF(header);
+      }
+    } catch (IOException e) {
+      // a folder that cannot be written to only means the file is indexed each time
+      index.delete();
+    }
+  }
+}
@@ -3,524 +3,490 @@ package featurecat.lizzie.rules;
 import static java.util.Arrays.asList;
 
 import featurecat.lizzie.Lizzie;
-import featurecat.lizzie.analysis.GameInfo;
-import featurecat.lizzie.analysis.Leelaz;
+import featurecat.lizzie.analysis.MoveData;
 import featurecat.lizzie.util.EncodingDetector;
 import featurecat.lizzie.util.Utils;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
-import java.text.SimpleDateFormat;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class SGFParser {
-  private static final SimpleDateFormat SGF_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
 
   private static final String alphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
   private static final String[] listProps =
       new String[] {"LB", "CR", "SQ", "MA", "TR", "AB", "AW", "AE"};
   private static final String[] markupProps = new String[] {"LB", "CR", "SQ", "MA", "TR"};
 
+  /** A game read apart from the board, to be put on it by {@link #show} */
+  public static final class LoadedGame {
+    private final BoardHistoryList history;
+    private final boolean hasScoreMean;
+
+    private LoadedGame(BoardHistoryList history, boolean hasScoreMean) {
+      this.history = history;
+      this.hasScoreMean = hasScoreMean;
+    }
+
+    public BoardHistoryList getHistory() {
+      return history;
+    }
+  }
+
   public static boolean load(String filename) throws IOException {
-    // Clear the board
-    Lizzie.board.clear();
+    return show(read(filename));
+  }
 
+  /**
+   * Reads the first game of a file without touching the board, the frame or the engine, so it can
+   * be called on any thread
+   *
+   * @param filename an sgf file
+   * @return the game, empty if none could be read
+   */
+  public static Optional<LoadedGame> read(String filename) throws IOException {
     File file = new File(filename);
-    if (!file.exists() || !file.canRead()) {
-      return false;
+    if (!file.exists() || !file.canRead() || file.length() == 0) {
+      return Optional.empty();
     }
 
-    String encoding = EncodingDetector.detect(filename);
-    if (encoding == "WINDOWS-1252") encoding = "gb2312";
-    FileInputStream fp = new FileInputStream(file);
-    InputStreamReader reader = new InputStreamReader(fp, encoding);
-    StringBuilder builder = new StringBuilder();
-    while (reader.ready()) {
-      builder.append((char) reader.read());
+    String encoding = encodingOf(filename);
+    Charset charset = Charset.forName(encoding);
+    boolean isMultiGo = SGFTokenizer.endsWithNestedTree(file, charset);
+    // the lazy and the parallel readers index the trees of the file by its bytes
+    boolean byteIndex = isMultiGo && SGFTokenizer.isAsciiSafe(charset);
+    if (byteIndex
+        && Lizzie.config.lazySgfMegabytes > 0
+        && file.length() >= Lizzie.config.lazySgfMegabytes * 1_000_000L) {
+      BoardHistoryList history = LazySGF.load(file, charset, Lizzie.config.lazySgfExpanded);
+      return Optional.ofNullable(history).map(h -> new LoadedGame(h, false));
     }
-    reader.close();
-    fp.close();
-    String value = builder.toString();
-    if (value.isEmpty()) {
-      return false;
+    if (byteIndex
+        && Lizzie.config.parallelSgfMegabytes > 0
+        && file.length() >= Lizzie.config.parallelSgfMegabytes * 1_000_000L
+        && !PositionCache.isEnabled()) {
+      // compact history evicts positions anywhere in the tree, so it is read on one thread then
+      ParallelSGF game =
+          new ParallelSGF(ByteBuffer.wrap(Files.readAllBytes(file.toPath())), charset);
+      BoardHistoryList history = game.parse();
+      return Optional.ofNullable(history).map(h -> new LoadedGame(h, game.hasScoreMean()));
     }
+    try (Reader reader = new InputStreamReader(new FileInputStream(file), encoding)) {
+      return read(reader, isMultiGo);
+    }
+  }
 
-    boolean returnValue = parse(value);
-    return returnValue;
+  /**
+   * Loads one game of a collection, reading only its part of the file
+   *
+   * @param collection the games of a file, see {@link #openCollection}
+   * @param game the game to load
+   * @return whether a game was read
+   */
+  public static boolean load(SGFCollection collection, SGFCollection.Game game) throws IOException {
+    return show(read(collection, game));
   }
 
-  public static boolean loadFromString(String sgfString) {
-    // Clear the board
-    Lizzie.board.clear();
+  /**
+   * Reads one game of a collection like {@link #read(String)}
+   *
+   * @param collection the games of a file, see {@link #openCollection}
+   * @param game the game to read
+   * @return the game, empty if none could be read
+   */
+  public static Optional<LoadedGame> read(SGFCollection collection, SGFCollection.Game game)
+      throws IOException {
+    String text = collection.text(game);
+    return read(new StringReader(text), SGFTokenizer.endsWithNestedTree(text));
+  }
+
+  /**
+   * Finds the games of a file, with the index kept beside it when there are several
+   *
+   * @param filename an sgf file
+   * @return the games of the file
+   */
+  public static SGFCollection openCollection(String filename) throws IOException {
+    return SGFCollection.open(new File(filename), Charset.forName(encodingOf(filename)));
+  }
 
-    return parse(sgfString);
+  private static String encodingOf(String filename) {
+    String encoding = EncodingDetector.detect(filename);
+    if (encoding == "WINDOWS-1252") encoding = "gb2312";
+    return encoding;
+  }
+
+  public static boolean loadFromString(String sgfString) {
+    try {
+      return show(read(new StringReader(sgfString), SGFTokenizer.endsWithNestedTree(sgfString)));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 
   public static String passPos() {
-    return (Lizzie.board.boardWidth <= 51 && Lizzie.board.boardHeight <= 51)
+    return passPos(BoardGeometry.current());
+  }
+
+  /**
+   * @param geometry the size of the board
+   * @return the point value of a pass on that board, like "tt" on 19x19
+   */
+  public static String passPos(BoardGeometry geometry) {
+    return (geometry.getWidth() <= 51 && geometry.getHeight() <= 51)
         ? String.format(
-            "%c%c",
-            alphabet.charAt(Lizzie.board.boardWidth), alphabet.charAt(Lizzie.board.boardHeight))
+            "%c%c", alphabet.charAt(geometry.getWidth()), alphabet.charAt(geometry.getHeight()))
         : "";
   }
 
   public static boolean isPassPos(String pos) {
+    return isPassPos(pos, BoardGeometry.current());
+  }
+
+  public static boolean isPassPos(String pos, BoardGeometry geometry) {
     // TODO
-    String passPos = passPos();
+    String passPos = passPos(geometry);
     return pos.isEmpty() || passPos.equals(pos);
   }
 
   public static int[] convertSgfPosToCoord(String pos) {
-    if (isPassPos(pos)) return null;
+    return convertSgfPosToCoord(pos, BoardGeometry.current());
+  }
+
+  public static int[] convertSgfPosToCoord(String pos, BoardGeometry geometry) {
+    int move = geometry.sgfMoveOf(pos);
+    if (move >= 0) return geometry.getCoord(move);
+    if (move == BoardGeometry.PASS || isPassPos(pos, geometry)) return null;
     int[] ret = new int[2];
     ret[0] = alphabet.indexOf(pos.charAt(0));
     ret[1] = alphabet.indexOf(pos.charAt(1));
     return ret;
   }
 
-  private static boolean parse(String value) {
-    // Drop anything outside "(;...)"
-    final Pattern SGF_PATTERN = Pattern.compile("(?s).*?(\\(\\s*;{0,1}.*\\))(?s).*?");
-    Matcher sgfMatcher = SGF_PATTERN.matcher(value);
-    if (sgfMatcher.matches()) {
-      value = sgfMatcher.group(1);
-    } else {
-      return false;
-    }
+  private static Optional<LoadedGame> read(Reader reader, boolean isMultiGo) throws IOException {
+    // The game is built apart from the board, so nothing is played, sent to the engine or
+    // repainted move by move (#752); the board takes it in one step when it is read.
+    GameReader game = new GameReader(null, false, isMultiGo).withAnalysis();
+    if (!SGFTokenizer.tokenize(reader, game)) return Optional.empty();
+    return Optional.of(new LoadedGame(game.finish(), game.hasScoreMean()));
+  }
 
-    // Determine the SZ property
-    Pattern szPattern = Pattern.compile("(?s).*?SZ\\[([\\d:]+)\\](?s).*");
-    Matcher szMatcher = szPattern.matcher(value);
-    int boardWidth = 19;
-    int boardHeight = 19;
-    if (szMatcher.matches()) {
-      String sizeStr = szMatcher.group(1);
-      Pattern sizePattern = Pattern.compile("([\\d]+):([\\d]+)");
-      Matcher sizeMatcher = sizePattern.matcher(sizeStr);
-      if (sizeMatcher.matches()) {
-        Lizzie.board.reopen(
-            Integer.parseInt(sizeMatcher.group(1)), Integer.parseInt(sizeMatcher.group(2)));
-      } else {
-        int boardSize = Integer.parseInt(sizeStr);
-        Lizzie.board.reopen(boardSize, boardSize);
+  /**
+   * Puts a game read apart from the board on the board, in place of the game it had. Call it on the
+   * event thread
+   *
+   * @param game the game, if one was read
+   * @return whether there was a game
+   */
+  public static boolean show(Optional<LoadedGame> game) {
+    game.ifPresent(
+        loaded -> {
+          BoardHistoryList history = loaded.history;
+          Lizzie.leelaz.supportScoremean = loaded.hasScoreMean;
+          Lizzie.frame.clear();
+          Lizzie.frame.setPlayers(
+              history.getGameInfo().getPlayerWhite(), history.getGameInfo().getPlayerBlack());
+          Lizzie.board.setHistory(history);
+        });
+    return game.isPresent();
+  }
+
+  /**
+   * Builds a game from what {@link SGFTokenizer} reads, into a history of its own or onto a branch
+   * of a history. The board, the frame and the engine are not touched, so a game can be read on any
+   * thread. The properties of the root node are held until the node ends, so the history can be
+   * made the size the SZ property gives before anything is placed on it.
+   */
+  static class GameReader implements SGFTokenizer.Handler {
+    // the history to build, made when the size of the board is known unless it is a branch
+    private BoardHistoryList history;
+    private final boolean isBranch;
+    // MultiGo 's branch: (Main Branch (Main Branch) (Branch) )
+    // Other 's branch: (Main Branch (Branch) Main Branch)
+    private final boolean isMultiGo;
+    // whether the analysis Lizzie saved in LZ properties is read
+    private boolean withAnalysis;
+    private boolean hasScoreMean;
+    private BoardGeometry geometry;
+    private boolean opened;
+    private int rootNodes;
+    private final List<String[]> rootProperties = new ArrayList<>();
+
+    private int subTreeDepth = 0;
+    // whether the first game ended, the other games of a collection are not read
+    private boolean ended = false;
+    // Save the variation step count
+    private final Map<Integer, Integer> subTreeStepMap = new HashMap<Integer, Integer>();
+    // Comment of the game head
+    private String headComment = "";
+    // Game properties
+    private final Map<String, String> gameProperties = new HashMap<String, String>();
+    private Map<String, String> pendingProps = new HashMap<String, String>();
+    private boolean moveStart = false, addPassForMove = true;
+    // for Fox SGF
+    private boolean isFox = false;
+    private String rule = "";
+
+    GameReader(BoardHistoryList history, boolean isBranch, boolean isMultiGo) {
+      this.history = history;
+      this.isBranch = isBranch;
+      this.isMultiGo = isMultiGo;
+      if (isBranch) {
+        // a branch goes on from a move, so its first node is not the root
+        moveStart = true;
+        subTreeDepth += 1;
+        // Initialize the step count
+        subTreeStepMap.put(subTreeDepth, 0);
+        geometry = history.getGeometry();
+        opened = true;
       }
-    } else {
-      Lizzie.board.reopen(boardWidth, boardHeight);
     }
 
-    if (Lizzie.leelaz != null) {
-      Lizzie.leelaz.supportScoremean = false;
+    /** Reads the analysis saved in LZ properties too, if the config holds best moves */
+    GameReader withAnalysis() {
+      withAnalysis = Lizzie.config.holdBestMovesToSgf;
+      return this;
     }
 
-    // Detach engine for avoiding useless "play" and "undo" (#752)
-    // except for handicap stones in parseValue() (#765).
-    Lizzie.leelaz.isAttached = false;
-    parseValue(value, null, false);
-    Lizzie.leelaz.isAttached = true;
-
-    return true;
-  }
+    /** @return whether the analysis read has score means, as KataGo gives */
+    boolean hasScoreMean() {
+      return hasScoreMean;
+    }
 
-  private static BoardHistoryList parseValue(
-      String value, BoardHistoryList history, boolean isBranch) {
+    /** @return the history read into, null before the size of the board is known */
+    BoardHistoryList history() {
+      return history;
+    }
 
-    int subTreeDepth = 0;
-    // Save the variation step count
-    Map<Integer, Integer> subTreeStepMap = new HashMap<Integer, Integer>();
-    // Comment of the game head
-    String headComment = "";
-    // Game properties
-    Map<String, String> gameProperties = new HashMap<String, String>();
-    Map<String, String> pendingProps = new HashMap<String, String>();
-    boolean inTag = false,
-        isMultiGo = false,
-        escaping = false,
-        moveStart = false,
-        addPassForMove = true;
-    boolean inProp = false;
-    String tag = "";
-    StringBuilder tagBuilder = new StringBuilder();
-    StringBuilder tagContentBuilder = new StringBuilder();
-    // for Fox SGF
-    boolean isFox = false;
-    String rule = "";
-    // MultiGo 's branch: (Main Branch (Main Branch) (Branch) )
-    // Other 's branch: (Main Branch (Branch) Main Branch)
-    if (value.matches("(?s).*\\)\\s*\\)")) {
-      isMultiGo = true;
+    /** Makes the history the size the root node gives, then reads the properties of the root */
+    private void open() {
+      opened = true;
+      int width = 19;
+      int height = 19;
+      for (String[] property : rootProperties) {
+        if (!"SZ".equals(property[0])) continue;
+        try {
+          String[] size = property[1].trim().split(":");
+          width = Integer.parseInt(size[0]);
+          height = size.length > 1 ? Integer.parseInt(size[1]) : width;
+        } catch (NumberFormatException e) {
+          e.printStackTrace();
+        }
+        break;
+      }
+      width = (width >= 2) ? width : 19;
+      height = (height >= 2) ? height : 19;
+      history = new BoardHistoryList(BoardData.empty(width, height));
+      geometry = history.getGeometry();
+      for (String[] property : rootProperties) property(property[0], property[1]);
+      rootProperties.clear();
     }
-    if (isBranch) {
+
+    @Override
+    public void startTree() {
+      if (ended) return;
+      if (!opened && rootNodes > 0) open();
       subTreeDepth += 1;
       // Initialize the step count
       subTreeStepMap.put(subTreeDepth, 0);
+      addPassForMove = true;
+      pendingProps = new HashMap<String, String>();
     }
 
-    String blackPlayer = "", whitePlayer = "";
+    @Override
+    public void endTree() {
+      if (ended) return;
+      if (!opened) open();
+      if (isMultiGo) {
+        // Restore to the variation node
+        int varStep = subTreeStepMap.get(subTreeDepth);
+        for (int s = 0; s < varStep; s++) {
+          history.previous();
+        }
+      }
+      subTreeDepth -= 1;
+      ended = subTreeDepth == 0;
+    }
 
-    // Support unicode characters (UTF-8)
-    for (int i = 0; i < value.length(); i++) {
-      char c = value.charAt(i);
-      if (escaping) {
-        // Any char following "\" is inserted verbatim
-        // (ref) "3.2. Text" in https://www.red-bean.com/sgf/sgf4.html
-        tagContentBuilder.append(c == 'n' ? "\n" : c);
-        escaping = false;
-        continue;
+    @Override
+    public void startNode() {
+      if (ended) return;
+      if (!opened && ++rootNodes > 1) open();
+    }
+
+    @Override
+    public void property(String key, String value) {
+      if (ended) return;
+      if (!opened) {
+        rootProperties.add(new String[] {key, value});
+        return;
       }
-      switch (c) {
-        case '(':
-          if (!inTag) {
-            subTreeDepth += 1;
-            // Initialize the step count
-            subTreeStepMap.put(subTreeDepth, 0);
-            addPassForMove = true;
-            pendingProps = new HashMap<String, String>();
-          } else {
-            if (i > 0) {
-              // Allow the comment tag includes '('
-              tagContentBuilder.append(c);
-            }
+      if (subTreeDepth > 1 && !isMultiGo) {
+        return;
+      }
+      if (key.equals("B") || key.equals("W")) {
+        moveStart = true;
+        addPassForMove = true;
+        int[] move = convertSgfPosToCoord(value, geometry);
+        // Save the step count
+        subTreeStepMap.put(subTreeDepth, subTreeStepMap.get(subTreeDepth) + 1);
+        Stone color = key.equals("B") ? Stone.BLACK : Stone.WHITE;
+        boolean newBranch = (subTreeStepMap.get(subTreeDepth) == 1);
+        if (move == null) {
+          history.pass(color, newBranch, false);
+        } else {
+          history.place(move[0], move[1], color, newBranch);
+        }
+        if (newBranch) {
+          processPendingPros(history, pendingProps);
+        }
+      } else if (key.equals("C")) {
+        // Support comment
+        if (!moveStart) {
+          headComment = value;
+        } else {
+          history.getData().comment = value;
+        }
+      } else if (key.equals("LZ") && withAnalysis) {
+        // Content contains data for Lizzie to read
+        String[] lines = value.split("\n");
+        String[] line1 = lines[0].split(" ");
+        String line2 = "";
+        if (lines.length > 1) {
+          line2 = lines[1];
+        }
+        String versionNumber = line1[0];
+        line1[1] = line1[1].replaceAll(",", "."); // fix a decimal representation localization issue
+        BoardData data = history.getData();
+        data.winrate = 100 - Double.parseDouble(line1[1]);
+        int numPlayouts =
+            Integer.parseInt(
+                line1[2].replaceAll("k", "000").replaceAll("m", "000000").replaceAll("[^0-9]", ""));
+        data.setPlayouts(numPlayouts);
+        if (numPlayouts > 0 && !line2.isEmpty()) {
+          data.bestMoves = MoveData.fromInfoLine(line2, geometry);
+          if (line2.contains("scoreMean")) {
+            hasScoreMean = true;
+            data.scoreMean = data.getScoreMeanFromBestMoves(data.bestMoves);
           }
-          break;
-        case ')':
-          if (!inTag) {
-            if (isMultiGo) {
-              // Restore to the variation node
-              int varStep = subTreeStepMap.get(subTreeDepth);
-              for (int s = 0; s < varStep; s++) {
-                if (history == null) {
-                  Lizzie.board.previousMove();
-                } else {
-                  history.previous();
-                }
-              }
+        }
+      } else if (key.equals("AB") || key.equals("AW")) {
+        int[] move = convertSgfPosToCoord(value, geometry);
+        Stone color = key.equals("AB") ? Stone.BLACK : Stone.WHITE;
+        if (moveStart) {
+          // add to node properties
+          history.addNodeProperty(key, value);
+          if (addPassForMove) {
+            // Save the step count
+            subTreeStepMap.put(subTreeDepth, subTreeStepMap.get(subTreeDepth) + 1);
+            boolean newBranch = (subTreeStepMap.get(subTreeDepth) == 1);
+            history.pass(color, newBranch, true);
+            if (newBranch) {
+              processPendingPros(history, pendingProps);
             }
-            subTreeDepth -= 1;
-          } else {
-            // Allow the comment tag includes '('
-            tagContentBuilder.append(c);
+            addPassForMove = false;
           }
-          break;
-        case '[':
-          if (!inProp) {
-            inProp = true;
-            if (subTreeDepth > 1 && !isMultiGo) {
-              break;
-            }
-            inTag = true;
-            String tagTemp = tagBuilder.toString();
-            if (!tagTemp.isEmpty()) {
-              // Ignore small letters in tags for the long format Smart-Go file.
-              // (ex) "PlayerBlack" ==> "PB"
-              // It is the default format of mgt, an old SGF tool.
-              // (Mgt is still supported in Debian and Ubuntu.)
-              tag = tagTemp.replaceAll("[a-z]", "");
-            }
-            tagContentBuilder = new StringBuilder();
+          history.addNodeProperty(key, value);
+          if (move != null) {
+            history.addStone(move[0], move[1], color);
+          }
+        } else {
+          // Setting handicap stones. The engine is given them with the rest of the game (#765).
+          if (move == null) {
+            history.pass(color);
           } else {
-            tagContentBuilder.append(c);
+            history.place(move[0], move[1], color);
           }
-          break;
-        case ']':
-          if (subTreeDepth > 1 && !isMultiGo) {
-            break;
+          history.flatten();
+        }
+      } else if (key.equals("PB")) {
+        history.getGameInfo().setPlayerBlack(value);
+      } else if (key.equals("PW")) {
+        history.getGameInfo().setPlayerWhite(value);
+      } else if (key.equals("KM")) {
+        try {
+          if (value.trim().isEmpty()) {
+            value = "0.0";
           }
-          inTag = false;
-          inProp = false;
-          tagBuilder = new StringBuilder();
-          String tagContent = tagContentBuilder.toString();
-          // We got tag, we can parse this tag now.
-          if (tag.equals("B") || tag.equals("W")) {
-            moveStart = true;
-            addPassForMove = true;
-            int[] move = convertSgfPosToCoord(tagContent);
-            // Save the step count
-            subTreeStepMap.put(subTreeDepth, subTreeStepMap.get(subTreeDepth) + 1);
-            Stone color = tag.equals("B") ? Stone.BLACK : Stone.WHITE;
-            boolean newBranch = (subTreeStepMap.get(subTreeDepth) == 1);
-            if (move == null) {
-              if (history == null) {
-                Lizzie.board.pass(color, newBranch, false);
-              } else {
-                history.pass(color, newBranch, false);
-              }
-            } else {
-              if (history == null) {
-                Lizzie.board.place(move[0], move[1], color, newBranch);
-              } else {
-                history.place(move[0], move[1], color, newBranch);
-              }
-            }
-            if (newBranch) {
-              if (history == null) {
-                processPendingPros(Lizzie.board.getHistory(), pendingProps);
-              } else {
+          history.getGameInfo().setKomi(Double.parseDouble(value));
+        } catch (NumberFormatException e) {
+          e.printStackTrace();
+        }
+      } else if (key.equals("HA")) {
+        try {
+          if (value.trim().isEmpty()) {
+            value = "0";
+          }
+          history.getGameInfo().setHandicap(Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+          e.printStackTrace();
+        }
+      } else if (key.equals("AP")) {
+        if ("foxwq".equals(value)) {
+          // Beware: Fox SGF has two AP[]. (2020-09-26)
+          // ...AP[GNU Go:3.8]RE[B+3.50]TM[10800]TC[5]TT[60]AP[foxwq]...
+          isFox = true;
+        }
+      } else if (key.equals("RU")) {
+        rule = value;
+      } else {
+        if (moveStart) {
+          // Other SGF node properties
+          if ("AE".equals(key)) {
+            // remove a stone
+            if (addPassForMove) {
+              // Save the step count
+              subTreeStepMap.put(subTreeDepth, subTreeStepMap.get(subTreeDepth) + 1);
+              Stone color = history.getLastMoveColor() == Stone.WHITE ? Stone.BLACK : Stone.WHITE;
+              boolean newBranch = (subTreeStepMap.get(subTreeDepth) == 1);
+              history.pass(color, newBranch, true);
+              if (newBranch) {
                 processPendingPros(history, pendingProps);
               }
+              addPassForMove = false;
             }
-          } else if (tag.equals("C")) {
-            // Support comment
-            if (!moveStart) {
-              headComment = tagContent;
-            } else {
-              if (history == null) {
-                Lizzie.board.comment(tagContent);
-              } else {
-                history.getData().comment = tagContent;
-              }
-            }
-          } else if (tag.equals("LZ") && Lizzie.config.holdBestMovesToSgf && history == null) {
-            // Content contains data for Lizzie to read
-            String[] lines = tagContent.split("\n");
-            String[] line1 = lines[0].split(" ");
-            String line2 = "";
-            if (lines.length > 1) {
-              line2 = lines[1];
-            }
-            String versionNumber = line1[0];
-            line1[1] =
-                line1[1].replaceAll(",", "."); // fix a decimal representation localization issue
-            Lizzie.board.getData().winrate = 100 - Double.parseDouble(line1[1]);
-            int numPlayouts =
-                Integer.parseInt(
-                    line1[2]
-                        .replaceAll("k", "000")
-                        .replaceAll("m", "000000")
-                        .replaceAll("[^0-9]", ""));
-            Lizzie.board.getData().setPlayouts(numPlayouts);
-            if (numPlayouts > 0 && !line2.isEmpty()) {
-              Lizzie.board.getData().bestMoves = Lizzie.leelaz.parseInfo(line2);
-              if (line2.contains("scoreMean")) {
-                Lizzie.leelaz.supportScoremean = true;
-                Lizzie.board.getData().scoreMean =
-                    Lizzie.board
-                        .getData()
-                        .getScoreMeanFromBestMoves(Lizzie.board.getData().bestMoves);
-              }
-            }
-          } else if (tag.equals("AB") || tag.equals("AW")) {
-            int[] move = convertSgfPosToCoord(tagContent);
-            Stone color = tag.equals("AB") ? Stone.BLACK : Stone.WHITE;
-            if (moveStart) {
-              // add to node properties
-              if (history == null) {
-                Lizzie.board.addNodeProperty(tag, tagContent);
-              } else {
-                history.addNodeProperty(tag, tagContent);
-              }
-              if (addPassForMove) {
-                // Save the step count
-                subTreeStepMap.put(subTreeDepth, subTreeStepMap.get(subTreeDepth) + 1);
-                boolean newBranch = (subTreeStepMap.get(subTreeDepth) == 1);
-                if (history == null) {
-                  Lizzie.board.pass(color, newBranch, true);
-                } else {
-                  history.pass(color, newBranch, true);
-                }
-                if (newBranch) {
-                  if (history == null) {
-                    processPendingPros(Lizzie.board.getHistory(), pendingProps);
-                  } else {
-                    processPendingPros(history, pendingProps);
-                  }
-                }
-                addPassForMove = false;
-              }
-              if (history == null) {
-                Lizzie.board.addNodeProperty(tag, tagContent);
-              } else {
-                history.addNodeProperty(tag, tagContent);
-              }
-              if (move != null) {
-                if (history == null) {
-                  Lizzie.board.addStone(move[0], move[1], color);
-                } else {
-                  history.addStone(move[0], move[1], color);
-                }
-              }
-            } else {
-              // Setting handicap stones. We need to send "play" to the engine here.
-              Lizzie.leelaz.isAttached = true;
-              if (move == null) {
-                if (history == null) {
-                  Lizzie.board.pass(color);
-                } else {
-                  history.pass(color);
-                }
-              } else {
-                if (history == null) {
-                  Lizzie.board.place(move[0], move[1], color);
-                } else {
-                  history.place(move[0], move[1], color);
-                }
-              }
-              if (history == null) {
-                Lizzie.board.flatten();
-              } else {
-                history.flatten();
-              }
-              Lizzie.leelaz.isAttached = false;
-            }
-          } else if (tag.equals("PB")) {
-            blackPlayer = tagContent;
-            if (history == null) {
-              Lizzie.board.getHistory().getGameInfo().setPlayerBlack(blackPlayer);
-            } else {
-              history.getGameInfo().setPlayerBlack(blackPlayer);
-            }
-          } else if (tag.equals("PW")) {
-            whitePlayer = tagContent;
-            if (history == null) {
-              Lizzie.board.getHistory().getGameInfo().setPlayerWhite(whitePlayer);
-            } else {
-              history.getGameInfo().setPlayerWhite(whitePlayer);
-            }
-          } else if (tag.equals("KM")) {
-            try {
-              if (tagContent.trim().isEmpty()) {
-                tagContent = "0.0";
-              }
-              if (history == null) {
-                Lizzie.board.setKomi(Double.parseDouble(tagContent));
-              } else {
-                history.getGameInfo().setKomi(Double.parseDouble(tagContent));
-              }
-            } catch (NumberFormatException e) {
-              e.printStackTrace();
+            history.addNodeProperty(key, value);
+            int[] move = convertSgfPosToCoord(value, geometry);
+            if (move != null) {
+              history.removeStone(move[0], move[1], key.equals("AB") ? Stone.BLACK : Stone.WHITE);
             }
-          } else if (tag.equals("HA")) {
-            try {
-              if (tagContent.trim().isEmpty()) {
-                tagContent = "0";
-              }
-              int handicap = Integer.parseInt(tagContent);
-              if (history == null) {
-                Lizzie.board.getHistory().getGameInfo().setHandicap(handicap);
-              } else {
-                history.getGameInfo().setHandicap(handicap);
-              }
-            } catch (NumberFormatException e) {
-              e.printStackTrace();
-            }
-          } else if (tag.equals("AP")) {
-            if ("foxwq".equals(tagContent)) {
-              // Beware: Fox SGF has two AP[]. (2020-09-26)
-              // ...AP[GNU Go:3.8]RE[B+3.50]TM[10800]TC[5]TT[60]AP[foxwq]...
-              isFox = true;
-            }
-          } else if (tag.equals("RU")) {
-            rule = tagContent;
           } else {
-            if (moveStart) {
-              // Other SGF node properties
-              if ("AE".equals(tag)) {
-                // remove a stone
-                if (addPassForMove) {
-                  // Save the step count
-                  subTreeStepMap.put(subTreeDepth, subTreeStepMap.get(subTreeDepth) + 1);
-                  Stone color =
-                      ((history == null
-                                  && Lizzie.board.getHistory().getLastMoveColor() == Stone.WHITE)
-                              || (history != null && history.getLastMoveColor() == Stone.WHITE))
-                          ? Stone.BLACK
-                          : Stone.WHITE;
-                  boolean newBranch = (subTreeStepMap.get(subTreeDepth) == 1);
-                  if (history == null) {
-                    Lizzie.board.pass(color, newBranch, true);
-                  } else {
-                    history.pass(color, newBranch, true);
-                  }
-                  if (newBranch) {
-                    if (history == null) {
-                      processPendingPros(Lizzie.board.getHistory(), pendingProps);
-                    } else {
-                      processPendingPros(history, pendingProps);
-                    }
-                  }
-                  addPassForMove = false;
-                }
-                if (history == null) {
-                  Lizzie.board.addNodeProperty(tag, tagContent);
-                } else {
-                  history.addNodeProperty(tag, tagContent);
-                }
-                int[] move = convertSgfPosToCoord(tagContent);
-                if (move != null) {
-                  if (history == null) {
-                    Lizzie.board.removeStone(
-                        move[0], move[1], tag.equals("AB") ? Stone.BLACK : Stone.WHITE);
-                  } else {
-                    history.removeStone(
-                        move[0], move[1], tag.equals("AB") ? Stone.BLACK : Stone.WHITE);
-                  }
-                }
-              } else {
-                boolean firstProp = (subTreeStepMap.get(subTreeDepth) == 0);
-                if (firstProp) {
-                  addProperty(pendingProps, tag, tagContent);
-                } else {
-                  if (history == null) {
-                    Lizzie.board.addNodeProperty(tag, tagContent);
-                  } else {
-                    history.addNodeProperty(tag, tagContent);
-                  }
-                }
-              }
+            boolean firstProp = (subTreeStepMap.get(subTreeDepth) == 0);
+            if (firstProp) {
+              addProperty(pendingProps, key, value);
             } else {
-              addProperty(gameProperties, tag, tagContent);
-            }
-          }
-          break;
-        case ';':
-          break;
-        default:
-          if (subTreeDepth > 1 && !isMultiGo) {
-            break;
-          }
-          if (inTag) {
-            if (c == '\\') {
-              escaping = true;
-              continue;
-            }
-            tagContentBuilder.append(c);
-          } else {
-            if (c != '\n' && c != '\r' && c != '\t' && c != ' ') {
-              tagBuilder.append(c);
+              history.addNodeProperty(key, value);
             }
           }
+        } else {
+          addProperty(gameProperties, key, value);
+        }
       }
     }
 
-    if (isBranch) {
-      history.toBranchTop();
-    } else {
-      Lizzie.frame.setPlayers(whitePlayer, blackPlayer);
-      if (history == null) {
-        if (!Utils.isBlank(gameProperties.get("RE"))
-            && Utils.isBlank(Lizzie.board.getHistory().getData().comment)) {
-          Lizzie.board.getHistory().getData().comment = gameProperties.get("RE");
-        }
-
-        // Rewind to game start
-        while (Lizzie.board.previousMove()) ;
-
-        // Set AW/AB Comment
-        if (!headComment.isEmpty()) {
-          Lizzie.board.comment(headComment);
-          Lizzie.frame.refresh();
-        }
-        if (gameProperties.size() > 0) {
-          Lizzie.board.addNodeProperties(gameProperties);
-        }
+    /** Ends the game: rewinds it to its start and sets the properties of its root */
+    BoardHistoryList finish() {
+      if (!opened) open();
+      if (isBranch) {
+        history.toBranchTop();
       } else {
         if (!Utils.isBlank(gameProperties.get("RE")) && Utils.isBlank(history.getData().comment)) {
           history.getData().comment = gameProperties.get("RE");
@@ -537,26 +503,21 @@ public class SGFParser {
           history.getData().addProperties(gameProperties);
         }
       }
+      if (isFox) {
+        fixFoxSGF(history, rule);
+      }
+      return history;
     }
-    if (isFox) {
-      fixFoxSGF(history, rule);
-    }
-    return history;
   }
 
   private static void fixFoxSGF(BoardHistoryList history, String rule) {
-    BoardHistoryList validHistory = (history == null ? Lizzie.board.getHistory() : history);
     String lowerCaseRule = rule.toLowerCase();
     // ref. https://github.com/sanderland/katrain/issues/177
     double correctedKomi =
-        (validHistory.getGameInfo().getHandicap() >= 1)
+        (history.getGameInfo().getHandicap() >= 1)
             ? 0.5
             : (lowerCaseRule.equals("chinese") || lowerCaseRule.equals("cn")) ? 7.5 : 6.5;
-    if (history == null) {
-      Lizzie.board.setKomi(correctedKomi);
-    } else {
-      history.getGameInfo().setKomi(correctedKomi);
-    }
+    history.getGameInfo().setKomi(correctedKomi);
   }
 
   public static String saveToString() throws IOException {
@@ -567,260 +528,88 @@ public class SGFParser {
   }
 
   public static void save(Board board, String filename) throws IOException {
-    try (Writer writer = new OutputStreamWriter(new FileOutputStream(filename))) {
-      saveToStream(board, writer);
-    }
-  }
-
-  private static void saveToStream(Board board, Writer writer) throws IOException {
-    // collect game info
-    BoardHistoryList history = board.getHistory().shallowCopy();
-    GameInfo gameInfo = history.getGameInfo();
-    String playerB = gameInfo.getPlayerBlack();
-    String playerW = gameInfo.getPlayerWhite();
-    Double komi = gameInfo.getKomi();
-    Integer handicap = gameInfo.getHandicap();
-    String date = SGF_DATE_FORMAT.format(gameInfo.getDate());
-
-    // add SGF header
-    StringBuilder builder = new StringBuilder("(;");
-    StringBuilder generalProps = new StringBuilder("");
-    if (handicap != 0) generalProps.append(String.format("HA[%s]", handicap));
-    generalProps.append(
-        String.format(
-            "KM[%s]PW[%s]PB[%s]DT[%s]AP[Lizzie: %s]SZ[%s]",
-            komi,
-            playerW,
-            playerB,
-            date,
-            Lizzie.lizzieVersion,
-            Board.boardWidth
-                + (Board.boardWidth != Board.boardHeight ? ":" + Board.boardHeight : "")));
-
     // To append the winrate to the comment of sgf we might need to update the Winrate
     if (Lizzie.config.appendWinrateToComment) {
       Lizzie.board.updateWinrate();
     }
-
-    // move to the first move
-    history.toStart();
-
-    // Game properties
-    history.getData().addProperties(generalProps.toString());
-    builder.append(history.getData().propertiesString());
-
-    // add handicap stones to SGF
-    if (handicap != 0) {
-      builder.append("AB");
-      Stone[] stones = history.getStones();
-      for (int i = 0; i < stones.length; i++) {
-        Stone stone = stones[i];
-        if (stone.isBlack()) {
-          builder.append(String.format("[%s]", asCoord(i)));
-        }
-      }
-    } else {
-      // Process the AW/AB stone
-      Stone[] stones = history.getStones();
-      StringBuilder abStone = new StringBuilder();
-      StringBuilder awStone = new StringBuilder();
-      for (int i = 0; i < stones.length; i++) {
-        Stone stone = stones[i];
-        if (stone.isBlack() || stone.isWhite()) {
-          if (stone.isBlack()) {
-            abStone.append(String.format("[%s]", asCoord(i)));
-          } else {
-            awStone.append(String.format("[%s]", asCoord(i)));
-          }
-        }
-      }
-      if (abStone.length() > 0) {
-        builder.append("AB").append(abStone);
-      }
-      if (awStone.length() > 0) {
-        builder.append("AW").append(awStone);
-      }
-    }
-
-    // The AW/AB Comment
-    if (!history.getData().comment.isEmpty()) {
-      builder.append(String.format("C[%s]", Escaping(history.getData().comment)));
-    }
-
-    // replay moves, and convert them to tags.
-    // *  format: ";B[xy]" or ";W[xy]"
-    // *  with 'xy' = coordinates ; or 'tt' for pass.
-
-    // Write variation tree
-    builder.append(generateNode(board, history.getCurrentHistoryNode()));
-
-    // close file
-    builder.append(')');
-    writer.append(builder.toString());
+    save(board.getHistory(), new File(filename));
   }
 
-  /** Generate node with variations */
-  private static String generateNode(Board board, BoardHistoryNode node) throws IOException {
-    StringBuilder builder = new StringBuilder("");
-
-    if (node != null) {
-
-      BoardData data = node.getData();
-      String stone = "";
-      if (Stone.BLACK.equals(data.lastMoveColor) || Stone.WHITE.equals(data.lastMoveColor)) {
-
-        if (Stone.BLACK.equals(data.lastMoveColor)) stone = "B";
-        else if (Stone.WHITE.equals(data.lastMoveColor)) stone = "W";
-
-        builder.append(";");
-        if (!data.dummy) {
-          builder.append(
-              String.format(
-                  "%s[%s]",
-                  stone, data.lastMove.isPresent() ? asCoord(data.lastMove.get()) : passPos()));
-        }
-
-        // Node properties
-        builder.append(data.propertiesString());
-
-        if (Lizzie.config.appendWinrateToComment) {
-          // Append the winrate to the comment of sgf
-          data.comment = formatComment(node);
-        }
-
-        // Write the comment
-        if (!data.comment.isEmpty()) {
-          builder.append(String.format("C[%s]", Escaping(data.comment)));
-        }
-
-        // Add LZ specific data to restore on next load
-        if (Lizzie.config.holdBestMovesToSgf) {
-          builder.append(String.format("LZ[%s]", formatNodeData(node)));
-        }
+  /**
+   * Writes a game to a file. The text is written beside the file and moved over it, so the file is
+   * never left half written, and a game read lazily from it goes on reading the old file.
+   *
+   * @param history the game
+   * @param file the file
+   */
+  static void save(BoardHistoryList history, File file) throws IOException {
+    Path target = file.toPath().toAbsolutePath();
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+    try {
+      try (Writer writer =
+          new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(temp)))) {
+        SGFWriter.write(history, writer);
       }
-
-      if (node.numberOfChildren() > 1) {
-        // Variation
-        for (BoardHistoryNode sub : node.getVariations()) {
-          builder.append("(");
-          builder.append(generateNode(board, sub));
-          builder.append(")");
-        }
-      } else if (node.numberOfChildren() == 1) {
-        builder.append(generateNode(board, node.next().orElse(null)));
-      } else {
-        return builder.toString();
+      try {
+        Files.move(
+            temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
       }
+    } finally {
+      Files.deleteIfExists(temp);
     }
-
-    return builder.toString();
   }
 
   /**
-   * Format Comment with following format: Move <Move number> <Winrate> (<Last Move Rate
-   * Difference>) (<Weight name> / <Playouts>)
+   * Writes the line of play down to a node as a game without variations, for engines to load. When
+   * stones were added or removed below the root, the game starts at the last node where that
+   * happened.
+   *
+   * @param node the last node of the line
+   * @param komi the komi of the game
+   * @return the sgf of the root stones and the moves down to the node
    */
-  private static String formatComment(BoardHistoryNode node) {
-    BoardData data = node.getData();
-    String engine = Lizzie.leelaz.currentWeight();
-
-    // Playouts
-    String playouts = Utils.getPlayoutsString(data.getPlayouts());
-
-    // Last winrate
-    Optional<BoardData> lastNode = node.previous().flatMap(n -> Optional.of(n.getData()));
-    boolean validLastWinrate = lastNode.map(d -> d.getPlayouts() > 0).orElse(false);
-    double lastWR = validLastWinrate ? lastNode.get().getWinrate() : 50;
-
-    // Current winrate
-    boolean validWinrate = (data.getPlayouts() > 0);
-    double curWR;
-    if (Lizzie.config.uiConfig.getBoolean("win-rate-always-black")) {
-      curWR = validWinrate ? data.getWinrate() : lastWR;
-    } else {
-      curWR = validWinrate ? data.getWinrate() : 100 - lastWR;
-    }
+  public static String pathToString(BoardHistoryNode node, double komi) {
+    BoardHistoryNode base = node.setupBase();
+    List<BoardHistoryNode> path = new ArrayList<>();
+    for (BoardHistoryNode n = node; n != base; n = n.previous().get()) path.add(n);
+    path.add(base);
 
-    String curWinrate = "";
-    if (Lizzie.config.handicapInsteadOfWinrate) {
-      curWinrate = String.format("%.2f", Leelaz.winrateToHandicap(100 - curWR));
-    } else {
-      curWinrate = String.format("%.1f%%", 100 - curWR);
+    BoardGeometry geometry = node.getData().getGeometry();
+    StringBuilder builder = new StringBuilder("(;");
+    builder.append(String.format("SZ[%s]KM[%s]", sizeValue(geometry), komi));
+    BitBoard root = path.get(path.size() - 1).getData().getBitBoard();
+    if (root.count(Stone.BLACK) > 0) {
+      builder.append("AB");
+      appendPoints(builder, root.stones(Stone.BLACK), geometry);
     }
-
-    // Last move difference winrate
-    String lastMoveDiff = "";
-    if (validLastWinrate && validWinrate) {
-      if (Lizzie.config.handicapInsteadOfWinrate) {
-        double currHandicapedWR = Leelaz.winrateToHandicap(100 - curWR);
-        double lastHandicapedWR = Leelaz.winrateToHandicap(lastWR);
-        lastMoveDiff = String.format(": %.2f", currHandicapedWR - lastHandicapedWR);
-      } else {
-        double diff;
-        if (Lizzie.config.uiConfig.getBoolean("win-rate-always-black")) {
-          diff = lastWR - curWR;
-        } else {
-          diff = 100 - lastWR - curWR;
-        }
-        lastMoveDiff = String.format("(%s%.1f%%)", diff >= 0 ? "+" : "-", Math.abs(diff));
-      }
+    if (root.count(Stone.WHITE) > 0) {
+      builder.append("AW");
+      appendPoints(builder, root.stones(Stone.WHITE), geometry);
     }
-
-    String scoreMean = String.format("%.1f", -data.getScoreMean());
-
-    String wf =
-        "%s's winrate: %s %s\n"
-            + (Lizzie.leelaz.supportScoremean() ? "scoreMean: %s\n" : "")
-            + "(%s / %s playouts)";
-    boolean blackWinrate =
-        !node.getData().blackToPlay || Lizzie.config.uiConfig.getBoolean("win-rate-always-black");
-    String nc =
-        Lizzie.leelaz.supportScoremean()
-            ? String.format(
-                wf,
-                blackWinrate ? "Black" : "White",
-                curWinrate,
-                lastMoveDiff,
-                scoreMean,
-                engine,
-                playouts)
-            : String.format(
-                wf, blackWinrate ? "Black" : "White", curWinrate, lastMoveDiff, engine, playouts);
-
-    if (!data.comment.isEmpty()) {
-      String wp =
-          "(Black's |White's )winrate: [0-9\\.\\-]+%* \\(*[0-9.\\-+]*%*\\)*\n(scoreMean: [0-9\\.\\-+]*\n){0,1}\\([^\\(\\)/]* \\/ [0-9\\.]*[kmKM]* playouts\\)";
-      if (data.comment.matches("(?s).*" + wp + "(?s).*")) {
-        nc = data.comment.replaceAll(wp, nc);
-      } else {
-        nc = String.format("%s\n\n%s", nc, data.comment);
-      }
+    for (int p = path.size() - 2; p >= 0; p--) {
+      BoardData data = path.get(p).getData();
+      builder
+          .append(data.lastMoveColor.isWhite() ? ";W[" : ";B[")
+          .append(data.lastMove.map(SGFParser::asCoord).orElse(""))
+          .append(']');
     }
-    return nc;
+    return builder.append(')').toString();
   }
 
-  /** Format Comment with following format: <Winrate> <Playouts> */
-  private static String formatNodeData(BoardHistoryNode node) {
-    BoardData data = node.getData();
-
-    // Playouts
-    String playouts = Utils.getPlayoutsString(data.getPlayouts());
-
-    // Last winrate
-    Optional<BoardData> lastNode = node.previous().flatMap(n -> Optional.of(n.getData()));
-    boolean validLastWinrate = lastNode.map(d -> d.getPlayouts() > 0).orElse(false);
-    double lastWR = validLastWinrate ? lastNode.get().winrate : 50;
-
-    // Current winrate
-    boolean validWinrate = (data.getPlayouts() > 0);
-    double curWR = validWinrate ? data.winrate : 100 - lastWR;
-    String curWinrate = "";
-    curWinrate = String.format("%.1f", 100 - curWR);
-
-    String wf = "%s %s %s\n%s";
+  /** @return the value of the SZ property for a board size */
+  private static String sizeValue(BoardGeometry geometry) {
+    return geometry.getWidth()
+        + (geometry.getWidth() != geometry.getHeight() ? ":" + geometry.getHeight() : "");
+  }
 
-    return String.format(
-        wf, Lizzie.lizzieVersion, curWinrate, playouts, node.getData().bestMovesToString());
+  private static void saveToStream(Board board, Writer writer) throws IOException {
+    // To append the winrate to the comment of sgf we might need to update the Winrate
+    if (Lizzie.config.appendWinrateToComment) {
+      Lizzie.board.updateWinrate();
+    }
+    SGFWriter.write(board.getHistory(), writer);
   }
 
   public static boolean isListProperty(String key) {
@@ -966,61 +755,54 @@ public class SGFParser {
     props = new HashMap<String, String>();
   }
 
-  public static String Escaping(String in) {
-    String out = in.replaceAll("\\\\", "\\\\\\\\");
-    return out.replaceAll("\\]", "\\\\]");
-  }
-
   public static BoardHistoryList parseSgf(String value) {
-    BoardHistoryList history = null;
-
-    // Drop anything outside "(;...)"
-    final Pattern SGF_PATTERN = Pattern.compile("(?s).*?(\\(\\s*;{0,1}.*\\))(?s).*?");
-    Matcher sgfMatcher = SGF_PATTERN.matcher(value);
-    if (sgfMatcher.matches()) {
-      value = sgfMatcher.group(1);
-    } else {
-      return history;
-    }
-
-    // Determine the SZ property
-    Pattern szPattern = Pattern.compile("(?s).*?SZ\\[(\\d+)\\](?s).*");
-    Matcher szMatcher = szPattern.matcher(value);
-    int boardWidth = 19;
-    int boardHeight = 19;
-    if (szMatcher.matches()) {
-      String sizeStr = szMatcher.group(1);
-      Pattern sizePattern = Pattern.compile("([\\d]+):([\\d]+)");
-      Matcher sizeMatcher = sizePattern.matcher(sizeStr);
-      if (sizeMatcher.matches()) {
-        boardWidth = Integer.parseInt(sizeMatcher.group(1));
-        boardHeight = Integer.parseInt(sizeMatcher.group(2));
-      } else {
-        boardWidth = boardHeight = Integer.parseInt(sizeStr);
-      }
-    }
-    history = new BoardHistoryList(BoardData.empty(boardWidth, boardHeight));
+    GameReader game = new GameReader(null, false, SGFTokenizer.endsWithNestedTree(value));
+    if (!SGFTokenizer.tokenize(value, game)) return null;
+    return game.finish();
+  }
 
-    parseValue(value, history, false);
+  /**
+   * Reads the root node and the nodes of the main line down to the first variations, with the
+   * analysis Lizzie saved in them
+   *
+   * @param value the text of the first tree, without the trees nested in it
+   * @return the finished reader of the game, or null if the text holds no tree
+   */
+  static GameReader parseRoot(String value) {
+    // read as a game with variations, so the game ends back at its root as it does then
+    GameReader game = new GameReader(null, false, true).withAnalysis();
+    if (!SGFTokenizer.tokenize(value, game)) return null;
+    game.finish();
+    return game;
+  }
 
-    return history;
+  /**
+   * Reads the nodes of a tree, without the trees nested in it, as a new variation of the current
+   * node of a history
+   *
+   * @param history the history, left at the last node read, the current node if the text holds no
+   *     move
+   * @param value the text of the tree between its "(" and its first nested tree
+   * @return the reader of the tree
+   */
+  static GameReader parseSequence(BoardHistoryList history, String value) {
+    GameReader game = new GameReader(history, true, false).withAnalysis();
+    SGFTokenizer.tokenizeFragment(value, game);
+    return game;
   }
 
   public static int parseBranch(BoardHistoryList history, String value) {
-    parseValue(value, history, true);
+    GameReader game = new GameReader(history, true, SGFTokenizer.endsWithNestedTree(value));
+    SGFTokenizer.tokenizeFragment(value, game);
+    game.finish();
     return history.getCurrentHistoryNode().numberOfChildren() - 1;
   }
 
-  private static boolean isSgf(String value) {
-    final Pattern SGF_PATTERN = Pattern.compile("(?s).*?(\\(\\s*;{0,1}.*\\))(?s).*?");
-    Matcher sgfMatcher = SGF_PATTERN.matcher(value);
-    return sgfMatcher.matches();
-  }
-
-  private static String asCoord(int i) {
-    int[] cor = Lizzie.board.getCoord(i);
-
-    return asCoord(cor);
+  /** Appends a point value for every point of a set */
+  private static void appendPoints(StringBuilder builder, long[] points, BoardGeometry geometry) {
+    for (int i = BitBoard.nextSetBit(points, 0); i >= 0; i = BitBoard.nextSetBit(points, i + 1)) {
+      builder.append('[').append(geometry.sgfNameOf(i)).append(']');
+    }
   }
 
   private static String asCoord(int[] c) {
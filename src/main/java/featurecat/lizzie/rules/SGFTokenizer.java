@@ -0,0 +1,238 @@
+package featurecat.lizzie.rules;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Locale;
+
+/**
+ * Reads SGF text in one pass and reports its trees, nodes and property values as they are read. The
+ * text is read in blocks from a reader, and the builders for names and values are reused, so
+ * nothing the size of the file is held at once.
+ *
+ * <p>Text before the first tree and between the trees of a collection is skipped. Lower case
+ * letters in property names are dropped, as in the long names of old Smart-Go files ("PlayerBlack"
+ * is "PB"). In a value, a character after a backslash is taken as it is, except that "\n" is a line
+ * break.
+ */
+public final class SGFTokenizer {
+  /** Receives the parts of SGF text in the order they are read */
+  public interface Handler {
+    /** A "(" outside a value */
+    void startTree();
+
+    /** A ")" outside a value */
+    void endTree();
+
+    /** A ";" outside a value */
+    void startNode();
+
+    /**
+     * One value of a property, a property with several values is reported once for each
+     *
+     * @param key the name of the property, without lower case letters
+     * @param value the value, unescaped
+     */
+    void property(String key, String value);
+  }
+
+  private static final int BLOCK = 1 << 16;
+  // how much of the end of a file is read to find its last tree
+  private static final int TAIL = 4096;
+
+  private final Reader reader;
+  private final Handler handler;
+  private final char[] block = new char[BLOCK];
+  private int position, limit;
+  private final StringBuilder name = new StringBuilder();
+  private final StringBuilder value = new StringBuilder();
+  private String key = "";
+  private int depth;
+
+  private SGFTokenizer(Reader reader, Handler handler, int depth) {
+    this.reader = reader;
+    this.handler = handler;
+    this.depth = depth;
+  }
+
+  /**
+   * Reads a game or a collection of games
+   *
+   * @param reader the text, read to its end
+   * @param handler receives what is read
+   * @return whether a tree was found
+   */
+  public static boolean tokenize(Reader reader, Handler handler) throws IOException {
+    return new SGFTokenizer(reader, handler, 0).run();
+  }
+
+  /**
+   * Reads a game or a collection of games
+   *
+   * @param text the text
+   * @param handler receives what is read
+   * @return whether a tree was found
+   */
+  public static boolean tokenize(String text, Handler handler) {
+    try {
+      return tokenize(new StringReader(text), handler);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Reads text that continues a tree already open, like the moves of a branch
+   *
+   * @param text the text
+   * @param handler receives what is read
+   */
+  static void tokenizeFragment(String text, Handler handler) {
+    try {
+      new SGFTokenizer(new StringReader(text), handler, 1).run();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Tells the files of MultiGo, which write the rest of the main line as the first variation,
+   * "(;B[aa](;W[bb])(;W[cc]))", from those that go on with the main line after a variation
+   *
+   * @param text the text of a game
+   * @return whether the last ")" of the text follows another one
+   */
+  public static boolean endsWithNestedTree(CharSequence text) {
+    int i = text.length() - 1;
+    while (i >= 0 && text.charAt(i) != ')') i--;
+    for (i--; i >= 0; i--) {
+      char c = text.charAt(i);
+      if (!Character.isWhitespace(c)) return c == ')';
+    }
+    return false;
+  }
+
+  /**
+   * Whether sgf text in an encoding can be scanned as bytes: its syntax is ASCII, and in UTF-8, the
+   * EUC encodings, GB2312 and the single byte encodings no byte of another character is an ASCII
+   * one. In Shift_JIS, Big5 or GBK the second byte of a character may be a "\" or a "]".
+   *
+   * @param charset the encoding of a file
+   * @return whether its bytes can be read as ASCII to find the syntax
+   */
+  public static boolean isAsciiSafe(Charset charset) {
+    String name = charset.name().toUpperCase(Locale.ROOT);
+    return name.equals("UTF-8")
+        || name.equals("US-ASCII")
+        || name.equals("GB2312")
+        || name.startsWith("EUC-")
+        || name.startsWith("ISO-8859-")
+        || name.startsWith("WINDOWS-125");
+  }
+
+  /**
+   * Like {@link #endsWithNestedTree(CharSequence)} for a file, reading only its end when the
+   * encoding can be scanned as bytes, see {@link #isAsciiSafe}, and the whole text otherwise
+   *
+   * @param file an SGF file
+   * @param charset the encoding of the file
+   * @return whether the last ")" of the file follows another one
+   */
+  public static boolean endsWithNestedTree(File file, Charset charset) throws IOException {
+    if (!isAsciiSafe(charset)) {
+      return endsWithNestedTree(new String(Files.readAllBytes(file.toPath()), charset));
+    }
+    try (RandomAccessFile tail = new RandomAccessFile(file, "r")) {
+      int size = (int) Math.min(TAIL, tail.length());
+      byte[] bytes = new byte[size];
+      tail.seek(tail.length() - size);
+      tail.readFully(bytes);
+      StringBuilder text = new StringBuilder(size);
+      for (byte b : bytes) text.append((char) (b & 0xff));
+      return endsWithNestedTree(text);
+    }
+  }
+
+  private boolean run() throws IOException {
+    boolean found = depth > 0;
+    int c;
+    while ((c = next()) >= 0) {
+      if (depth == 0) {
+        // outside the trees, only the start of the next one counts
+        if (c != '(') continue;
+        found = true;
+      }
+      switch (c) {
+        case '(':
+          depth++;
+          handler.startTree();
+          break;
+        case ')':
+          depth--;
+          handler.endTree();
+          break;
+        case ';':
+          handler.startNode();
+          break;
+        case '[':
+          if (name.length() > 0) {
+            key = keyOf(name);
+            name.setLength(0);
+          }
+          readValue();
+          handler.property(key, value.toString());
+          break;
+        default:
+          if (c > ' ' && (c < 'a' || c > 'z')) name.append((char) c);
+      }
+    }
+    return found;
+  }
+
+  private void readValue() throws IOException {
+    value.setLength(0);
+    int c;
+    while ((c = next()) >= 0 && c != ']') {
+      if (c == '\\') {
+        c = next();
+        if (c < 0) break;
+        value.append(c == 'n' ? '\n' : (char) c);
+      } else {
+        value.append((char) c);
+      }
+    }
+  }
+
+  /** @return the last key if the name is the same, so a node of moves makes no new strings */
+  private String keyOf(StringBuilder name) {
+    if (name.length() == key.length()) {
+      boolean same = true;
+      for (int i = 0; i < key.length() && same; i++) same = name.charAt(i) == key.charAt(i);
+      if (same) return key;
+    }
+    if (name.length() == 1) {
+      char c = name.charAt(0);
+      if (c == 'B') return "B";
+      if (c == 'W') return "W";
+      if (c == 'C') return "C";
+    }
+    return name.toString();
+  }
+
+  private int next() throws IOException {
+    if (position == limit) {
+      limit = reader.read(block, 0, BLOCK);
+      position = 0;
+      if (limit <= 0) {
+        limit = 0;
+        return -1;
+      }
+    }
+    return block[position++];
+  }
+}
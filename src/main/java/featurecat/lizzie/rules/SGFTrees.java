@@ -0,0 +1,135 @@
+package featurecat.lizzie.rules;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * The trees of the first game of an sgf file, found in one pass over its bytes by the offsets of
+ * their parentheses, so the sequence of any tree can be read without reading the others.
+ *
+ * <p>The index works on bytes, so it only takes the encodings where the bytes of the sgf syntax are
+ * never part of another character, see {@link SGFTokenizer#isAsciiSafe}. In Shift_JIS, Big5 or GBK
+ * a "\" or a "]" may be the second byte of a character, and such files are read as text.
+ */
+final class SGFTrees {
+  private final ByteBuffer bytes;
+  private final Charset charset;
+
+  // the trees in the order they open: the offsets of their "(" and ")", their first nested tree and
+  // their next sibling, -1 for none
+  private int[] start = new int[1024];
+  private int[] end = new int[1024];
+  private int[] firstChild = new int[1024];
+  private int[] nextSibling = new int[1024];
+  private int trees;
+
+  /**
+   * Indexes the first game of an sgf file
+   *
+   * @param bytes the file
+   * @param charset the encoding of the file
+   */
+  SGFTrees(ByteBuffer bytes, Charset charset) {
+    if (!SGFTokenizer.isAsciiSafe(charset)) {
+      throw new IllegalArgumentException("sgf trees cannot be found by the bytes of " + charset);
+    }
+    this.bytes = bytes;
+    this.charset = charset;
+    index();
+  }
+
+  /** Finds every tree of the first game, skipping property values */
+  private void index() {
+    int[] open = new int[64];
+    int depth = 0;
+    int lastChild = -1;
+    int limit = bytes.limit();
+    for (int i = 0; i < limit; i++) {
+      byte b = bytes.get(i);
+      if (b == '[') {
+        // skip the value, a "\" escapes the next byte
+        for (i++; i < limit && bytes.get(i) != ']'; i++) {
+          if (bytes.get(i) == '\\') i++;
+        }
+      } else if (b == '(') {
+        if (depth == 0 && trees > 0) break;
+        int tree = add(i);
+        if (depth > 0) {
+          int parent = open[depth - 1];
+          if (firstChild[parent] < 0) {
+            firstChild[parent] = tree;
+          } else {
+            // the last child of the parent is the last tree that closed at this depth
+            nextSibling[lastChild] = tree;
+          }
+        }
+        if (depth == open.length) open = Arrays.copyOf(open, depth * 2);
+        open[depth++] = tree;
+      } else if (b == ')' && depth > 0) {
+        lastChild = open[--depth];
+        end[lastChild] = i;
+        if (depth == 0) break;
+      }
+    }
+    // a file cut short closes its open trees at its end
+    while (depth > 0) end[open[--depth]] = limit;
+  }
+
+  private int add(int offset) {
+    if (trees == start.length) {
+      start = Arrays.copyOf(start, trees * 2);
+      end = Arrays.copyOf(end, trees * 2);
+      firstChild = Arrays.copyOf(firstChild, trees * 2);
+      nextSibling = Arrays.copyOf(nextSibling, trees * 2);
+    }
+    start[trees] = offset;
+    end[trees] = offset;
+    firstChild[trees] = -1;
+    nextSibling[trees] = -1;
+    return trees++;
+  }
+
+  /** @return the number of trees, 0 if the file holds none */
+  int size() {
+    return trees;
+  }
+
+  /** @return the first tree nested in a tree, -1 if it has none */
+  int firstChild(int tree) {
+    return firstChild[tree];
+  }
+
+  /** @return the tree after a tree in the tree that holds them, -1 if it is the last */
+  int nextSibling(int tree) {
+    return nextSibling[tree];
+  }
+
+  /** @return the number of bytes of the trees nested in a tree */
+  int childrenLength(int tree) {
+    return firstChild[tree] < 0 ? 0 : end[tree] - start[firstChild[tree]];
+  }
+
+  /** @return the text of a tree between its "(" and its first nested tree */
+  String sequence(int tree) {
+    return decode(start[tree] + 1, firstChild[tree] >= 0 ? start[firstChild[tree]] : end[tree]);
+  }
+
+  /**
+   * @param firstTree the first of some sibling trees
+   * @return the text of the trees from the first to the last sibling, as they are in the file
+   */
+  String text(int firstTree) {
+    int last = firstTree;
+    while (nextSibling[last] >= 0) last = nextSibling[last];
+    return decode(start[firstTree], Math.min(end[last] + 1, bytes.limit()));
+  }
+
+  private String decode(int from, int to) {
+    byte[] text = new byte[Math.max(0, to - from)];
+    ByteBuffer view = bytes.duplicate();
+    view.position(from);
+    view.get(text);
+    return new String(text, charset);
+  }
+}
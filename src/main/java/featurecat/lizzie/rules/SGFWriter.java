@@ -0,0 +1,329 @@
+package featurecat.lizzie.rules;
+
+import featurecat.lizzie.Lizzie;
+import featurecat.lizzie.analysis.GameInfo;
+import featurecat.lizzie.analysis.Leelaz;
+import featurecat.lizzie.analysis.MoveData;
+import featurecat.lizzie.util.Utils;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Writes a game tree as SGF straight to a writer. The tree is walked with a stack instead of by
+ * recursion, so a long main line is written without copying and a deep tree cannot overflow the
+ * call stack.
+ *
+ * <p>The analysis Lizzie adds to the comments is made from the winrate, playouts and best moves
+ * held in each node, and the analysis written by an earlier save is found at the start of the
+ * comment by its layout of lines, so the game is never matched against patterns.
+ */
+public final class SGFWriter {
+  private static final String BLACK_WINRATE = "Black's winrate: ";
+  private static final String WHITE_WINRATE = "White's winrate: ";
+  private static final String SCORE_MEAN = "scoreMean: ";
+  private static final String PLAYOUTS = " playouts)";
+
+  private final Writer out;
+  private final boolean appendWinrate = Lizzie.config.appendWinrateToComment;
+  private final boolean holdBestMoves = Lizzie.config.holdBestMovesToSgf;
+  // the point value of a pass on the board of the game
+  private String pass = "";
+
+  private SGFWriter(Writer out) {
+    this.out = out;
+  }
+
+  /**
+   * Writes a game from its root, with every variation
+   *
+   * @param history the game
+   * @param out where the game is written, not closed
+   */
+  public static void write(BoardHistoryList history, Writer out) throws IOException {
+    new SGFWriter(out).writeGame(history);
+  }
+
+  private void writeGame(BoardHistoryList history) throws IOException {
+    GameInfo gameInfo = history.getGameInfo();
+    int handicap = gameInfo.getHandicap();
+    BoardHistoryNode root = history.root();
+    BoardData data = root.getData();
+    BoardGeometry geometry = data.getGeometry();
+    pass = SGFParser.passPos(geometry);
+
+    // the game properties, then the others the root was read with
+    Map<String, String> properties = new LinkedHashMap<>();
+    if (handicap != 0) properties.put("HA", String.valueOf(handicap));
+    properties.put("KM", String.valueOf(gameInfo.getKomi()));
+    properties.put("PW", gameInfo.getPlayerWhite());
+    properties.put("PB", gameInfo.getPlayerBlack());
+    properties.put("DT", new SimpleDateFormat("yyyy-MM-dd").format(gameInfo.getDate()));
+    properties.put("AP", "Lizzie: " + Lizzie.lizzieVersion);
+    properties.put(
+        "SZ",
+        geometry.getWidth()
+            + (geometry.getWidth() != geometry.getHeight() ? ":" + geometry.getHeight() : ""));
+    data.getProperties().forEach(properties::putIfAbsent);
+    out.write("(;");
+    writeProperties(properties);
+
+    // the stones of the root, handicap stones are all black
+    BitBoard position = data.getBitBoard();
+    writePoints("AB", position.stones(Stone.BLACK), geometry);
+    if (handicap == 0) writePoints("AW", position.stones(Stone.WHITE), geometry);
+    if (!data.comment.isEmpty()) writeProperty("C", data.comment);
+
+    writeTree(root);
+    out.write(')');
+  }
+
+  /**
+   * Writes the nodes below a node. A node with one child is followed by it at once; the variations
+   * of a node with more are put on the stack, each to be written inside parentheses.
+   */
+  private void writeTree(BoardHistoryNode start) throws IOException {
+    // the start, which is no one's variation, marks the end of a variation on the stack
+    Deque<BoardHistoryNode> stack = new ArrayDeque<>();
+    BoardHistoryNode node = start;
+    for (; ; ) {
+      while (node != null) {
+        writeNode(node);
+        // variations still in a lazy sgf file are copied as they are, without reading them
+        String folded = node.foldedVariations();
+        if (folded != null) {
+          out.write(folded);
+          node = null;
+          continue;
+        }
+        List<BoardHistoryNode> variations = node.getVariations();
+        if (variations.size() > 1) {
+          for (int i = variations.size() - 1; i >= 0; i--) {
+            stack.push(start);
+            stack.push(variations.get(i));
+          }
+          node = null;
+        } else {
+          // a dummy node that ends a line is not written
+          node = node.next().orElse(null);
+        }
+      }
+      while (stack.peek() == start) {
+        stack.pop();
+        out.write(')');
+      }
+      if (stack.isEmpty()) return;
+      node = stack.pop();
+      out.write('(');
+    }
+  }
+
+  private void writeNode(BoardHistoryNode node) throws IOException {
+    BoardData data = node.getData();
+    if (data.lastMoveColor != Stone.BLACK && data.lastMoveColor != Stone.WHITE) return;
+    out.write(';');
+    if (!data.dummy) {
+      out.write(data.lastMoveColor == Stone.BLACK ? "B[" : "W[");
+      if (data.lastMove.isPresent()) {
+        int[] move = data.lastMove.get();
+        BoardGeometry geometry = data.getGeometry();
+        out.write(geometry.sgfNameOf(geometry.getIndex(move[0], move[1])));
+      } else {
+        out.write(pass);
+      }
+      out.write(']');
+    }
+    writeProperties(data.getProperties());
+
+    if (appendWinrate) {
+      String annotation = annotation(node);
+      String comment = data.comment;
+      int end = annotationEnd(comment);
+      if (end >= 0) {
+        comment = annotation + comment.substring(end);
+      } else {
+        comment = comment.isEmpty() ? annotation : annotation + "\n\n" + comment;
+      }
+      writeProperty("C", comment);
+    } else if (!data.comment.isEmpty()) {
+      writeProperty("C", data.comment);
+    }
+
+    // the analysis of the node, to be shown again when the game is loaded
+    if (holdBestMoves) {
+      out.write("LZ[");
+      writeAnalysis(node);
+      out.write(']');
+    }
+  }
+
+  private void writeProperties(Map<String, String> properties) throws IOException {
+    for (Map.Entry<String, String> property : properties.entrySet()) {
+      String key = property.getKey();
+      String value = property.getValue();
+      if (SGFParser.isListProperty(key)) {
+        // Label and add/remove stones
+        out.write(key);
+        int from = 0;
+        for (int comma = value.indexOf(','); ; comma = value.indexOf(',', from)) {
+          out.write('[');
+          writeValue(value, from, comma < 0 ? value.length() : comma);
+          out.write(']');
+          if (comma < 0) break;
+          from = comma + 1;
+        }
+      } else {
+        writeProperty(key, value);
+      }
+    }
+  }
+
+  private void writeProperty(String key, String value) throws IOException {
+    out.write(key);
+    out.write('[');
+    writeValue(value, 0, value.length());
+    out.write(']');
+  }
+
+  private void writePoints(String key, long[] points, BoardGeometry geometry) throws IOException {
+    int i = BitBoard.nextSetBit(points, 0);
+    if (i < 0) return;
+    out.write(key);
+    for (; i >= 0; i = BitBoard.nextSetBit(points, i + 1)) {
+      out.write('[');
+      out.write(geometry.sgfNameOf(i));
+      out.write(']');
+    }
+  }
+
+  /** Writes a part of a value with "\" and "]" escaped */
+  private void writeValue(String value, int from, int to) throws IOException {
+    int start = from;
+    for (int i = from; i < to; i++) {
+      char c = value.charAt(i);
+      if (c == '\\' || c == ']') {
+        out.write(value, start, i - start);
+        out.write('\\');
+        start = i;
+      }
+    }
+    out.write(value, start, to - start);
+  }
+
+  /** Writes the version, winrate, playouts and best moves of a node, as the LZ property holds */
+  private void writeAnalysis(BoardHistoryNode node) throws IOException {
+    BoardData data = node.getData();
+
+    // Last winrate
+    Optional<BoardData> lastNode = node.previous().map(BoardHistoryNode::getData);
+    boolean validLastWinrate = lastNode.map(d -> d.getPlayouts() > 0).orElse(false);
+    double lastWR = validLastWinrate ? lastNode.get().winrate : 50;
+
+    // Current winrate
+    boolean validWinrate = (data.getPlayouts() > 0);
+    double curWR = validWinrate ? data.winrate : 100 - lastWR;
+
+    out.write(Lizzie.lizzieVersion);
+    out.write(' ');
+    out.write(String.format("%.1f", 100 - curWR));
+    out.write(' ');
+    out.write(Utils.getPlayoutsString(data.getPlayouts()));
+    out.write('\n');
+
+    // eg: move R5 visits 38 winrate 5404 pv R5 Q5 R6 S4 Q10 C3 D3 C4 C6 C5 D5 info
+    boolean scoreMean = Lizzie.leelaz.supportScoremean();
+    for (MoveData move : data.bestMoves) {
+      out.write("move ");
+      out.write(move.coordinate);
+      out.write(" visits ");
+      out.write(Integer.toString(move.playouts));
+      out.write(" winrate ");
+      out.write(Integer.toString((int) (move.winrate * 100)));
+      if (scoreMean) {
+        out.write(" scoreMean ");
+        out.write(Double.toString(move.scoreMean));
+      }
+      out.write(" pv");
+      for (String vertex : move.variation) {
+        out.write(' ');
+        out.write(vertex);
+      }
+      // this order is just because of how the MoveData info parser works
+      out.write(" info ");
+    }
+  }
+
+  /**
+   * Format Comment with following format: Move <Move number> <Winrate> (<Last Move Rate
+   * Difference>) (<Weight name> / <Playouts>)
+   */
+  private static String annotation(BoardHistoryNode node) {
+    BoardData data = node.getData();
+    boolean alwaysBlack = Lizzie.config.uiConfig.getBoolean("win-rate-always-black");
+
+    // Last winrate
+    Optional<BoardData> lastNode = node.previous().map(BoardHistoryNode::getData);
+    boolean validLastWinrate = lastNode.map(d -> d.getPlayouts() > 0).orElse(false);
+    double lastWR = validLastWinrate ? lastNode.get().getWinrate() : 50;
+
+    // Current winrate
+    boolean validWinrate = (data.getPlayouts() > 0);
+    double curWR = validWinrate ? data.getWinrate() : alwaysBlack ? lastWR : 100 - lastWR;
+
+    StringBuilder builder = new StringBuilder(80);
+    builder.append(!data.blackToPlay || alwaysBlack ? BLACK_WINRATE : WHITE_WINRATE);
+    if (Lizzie.config.handicapInsteadOfWinrate) {
+      builder.append(String.format("%.2f", Leelaz.winrateToHandicap(100 - curWR)));
+    } else {
+      builder.append(String.format("%.1f%%", 100 - curWR));
+    }
+
+    // Last move difference winrate
+    builder.append(' ');
+    if (validLastWinrate && validWinrate) {
+      if (Lizzie.config.handicapInsteadOfWinrate) {
+        double currHandicapedWR = Leelaz.winrateToHandicap(100 - curWR);
+        double lastHandicapedWR = Leelaz.winrateToHandicap(lastWR);
+        builder.append(String.format(": %.2f", currHandicapedWR - lastHandicapedWR));
+      } else {
+        double diff = alwaysBlack ? lastWR - curWR : 100 - lastWR - curWR;
+        builder.append(String.format("(%s%.1f%%)", diff >= 0 ? "+" : "-", Math.abs(diff)));
+      }
+    }
+    builder.append('\n');
+
+    if (Lizzie.leelaz.supportScoremean()) {
+      builder.append(SCORE_MEAN).append(String.format("%.1f", -data.getScoreMean())).append('\n');
+    }
+    builder.append('(').append(Lizzie.leelaz.currentWeight()).append(" / ");
+    builder.append(Utils.getPlayoutsString(data.getPlayouts())).append(PLAYOUTS);
+    return builder.toString();
+  }
+
+  /**
+   * Finds the analysis an earlier save put at the start of a comment: a line with the winrate, a
+   * line with the score mean if the engine gave one, and a line with the weight and the playouts
+   *
+   * @param comment the comment of a node
+   * @return the index just after the analysis, or -1 if the comment does not start with one
+   */
+  static int annotationEnd(String comment) {
+    if (!comment.startsWith(BLACK_WINRATE) && !comment.startsWith(WHITE_WINRATE)) return -1;
+    int line = comment.indexOf('\n') + 1;
+    if (line == 0) return -1;
+    if (comment.startsWith(SCORE_MEAN, line)) {
+      line = comment.indexOf('\n', line) + 1;
+      if (line == 0) return -1;
+    }
+    if (!comment.startsWith("(", line)) return -1;
+    int end = comment.indexOf('\n', line);
+    if (end < 0) end = comment.length();
+    return comment.startsWith(PLAYOUTS, end - PLAYOUTS.length()) ? end : -1;
+  }
+}
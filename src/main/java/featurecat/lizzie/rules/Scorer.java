@@ -0,0 +1,301 @@
+package featurecat.lizzie.rules;
+
+import java.util.Arrays;
+
+/**
+ * Scores a position in score mode. Empty points and dead stones form regions bordered by live
+ * stones; a region bordered by one color only is that color's. All regions are found in a single
+ * pass when the scorer is created, and toggling the status of a group only labels again the regions
+ * that touch it.
+ */
+public class Scorer {
+  private final int width;
+  private final int height;
+  // the position, with dead stones marked captured
+  private final Stone[] stones;
+  // the position, plus the owner of every empty point
+  private final Stone[] scoreStones;
+  // the region of every empty point or dead stone, -1 for live stones
+  private final int[] regions;
+  private final int[] queue;
+
+  // per region: a point in it, its owner, and its empty points, dead black and dead white stones
+  private int[] regionSeed = new int[64];
+  private Stone[] regionOwner = new Stone[64];
+  private int[] regionEmpty = new int[64];
+  private int[] regionBlackDead = new int[64];
+  private int[] regionWhiteDead = new int[64];
+  private int regionCount;
+  // regions that were dropped, their slots are used again
+  private int[] freeRegions = new int[64];
+  private int freeCount;
+
+  private int blackAlive;
+  private int whiteAlive;
+  private int blackPoints;
+  private int whitePoints;
+  private int blackDead;
+  private int whiteDead;
+  // dead stones inside the regions of each color, they are points of that color in area scoring
+  private int deadInBlackArea;
+  private int deadInWhiteArea;
+
+  /**
+   * Scores a position
+   *
+   * @param stones the position, dead stones may already be marked captured
+   * @param width the board width
+   * @param height the board height
+   */
+  public Scorer(Stone[] stones, int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.stones = stones.clone();
+    this.scoreStones = stones.clone();
+    regions = new int[stones.length];
+    queue = new int[stones.length];
+    Arrays.fill(regions, -1);
+    for (Stone stone : this.stones) {
+      if (stone == Stone.BLACK) blackAlive++;
+      else if (stone == Stone.WHITE) whiteAlive++;
+    }
+    for (int i = 0; i < stones.length; i++) {
+      if (isOpen(i) && regions[i] < 0) label(i);
+    }
+  }
+
+  /**
+   * The position with every empty point marked as black point, white point or dame. It is owned by
+   * the scorer and must not be modified.
+   *
+   * @return the score mode stones
+   */
+  public Stone[] getScoreStones() {
+    return scoreStones;
+  }
+
+  /**
+   * Starting at a stone, toggles all stones with the same status and color within the area bordered
+   * by stones of the other color, then scores the regions around them again.
+   *
+   * @param index the clicked point
+   * @return whether any stone was toggled
+   */
+  public boolean toggle(int index) {
+    Stone toggle = stones[index];
+    Stone toggleTo;
+    switch (toggle) {
+      case BLACK:
+        toggleTo = Stone.BLACK_CAPTURED;
+        break;
+      case BLACK_CAPTURED:
+        toggleTo = Stone.BLACK;
+        break;
+      case WHITE:
+        toggleTo = Stone.WHITE_CAPTURED;
+        break;
+      case WHITE_CAPTURED:
+        toggleTo = Stone.WHITE;
+        break;
+      default:
+        return false;
+    }
+
+    // the stones to toggle, reached through empty points and stones of the same kind
+    boolean[] seen = new boolean[stones.length];
+    int[] toggled = new int[stones.length];
+    int toggledCount = 0;
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = index;
+    seen[index] = true;
+    while (head < tail) {
+      int p = queue[head++];
+      if (stones[p] == toggle) toggled[toggledCount++] = p;
+      for (int dir = 0; dir < 4; dir++) {
+        int q = neighbor(p, dir);
+        if (q >= 0 && !seen[q] && (stones[q] == Stone.EMPTY || stones[q] == toggle)) {
+          seen[q] = true;
+          queue[tail++] = q;
+        }
+      }
+    }
+
+    // drop the regions that contain or touch those stones
+    int[] dirty = new int[2 * stones.length];
+    int dirtyCount = 0;
+    for (int i = 0; i < toggledCount; i++) {
+      int p = toggled[i];
+      dirtyCount = unlabel(regions[p], dirty, dirtyCount);
+      for (int dir = 0; dir < 4; dir++) {
+        int q = neighbor(p, dir);
+        if (q >= 0) dirtyCount = unlabel(regions[q], dirty, dirtyCount);
+      }
+    }
+
+    for (int i = 0; i < toggledCount; i++) {
+      int p = toggled[i];
+      stones[p] = toggleTo;
+      scoreStones[p] = toggleTo;
+      dirty[dirtyCount++] = p;
+    }
+    int change = toggleTo == Stone.BLACK || toggleTo == Stone.WHITE ? toggledCount : -toggledCount;
+    if (toggle == Stone.BLACK || toggle == Stone.BLACK_CAPTURED) blackAlive += change;
+    else whiteAlive += change;
+
+    for (int i = 0; i < dirtyCount; i++) {
+      int p = dirty[i];
+      if (isOpen(p) && regions[p] < 0) label(p);
+    }
+    return toggledCount > 0;
+  }
+
+  /**
+   * Territory score: empty points of each color, plus twice the dead stones of the other color,
+   * plus prisoners, plus komi for white
+   *
+   * @return black and white score
+   */
+  public double[] territoryScore(int blackCaptures, int whiteCaptures, double komi) {
+    return new double[] {
+      blackCaptures + blackPoints + 2 * whiteDead,
+      whiteCaptures + komi + whitePoints + 2 * blackDead
+    };
+  }
+
+  /**
+   * Area score: live stones and every point of the regions of each color, plus komi for white
+   *
+   * @return black and white score
+   */
+  public double[] areaScore(double komi) {
+    return new double[] {
+      blackAlive + blackPoints + deadInBlackArea, komi + whiteAlive + whitePoints + deadInWhiteArea
+    };
+  }
+
+  private boolean isOpen(int index) {
+    Stone stone = stones[index];
+    return stone == Stone.EMPTY || stone == Stone.BLACK_CAPTURED || stone == Stone.WHITE_CAPTURED;
+  }
+
+  /** Labels the region of an open point, which must not have one yet, and adds up its score */
+  private void label(int start) {
+    int region = newRegion(start);
+    int empty = 0;
+    int deadBlack = 0;
+    int deadWhite = 0;
+    boolean byBlack = false;
+    boolean byWhite = false;
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = start;
+    regions[start] = region;
+    while (head < tail) {
+      int p = queue[head++];
+      Stone stone = stones[p];
+      if (stone == Stone.EMPTY) empty++;
+      else if (stone == Stone.BLACK_CAPTURED) deadBlack++;
+      else deadWhite++;
+      for (int dir = 0; dir < 4; dir++) {
+        int q = neighbor(p, dir);
+        if (q < 0) continue;
+        if (stones[q] == Stone.BLACK) {
+          byBlack = true;
+        } else if (stones[q] == Stone.WHITE) {
+          byWhite = true;
+        } else if (regions[q] < 0) {
+          regions[q] = region;
+          queue[tail++] = q;
+        }
+      }
+    }
+    Stone owner =
+        byBlack && byWhite
+            ? Stone.DAME
+            : byBlack ? Stone.BLACK_POINT : byWhite ? Stone.WHITE_POINT : Stone.EMPTY;
+    for (int i = 0; i < tail; i++) {
+      if (stones[queue[i]] == Stone.EMPTY) scoreStones[queue[i]] = owner;
+    }
+    regionOwner[region] = owner;
+    regionEmpty[region] = empty;
+    regionBlackDead[region] = deadBlack;
+    regionWhiteDead[region] = deadWhite;
+    count(region, 1);
+  }
+
+  /**
+   * Removes a region and its score, and collects its points
+   *
+   * @return the new number of collected points
+   */
+  private int unlabel(int region, int[] points, int count) {
+    if (region < 0) return count;
+    count(region, -1);
+    if (freeCount == freeRegions.length) freeRegions = Arrays.copyOf(freeRegions, freeCount * 2);
+    freeRegions[freeCount++] = region;
+    int start = regionSeed[region];
+    int head = count;
+    int tail = count;
+    points[tail++] = start;
+    regions[start] = -1;
+    while (head < tail) {
+      int p = points[head++];
+      if (stones[p] == Stone.EMPTY) scoreStones[p] = Stone.EMPTY;
+      for (int dir = 0; dir < 4; dir++) {
+        int q = neighbor(p, dir);
+        if (q >= 0 && regions[q] == region) {
+          regions[q] = -1;
+          points[tail++] = q;
+        }
+      }
+    }
+    return tail;
+  }
+
+  private void count(int region, int sign) {
+    int dead = regionBlackDead[region] + regionWhiteDead[region];
+    blackDead += sign * regionBlackDead[region];
+    whiteDead += sign * regionWhiteDead[region];
+    if (regionOwner[region] == Stone.BLACK_POINT) {
+      blackPoints += sign * regionEmpty[region];
+      deadInBlackArea += sign * dead;
+    } else if (regionOwner[region] == Stone.WHITE_POINT) {
+      whitePoints += sign * regionEmpty[region];
+      deadInWhiteArea += sign * dead;
+    }
+  }
+
+  private int newRegion(int seed) {
+    if (freeCount > 0) {
+      int region = freeRegions[--freeCount];
+      regionSeed[region] = seed;
+      return region;
+    }
+    if (regionCount == regionSeed.length) {
+      int size = regionCount * 2;
+      regionSeed = Arrays.copyOf(regionSeed, size);
+      regionOwner = Arrays.copyOf(regionOwner, size);
+      regionEmpty = Arrays.copyOf(regionEmpty, size);
+      regionBlackDead = Arrays.copyOf(regionBlackDead, size);
+      regionWhiteDead = Arrays.copyOf(regionWhiteDead, size);
+    }
+    regionSeed[regionCount] = seed;
+    return regionCount++;
+  }
+
+  private int neighbor(int index, int dir) {
+    int x = index / height;
+    int y = index % height;
+    switch (dir) {
+      case 0:
+        return x > 0 ? index - height : -1;
+      case 1:
+        return x < width - 1 ? index + height : -1;
+      case 2:
+        return y > 0 ? index - 1 : -1;
+      default:
+        return y < height - 1 ? index + 1 : -1;
+    }
+  }
+}
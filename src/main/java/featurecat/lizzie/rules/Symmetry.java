@@ -0,0 +1,74 @@
+package featurecat.lizzie.rules;
+
+/**
+ * The eight symmetries of a square board. Each one transposes the board or not, then mirrors it
+ * left to right and top to bottom or not; only the four that do not transpose fit a board that is
+ * not square.
+ */
+public enum Symmetry {
+  IDENTITY(false, false, false),
+  FLIP_X(false, true, false),
+  FLIP_Y(false, false, true),
+  ROTATE_180(false, true, true),
+  TRANSPOSE(true, false, false),
+  ROTATE_CLOCKWISE(true, true, false),
+  ROTATE_COUNTERCLOCKWISE(true, false, true),
+  ANTI_TRANSPOSE(true, true, true);
+
+  private final boolean transpose;
+  private final boolean flipX;
+  private final boolean flipY;
+
+  Symmetry(boolean transpose, boolean flipX, boolean flipY) {
+    this.transpose = transpose;
+    this.flipX = flipX;
+    this.flipY = flipY;
+  }
+
+  private static Symmetry of(boolean transpose, boolean flipX, boolean flipY) {
+    return values()[(transpose ? 4 : 0) + (flipY ? 2 : 0) + (flipX ? 1 : 0)];
+  }
+
+  /**
+   * @param geometry the size of a board
+   * @return whether this symmetry maps the board onto itself
+   */
+  public boolean fits(BoardGeometry geometry) {
+    return !transpose || geometry.getWidth() == geometry.getHeight();
+  }
+
+  /**
+   * @param geometry the size of the board, which this symmetry must fit
+   * @param move a move code
+   * @return the code of the move on the transformed board, passes and resignations unchanged
+   */
+  public int apply(BoardGeometry geometry, int move) {
+    if (move < 0 || this == IDENTITY) return move;
+    int x = geometry.getX(move);
+    int y = geometry.getY(move);
+    if (transpose) {
+      int t = x;
+      x = y;
+      y = t;
+    }
+    if (flipX) x = geometry.getWidth() - 1 - x;
+    if (flipY) y = geometry.getHeight() - 1 - y;
+    return geometry.getIndex(x, y);
+  }
+
+  /** @return the symmetry that undoes this one */
+  public Symmetry inverse() {
+    // mirroring then transposing is transposing then mirroring the other axis
+    return transpose ? of(true, flipY, flipX) : this;
+  }
+
+  /**
+   * @param next the symmetry applied after this one
+   * @return the symmetry that applies this one, then the next one
+   */
+  public Symmetry then(Symmetry next) {
+    boolean x = next.transpose ? flipY : flipX;
+    boolean y = next.transpose ? flipX : flipY;
+    return of(transpose ^ next.transpose, x ^ next.flipX, y ^ next.flipY);
+  }
+}
@@ -0,0 +1,352 @@
+package featurecat.lizzie.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Estimates territory without an engine, with the dilations and erosions of Bouzy's 5/21 algorithm.
+ * Every step of the algorithm is kept, so when a move changes a few stones only the points whose
+ * value changes at some step are computed again.
+ *
+ * <p>A chain is read as dead when, taken off the board, its points go to the opponent and it gives
+ * up little territory of its own, unless it touches two small empty regions bordered only by its
+ * own color. Dead chains are taken off before the territory is counted, and their points count for
+ * the opponent.
+ *
+ * <p>An estimator is not thread safe; give each thread its own.
+ */
+public final class TerritoryEstimator {
+  private static final int STONE = 128;
+  private static final int DILATIONS = 5;
+  private static final int EROSIONS = 21;
+  private static final int STEPS = DILATIONS + EROSIONS;
+  // an empty region this small, bordered by one color only, is an eye of that color
+  private static final int EYE_SIZE = 6;
+  // a chain that holds this much territory of its own is not read as dead
+  private static final int LIVING_AREA = 8;
+
+  private final BoardGeometry geometry;
+  private final int points;
+  // the four neighbors of each point, -1 off the board
+  private final int[] neighbors;
+
+  // the value of each point after each step, step 0 holds the stones on the board
+  private final int[][] field;
+  // the points whose value changed at the last step computed, and at the next one
+  private int[] changed;
+  private int[] nextChanged;
+  private int changes;
+  private final int[] marks;
+  private int stamp;
+
+  private final Stone[] stones;
+  // the chain or empty region of each point, as the index of its first point
+  private final int[] regions;
+  private final int[] members;
+  // the chains by size, as size * points + first point
+  private final int[] order;
+  private final boolean[] dead;
+  private final int[] owners;
+  private int blackPoints, whitePoints, deadBlack, deadWhite;
+
+  /**
+   * Makes an estimator for boards of a size
+   *
+   * @param geometry the size of the board
+   */
+  public TerritoryEstimator(BoardGeometry geometry) {
+    this.geometry = geometry;
+    points = geometry.getPoints();
+    neighbors = new int[points * 4];
+    for (int p = 0; p < points; p++) {
+      int x = geometry.getX(p);
+      int y = geometry.getY(p);
+      neighbors[4 * p] = geometry.isValid(x - 1, y) ? geometry.getIndex(x - 1, y) : -1;
+      neighbors[4 * p + 1] = geometry.isValid(x + 1, y) ? geometry.getIndex(x + 1, y) : -1;
+      neighbors[4 * p + 2] = geometry.isValid(x, y - 1) ? geometry.getIndex(x, y - 1) : -1;
+      neighbors[4 * p + 3] = geometry.isValid(x, y + 1) ? geometry.getIndex(x, y + 1) : -1;
+    }
+    field = new int[STEPS + 1][points];
+    changed = new int[points];
+    nextChanged = new int[points];
+    marks = new int[points];
+    stones = new Stone[points];
+    Arrays.fill(stones, Stone.EMPTY);
+    regions = new int[points];
+    members = new int[points];
+    order = new int[points];
+    dead = new boolean[points];
+    owners = new int[points];
+  }
+
+  /** @return the size of the boards this estimator reads */
+  public BoardGeometry getGeometry() {
+    return geometry;
+  }
+
+  /**
+   * Estimates a position, starting from the steps kept for the last one
+   *
+   * @param position the stones of the position, ghost stones count as stones
+   */
+  public void update(Stone[] position) {
+    for (int p = 0; p < points; p++) {
+      stones[p] =
+          position[p].isBlack() ? Stone.BLACK : position[p].isWhite() ? Stone.WHITE : Stone.EMPTY;
+      setStone(p, stoneValue(stones[p]));
+    }
+    flush();
+    findRegions();
+
+    // read the chains from the smallest up, with the dead ones found so far off the board
+    int chains = 0;
+    for (int p = 0; p < points; p++) {
+      if (stones[p] != Stone.EMPTY && regions[p] == p) order[chains++] = collect(p) * points + p;
+    }
+    Arrays.sort(order, 0, chains);
+    Arrays.fill(dead, false);
+    for (int c = 0; c < chains; c++) {
+      int p = order[c] % points;
+      if (hasTwoEyes(p)) continue;
+      int size = collect(p);
+      int own = stoneValue(stones[p]);
+      for (int i = 0; i < size; i++) setStone(members[i], 0);
+      boolean surrounded = flush(Integer.signum(own)) < LIVING_AREA;
+      for (int i = 0; i < size && surrounded; i++) {
+        surrounded = Integer.signum(field[STEPS][members[i]]) == -Integer.signum(own);
+      }
+      if (surrounded) {
+        for (int i = 0; i < size; i++) dead[members[i]] = true;
+      } else {
+        for (int i = 0; i < size; i++) setStone(members[i], own);
+        flush();
+      }
+    }
+    count();
+  }
+
+  /**
+   * @param index a point of the board
+   * @return 1 if the point is black's, -1 if it is white's, 0 if it is neither's
+   */
+  public int ownerOf(int index) {
+    return owners[index];
+  }
+
+  /**
+   * @param index a point of the board
+   * @return whether the stone there was read as dead
+   */
+  public boolean isDead(int index) {
+    return dead[index];
+  }
+
+  /** @return the empty points and the points of dead white stones that are black's */
+  public int getBlackPoints() {
+    return blackPoints;
+  }
+
+  /** @return the empty points and the points of dead black stones that are white's */
+  public int getWhitePoints() {
+    return whitePoints;
+  }
+
+  /** @return the number of black stones read as dead */
+  public int getDeadBlack() {
+    return deadBlack;
+  }
+
+  /** @return the number of white stones read as dead */
+  public int getDeadWhite() {
+    return deadWhite;
+  }
+
+  /**
+   * @return the owner of each point, for black, row by row from the top left, as the estimate
+   *     renderer reads the ownership of an engine
+   */
+  public ArrayList<Double> getEstimates() {
+    ArrayList<Double> estimates = new ArrayList<>(points);
+    for (int y = 0; y < geometry.getHeight(); y++) {
+      for (int x = 0; x < geometry.getWidth(); x++) {
+        estimates.add((double) owners[geometry.getIndex(x, y)]);
+      }
+    }
+    return estimates;
+  }
+
+  private void count() {
+    blackPoints = 0;
+    whitePoints = 0;
+    deadBlack = 0;
+    deadWhite = 0;
+    for (int p = 0; p < points; p++) {
+      int owner = Integer.signum(field[STEPS][p]);
+      owners[p] = owner;
+      if (dead[p]) {
+        if (stones[p].isBlack()) deadBlack++;
+        else deadWhite++;
+      } else if (stones[p] != Stone.EMPTY) {
+        continue;
+      }
+      if (owner > 0) blackPoints++;
+      else if (owner < 0) whitePoints++;
+    }
+  }
+
+  private static int stoneValue(Stone stone) {
+    return stone == Stone.BLACK ? STONE : stone == Stone.WHITE ? -STONE : 0;
+  }
+
+  /** Changes the value of a point at step 0, to be carried through the steps by the next flush */
+  private void setStone(int p, int value) {
+    if (field[0][p] == value) return;
+    field[0][p] = value;
+    changed[changes++] = p;
+  }
+
+  /** Carries the changed points through every step, computing only the points next to a change */
+  private void flush() {
+    flush(0);
+  }
+
+  /**
+   * @param sign 1 or -1 to count the empty points that lose that sign, 0 to count nothing
+   * @return the number of empty points whose value had the sign before and not after
+   */
+  private int flush(int sign) {
+    int lost = 0;
+    for (int step = 0; step < STEPS && changes > 0; step++) {
+      int[] from = field[step];
+      int[] to = field[step + 1];
+      boolean dilation = step < DILATIONS;
+      int mark = nextStamp();
+      int next = 0;
+      for (int i = 0; i < changes; i++) {
+        int p = changed[i];
+        for (int d = -1; d < 4; d++) {
+          int q = d < 0 ? p : neighbors[4 * p + d];
+          if (q < 0 || marks[q] == mark) continue;
+          marks[q] = mark;
+          int value = dilation ? dilate(from, q) : erode(from, q);
+          if (value != to[q]) {
+            if (step == STEPS - 1
+                && stones[q] == Stone.EMPTY
+                && Integer.signum(to[q]) == sign
+                && Integer.signum(value) != sign) {
+              lost++;
+            }
+            to[q] = value;
+            nextChanged[next++] = q;
+          }
+        }
+      }
+      int[] swap = changed;
+      changed = nextChanged;
+      nextChanged = swap;
+      changes = next;
+    }
+    changes = 0;
+    return lost;
+  }
+
+  /** A point grows by its neighbors of its sign when none has the other sign */
+  private int dilate(int[] from, int p) {
+    int value = from[p];
+    int positive = 0;
+    int negative = 0;
+    for (int d = 0; d < 4; d++) {
+      int n = neighbors[4 * p + d];
+      if (n < 0) continue;
+      if (from[n] > 0) positive++;
+      else if (from[n] < 0) negative++;
+    }
+    if (value >= 0 && negative == 0) return value + positive;
+    if (value <= 0 && positive == 0) return value - negative;
+    return value;
+  }
+
+  /** A point shrinks toward zero by its neighbors that are zero or of the other sign */
+  private int erode(int[] from, int p) {
+    int value = from[p];
+    if (value == 0) return 0;
+    int against = 0;
+    for (int d = 0; d < 4; d++) {
+      int n = neighbors[4 * p + d];
+      if (n < 0) continue;
+      if (value > 0 ? from[n] <= 0 : from[n] >= 0) against++;
+    }
+    return value > 0 ? Math.max(0, value - against) : Math.min(0, value + against);
+  }
+
+  /** Labels every chain and every empty region by its first point */
+  private void findRegions() {
+    Arrays.fill(regions, -1);
+    for (int p = 0; p < points; p++) {
+      if (regions[p] >= 0) continue;
+      int size = collect(p);
+      for (int i = 0; i < size; i++) regions[members[i]] = p;
+    }
+  }
+
+  /** @return whether the chain at p touches two eyes of its color */
+  private boolean hasTwoEyes(int p) {
+    int size = collect(p);
+    int first = -1;
+    for (int i = 0; i < size; i++) {
+      int q = members[i];
+      for (int d = 0; d < 4; d++) {
+        int n = neighbors[4 * q + d];
+        if (n < 0 || stones[n] != Stone.EMPTY) continue;
+        int eye = regions[n];
+        if (eye == first || !isEye(eye, stones[p])) continue;
+        if (first >= 0) return true;
+        first = eye;
+      }
+      // isEye walks the members buffer, so the chain is collected again
+      size = collect(p);
+    }
+    return false;
+  }
+
+  /** @return whether the empty region starting at p is small and bordered only by color */
+  private boolean isEye(int p, Stone color) {
+    int size = collect(p);
+    if (size > EYE_SIZE) return false;
+    for (int i = 0; i < size; i++) {
+      for (int d = 0; d < 4; d++) {
+        int n = neighbors[4 * members[i] + d];
+        if (n >= 0 && stones[n] != Stone.EMPTY && stones[n] != color) return false;
+      }
+    }
+    return true;
+  }
+
+  /** Writes the points of the chain or empty region at p into {@link #members} */
+  private int collect(int p) {
+    Stone color = stones[p];
+    int mark = nextStamp();
+    int size = 0;
+    members[size++] = p;
+    marks[p] = mark;
+    for (int i = 0; i < size; i++) {
+      int q = members[i];
+      for (int d = 0; d < 4; d++) {
+        int n = neighbors[4 * q + d];
+        if (n >= 0 && marks[n] != mark && stones[n] == color) {
+          marks[n] = mark;
+          members[size++] = n;
+        }
+      }
+    }
+    return size;
+  }
+
+  private int nextStamp() {
+    if (++stamp == Integer.MAX_VALUE) {
+      Arrays.fill(marks, 0);
+      stamp = 1;
+    }
+    return stamp;
+  }
+}
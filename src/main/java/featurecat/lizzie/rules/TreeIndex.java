@@ -0,0 +1,161 @@
+package featurecat.lizzie.rules;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Shared by all nodes of a history tree. Nodes cache their ancestor pointers, main trunk flags,
+ * main line ends and subtree sizes, each stamped with the version below it depends on; a change to
+ * the tree bumps the versions it affects, and stale values are rebuilt on the next query.
+ *
+ * <p>The index also maps the canonical fingerprint of every position to the nodes that reach it, to
+ * find transpositions and positions that differ only by a symmetry of the board. The map is built
+ * on the first query, then kept up to date node by node as nodes are added, removed or edited, so
+ * reordering variations costs nothing and each position is canonicalized once. Variations still in
+ * a lazy sgf file are left out.
+ */
+class TreeIndex {
+  final BoardHistoryNode root;
+
+  // bumped when a node gets another parent, for ancestor pointers
+  int links;
+  // bumped when the first variation of a node changes, for main trunk flags
+  int order;
+  // bumped on any change, for main line ends and subtree sizes
+  int shape;
+
+  // nodes by the canonical fingerprint of their position, null until the first query
+  private HashMap<Long, List<BoardHistoryNode>> positions;
+  // the recently used positions of the tree in compact history mode
+  final PositionCache cache = new PositionCache();
+
+  TreeIndex(BoardHistoryNode root) {
+    this.root = root;
+  }
+
+  void linksChanged() {
+    links++;
+    orderChanged();
+  }
+
+  void orderChanged() {
+    order++;
+    shapeChanged();
+  }
+
+  void shapeChanged() {
+    shape++;
+  }
+
+  /**
+   * Records a node added as a leaf
+   *
+   * @param node the new node
+   * @param reordered whether the node changed the first variation of its parent
+   */
+  synchronized void nodeAdded(BoardHistoryNode node, boolean reordered) {
+    if (reordered) {
+      orderChanged();
+    } else {
+      shapeChanged();
+    }
+    if (positions != null) addPosition(node);
+  }
+
+  /**
+   * Records a node and the nodes below it joining the tree
+   *
+   * @param top the first node
+   */
+  synchronized void subtreeAdded(BoardHistoryNode top) {
+    if (positions == null) return;
+    ArrayDeque<BoardHistoryNode> stack = new ArrayDeque<>();
+    stack.push(top);
+    while (!stack.isEmpty()) {
+      BoardHistoryNode n = stack.pop();
+      addPosition(n);
+      for (BoardHistoryNode child : n.variations) stack.push(child);
+    }
+  }
+
+  /**
+   * Records a node and the nodes below it leaving the tree
+   *
+   * @param top the first node
+   */
+  synchronized void subtreeRemoved(BoardHistoryNode top) {
+    if (positions == null) return;
+    ArrayDeque<BoardHistoryNode> stack = new ArrayDeque<>();
+    stack.push(top);
+    while (!stack.isEmpty()) {
+      BoardHistoryNode n = stack.pop();
+      removePosition(n);
+      for (BoardHistoryNode child : n.variations) stack.push(child);
+    }
+  }
+
+  /**
+   * Records a node taking the place of another one, which hands it its variations
+   *
+   * @param old the node that left the tree
+   * @param node the node that took its place
+   */
+  synchronized void nodeReplaced(BoardHistoryNode old, BoardHistoryNode node) {
+    if (positions == null) return;
+    removePosition(old);
+    addPosition(node);
+  }
+
+  /**
+   * Called when the position of a node was edited in place
+   *
+   * @param node the node
+   */
+  synchronized void positionChanged(BoardHistoryNode node) {
+    if (positions == null) return;
+    removePosition(node);
+    addPosition(node);
+  }
+
+  /**
+   * @param node a node of this tree
+   * @return the nodes with the same position as the node up to a symmetry, itself included
+   */
+  synchronized List<BoardHistoryNode> transpositions(BoardHistoryNode node) {
+    List<BoardHistoryNode> nodes = nodesAt(node);
+    return nodes != null ? new ArrayList<>(nodes) : Collections.singletonList(node);
+  }
+
+  /**
+   * @param node a node of this tree
+   * @return whether another node of the tree has the same position up to a symmetry
+   */
+  synchronized boolean isTransposed(BoardHistoryNode node) {
+    List<BoardHistoryNode> nodes = nodesAt(node);
+    return nodes != null && nodes.size() > 1;
+  }
+
+  private List<BoardHistoryNode> nodesAt(BoardHistoryNode node) {
+    if (positions == null) {
+      positions = new HashMap<>();
+      subtreeAdded(root);
+    }
+    List<BoardHistoryNode> nodes = positions.get(node.positionKey);
+    return nodes != null && nodes.contains(node) ? nodes : null;
+  }
+
+  private void addPosition(BoardHistoryNode node) {
+    if (node.getData().dummy) return;
+    node.positionKey = node.getData().getCanonicalFingerprint();
+    positions.computeIfAbsent(node.positionKey, k -> new ArrayList<>(1)).add(node);
+  }
+
+  /** Removes a node from the list it was added to, by the fingerprint it had then */
+  private void removePosition(BoardHistoryNode node) {
+    List<BoardHistoryNode> nodes = positions.get(node.positionKey);
+    if (nodes != null && nodes.remove(node) && nodes.isEmpty()) positions.remove(node.positionKey);
+  }
+}
@@ -1,63 +1,179 @@
 package featurecat.lizzie.rules;
 
-import java.util.Random;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-/** Used to maintain zobrist hashes for ko detection */
+/**
+ * Used to maintain zobrist hashes for ko detection. The tables are derived from a fixed seed and
+ * the board size, so a position has the same hash in every session and every process.
+ */
 public class Zobrist {
-  private static long[] blackZobrist;
-  private static long[] whiteZobrist;
+  private static final long SEED = 0x4C697A7A6965L;
+  // tables of the board sizes used so far, by geometry
+  private static final Map<BoardGeometry, long[][]> tables = new ConcurrentHashMap<>();
 
-  // initialize zobrist hashing
-  static {
-    init();
-  }
+  private final BoardGeometry geometry;
+  private final long[] blackZobrist;
+  private final long[] whiteZobrist;
+  // keys of the point that is forbidden by a simple ko
+  private final long[] koZobrist;
+  // per board size, so that positions of different sizes never share a fingerprint
+  private final long sizeZobrist;
+  private final long blackToPlayZobrist;
 
   // hash to be used to compare two board states
   private long zhash;
 
+  /** Creates an empty hash for the board shown in the window */
   public Zobrist() {
-    zhash = 0;
+    this(BoardGeometry.current());
+  }
+
+  /**
+   * Creates an empty hash
+   *
+   * @param geometry the size of the board
+   */
+  public Zobrist(BoardGeometry geometry) {
+    this(geometry, 0);
   }
 
-  public Zobrist(long zhash) {
+  public Zobrist(BoardGeometry geometry, long zhash) {
+    this.geometry = geometry;
+    long[][] sizeTables =
+        tables.computeIfAbsent(
+            geometry, g -> createTables(geometry.getWidth(), geometry.getHeight()));
+    blackZobrist = sizeTables[0];
+    whiteZobrist = sizeTables[1];
+    koZobrist = sizeTables[2];
+    sizeZobrist = sizeTables[3][0];
+    blackToPlayZobrist = sizeTables[3][1];
     this.zhash = zhash;
   }
 
+  /** @return the size of the board */
+  public BoardGeometry getGeometry() {
+    return geometry;
+  }
+
+  /** @return the hash value */
+  public long getHash() {
+    return zhash;
+  }
+
   /** @return a copy of this zobrist */
   public Zobrist clone() {
-    return new Zobrist(zhash);
+    return new Zobrist(geometry, zhash);
+  }
+
+  private static long[][] createTables(int width, int height) {
+    int points = width * height;
+    long[][] sizeTables = {new long[points], new long[points], new long[points], new long[2]};
+    long state = splitMix64(SEED ^ splitMix64(((long) width << 32) | height));
+    for (long[] table : sizeTables) {
+      for (int i = 0; i < table.length; i++) {
+        state += 0x9E3779B97F4A7C15L;
+        table[i] = splitMix64(state);
+      }
+    }
+    return sizeTables;
   }
 
-  public static void init() {
+  // the SplitMix64 finalizer
+  private static long splitMix64(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
 
-    Random random = new Random();
-    blackZobrist = new long[Board.boardWidth * Board.boardHeight];
-    whiteZobrist = new long[Board.boardWidth * Board.boardHeight];
+  /**
+   * Combines the hash of the stones with the rest of the position
+   *
+   * @param blackToPlay whether black is to play
+   * @param koPoint the index of the point that is forbidden by a simple ko, or -1
+   * @return a fingerprint of the position for the size of this board
+   */
+  public long fingerprint(boolean blackToPlay, int koPoint) {
+    long hash = zhash ^ sizeZobrist;
+    if (blackToPlay) hash ^= blackToPlayZobrist;
+    if (koPoint >= 0) hash ^= koZobrist[koPoint];
+    return hash;
+  }
 
-    for (int i = 0; i < blackZobrist.length; i++) {
-      blackZobrist[i] = random.nextLong();
-      whiteZobrist[i] = random.nextLong();
+  /**
+   * Computes the fingerprint of a position seen through a symmetry of the board, from scratch
+   *
+   * @param stones the stones of the position
+   * @param symmetry a symmetry that fits the board
+   * @param blackToPlay whether black is to play
+   * @param koPoint the index of the point that is forbidden by a simple ko, or -1
+   * @return the fingerprint of the transformed position
+   */
+  public long fingerprint(Stone[] stones, Symmetry symmetry, boolean blackToPlay, int koPoint) {
+    long hash = sizeZobrist;
+    for (int i = 0; i < stones.length; i++) {
+      if (stones[i] == Stone.BLACK) {
+        hash ^= blackZobrist[symmetry.apply(geometry, i)];
+      } else if (stones[i] == Stone.WHITE) {
+        hash ^= whiteZobrist[symmetry.apply(geometry, i)];
+      }
     }
+    if (blackToPlay) hash ^= blackToPlayZobrist;
+    if (koPoint >= 0) hash ^= koZobrist[symmetry.apply(geometry, koPoint)];
+    return hash;
   }
+
   /**
-   * Call this method to alter the current zobrist hash for this stone
+   * Computes the hash of the stones after a move, without changing this one
    *
-   * @param x x coordinate -- must be valid
-   * @param y y coordinate -- must be valid
-   * @param color color of the stone to alter (for adding or removing a stone color)
+   * @param replaced the stone the move replaces, empty unless it starts a new branch on it
+   * @param index index of the move
+   * @param color color of the move
+   * @param captured the points the move captures
+   * @return the hash after the move
    */
-  public void toggleStone(int x, int y, Stone color) {
+  public long hashAfter(Stone replaced, int index, Stone color, int[] captured) {
+    long hash = zhash ^ key(replaced, index) ^ key(color, index);
+    for (int p : captured) hash ^= key(color.opposite(), p);
+    return hash;
+  }
+
+  private long key(Stone color, int index) {
     switch (color) {
       case BLACK:
-        zhash ^= blackZobrist[Board.getIndex(x, y)];
-        break;
+        return blackZobrist[index];
       case WHITE:
-        zhash ^= whiteZobrist[Board.getIndex(x, y)];
-        break;
+        return whiteZobrist[index];
       default:
+        return 0;
     }
   }
 
+  /** @return the key that is mixed into fingerprints when black is to play */
+  long blackToPlayKey() {
+    return blackToPlayZobrist;
+  }
+  /**
+   * Call this method to alter the current zobrist hash for this stone
+   *
+   * @param x x coordinate -- must be valid
+   * @param y y coordinate -- must be valid
+   * @param color color of the stone to alter (for adding or removing a stone color)
+   */
+  public void toggleStone(int x, int y, Stone color) {
+    toggleStone(geometry.getIndex(x, y), color);
+  }
+
+  /**
+   * Call this method to alter the current zobrist hash for this stone
+   *
+   * @param index index of the point -- must be valid
+   * @param color color of the stone to alter (for adding or removing a stone color)
+   */
+  public void toggleStone(int index, Stone color) {
+    zhash ^= key(color, index);
+  }
+
   @Override
   public boolean equals(Object o) {
     return o instanceof Zobrist && (((Zobrist) o).zhash == zhash);
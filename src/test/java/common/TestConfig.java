@@ -0,0 +1,22 @@
+package common;
+
+import featurecat.lizzie.Config;
+import featurecat.lizzie.Lizzie;
+import java.io.IOException;
+import org.junit.rules.ExternalResource;
+
+/** Gives each test a default config of its own, and puts back the config it had after the test */
+public class TestConfig extends ExternalResource {
+  private Config oldConfig;
+
+  @Override
+  protected void before() throws IOException {
+    oldConfig = Lizzie.config;
+    Lizzie.config = new Config();
+  }
+
+  @Override
+  protected void after() {
+    Lizzie.config = oldConfig;
+  }
+}
@@ -3,9 +3,13 @@ package common;
 import featurecat.lizzie.Lizzie;
 import featurecat.lizzie.rules.Board;
 import featurecat.lizzie.rules.BoardData;
+import featurecat.lizzie.rules.BoardHistoryList;
 import featurecat.lizzie.rules.BoardHistoryNode;
 import featurecat.lizzie.rules.SGFParser;
+import featurecat.lizzie.rules.SGFWriter;
 import featurecat.lizzie.rules.Stone;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -93,6 +97,18 @@ public class Util {
     return String.format(";%s[%c%c]%s%s", stone, x, y, comment, data.propertiesString());
   }
 
+  /**
+   * Writes a game as sgf text
+   *
+   * @param history the game
+   * @return the text
+   */
+  public static String write(BoardHistoryList history) throws IOException {
+    StringWriter writer = new StringWriter();
+    SGFWriter.write(history, writer);
+    return writer.toString();
+  }
+
   public static String trimGameInfo(String sgf) {
     String gameInfo = String.format("(?s).*AP\\[Lizzie: %s\\]", Lizzie.lizzieVersion);
     return sgf.replaceFirst(gameInfo, "(");
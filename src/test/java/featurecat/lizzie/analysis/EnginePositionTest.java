@@ -0,0 +1,102 @@
+package featurecat.lizzie.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import common.TestConfig;
+import featurecat.lizzie.rules.BoardData;
+import featurecat.lizzie.rules.BoardHistoryList;
+import featurecat.lizzie.rules.Stone;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class EnginePositionTest {
+  @Rule public final TestConfig config = new TestConfig();
+
+  @Test
+  public void followsCommands() {
+    EnginePosition position = new EnginePosition();
+    position.observe("play b q16");
+    position.observe("play W D4");
+    position.observe("play B pass");
+    position.observe("undo");
+    assertEquals(2, position.size());
+    assertEquals(2, position.kept(Arrays.asList("B Q16", "W D4", "B C3"), 0));
+
+    position.observe("genmove b");
+    position.generated("C3");
+    assertEquals(3, position.kept(Arrays.asList("B Q16", "W D4", "B C3"), 0));
+
+    position.observe("fixed_handicap 2");
+    assertEquals(-1, position.kept(Arrays.asList("B Q16"), 0));
+    position.observe("clear_board");
+    assertEquals(0, position.size());
+  }
+
+  @Test
+  public void choosesCheapestPlan() {
+    EnginePosition position = new EnginePosition();
+    List<String> game = new ArrayList<>();
+    for (int i = 0; i < 300; i++) game.add((i % 2 == 0 ? "B " : "W ") + i);
+    for (String move : game.subList(0, 150)) position.observe("play " + move);
+
+    assertEquals(EnginePosition.Plan.NONE, position.plan(game.subList(0, 150), 0));
+    assertEquals(EnginePosition.Plan.UNDO_AND_PLAY, position.plan(game.subList(0, 160), 0));
+    assertEquals(EnginePosition.Plan.UNDO_AND_PLAY, position.plan(game.subList(0, 120), 0));
+    assertEquals(EnginePosition.Plan.CLEAR_AND_PLAY, position.plan(game.subList(0, 5), 0));
+    assertEquals(EnginePosition.Plan.LOAD_SGF, position.plan(game, 0));
+
+    position.observe("loadsgf game.sgf");
+    assertEquals(EnginePosition.Plan.CLEAR_AND_PLAY, position.plan(game.subList(0, 5), 0));
+    position.loaded(game, 0);
+    assertEquals(EnginePosition.Plan.UNDO_AND_PLAY, position.plan(game.subList(0, 290), 0));
+  }
+
+  @Test
+  public void keepsRootStonesInAnyOrder() {
+    EnginePosition position = new EnginePosition();
+    position.observe("play B D4");
+    position.observe("play B Q16");
+    position.observe("play W C3");
+    assertEquals(3, position.kept(Arrays.asList("B Q16", "B D4", "W C3", "B D16"), 2));
+    assertEquals(
+        EnginePosition.Plan.UNDO_AND_PLAY,
+        position.plan(Arrays.asList("B Q16", "B D4", "W C3", "B D16"), 2));
+  }
+
+  @Test
+  public void seesRootStonesThenMoves() {
+    BoardHistoryList history = new BoardHistoryList(BoardData.empty(19, 19));
+    history.setStone(new int[] {3, 15}, Stone.BLACK);
+    history.setStone(new int[] {15, 3}, Stone.WHITE);
+    history.place(16, 3, Stone.BLACK);
+    history.pass(Stone.WHITE);
+    history.place(2, 16, Stone.BLACK);
+
+    assertEquals(
+        Arrays.asList("B D4", "W Q16", "B R16", "W PASS", "B C3"),
+        EnginePosition.movesTo(history.getCurrentHistoryNode()));
+    assertEquals(2, EnginePosition.setupSize(history.getCurrentHistoryNode()));
+  }
+
+  @Test
+  public void startsAtSetupStonesBelowRoot() {
+    BoardHistoryList history = new BoardHistoryList(BoardData.empty(19, 19));
+    history.place(16, 3, Stone.BLACK);
+    history.place(3, 15, Stone.WHITE);
+    // a node with AB, read as a pass with a stone added to it
+    history.pass(Stone.BLACK);
+    history.addStone(10, 10, Stone.BLACK);
+    history.place(2, 16, Stone.WHITE);
+
+    List<String> moves = EnginePosition.movesTo(history.getCurrentHistoryNode());
+    assertEquals(4, moves.size());
+    assertEquals(
+        new HashSet<>(Arrays.asList("B R16", "B L9", "W D4")), new HashSet<>(moves.subList(0, 3)));
+    assertEquals("W C3", moves.get(3));
+    assertEquals(3, EnginePosition.setupSize(history.getCurrentHistoryNode()));
+  }
+}
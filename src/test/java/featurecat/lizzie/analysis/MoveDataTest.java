@@ -2,6 +2,7 @@ package featurecat.lizzie.analysis;
 
 import static org.junit.Assert.assertEquals;
 
+import featurecat.lizzie.rules.BoardGeometry;
 import java.util.Arrays;
 import java.util.List;
 import org.junit.Test;
@@ -18,6 +19,12 @@ public class MoveDataTest {
     assertEquals(
         moveData.variation,
         Arrays.asList("R5", "Q5", "R6", "S4", "Q10", "C3", "D3", "C4", "C6", "C5", "D5"));
+
+    BoardGeometry geometry = BoardGeometry.current();
+    assertEquals(geometry.getIndex(16, 14), moveData.move);
+    assertEquals(11, moveData.pv.length);
+    assertEquals(geometry.getIndex(15, 14), moveData.pv[1]);
+    assertEquals("D5", geometry.nameOf(moveData.pv[10]));
   }
 
   private void testSummary(
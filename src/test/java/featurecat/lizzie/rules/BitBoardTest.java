@@ -0,0 +1,86 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class BitBoardTest {
+
+  @Test
+  public void dilateStaysInColumn() {
+    BitBoard board = new BitBoard(3, 4);
+    long[] seed = new long[1];
+    // x = 0, y = 3 is the last point of the first column
+    BitBoard.set(seed, 3);
+    long[] grown = board.dilate(seed);
+    assertEquals(3, BitBoard.count(grown));
+    assertTrue(BitBoard.test(grown, 2));
+    assertTrue(BitBoard.test(grown, 7));
+    assertFalse(BitBoard.test(grown, 4));
+  }
+
+  @Test
+  public void captureAndSuicide() {
+    BitBoard board = new BitBoard(5, 5);
+    board.set(0, Stone.WHITE);
+    board.set(5, Stone.BLACK);
+    assertFalse(board.isSuicide(1, Stone.BLACK));
+    long[] captured = board.play(1, Stone.BLACK);
+    assertEquals(1, BitBoard.count(captured));
+    assertEquals(Stone.EMPTY, board.get(0));
+    assertTrue(board.isSuicide(0, Stone.WHITE));
+  }
+
+  @Test
+  public void countsEachColorAndEmpty() {
+    BitBoard board = new BitBoard(3, 3);
+    board.set(0, Stone.BLACK);
+    board.set(4, Stone.BLACK);
+    board.set(8, Stone.WHITE);
+    assertEquals(2, board.count(Stone.BLACK));
+    assertEquals(1, board.count(Stone.WHITE));
+    assertEquals(6, board.count(Stone.EMPTY));
+    long[] empty = board.stones(Stone.EMPTY);
+    assertEquals(6, BitBoard.count(empty));
+    assertFalse(BitBoard.test(empty, 4));
+    assertTrue(BitBoard.test(empty, 1));
+  }
+
+  @Test
+  public void matchesGroupTable() {
+    checkAgainstGroupTable(7, 5);
+    checkAgainstGroupTable(19, 19);
+    checkAgainstGroupTable(25, 25);
+  }
+
+  private void checkAgainstGroupTable(int width, int height) {
+    Random random = new Random(7);
+    BitBoard board = new BitBoard(width, height);
+    GroupTable groups = new GroupTable(width, height);
+    Stone color = Stone.BLACK;
+    for (int move = 0; move < 2000; move++) {
+      int index = random.nextInt(width * height);
+      if (board.get(index) != Stone.EMPTY) continue;
+      assertEquals(groups.isSuicide(index, color), board.isSuicide(index, color));
+      if (groups.isSuicide(index, color)) continue;
+      int[] expected = groups.play(index, color);
+      long[] captured = board.play(index, color);
+      int[] actual = new int[BitBoard.count(captured)];
+      int n = 0;
+      for (int i = BitBoard.nextSetBit(captured, 0);
+          i >= 0;
+          i = BitBoard.nextSetBit(captured, i + 1)) {
+        actual[n++] = i;
+      }
+      Arrays.sort(expected);
+      assertArrayEquals(expected, actual);
+      assertEquals(groups.libertyCount(index), BitBoard.count(board.liberties(board.chain(index))));
+      color = color.opposite();
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import common.TestConfig;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class BoardGeometryTest {
+  @Rule public final TestConfig config = new TestConfig();
+
+  @Test
+  public void convertsPoints() {
+    BoardGeometry geometry = BoardGeometry.of(9, 13);
+    assertSame(geometry, BoardGeometry.of(9, 13));
+    assertEquals(117, geometry.getPoints());
+    assertArrayEquals(new int[] {4, 7}, geometry.getCoord(geometry.getIndex(4, 7)));
+    assertTrue(geometry.isValid(8, 12));
+    assertFalse(geometry.isValid(9, 0));
+    assertEquals("J1", geometry.convertCoordinatesToName(8, 12));
+    assertArrayEquals(new int[] {8, 12}, geometry.asCoordinates("J1").get());
+    assertEquals("(3,4)", BoardGeometry.of(31, 31).convertCoordinatesToName(3, 4));
+  }
+
+  @Test
+  public void codesMoves() {
+    BoardGeometry geometry = BoardGeometry.of(19, 19);
+    int q16 = geometry.getIndex(15, 3);
+    assertEquals(q16, geometry.moveOf("Q16"));
+    assertEquals(q16, geometry.moveOf("q16"));
+    assertSame(geometry.nameOf(q16), geometry.nameOf(geometry.moveOf("Q16")));
+    assertEquals(BoardGeometry.PASS, geometry.moveOf("pass"));
+    assertEquals(BoardGeometry.NONE, geometry.moveOf("resign"));
+    assertEquals(BoardGeometry.NONE, geometry.moveOf("Z99"));
+    assertEquals("pass", geometry.nameOf(BoardGeometry.PASS));
+
+    assertEquals(q16, geometry.sgfMoveOf("pd"));
+    assertEquals("pd", geometry.sgfNameOf(q16));
+    assertEquals(BoardGeometry.PASS, geometry.sgfMoveOf("tt"));
+    assertEquals(BoardGeometry.PASS, geometry.sgfMoveOf(""));
+    assertEquals(BoardGeometry.NONE, BoardGeometry.of(9, 9).sgfMoveOf("pd"));
+    assertArrayEquals(
+        new int[] {q16, BoardGeometry.PASS, 0},
+        geometry.movesOf(new String[] {"pv", "Q16", "pass", "A19"}, 1, 4));
+  }
+
+  @Test
+  public void playsGamesOfAnySize() {
+    BoardHistoryList small = new BoardHistoryList(BoardData.empty(9, 9));
+    small.place(8, 0, Stone.BLACK);
+    small.place(8, 8, Stone.WHITE);
+    small.place(7, 8, Stone.BLACK);
+    small.pass(Stone.WHITE);
+    small.place(8, 7, Stone.BLACK);
+    assertEquals(Stone.EMPTY, small.getStones()[small.getGeometry().getIndex(8, 8)]);
+    assertEquals(1, small.getData().blackCaptures);
+    assertEquals(
+        "(;SZ[9]KM[7.5];B[ia];W[ii];B[hi];W[];B[ih])",
+        SGFParser.pathToString(small.getCurrentHistoryNode(), 7.5));
+
+    assertNull(SGFParser.convertSgfPosToCoord("jj", small.getGeometry()));
+    assertArrayEquals(
+        new int[] {9, 9}, SGFParser.convertSgfPosToCoord("jj", BoardGeometry.of(19, 19)));
+  }
+}
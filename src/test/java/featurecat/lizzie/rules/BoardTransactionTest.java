@@ -0,0 +1,55 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import common.TestConfig;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class BoardTransactionTest {
+  @Rule public final TestConfig config = new TestConfig();
+  private BoardHistoryList history;
+  private BoardTransaction transaction;
+
+  @Before
+  public void setUp() throws IOException {
+    history = new BoardHistoryList(BoardData.empty(19, 19));
+    transaction = new BoardTransaction(history);
+    assertTrue(transaction.play(3, 3, Stone.BLACK));
+    assertTrue(transaction.play(15, 15, Stone.WHITE));
+    transaction.pass(Stone.BLACK);
+    assertTrue(transaction.play(15, 3, Stone.WHITE));
+    assertTrue(transaction.play(3, 15, Stone.BLACK));
+    transaction.goToMoveNumber(3);
+  }
+
+  @Test
+  public void replacesMoveAndReplaysTheRest() {
+    assertTrue(transaction.replaceMove(2, new int[] {16, 16}));
+    assertEquals(3, history.getMoveNumber());
+
+    BoardHistoryNode end = history.getEnd();
+    assertEquals(5, end.getData().moveNumber);
+    BoardData second = history.root().next().get().next().get().getData();
+    assertArrayEquals(new int[] {16, 16}, second.lastMove.get());
+    assertEquals(Stone.WHITE, end.getData().getStones()[Board.getIndex(15, 3)]);
+    assertEquals(Stone.BLACK, end.getData().getStones()[Board.getIndex(3, 15)]);
+    assertEquals(Stone.EMPTY, end.getData().getStones()[Board.getIndex(15, 15)]);
+    assertEquals(1, history.root().numberOfChildren());
+  }
+
+  @Test
+  public void swapsColorOfOneMove() {
+    assertTrue(transaction.swapColor(1));
+    BoardData end = history.getEnd().getData();
+    assertEquals(Stone.WHITE, end.getStones()[Board.getIndex(3, 3)]);
+    assertEquals(Stone.WHITE, end.getStones()[Board.getIndex(15, 15)]);
+    assertEquals(Stone.BLACK, end.getStones()[Board.getIndex(3, 15)]);
+    assertFalse(transaction.swapColor(6));
+  }
+}
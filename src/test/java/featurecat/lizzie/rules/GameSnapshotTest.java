@@ -0,0 +1,76 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import common.TestConfig;
+import featurecat.lizzie.analysis.MoveData;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class GameSnapshotTest {
+  @Rule public final TestConfig config = new TestConfig();
+
+  @Test
+  public void isNotChangedByLaterEdits() {
+    BoardHistoryList history = new BoardHistoryList(BoardData.empty(19, 19));
+    history.place(3, 3, Stone.BLACK);
+    GameSnapshot snapshot = GameSnapshot.of(history, 7.5, null);
+
+    history.setStone(new int[] {4, 4}, Stone.WHITE);
+    history.place(5, 5, Stone.BLACK);
+
+    assertEquals(Stone.BLACK, snapshot.getStones()[Board.getIndex(3, 3)]);
+    assertEquals(Stone.EMPTY, snapshot.getGroups().colorAt(Board.getIndex(4, 4)));
+    assertEquals(Stone.EMPTY, snapshot.getStones()[Board.getIndex(4, 4)]);
+    assertEquals(Stone.EMPTY, snapshot.getBitBoard().get(Board.getIndex(4, 4)));
+    assertEquals(1, snapshot.getMoveNumber());
+    assertEquals(3, snapshot.getLastMove().get()[0]);
+  }
+
+  @Test
+  public void worksOutLegalMovesOfItsOwnNode() {
+    BoardHistoryList history = new BoardHistoryList(BoardData.empty(19, 19));
+    history.place(3, 3, Stone.BLACK);
+    GameSnapshot snapshot = GameSnapshot.of(history, 7.5, null);
+
+    // asked for only once the game moved on
+    history.place(5, 5, Stone.WHITE);
+    long[] legal = snapshot.getLegalMoves();
+    assertTrue(BitBoard.test(legal, Board.getIndex(5, 5)));
+    assertFalse(BitBoard.test(legal, Board.getIndex(3, 3)));
+    assertSame(legal, snapshot.withAnalysis(new ArrayList<>()).getLegalMoves());
+  }
+
+  @Test
+  public void keepsAnalysisOfTheSameNode() {
+    BoardHistoryList history = new BoardHistoryList(BoardData.empty(19, 19));
+    BoardData data = history.getData();
+    data.komi = 7.5;
+    data.bestMoves = moves(100);
+    data.setPlayouts(100);
+
+    List<MoveData> live = moves(40);
+    GameSnapshot snapshot = GameSnapshot.of(history, 7.5, null).withAnalysis(live);
+    live.clear();
+    assertEquals(40, MoveData.getPlayouts(snapshot.getBestMoves(false)));
+    assertEquals(100, MoveData.getPlayouts(snapshot.getBestMoves(true)));
+
+    GameSnapshot again = GameSnapshot.of(history, 7.5, snapshot);
+    assertSame(snapshot.getBestMoves(false), again.getBestMoves(false));
+
+    history.place(3, 3, Stone.BLACK);
+    GameSnapshot next = GameSnapshot.of(history, 7.5, again);
+    assertTrue(next.getBestMoves(false).isEmpty());
+  }
+
+  private static List<MoveData> moves(int playouts) {
+    List<MoveData> moves = new ArrayList<>();
+    moves.add(MoveData.fromSummary(" Q16 -> " + playouts + " (V: 50.00%) (N: 5.00%) PV: Q16 D4"));
+    return moves;
+  }
+}
@@ -0,0 +1,83 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class GroupTableTest {
+  private static final int SIZE = 5;
+
+  private static int idx(int x, int y) {
+    return x * SIZE + y;
+  }
+
+  @Test
+  public void captureInCorner() {
+    GroupTable table = new GroupTable(SIZE, SIZE);
+    table.play(idx(0, 0), Stone.WHITE);
+    table.play(idx(1, 0), Stone.BLACK);
+    assertEquals(1, table.libertyCount(idx(0, 0)));
+    assertFalse(table.isSuicide(idx(0, 1), Stone.BLACK));
+    assertArrayEquals(new int[] {idx(0, 0)}, table.captures(idx(0, 1), Stone.BLACK));
+
+    int[] captured = table.play(idx(0, 1), Stone.BLACK);
+    assertArrayEquals(new int[] {idx(0, 0)}, captured);
+    assertEquals(Stone.EMPTY, table.colorAt(idx(0, 0)));
+    assertEquals(-1, table.chainAt(idx(0, 0)));
+    // the corner is now a liberty of both black stones
+    assertEquals(3, table.libertyCount(idx(1, 0)));
+    assertEquals(3, table.libertyCount(idx(0, 1)));
+  }
+
+  @Test
+  public void suicideIsDetected() {
+    GroupTable table = new GroupTable(SIZE, SIZE);
+    table.play(idx(1, 0), Stone.BLACK);
+    table.play(idx(0, 1), Stone.BLACK);
+    assertTrue(table.isSuicide(idx(0, 0), Stone.WHITE));
+    assertFalse(table.isSuicide(idx(0, 0), Stone.BLACK));
+  }
+
+  @Test
+  public void chainsMerge() {
+    GroupTable table = new GroupTable(SIZE, SIZE);
+    table.play(idx(1, 1), Stone.BLACK);
+    table.play(idx(1, 3), Stone.BLACK);
+    table.play(idx(1, 2), Stone.BLACK);
+    assertEquals(table.chainAt(idx(1, 1)), table.chainAt(idx(1, 3)));
+    assertEquals(3, table.chainSize(idx(1, 2)));
+    assertEquals(8, table.libertyCount(idx(1, 1)));
+    int[] members = table.members(idx(1, 1));
+    Arrays.sort(members);
+    assertArrayEquals(new int[] {idx(1, 1), idx(1, 2), idx(1, 3)}, members);
+  }
+
+  @Test
+  public void incrementalMatchesRebuild() {
+    Random random = new Random(42);
+    GroupTable table = new GroupTable(SIZE, SIZE);
+    Stone[] stones = new Stone[SIZE * SIZE];
+    Arrays.fill(stones, Stone.EMPTY);
+    Stone color = Stone.BLACK;
+    for (int move = 0; move < 500; move++) {
+      int index = random.nextInt(SIZE * SIZE);
+      if (stones[index] != Stone.EMPTY || table.isSuicide(index, color)) continue;
+      stones[index] = color;
+      for (int p : table.play(index, color)) {
+        stones[p] = Stone.EMPTY;
+      }
+      GroupTable rebuilt = GroupTable.of(stones, SIZE, SIZE);
+      for (int i = 0; i < stones.length; i++) {
+        assertEquals(rebuilt.colorAt(i), table.colorAt(i));
+        assertEquals(rebuilt.chainSize(i), table.chainSize(i));
+        assertArrayEquals(rebuilt.liberties(i), table.liberties(i));
+      }
+      color = color.opposite();
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LadderReaderTest {
+  private final BoardGeometry geometry = BoardGeometry.of(19, 19);
+  private final Stone[] stones = new Stone[geometry.getPoints()];
+
+  private void put(Stone color, int... coords) {
+    for (int i = 0; i < coords.length; i += 2) {
+      stones[geometry.getIndex(coords[i], coords[i + 1])] = color;
+    }
+  }
+
+  private LadderReader reader() {
+    LadderReader reader = new LadderReader(geometry);
+    reader.load(stones);
+    return reader;
+  }
+
+  private void clear() {
+    for (int i = 0; i < stones.length; i++) stones[i] = Stone.EMPTY;
+  }
+
+  @Test
+  public void readsLaddersAndBreakers() {
+    clear();
+    // a ladder that runs down to the far corner
+    put(Stone.WHITE, 3, 3);
+    put(Stone.BLACK, 2, 3, 3, 2, 4, 2);
+    int target = geometry.getIndex(3, 3);
+    LadderReader reader = reader();
+    assertTrue(reader.isCaptured(target));
+    assertTrue(reader.canEscape(target));
+
+    put(Stone.WHITE, 15, 15);
+    reader = reader();
+    assertFalse(reader.isCaptured(target));
+    assertEquals(geometry.getIndex(15, 15), reader.getBreaker());
+
+    reader.scan();
+    assertTrue(BitBoard.test(reader.getLadderBreakers(), geometry.getIndex(15, 15)));
+    assertFalse(BitBoard.test(reader.getWorkingLadders(), target));
+    // the search leaves the position as it was
+    assertFalse(reader.isCaptured(target));
+  }
+
+  @Test
+  public void readsNets() {
+    clear();
+    // the ladder is broken, but the cutting stone still has no way out
+    put(Stone.WHITE, 3, 3, 15, 15);
+    put(Stone.BLACK, 2, 3, 3, 2, 4, 2, 2, 4);
+    int target = geometry.getIndex(3, 3);
+    LadderReader reader = reader();
+    assertTrue(reader.isCaptured(target));
+    reader.scan();
+    assertTrue(BitBoard.test(reader.getWorkingLadders(), target));
+
+    put(Stone.BLACK, 4, 4);
+    assertFalse(reader().canEscape(target));
+  }
+
+  @Test
+  public void readsRaces() {
+    clear();
+    put(Stone.BLACK, 0, 0);
+    put(Stone.WHITE, 0, 1);
+    LadderReader reader = reader();
+    int black = geometry.getIndex(0, 0);
+    int white = geometry.getIndex(0, 1);
+    assertEquals(Stone.WHITE, reader.readRace(black, white, Stone.BLACK));
+    assertEquals(Stone.WHITE, reader.readRace(black, white, Stone.WHITE));
+
+    put(Stone.BLACK, 1, 1);
+    reader = reader();
+    assertEquals(Stone.BLACK, reader.readRace(black, white, Stone.BLACK));
+    assertEquals(Stone.WHITE, reader.readRace(white, black, Stone.WHITE));
+  }
+}
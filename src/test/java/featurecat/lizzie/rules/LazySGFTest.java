@@ -0,0 +1,102 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import common.TestConfig;
+import common.Util;
+import featurecat.lizzie.Lizzie;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class LazySGFTest {
+  private static final String SGF =
+      "(;SZ[9]PB[Black]PW[White]C[head];B[ee];W[ff]"
+          + "(;B[gf]C[a \\] (b)];W[ge](;B[aa])(;B[bb];W[cc]))"
+          + "(;B[dd];W[hh](;B[ab])(;B[ba])))";
+
+  @Rule public final TestConfig config = new TestConfig();
+
+  @Before
+  public void setUp() throws IOException {
+    Lizzie.config.appendWinrateToComment = false;
+    Lizzie.config.holdBestMovesToSgf = false;
+  }
+
+  @Test
+  public void readsVariationsWhenAsked() {
+    BoardHistoryList history = LazySGF.load(SGF, StandardCharsets.UTF_8, 16);
+    assertEquals("head", history.getData().comment);
+    BoardHistoryNode ff = history.root().next().get().next().get();
+    assertTrue(ff.variations.isEmpty());
+    assertEquals(2, ff.getVariations().size());
+    BoardHistoryNode gf = ff.getVariations().get(0);
+    assertEquals("a ] (b)", gf.getData().comment);
+    BoardHistoryNode ge = gf.next().get();
+    assertTrue(ge.variations.isEmpty());
+    assertEquals(2, ge.numberOfChildren());
+    assertEquals(Stone.WHITE, ge.getVariations().get(1).next().get().getData().lastMoveColor);
+  }
+
+  @Test
+  public void foldsBackColdVariations() {
+    BoardHistoryList history = LazySGF.load(SGF, StandardCharsets.UTF_8, 2);
+    BoardHistoryNode ff = history.root().next().get().next().get();
+    BoardHistoryNode ge = ff.getVariations().get(0).next().get();
+    BoardHistoryNode hh = ff.getVariations().get(1).next().get();
+    assertEquals(2, ge.numberOfChildren());
+    // the third read folds back the oldest one that does not hold it
+    assertEquals(2, hh.numberOfChildren());
+    assertTrue(ge.variations.isEmpty());
+    assertFalse(ff.variations.isEmpty());
+    int[] move = ge.getVariations().get(0).getData().lastMove.get();
+    assertEquals(0, move[0]);
+    assertEquals(0, move[1]);
+  }
+
+  @Test
+  public void keepsVariationsTheBoardWentTo() {
+    BoardHistoryList history = LazySGF.load(SGF, StandardCharsets.UTF_8, 1);
+    BoardHistoryNode ff = history.root().next().get().next().get();
+    BoardHistoryNode ge = ff.getVariations().get(0).next().get();
+    ge.getVariations().get(1).visited = true;
+    BoardHistoryNode hh = ff.getVariations().get(1).next().get();
+    assertEquals(2, hh.numberOfChildren());
+    assertFalse(ge.variations.isEmpty());
+  }
+
+  @Test
+  public void writesWhatIsRead() throws IOException {
+    String full = Util.write(SGFParser.parseSgf(SGF));
+    assertEquals(full, Util.write(LazySGF.load(SGF, StandardCharsets.UTF_8, 16)));
+    BoardHistoryList history = LazySGF.load(SGF, StandardCharsets.UTF_8, 16);
+    history.root().next().get().next().get().getVariations();
+    assertEquals(full, Util.write(history));
+  }
+
+  @Test
+  public void savesOverItsOwnFile() throws IOException {
+    File file = File.createTempFile("lazy", ".sgf");
+    file.deleteOnExit();
+    try {
+      Files.write(file.toPath(), SGF.getBytes(StandardCharsets.UTF_8));
+      BoardHistoryList history = LazySGF.load(file, StandardCharsets.UTF_8, 16);
+      history.root().next().get().next().get().getVariations().get(1).visited = true;
+      history.place(4, 4, Stone.WHITE, true);
+      String edited = Util.write(history);
+
+      SGFParser.save(history, file);
+      assertEquals(edited, Util.write(LazySGF.load(file, StandardCharsets.UTF_8, 16)));
+      // the variations not read yet are still read from the old file
+      assertEquals(edited, Util.write(history));
+    } finally {
+      file.delete();
+    }
+  }
+}
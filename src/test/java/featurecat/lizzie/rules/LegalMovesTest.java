@@ -0,0 +1,61 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import common.TestConfig;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class LegalMovesTest {
+  @Rule public final TestConfig config = new TestConfig();
+  private BoardHistoryList history;
+  private BoardGeometry geometry;
+
+  @Before
+  public void setUp() throws IOException {
+    history = new BoardHistoryList(BoardData.empty(19, 19));
+    geometry = history.getGeometry();
+    // white takes the point of a ko, black takes it back
+    history.place(1, 0, Stone.BLACK);
+    history.place(2, 0, Stone.WHITE);
+    history.place(0, 1, Stone.BLACK);
+    history.place(3, 1, Stone.WHITE);
+    history.place(1, 2, Stone.BLACK);
+    history.place(2, 2, Stone.WHITE);
+    history.place(10, 10, Stone.BLACK);
+    history.place(1, 1, Stone.WHITE);
+    history.place(2, 1, Stone.BLACK);
+  }
+
+  @Test
+  public void excludesSuicideAndKo() {
+    long[] legal = LegalMoves.of(history);
+    assertFalse(BitBoard.test(legal, geometry.getIndex(0, 0)));
+    assertFalse(BitBoard.test(legal, geometry.getIndex(1, 1)));
+    assertFalse(BitBoard.test(legal, geometry.getIndex(2, 1)));
+    assertTrue(BitBoard.test(legal, geometry.getIndex(15, 15)));
+    assertEquals(geometry.getPoints() - 8 - 2, BitBoard.count(legal));
+    assertTrue(BitBoard.test(LegalMoves.of(history, Stone.BLACK), geometry.getIndex(0, 0)));
+
+    BoardHistoryNode head = history.getCurrentHistoryNode();
+    history.place(1, 1, Stone.WHITE);
+    assertSame(head, history.getCurrentHistoryNode());
+
+    history.place(15, 15, Stone.WHITE);
+    history.place(15, 3, Stone.BLACK);
+    assertTrue(LegalMoves.isLegal(history, geometry.getIndex(1, 1), Stone.WHITE));
+  }
+
+  @Test
+  public void namesPoints() {
+    long[] points = new long[(geometry.getPoints() + 63) >>> 6];
+    BitBoard.set(points, geometry.moveOf("Q16"));
+    BitBoard.set(points, geometry.moveOf("D4"));
+    assertEquals("D4,Q16", LegalMoves.names(points, geometry));
+  }
+}
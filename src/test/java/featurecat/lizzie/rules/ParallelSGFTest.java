@@ -0,0 +1,115 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import common.TestConfig;
+import common.Util;
+import featurecat.lizzie.Lizzie;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ParallelSGFTest {
+  @Rule public final TestConfig config = new TestConfig();
+
+  @Before
+  public void setUp() throws IOException {
+    Lizzie.config.appendWinrateToComment = false;
+    Lizzie.config.holdBestMovesToSgf = false;
+  }
+
+  private static BoardHistoryList parse(String sgf) {
+    return new ParallelSGF(
+            ByteBuffer.wrap(sgf.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8)
+        .parse();
+  }
+
+  /** Plays a random legal move, in a new variation if asked, with a comment now and then */
+  private static void play(BoardHistoryList history, Random random, boolean newBranch) {
+    BoardHistoryNode before = history.getCurrentHistoryNode();
+    Stone color = history.isBlacksTurn() ? Stone.BLACK : Stone.WHITE;
+    for (int tries = 0; tries < 100 && history.getCurrentHistoryNode() == before; tries++) {
+      history.place(random.nextInt(19), random.nextInt(19), color, newBranch);
+    }
+    if (history.getCurrentHistoryNode() == before) history.pass(color, newBranch, false);
+    if (random.nextInt(5) == 0) history.getData().comment = "a ] (comment)";
+  }
+
+  /** Plays a line of moves that branches into three at random, down to depth more times */
+  private static void grow(BoardHistoryList history, Random random, int depth, int moves) {
+    for (int i = 0; i < moves; i++) {
+      play(history, random, false);
+      if (depth > 0 && random.nextInt(6) == 0) {
+        BoardHistoryNode branch = history.getCurrentHistoryNode();
+        for (int v = 0; v < 3; v++) {
+          play(history, random, v > 0);
+          grow(history, random, depth - 1, v == 0 ? moves - i - 1 : 40);
+          while (history.getCurrentHistoryNode() != branch) history.previous();
+        }
+        return;
+      }
+    }
+  }
+
+  @Test
+  public void readsWhatIsReadOnOneThread() throws IOException {
+    BoardHistoryList game = new BoardHistoryList(BoardData.empty(19, 19));
+    game.getData().comment = "head";
+    grow(game, new Random(1), 6, 250);
+    String sgf = Util.write(game);
+    BoardHistoryList serial = SGFParser.parseSgf(sgf);
+    BoardHistoryList parallel = parse(sgf);
+    assertEquals(sgf, Util.write(serial));
+    assertEquals(sgf, Util.write(parallel));
+    assertEquals(serial.root().getSubtreeSize(), parallel.root().getSubtreeSize());
+
+    // every node is linked into the tree of the root at its distance from it
+    BoardHistoryNode root = parallel.root();
+    BoardHistoryNode deepest = root;
+    ArrayDeque<BoardHistoryNode> stack = new ArrayDeque<>();
+    stack.push(root);
+    while (!stack.isEmpty()) {
+      BoardHistoryNode node = stack.pop();
+      assertSame(root, node.getRoot());
+      node.previous().ifPresent(p -> assertEquals(p.getLevel() + 1, node.getLevel()));
+      if (node.getLevel() > deepest.getLevel()) deepest = node;
+      stack.addAll(node.getVariations());
+    }
+    assertSame(root, deepest.ancestorAtLevel(0));
+  }
+
+  @Test
+  public void readsMovesOfTreesWithoutMoves() throws IOException {
+    String sgf = "(;SZ[9];B[ee](;(;W[ff])(;W[gg]))(;W[cc]C[c]))";
+    assertEquals(Util.write(SGFParser.parseSgf(sgf)), Util.write(parse(sgf)));
+  }
+
+  @Test
+  public void readsShiftJisAsText() throws IOException {
+    // in Shift_JIS the second byte of 表 is a backslash, and that of 能 a "]"
+    StringBuilder comment = new StringBuilder();
+    while (comment.length() < 600_000) comment.append("表能");
+    String sgf = "(;SZ[19]C[" + comment + "];B[pd]C[表](;W[dd];B[pp])(;W[dp];B[qq]))";
+    File file = File.createTempFile("parallel", ".sgf");
+    file.deleteOnExit();
+    try {
+      Files.write(file.toPath(), sgf.getBytes("Shift_JIS"));
+      assertTrue(file.length() >= Lizzie.config.parallelSgfMegabytes * 1_000_000L);
+      BoardHistoryList history = SGFParser.read(file.getPath()).get().getHistory();
+      BoardHistoryNode pd = history.root().next().get();
+      assertEquals("表", pd.getData().comment);
+      assertEquals(2, pd.numberOfChildren());
+    } finally {
+      file.delete();
+    }
+  }
+}
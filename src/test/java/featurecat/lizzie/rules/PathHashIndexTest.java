@@ -0,0 +1,63 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import common.TestConfig;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class PathHashIndexTest {
+  @Rule public final TestConfig config = new TestConfig();
+
+  @Test
+  public void matchesPathWalk() {
+    BoardHistoryList history = new BoardHistoryList(BoardData.empty(19, 19));
+    List<BoardData> seen = new ArrayList<>();
+    Random random = new Random(11);
+    for (int step = 0; step < 2000; step++) {
+      int action = random.nextInt(10);
+      if (action < 2) {
+        history.previous();
+      } else if (action < 3) {
+        history.next();
+      } else if (action < 4) {
+        history.pass(history.isBlacksTurn() ? Stone.BLACK : Stone.WHITE);
+      } else {
+        int x = random.nextInt(5);
+        int y = random.nextInt(5);
+        history.place(x, y, history.isBlacksTurn() ? Stone.BLACK : Stone.WHITE, action == 9);
+      }
+      seen.add(history.getData());
+      BoardData probe = seen.get(random.nextInt(seen.size()));
+      assertEquals(walkContains(history, probe, false), history.violatesPositionalSuperko(probe));
+      assertEquals(walkContains(history, probe, true), history.violatesSuperko(probe));
+    }
+  }
+
+  @Test
+  public void setupEditsAreRehashed() {
+    BoardHistoryList history = new BoardHistoryList(BoardData.empty(19, 19));
+    BoardData empty = BoardData.empty(19, 19);
+    assertTrue(history.violatesPositionalSuperko(empty));
+    history.addStone(3, 3, Stone.BLACK);
+    assertFalse(history.violatesPositionalSuperko(empty));
+    history.removeStone(3, 3, Stone.BLACK);
+    assertTrue(history.violatesPositionalSuperko(empty));
+  }
+
+  private static boolean walkContains(BoardHistoryList history, BoardData data, boolean sameSide) {
+    BoardHistoryNode node = history.getCurrentHistoryNode();
+    while (node != null) {
+      BoardData other = node.getData();
+      if (data.zobrist.equals(other.zobrist)
+          && (!sameSide || data.blackToPlay == other.blackToPlay)) return true;
+      node = node.previous().orElse(null);
+    }
+    return false;
+  }
+}
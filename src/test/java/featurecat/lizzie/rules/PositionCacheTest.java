@@ -0,0 +1,89 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import common.TestConfig;
+import featurecat.lizzie.Lizzie;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class PositionCacheTest {
+  @Rule public final TestConfig config = new TestConfig();
+
+  @Before
+  public void setUp() throws IOException {
+    Lizzie.config.compactHistory = true;
+    Lizzie.config.historyKeyframeInterval = 8;
+    Lizzie.config.historyCacheSize = 4;
+  }
+
+  @Test
+  public void evictedPositionsAreRebuilt() {
+    BoardHistoryList history = new BoardHistoryList(BoardData.empty(19, 19));
+    List<BoardHistoryNode> nodes = new ArrayList<>();
+    List<Stone[]> stones = new ArrayList<>();
+    List<int[]> numbers = new ArrayList<>();
+    Random random = new Random(3);
+    for (int move = 0; move < 300; move++) {
+      if (move % 50 == 49) {
+        // start a variation a few moves back
+        for (int i = 0; i < 5; i++) history.previous();
+      }
+      BoardHistoryNode before = history.getCurrentHistoryNode();
+      int x = random.nextInt(19);
+      int y = random.nextInt(19);
+      history.place(x, y, history.isBlacksTurn() ? Stone.BLACK : Stone.WHITE, move % 50 == 49);
+      BoardHistoryNode node = history.getCurrentHistoryNode();
+      if (node == before || nodes.contains(node)) continue;
+      nodes.add(node);
+      stones.add(node.getData().getStones().clone());
+      numbers.add(node.getData().getMoveNumberList().clone());
+    }
+
+    // most positions are evicted by now
+    assertNull(nodes.get(1).getData().stones);
+    for (int i = 0; i < nodes.size(); i++) {
+      BoardData data = nodes.get(i).getData();
+      assertArrayEquals(stones.get(i), data.getStones());
+      assertArrayEquals(numbers.get(i), data.getMoveNumberList());
+    }
+  }
+
+  @Test
+  public void editKeepsEvictedChildren() {
+    BoardHistoryList history = new BoardHistoryList(BoardData.empty(19, 19));
+    history.place(3, 3, Stone.BLACK);
+    BoardHistoryNode parent = history.getCurrentHistoryNode();
+    history.place(15, 15, Stone.WHITE);
+    BoardHistoryNode child = history.getCurrentHistoryNode();
+    Stone[] expected = child.getData().getStones().clone();
+    for (int i = 0; i < 10; i++) history.place(i, 10, i % 2 == 0 ? Stone.BLACK : Stone.WHITE);
+    assertNull(child.getData().stones);
+
+    // an edit on the parent must not leak into its evicted child
+    parent.getData().setStone(Board.getIndex(9, 9), Stone.WHITE);
+    assertArrayEquals(expected, child.getData().getStones());
+  }
+
+  @Test
+  public void gamesDoNotEvictEachOther() {
+    BoardHistoryList first = new BoardHistoryList(BoardData.empty(19, 19));
+    first.place(3, 3, Stone.BLACK);
+    BoardHistoryNode kept = first.getCurrentHistoryNode();
+
+    // filling the cache of another game leaves this one alone
+    BoardHistoryList second = new BoardHistoryList(BoardData.empty(19, 19));
+    second.place(3, 3, Stone.BLACK);
+    BoardHistoryNode evicted = second.getCurrentHistoryNode();
+    for (int i = 0; i < 10; i++) second.place(i, 10, i % 2 == 0 ? Stone.WHITE : Stone.BLACK);
+    assertNull(evicted.getData().stones);
+    assertNotNull(kept.getData().stones);
+  }
+}
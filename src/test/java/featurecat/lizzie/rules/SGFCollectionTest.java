@@ -0,0 +1,120 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import common.TestConfig;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class SGFCollectionTest {
+  private static final String FIRST =
+      "(;SZ[19]PB[Lee \\] Sedol]PW[AlphaGo]DT[2016-03-09]RE[W+R]KM[7.5];B[pd]C[(not a tree];W[dp])";
+  private static final String SECOND =
+      "(;SZ[9]PB[Black]PW[White]RE[B+2.5]KM[6.5];B[ee](;W[gc];B[ff])(;W[cg]PB[Not the root]))";
+  private static final String THIRD = "(;SZ[13]PW[白]PB[黒];B[gg])";
+
+  @Rule public final TestConfig config = new TestConfig();
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("collection", ".sgf");
+    Files.write(
+        file.toPath(), (FIRST + "\n" + SECOND + "\r\n" + THIRD).getBytes(StandardCharsets.UTF_8));
+  }
+
+  @After
+  public void tearDown() {
+    SGFCollection.indexFile(file).delete();
+    file.delete();
+  }
+
+  @Test
+  public void indexesTheGames() throws IOException {
+    SGFCollection collection = SGFCollection.open(file, StandardCharsets.UTF_8);
+    List<SGFCollection.Game> games = collection.getGames();
+    assertEquals(3, games.size());
+    assertEquals("Lee ] Sedol", games.get(0).getPlayerBlack());
+    assertEquals("AlphaGo", games.get(0).getPlayerWhite());
+    assertEquals("2016-03-09", games.get(0).getDate());
+    assertEquals("W+R", games.get(0).getResult());
+    assertEquals("7.5", games.get(0).getKomi());
+    assertEquals("Black", games.get(1).getPlayerBlack());
+    assertEquals("9", games.get(1).getSize());
+    assertEquals("黒", games.get(2).getPlayerBlack());
+    assertEquals("", games.get(2).getDate());
+
+    assertEquals(SECOND, collection.text(games.get(1)));
+    BoardHistoryList game = SGFParser.parseSgf(collection.text(games.get(1)));
+    assertEquals(9, game.getGeometry().getWidth());
+    assertEquals(2, game.root().next().get().numberOfChildren());
+  }
+
+  @Test
+  public void filtersTheGames() throws IOException {
+    SGFCollection collection = SGFCollection.open(file, StandardCharsets.UTF_8);
+    assertEquals(3, collection.filter(" ").size());
+    assertEquals(1, collection.filter("sedol w+r").size());
+    assertEquals(1, collection.filter("WHITE").size());
+    assertEquals(0, collection.filter("sedol b+").size());
+  }
+
+  @Test
+  public void keepsTheIndexUntilTheFileChanges() throws IOException {
+    SGFCollection.open(file, StandardCharsets.UTF_8);
+    File index = SGFCollection.indexFile(file);
+    assertTrue(index.isFile());
+    assertEquals(3, SGFCollection.open(file, StandardCharsets.UTF_8).size());
+
+    Files.write(
+        file.toPath(),
+        "\n(;PB[Fourth])".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+    SGFCollection collection = SGFCollection.open(file, StandardCharsets.UTF_8);
+    assertEquals(4, collection.size());
+    assertEquals("Fourth", collection.getGames().get(3).getPlayerBlack());
+  }
+
+  @Test
+  public void indexesShiftJisAsText() throws IOException {
+    // the second byte of 表 and of 能 is a "\" in Shift_JIS
+    Charset shiftJis = Charset.forName("Shift_JIS");
+    Files.write(file.toPath(), "(;PB[表]C[能];B[aa])(;PB[x];B[bb])".getBytes(shiftJis));
+    SGFCollection collection = SGFCollection.open(file, shiftJis);
+    List<SGFCollection.Game> games = collection.getGames();
+    assertEquals(2, games.size());
+    assertEquals("表", games.get(0).getPlayerBlack());
+    assertEquals("(;PB[x];B[bb])", collection.text(games.get(1)));
+    assertEquals("(;PB[x];B[bb])", SGFCollection.open(file, shiftJis).text(games.get(1)));
+  }
+
+  @Test
+  public void doesNotIndexOneGame() throws IOException {
+    Files.write(file.toPath(), ("\n" + THIRD + "\n").getBytes(StandardCharsets.UTF_8));
+    SGFCollection collection = SGFCollection.open(file, StandardCharsets.UTF_8);
+    assertEquals(1, collection.size());
+    assertEquals("黒", collection.getGames().get(0).getPlayerBlack());
+    assertEquals(THIRD, collection.text(collection.getGames().get(0)));
+    assertFalse(SGFCollection.indexFile(file).exists());
+  }
+
+  @Test
+  public void readsOnlyTheFirstGame() {
+    BoardHistoryList game = SGFParser.parseSgf(FIRST + SECOND);
+    assertEquals(19, game.getGeometry().getWidth());
+    assertEquals("Lee ] Sedol", game.getGameInfo().getPlayerBlack());
+    assertEquals(2, game.mainTrunkLength());
+    assertFalse(game.root().next().get().next().get().next().isPresent());
+  }
+}
@@ -32,6 +32,38 @@ public class SGFParserTest {
     testMore1();
   }
 
+  @Test
+  public void buildsWithoutBoard() throws IOException {
+    Config oldConfig = Lizzie.config;
+    Board oldBoard = Lizzie.board;
+    Leelaz oldLeelaz = Lizzie.leelaz;
+    Lizzie.config = new Config();
+    Lizzie.board = null;
+    Lizzie.leelaz = null;
+    try {
+      BoardHistoryList history =
+          SGFParser.parseSgf(
+              "(;SZ[9]KM[0.5]HA[2]PB[Black]PW[White]AB[cc][gg]C[head]"
+                  + ";W[aa];B[ba];W[ee];B[ab]C[captured](;W[ff])(;W[hh]))");
+      BoardGeometry geometry = history.getGeometry();
+      assertEquals(9, geometry.getWidth());
+      assertEquals(0.5, history.getGameInfo().getKomi(), 0);
+      assertEquals("Black", history.getGameInfo().getPlayerBlack());
+      assertEquals("head", history.getData().comment);
+      assertEquals(Stone.BLACK, history.getStones()[geometry.getIndex(2, 2)]);
+
+      for (int i = 0; i < 4; i++) history.next();
+      assertEquals("captured", history.getData().comment);
+      assertEquals(1, history.getData().blackCaptures);
+      assertEquals(Stone.EMPTY, history.getStones()[geometry.getIndex(0, 0)]);
+      assertEquals(2, history.getCurrentHistoryNode().numberOfChildren());
+    } finally {
+      Lizzie.config = oldConfig;
+      Lizzie.board = oldBoard;
+      Lizzie.leelaz = oldLeelaz;
+    }
+  }
+
   public void testVariaionOnly1() throws IOException {
 
     String sgfString =
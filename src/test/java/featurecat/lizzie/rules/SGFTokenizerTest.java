@@ -0,0 +1,88 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Test;
+
+public class SGFTokenizerTest {
+  /** Writes the events as text: "(" ")" ";" and key=value */
+  private static class Recorder implements SGFTokenizer.Handler {
+    final StringBuilder events = new StringBuilder();
+
+    public void startTree() {
+      events.append('(');
+    }
+
+    public void endTree() {
+      events.append(')');
+    }
+
+    public void startNode() {
+      events.append(';');
+    }
+
+    public void property(String key, String value) {
+      events.append(key).append('=').append(value).append(' ');
+    }
+  }
+
+  @Test
+  public void readsTreesNodesAndValues() {
+    Recorder recorder = new Recorder();
+    assertTrue(
+        SGFTokenizer.tokenize(
+            "junk (;SZ[9]PlayerBlack[x]\nC[a \\] (b)\\nc];B[aa](;W[bb])(;AB[cc][dd])) more (;B[ee])",
+            recorder));
+    assertEquals(
+        "(;SZ=9 PB=x C=a ] (b)\nc ;B=aa (;W=bb )(;AB=cc AB=dd ))(;B=ee )",
+        recorder.events.toString());
+
+    assertFalse(SGFTokenizer.tokenize("no game here", new Recorder()));
+  }
+
+  @Test
+  public void readsAcrossBlocks() throws IOException {
+    StringBuilder text = new StringBuilder("(;C[");
+    for (int i = 0; i < 100_000; i++) text.append('x');
+    text.append("];B[aa])");
+    Recorder recorder = new Recorder();
+    SGFTokenizer.tokenize(new StringReader(text.toString()), recorder);
+    assertTrue(recorder.events.toString().endsWith("x ;B=aa )"));
+    assertEquals(100_000 + 12, recorder.events.length());
+  }
+
+  @Test
+  public void findsMultiGoEndings() {
+    assertTrue(SGFTokenizer.endsWithNestedTree("(;B[aa](;W[bb])(;W[cc]))\n"));
+    assertFalse(SGFTokenizer.endsWithNestedTree("(;B[aa](;W[bb])(;W[cc])B[dd])"));
+    assertFalse(SGFTokenizer.endsWithNestedTree("(;B[aa])"));
+  }
+
+  @Test
+  public void findsMultiGoEndingsOfFilesInAnyEncoding() throws IOException {
+    assertTrue(SGFTokenizer.isAsciiSafe(StandardCharsets.UTF_8));
+    assertTrue(SGFTokenizer.isAsciiSafe(Charset.forName("EUC-JP")));
+    assertFalse(SGFTokenizer.isAsciiSafe(Charset.forName("Shift_JIS")));
+    assertFalse(SGFTokenizer.isAsciiSafe(Charset.forName("Big5")));
+
+    File file = File.createTempFile("lizzie", ".sgf");
+    file.deleteOnExit();
+    try {
+      // every ")" is preceded by a zero byte in UTF-16
+      Files.write(file.toPath(), "(;B[aa](;W[bb])(;W[cc]))".getBytes(StandardCharsets.UTF_16BE));
+      assertTrue(SGFTokenizer.endsWithNestedTree(file, StandardCharsets.UTF_16BE));
+      Files.write(file.toPath(), "(;B[aa](;W[bb])(;W[cc]))".getBytes(StandardCharsets.UTF_8));
+      assertTrue(SGFTokenizer.endsWithNestedTree(file, StandardCharsets.UTF_8));
+    } finally {
+      file.delete();
+    }
+  }
+}
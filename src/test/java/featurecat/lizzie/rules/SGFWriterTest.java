@@ -0,0 +1,55 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import common.TestConfig;
+import common.Util;
+import featurecat.lizzie.Lizzie;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class SGFWriterTest {
+  @Rule public final TestConfig config = new TestConfig();
+
+  @Before
+  public void setUp() throws IOException {
+    Lizzie.config.appendWinrateToComment = false;
+    Lizzie.config.holdBestMovesToSgf = false;
+  }
+
+  @Test
+  public void writesWhatIsRead() throws IOException {
+    String moves =
+        "AB[cc][gg]C[head \\] end];B[ee]C[a\\\\b];W[ff](;B[gf];W[ge]LB[aa:x][bb:y])(;B[jj];W[hh])";
+    String sgf = Util.write(SGFParser.parseSgf("(;SZ[9]PB[Black]PW[White]" + moves + ")"));
+    assertTrue(sgf.startsWith("(;"));
+    assertTrue(sgf.contains("PB[Black]"));
+    assertTrue(sgf.contains("SZ[9]"));
+    assertTrue(sgf.endsWith(moves + ")"));
+    // written again unchanged
+    assertEquals(sgf, Util.write(SGFParser.parseSgf(sgf)));
+  }
+
+  @Test
+  public void writesLongLines() throws IOException {
+    BoardHistoryList history = new BoardHistoryList(BoardData.empty(19, 19));
+    for (int i = 0; i < 20_000; i++) history.pass(i % 2 == 0 ? Stone.BLACK : Stone.WHITE);
+    String sgf = Util.write(history);
+    assertEquals(20_000, sgf.split(";").length - 2);
+    assertTrue(sgf.endsWith(";W[tt])"));
+  }
+
+  @Test
+  public void findsTheAnalysisOfAnEarlierSave() {
+    String annotation = "Black's winrate: 55.0% (+1.0%)\nscoreMean: 2.5\n(weights / 1.2k playouts)";
+    assertEquals(annotation.length(), SGFWriter.annotationEnd(annotation + "\n\nnice move"));
+    assertEquals(
+        annotation.length() - 15,
+        SGFWriter.annotationEnd(annotation.replace("scoreMean: 2.5\n", "")));
+    assertEquals(-1, SGFWriter.annotationEnd("nice move"));
+    assertEquals(-1, SGFWriter.annotationEnd("Black's winrate: 55.0%\nnice move"));
+  }
+}
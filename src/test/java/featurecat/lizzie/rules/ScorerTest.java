@@ -0,0 +1,64 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class ScorerTest {
+
+  @Test
+  public void scoresRegions() {
+    // a black wall on the third column of a 5x5 board, white in the corner beyond it
+    Stone[] stones = new Stone[25];
+    Arrays.fill(stones, Stone.EMPTY);
+    for (int y = 0; y < 5; y++) stones[2 * 5 + y] = Stone.BLACK;
+    stones[4 * 5 + 4] = Stone.WHITE;
+    Scorer scorer = new Scorer(stones, 5, 5);
+    assertEquals(Stone.BLACK_POINT, scorer.getScoreStones()[0]);
+    assertEquals(Stone.DAME, scorer.getScoreStones()[3 * 5 + 0]);
+    assertArrayEquals(new double[] {10, 6.5}, scorer.territoryScore(0, 0, 6.5), 0);
+
+    scorer.toggle(4 * 5 + 4);
+    assertEquals(Stone.WHITE_CAPTURED, scorer.getScoreStones()[4 * 5 + 4]);
+    assertArrayEquals(new double[] {21, 6.5}, scorer.territoryScore(0, 0, 6.5), 0);
+    assertArrayEquals(new double[] {25, 6.5}, scorer.areaScore(6.5), 0);
+  }
+
+  @Test
+  public void togglesMatchFreshScore() {
+    checkToggles(19, 19);
+    checkToggles(9, 13);
+  }
+
+  private void checkToggles(int width, int height) {
+    Random random = new Random(5);
+    GroupTable groups = new GroupTable(width, height);
+    Stone color = Stone.BLACK;
+    for (int move = 0; move < width * height / 2; move++) {
+      int index = random.nextInt(width * height);
+      if (groups.colorAt(index) != Stone.EMPTY || groups.isSuicide(index, color)) continue;
+      groups.play(index, color);
+      color = color.opposite();
+    }
+    Stone[] stones = new Stone[width * height];
+    for (int i = 0; i < stones.length; i++) stones[i] = groups.colorAt(i);
+
+    Scorer scorer = new Scorer(stones, width, height);
+    for (int click = 0; click < 50; click++) {
+      scorer.toggle(random.nextInt(stones.length));
+      Stone[] marked = scorer.getScoreStones().clone();
+      for (int i = 0; i < marked.length; i++) {
+        if (marked[i] == Stone.BLACK_POINT
+            || marked[i] == Stone.WHITE_POINT
+            || marked[i] == Stone.DAME) marked[i] = Stone.EMPTY;
+      }
+      Scorer fresh = new Scorer(marked, width, height);
+      assertArrayEquals(fresh.getScoreStones(), scorer.getScoreStones());
+      assertArrayEquals(fresh.territoryScore(1, 2, 7.5), scorer.territoryScore(1, 2, 7.5), 0);
+      assertArrayEquals(fresh.areaScore(7.5), scorer.areaScore(7.5), 0);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import common.TestConfig;
+import featurecat.lizzie.analysis.MoveData;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class SymmetryTest {
+  @Rule public final TestConfig config = new TestConfig();
+
+  @Test
+  public void composesLikeTheMoves() {
+    BoardGeometry geometry = BoardGeometry.of(19, 19);
+    for (Symmetry a : Symmetry.values()) {
+      for (int move = 0; move < geometry.getPoints(); move++) {
+        assertEquals(move, a.inverse().apply(geometry, a.apply(geometry, move)));
+        for (Symmetry b : Symmetry.values()) {
+          assertEquals(b.apply(geometry, a.apply(geometry, move)), a.then(b).apply(geometry, move));
+        }
+      }
+      assertEquals(BoardGeometry.PASS, a.apply(geometry, BoardGeometry.PASS));
+    }
+    assertEquals(geometry.moveOf("Q16"), Symmetry.ROTATE_CLOCKWISE.apply(geometry, 60));
+    assertFalse(Symmetry.TRANSPOSE.fits(BoardGeometry.of(9, 13)));
+    assertTrue(Symmetry.ROTATE_180.fits(BoardGeometry.of(9, 13)));
+  }
+
+  @Test
+  public void reusesAnalysisOfRotatedPositions() {
+    BoardHistoryList history = new BoardHistoryList(BoardData.empty(19, 19));
+    history.place(3, 15, Stone.BLACK);
+    history.place(16, 3, Stone.WHITE);
+    BoardData first = history.getData();
+    first.bestMoves = new ArrayList<>();
+    first.bestMoves.add(MoveData.fromSummary(" C16 -> 100 (V: 50.00%) (N: 5.00%) PV: C16 R16"));
+    first.setPlayouts(100);
+
+    history.goToMoveNumber(0, false);
+    history.place(15, 15, Stone.BLACK, true);
+    history.place(3, 2, Stone.WHITE);
+    BoardData second = history.getData();
+    assertNotEquals(first.getFingerprint(), second.getFingerprint());
+    assertEquals(first.getCanonicalFingerprint(), second.getCanonicalFingerprint());
+    assertTrue(history.getCurrentHistoryNode().isTransposed());
+
+    // the position was turned a quarter to the left, and so is its analysis
+    List<MoveData> moves = first.bestMovesFor(second);
+    assertEquals("D3", moves.get(0).coordinate);
+    assertEquals(second.getGeometry().moveOf("D3"), moves.get(0).move);
+    assertEquals("D3", moves.get(0).variation.get(0));
+    assertEquals("D17", moves.get(0).variation.get(1));
+
+    assertTrue(second.shareAnalysis(first));
+    assertEquals(100, second.getPlayouts());
+    assertEquals("D3", second.bestMoves.get(0).coordinate);
+  }
+}
@@ -0,0 +1,67 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class TerritoryEstimatorTest {
+  private final BoardGeometry geometry = BoardGeometry.of(9, 9);
+  private final Stone[] stones = new Stone[geometry.getPoints()];
+
+  private void put(Stone color, int... coords) {
+    for (int i = 0; i < coords.length; i += 2) {
+      stones[geometry.getIndex(coords[i], coords[i + 1])] = color;
+    }
+  }
+
+  @Test
+  public void countsWallsAndDeadStones() {
+    Arrays.fill(stones, Stone.EMPTY);
+    for (int y = 0; y < 9; y++) {
+      put(Stone.BLACK, 3, y);
+      put(Stone.WHITE, 4, y);
+    }
+    TerritoryEstimator estimator = new TerritoryEstimator(geometry);
+    estimator.update(stones);
+    assertEquals(27, estimator.getBlackPoints());
+    assertEquals(36, estimator.getWhitePoints());
+    assertEquals(1, estimator.ownerOf(geometry.getIndex(0, 0)));
+    assertEquals(-1, estimator.ownerOf(geometry.getIndex(8, 8)));
+
+    // a lone stone behind the wall is dead, and its point is black's
+    put(Stone.WHITE, 1, 4);
+    estimator.update(stones);
+    assertTrue(estimator.isDead(geometry.getIndex(1, 4)));
+    assertEquals(1, estimator.getDeadWhite());
+    assertEquals(27, estimator.getBlackPoints());
+    assertEquals(1.0, estimator.getEstimates().get(4 * 9 + 1), 0);
+
+    // a group with two eyes lives anywhere
+    put(Stone.EMPTY, 1, 4);
+    put(Stone.WHITE, 1, 0, 0, 1, 1, 1, 1, 2, 0, 3, 1, 3);
+    estimator.update(stones);
+    assertFalse(estimator.isDead(geometry.getIndex(1, 1)));
+    assertEquals(0, estimator.getDeadWhite());
+  }
+
+  @Test
+  public void updatesLikeAFreshEstimate() {
+    Random random = new Random(7);
+    Arrays.fill(stones, Stone.EMPTY);
+    TerritoryEstimator estimator = new TerritoryEstimator(geometry);
+    for (int move = 0; move < 60; move++) {
+      int p = random.nextInt(stones.length);
+      stones[p] = random.nextInt(3) == 0 ? Stone.EMPTY : move % 2 == 0 ? Stone.BLACK : Stone.WHITE;
+      estimator.update(stones);
+      TerritoryEstimator fresh = new TerritoryEstimator(geometry);
+      fresh.update(stones);
+      assertEquals(fresh.getEstimates(), estimator.getEstimates());
+      assertEquals(fresh.getBlackPoints(), estimator.getBlackPoints());
+      assertEquals(fresh.getDeadWhite(), estimator.getDeadWhite());
+    }
+  }
+}
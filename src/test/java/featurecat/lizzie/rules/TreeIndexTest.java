@@ -0,0 +1,156 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import common.TestConfig;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TreeIndexTest {
+  @Rule public final TestConfig config = new TestConfig();
+
+  @Test
+  public void matchesTreeWalks() {
+    BoardHistoryList history = new BoardHistoryList(BoardData.empty(19, 19));
+    Random random = new Random(17);
+    for (int step = 0; step < 3000; step++) {
+      int action = random.nextInt(20);
+      BoardHistoryNode head = history.getCurrentHistoryNode();
+      if (action < 3) {
+        history.previous();
+      } else if (action == 3) {
+        head.moveUp();
+      } else if (action == 4) {
+        head.moveDown();
+      } else if (action == 5 && head.previous().isPresent()) {
+        BoardHistoryNode pre = head.previous().get();
+        history.previous();
+        pre.deleteChild(pre.getVariations().indexOf(head));
+      } else if (action == 6) {
+        history.setStone(
+            new int[] {random.nextInt(19), random.nextInt(19)},
+            random.nextBoolean() ? Stone.BLACK : Stone.WHITE);
+      } else {
+        history.place(
+            random.nextInt(19),
+            random.nextInt(19),
+            history.isBlacksTurn() ? Stone.BLACK : Stone.WHITE,
+            action < 9);
+      }
+
+      List<BoardHistoryNode> nodes = new ArrayList<>();
+      collect(history.root(), nodes);
+      BoardHistoryNode a = nodes.get(random.nextInt(nodes.size()));
+      BoardHistoryNode b = nodes.get(random.nextInt(nodes.size()));
+      assertEquals(walkIsMainTrunk(a), a.isMainTrunk());
+      assertEquals(walkDepth(a), a.getDepth());
+      assertSame(walkFindTop(a), a.findTop());
+      assertSame(walkLca(a, b), a.lowestCommonAncestor(b));
+      int depth = random.nextInt(10);
+      assertSame(walkChildAtDepth(a, depth), a.childAtDepth(depth));
+      assertEquals(count(a), a.getSubtreeSize());
+      assertEquals(walkTranspositions(nodes, a), new HashSet<>(a.getTranspositions()));
+    }
+  }
+
+  @Test
+  public void sharesAnalysisOfTranspositions() {
+    BoardHistoryList history = new BoardHistoryList(BoardData.empty(19, 19));
+    history.place(3, 3, Stone.BLACK);
+    history.place(15, 3, Stone.WHITE);
+    history.place(15, 15, Stone.BLACK);
+    BoardHistoryNode first = history.getCurrentHistoryNode();
+    assertFalse(first.isTransposed());
+
+    history.goToMoveNumber(0, false);
+    history.place(15, 15, Stone.BLACK, true);
+    history.place(15, 3, Stone.WHITE);
+    history.place(3, 3, Stone.BLACK);
+    BoardHistoryNode second = history.getCurrentHistoryNode();
+    assertTrue(first.isTransposed());
+    assertEquals(2, second.getTranspositions().size());
+    assertTrue(second.getTranspositions().contains(first));
+
+    first.getData().setPlayouts(200);
+    first.getData().winrate = 61;
+    assertTrue(second.getData().shareAnalysis(first.getData()));
+    assertEquals(200, second.getData().getPlayouts());
+    assertEquals(61, second.getData().winrate, 0);
+    assertFalse(first.getData().shareAnalysis(second.getData()));
+
+    history.setStone(new int[] {0, 0}, Stone.WHITE);
+    assertFalse(second.isTransposed());
+  }
+
+  private static void collect(BoardHistoryNode node, List<BoardHistoryNode> nodes) {
+    nodes.add(node);
+    for (BoardHistoryNode child : node.getVariations()) collect(child, nodes);
+  }
+
+  private static Set<BoardHistoryNode> walkTranspositions(
+      List<BoardHistoryNode> nodes, BoardHistoryNode node) {
+    Set<BoardHistoryNode> same = new HashSet<>();
+    for (BoardHistoryNode n : nodes) {
+      if (!n.getData().dummy
+          && n.getData().getCanonicalFingerprint() == node.getData().getCanonicalFingerprint()) {
+        same.add(n);
+      }
+    }
+    if (!same.contains(node)) return Collections.singleton(node);
+    return same;
+  }
+
+  private static int count(BoardHistoryNode node) {
+    int size = 1;
+    for (BoardHistoryNode child : node.getVariations()) size += count(child);
+    return size;
+  }
+
+  private static boolean walkIsMainTrunk(BoardHistoryNode node) {
+    while (node.previous().isPresent()) {
+      BoardHistoryNode pre = node.previous().get();
+      if (pre.next().isPresent() && pre.next().get() != node) return false;
+      node = pre;
+    }
+    return true;
+  }
+
+  private static int walkDepth(BoardHistoryNode node) {
+    int depth = 0;
+    for (; node.next().isPresent(); node = node.next().get()) depth++;
+    return depth;
+  }
+
+  private static BoardHistoryNode walkChildAtDepth(BoardHistoryNode node, int depth) {
+    for (int i = 0; i < depth && node.next().isPresent(); i++) node = node.next().get();
+    return node;
+  }
+
+  private static BoardHistoryNode walkFindTop(BoardHistoryNode start) {
+    BoardHistoryNode top = start;
+    while (start.previous().isPresent()) {
+      BoardHistoryNode pre = start.previous().get();
+      if (pre.next(true).isPresent() && pre.next(true).get() != start) top = pre;
+      start = pre;
+    }
+    return top;
+  }
+
+  private static BoardHistoryNode walkLca(BoardHistoryNode a, BoardHistoryNode b) {
+    List<BoardHistoryNode> path = new ArrayList<>();
+    for (BoardHistoryNode n = a; n != null; n = n.previous().orElse(null)) path.add(n);
+    for (BoardHistoryNode n = b; n != null; n = n.previous().orElse(null)) {
+      if (path.contains(n)) return n;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,53 @@
+package featurecat.lizzie.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import common.TestConfig;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ZobristTest {
+  @Rule public final TestConfig config = new TestConfig();
+
+  @Test
+  public void fingerprintsSurviveSizeChanges() {
+    BoardHistoryList history = new BoardHistoryList(BoardData.empty(19, 19));
+    history.place(3, 3, Stone.BLACK);
+    history.place(15, 15, Stone.WHITE);
+    long fingerprint = history.getData().getFingerprint();
+
+    long empty19 = BoardData.empty(19, 19).getFingerprint();
+    assertNotEquals(empty19, BoardData.empty(9, 9).getFingerprint());
+    assertEquals(fingerprint, history.getData().getFingerprint());
+
+    // the same position reached in another order
+    BoardHistoryList other = new BoardHistoryList(BoardData.empty(19, 19));
+    other.addStone(15, 15, Stone.WHITE);
+    other.addStone(3, 3, Stone.BLACK);
+    assertEquals(fingerprint, other.getData().getFingerprint());
+  }
+
+  @Test
+  public void koPointIsPartOfTheFingerprint() {
+    BoardHistoryList history = new BoardHistoryList(BoardData.empty(19, 19));
+    // white takes the black stone at (2, 1) with a lone stone at (1, 1)
+    history.place(1, 0, Stone.BLACK);
+    history.place(2, 0, Stone.WHITE);
+    history.place(0, 1, Stone.BLACK);
+    history.place(3, 1, Stone.WHITE);
+    history.place(1, 2, Stone.BLACK);
+    history.place(2, 2, Stone.WHITE);
+    history.place(2, 1, Stone.BLACK);
+    assertEquals(-1, history.getData().getKoPoint());
+    history.place(1, 1, Stone.WHITE);
+    assertEquals(Board.getIndex(2, 1), history.getData().getKoPoint());
+
+    BoardData data = history.getData().clone();
+    long fingerprint = data.getFingerprint();
+    data.setKoPoint(-1);
+    assertNotEquals(fingerprint, data.getFingerprint());
+    data.blackToPlay = !data.blackToPlay;
+    assertNotEquals(fingerprint, data.getFingerprint());
+  }
+}